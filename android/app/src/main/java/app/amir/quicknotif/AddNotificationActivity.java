@@ -4,7 +4,6 @@ import android.widget.EditText;
 import android.widget.RadioButton;
 import android.widget.Toast;
 
-import org.json.JSONArray;
 import org.json.JSONObject;
 
 import java.util.Locale;
@@ -88,9 +87,6 @@ public class AddNotificationActivity extends BaseNotificationActivity {
     private void createNotification(String id, String name, String time, String type,
                                     long scheduledAt, long interval) {
         try {
-            String notificationsJson = NotifUtils.readNotificationsJson(this);
-            JSONArray array = new JSONArray(notificationsJson);
-
             JSONObject newNotification = new JSONObject();
             newNotification.put(NotifUtils.JSON_KEY_ID, id);
             newNotification.put(NotifUtils.JSON_KEY_NAME, name);
@@ -104,8 +100,7 @@ public class AddNotificationActivity extends BaseNotificationActivity {
                 newNotification.put(NotifUtils.JSON_KEY_INTERVAL, interval);
             }
 
-            array.put(newNotification);
-            NotifUtils.saveNotificationsJson(this, array.toString());
+            NotificationRepository.get(this).put(NotificationJournal.OP_CREATE, newNotification);
 
             AppLogger.d(TAG,"✅ Created notification: id=" + id + ", name=" + name);
         } catch (Exception e) {
@@ -0,0 +1,43 @@
+package app.amir.quicknotif;
+
+import java.util.Locale;
+
+/**
+ * Outcome of one {@link NotifUtils#scheduleAlarms} or {@link NotifUtils#cancelAlarms} call.
+ *
+ * <p>{@code skipped} counts notifications that needed no AlarmManager call: already armed for
+ * the same time when scheduling, or with no alarm registered when cancelling.
+ */
+public final class AlarmBatchReport {
+
+    public final int requested;
+    public final int armed;
+    public final int skipped;
+    public final int cancelled;
+    public final int failed;
+    /** Wall time of the whole call. */
+    public final long durationNanos;
+    /** Part of {@link #durationNanos} spent probing, arming and cancelling alarms. */
+    public final long alarmNanos;
+
+    AlarmBatchReport(int requested, int armed, int skipped, int cancelled, int failed,
+                     long durationNanos, long alarmNanos) {
+        this.requested = requested;
+        this.armed = armed;
+        this.skipped = skipped;
+        this.cancelled = cancelled;
+        this.failed = failed;
+        this.durationNanos = durationNanos;
+        this.alarmNanos = alarmNanos;
+    }
+
+    public long durationMs() {
+        return durationNanos / 1_000_000L;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.US, "%d requested: %d armed, %d skipped, %d cancelled, %d failed in %.1fms (alarm calls %.1fms)",
+                requested, armed, skipped, cancelled, failed, durationNanos / 1e6, alarmNanos / 1e6);
+    }
+}
@@ -0,0 +1,216 @@
+package app.amir.quicknotif;
+
+import android.app.AlarmManager;
+import android.app.PendingIntent;
+import android.content.Context;
+import android.content.Intent;
+import android.content.SharedPreferences;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * "Next due" alarm mode: one AlarmManager alarm for all notifications instead of one each.
+ *
+ * <p>In the default {@link #MODE_PER_NOTIFICATION per-notification} mode,
+ * {@link NotifUtils#scheduleAlarm} registers a {@code setExactAndAllowWhileIdle} alarm for every
+ * notification. That runs into the per-app alarm limit (around 500), and under Doze
+ * allow-while-idle alarms are rate-limited to about one every 9 minutes, so reminders set close
+ * together fire late one after the other.
+ *
+ * <p>In {@link #MODE_NEXT_DUE} mode only the earliest due time is armed. When it fires,
+ * {@link NotificationReceiver} calls {@link #dispatch}, which returns every enabled notification
+ * due up to {@link #DELIVERY_WINDOW_MS} ahead, read from the store's {@code scheduledAt} index.
+ * It then re-arms for the next one. A late wakeup therefore delivers everything that came due
+ * in the meantime at once, rather than each notification waiting for its own wakeup.
+ *
+ * <p>The persisted {@link #KEY_DISPATCH_CURSOR cursor} is the time up to which notifications
+ * have been delivered, so nothing is delivered twice and nothing is skipped when the alarm runs
+ * late. The mode is chosen with {@link #setMode}, which moves the armed alarms from one
+ * scheme to the other. Mode and cursor are kept in their own preferences file
+ * ({@link #PREFS_NAME}).
+ */
+public final class AlarmDispatcher {
+
+    private static final String TAG = "AlarmDispatcher";
+
+    /** Preferences file holding the mode and the cursor. */
+    public static final String PREFS_NAME = "QuickNotifDispatch";
+
+    /** Preferences key holding the alarm mode ({@link #MODE_PER_NOTIFICATION} if unset). */
+    public static final String KEY_DISPATCH_MODE = "alarmDispatchMode";
+    public static final String MODE_PER_NOTIFICATION = "perNotification";
+    public static final String MODE_NEXT_DUE = "nextDue";
+
+    /** Preferences key: epoch millis up to which due notifications have been delivered. */
+    static final String KEY_DISPATCH_CURSOR = "alarmDispatchCursor";
+
+    public static final String ACTION_DISPATCH = "app.amir.quicknotif.DISPATCH_DUE";
+
+    /** Request code of the dispatch alarm; notification request codes start at 1. */
+    static final int DISPATCH_REQUEST_CODE = 0;
+
+    /** Notifications due this soon after a wakeup are delivered with it. */
+    public static final long DELIVERY_WINDOW_MS = 15_000L;
+
+    private AlarmDispatcher() {}
+
+    private static SharedPreferences prefs(Context context) {
+        return context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+    }
+
+    /** Whether {@link #MODE_NEXT_DUE} is selected. */
+    public static boolean isEnabled(Context context) {
+        return MODE_NEXT_DUE.equals(prefs(context).getString(KEY_DISPATCH_MODE, null));
+    }
+
+    /**
+     * Switches the alarm mode and moves the alarms of active notifications across: per-id alarms
+     * are cancelled when entering {@link #MODE_NEXT_DUE}, and re-created when leaving it.
+     *
+     * @throws IllegalArgumentException for an unknown mode.
+     * @throws JSONException if the stored notifications cannot be read.
+     */
+    public static synchronized void setMode(Context context, String mode) throws JSONException {
+        if (!MODE_NEXT_DUE.equals(mode) && !MODE_PER_NOTIFICATION.equals(mode)) {
+            throw new IllegalArgumentException("Unknown alarm dispatch mode: " + mode);
+        }
+        boolean enable = MODE_NEXT_DUE.equals(mode);
+        if (enable == isEnabled(context)) return;
+
+        long now = System.currentTimeMillis();
+        List<JSONObject> active = NotificationRepository.get(context).snapshot().active(now);
+        SharedPreferences.Editor editor = prefs(context).edit()
+                .putString(KEY_DISPATCH_MODE, mode);
+        if (enable) {
+            editor.putLong(KEY_DISPATCH_CURSOR, now);
+        } else {
+            editor.remove(KEY_DISPATCH_CURSOR);
+        }
+        editor.commit();
+
+        if (enable) {
+            for (JSONObject obj : active) {
+                NotifUtils.cancelPendingAlarm(context, obj.optString(NotifUtils.JSON_KEY_ID, ""));
+            }
+            arm(context, now);
+        } else {
+            cancelDispatchAlarm(context);
+            for (JSONObject obj : active) {
+                String id = obj.optString(NotifUtils.JSON_KEY_ID, "");
+                NotifUtils.scheduleAlarm(context, id, obj.optString(NotifUtils.JSON_KEY_NAME, ""),
+                        NotifUtils.parseScheduledAt(obj), DeliveryClass.of(obj));
+            }
+        }
+        AppLogger.d(TAG, "🔄 Alarm mode set to " + mode + " (" + active.size() + " active notifications)");
+    }
+
+    /**
+     * Makes sure a notification due at {@code scheduledAt} is covered by the dispatch alarm.
+     * Called by {@link NotifUtils#scheduleAlarm} in this mode, after the notification has been
+     * stored.
+     */
+    static synchronized void schedule(Context context, long scheduledAt, long now) throws JSONException {
+        SharedPreferences prefs = prefs(context);
+        long cursor = prefs.getLong(KEY_DISPATCH_CURSOR, -1L);
+        if (cursor >= 0 && scheduledAt > 0 && scheduledAt <= cursor) {
+            // Already inside the window delivered by the last wakeup: reopen it
+            prefs.edit().putLong(KEY_DISPATCH_CURSOR, scheduledAt - 1).commit();
+        }
+        arm(context, now);
+    }
+
+    /**
+     * Arms the dispatch alarm for the earliest enabled notification not yet delivered, or
+     * cancels it if there is none. Returns the armed time, or {@code 0}.
+     */
+    static synchronized long arm(Context context, long now) throws JSONException {
+        SharedPreferences prefs = prefs(context);
+        long cursor = prefs.getLong(KEY_DISPATCH_CURSOR, -1L);
+        if (cursor < 0) {
+            cursor = now;
+            prefs.edit().putLong(KEY_DISPATCH_CURSOR, cursor).commit();
+        }
+
+        long next = NotificationRepository.get(context).snapshot().nextEnabledAfter(cursor);
+        if (next <= 0) {
+            cancelDispatchAlarm(context);
+            AppLogger.d(TAG, "📭 Nothing due, dispatch alarm cleared");
+            return 0L;
+        }
+
+        AlarmManager alarmManager = (AlarmManager) context.getSystemService(Context.ALARM_SERVICE);
+        if (alarmManager == null) {
+            AppLogger.e(TAG, "❌ AlarmManager is null");
+            return 0L;
+        }
+        // Setting the same PendingIntent again replaces the previous alarm
+        InexactFallback.setExact(context, alarmManager, AlarmManager.RTC_WAKEUP, next,
+                dispatchIntent(context, PendingIntent.FLAG_UPDATE_CURRENT));
+        AppLogger.d(TAG, "📅 Dispatch alarm armed for " + new Date(next));
+        return next;
+    }
+
+    /**
+     * Handles a dispatch wakeup at {@code now}: returns the enabled notifications due since the
+     * last wakeup and up to {@link #DELIVERY_WINDOW_MS} ahead, soonest first, and re-arms the
+     * alarm for the one after. The caller shows the returned notifications.
+     */
+    static synchronized List<JSONObject> dispatch(Context context, long now) throws JSONException {
+        SharedPreferences prefs = prefs(context);
+        long cursor = prefs.getLong(KEY_DISPATCH_CURSOR, now);
+        long upTo = now + DELIVERY_WINDOW_MS;
+
+        List<JSONObject> due = upTo > cursor
+                ? NotificationRepository.get(context).snapshot().enabledDueBetween(cursor, upTo)
+                : new ArrayList<JSONObject>();
+        // Recorded before delivery, so a crash while posting cannot deliver them twice
+        prefs.edit().putLong(KEY_DISPATCH_CURSOR, Math.max(cursor, upTo)).commit();
+
+        long next = arm(context, now);
+        AppLogger.d(TAG, String.format("🔔 Dispatch: %d due, %dms late, next %s",
+                due.size(), Math.max(0, now - earliestDue(due, now)),
+                next > 0 ? new Date(next).toString() : "none"));
+        return due;
+    }
+
+    /**
+     * Re-arms after the alarms were lost (e.g. reboot). Like the per-notification restore, only
+     * notifications still due from {@code now} on are delivered.
+     */
+    static synchronized long restore(Context context, long now) throws JSONException {
+        prefs(context).edit().putLong(KEY_DISPATCH_CURSOR, now).commit();
+        return arm(context, now);
+    }
+
+    /** Uses FLAG_NO_CREATE to probe whether the dispatch alarm is registered. */
+    static boolean isArmed(Context context) {
+        return dispatchIntent(context, PendingIntent.FLAG_NO_CREATE) != null;
+    }
+
+    private static void cancelDispatchAlarm(Context context) {
+        PendingIntent existing = dispatchIntent(context, PendingIntent.FLAG_NO_CREATE);
+        if (existing == null) return;
+        AlarmManager alarmManager = (AlarmManager) context.getSystemService(Context.ALARM_SERVICE);
+        if (alarmManager != null) {
+            alarmManager.cancel(existing);
+        }
+        existing.cancel();
+    }
+
+    private static PendingIntent dispatchIntent(Context context, int flags) {
+        Intent intent = new Intent(context, NotificationReceiver.class);
+        intent.setAction(ACTION_DISPATCH);
+        return PendingIntent.getBroadcast(context, DISPATCH_REQUEST_CODE, intent,
+                flags | PendingIntent.FLAG_IMMUTABLE);
+    }
+
+    /** Due time of the earliest notification in {@code due}, or {@code now} if there is none. */
+    private static long earliestDue(List<JSONObject> due, long now) {
+        return due.isEmpty() ? now : NotifUtils.parseScheduledAt(due.get(0));
+    }
+}
@@ -0,0 +1,174 @@
+package app.amir.quicknotif;
+
+import android.app.AlarmManager;
+import android.app.PendingIntent;
+import android.content.Context;
+import android.content.Intent;
+import android.content.SharedPreferences;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Rolling horizon: in per-notification mode, only notifications due within the next
+ * {@link #KEY_HORIZON_MS} get an AlarmManager alarm.
+ *
+ * <p>Without it every stored notification is armed at creation, after boot and by the watchdog,
+ * even ones weeks away, so those paths cost time in proportion to everything stored. With a
+ * horizon set, {@link NotifUtils#scheduleAlarm} defers notifications due later, and boot and the
+ * watchdog only visit the slice of the {@code scheduledAt} index up to the horizon.
+ *
+ * <p>The horizon moves forward in two ways. The watchdog runs every 15 minutes and arms whatever
+ * has entered the slice. In addition, one inexpensive advance alarm ({@link #ACTION_ADVANCE}, a
+ * {@code setWindow} alarm) is armed half a horizon before the next deferred notification is due,
+ * and {@link #advance} arms the new slice when it fires. Either way a notification is armed at
+ * least half a horizon ahead of time.
+ *
+ * <p>The horizon is off ({@code 0}) unless set with {@link #setHorizonHours}. Next-due mode (see
+ * {@link AlarmDispatcher}) only ever arms one alarm and ignores it. The horizon is kept in its
+ * own preferences file ({@link #PREFS_NAME}).
+ */
+public final class AlarmHorizon {
+
+    private static final String TAG = "AlarmHorizon";
+
+    /** Preferences file holding the horizon. */
+    public static final String PREFS_NAME = "QuickNotifHorizon";
+
+    /** Preferences key: horizon in millis; 0 or unset arms every notification. */
+    public static final String KEY_HORIZON_MS = "alarmHorizonMs";
+
+    public static final String ACTION_ADVANCE = "app.amir.quicknotif.ADVANCE_HORIZON";
+
+    /** Request code of the advance alarm; notification request codes stay below it. */
+    static final int ADVANCE_REQUEST_CODE = Integer.MAX_VALUE;
+
+    private static final long HOUR = 3_600_000L;
+
+    private AlarmHorizon() {}
+
+    private static SharedPreferences prefs(Context context) {
+        return context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+    }
+
+    public static long horizonMs(Context context) {
+        return prefs(context).getLong(KEY_HORIZON_MS, 0L);
+    }
+
+    /** Whether a horizon is set and applies (per-notification mode). */
+    public static boolean isEnabled(Context context) {
+        return horizonMs(context) > 0 && !AlarmDispatcher.isEnabled(context);
+    }
+
+    /** Whether a notification due at {@code scheduledAt} is beyond the horizon and not armed yet. */
+    static boolean defers(Context context, long scheduledAt, long now) {
+        return isEnabled(context) && scheduledAt > now + horizonMs(context);
+    }
+
+    /** The enabled notifications due in ({@code now}, {@code now + horizon}], soonest first. */
+    static List<JSONObject> within(Context context, NotificationStore store, long now) {
+        return store.enabledDueBetween(now, now + horizonMs(context));
+    }
+
+    /**
+     * Sets the horizon in hours ({@code 0} turns it off) and moves alarms across: alarms beyond a
+     * new horizon are cancelled, and turning it off arms every active notification.
+     *
+     * @throws IllegalArgumentException if negative.
+     * @throws JSONException if the stored notifications cannot be read.
+     */
+    public static synchronized void setHorizonHours(Context context, long hours) throws JSONException {
+        if (hours < 0) {
+            throw new IllegalArgumentException("Alarm horizon must not be negative: " + hours + "h");
+        }
+        prefs(context).edit().putLong(KEY_HORIZON_MS, hours * HOUR).apply();
+        if (AlarmDispatcher.isEnabled(context)) return;
+
+        long now = System.currentTimeMillis();
+        NotificationStore store = NotificationRepository.get(context).snapshot();
+        if (hours == 0) {
+            cancelAdvanceAlarm(context);
+            AppLogger.d(TAG, "🔄 Alarm horizon off: " + NotifUtils.scheduleAlarms(context, store.active(now)));
+            return;
+        }
+
+        List<String> beyond = new ArrayList<>();
+        for (JSONObject obj : store.active(now + hours * HOUR)) {
+            beyond.add(obj.optString(NotifUtils.JSON_KEY_ID, ""));
+        }
+        AlarmBatchReport cancelled = NotifUtils.cancelAlarms(context, beyond);
+        AlarmBatchReport armed = advance(context, now);
+        AppLogger.d(TAG, "🔄 Alarm horizon set to " + hours + "h: " + cancelled.cancelled
+                + " alarms beyond it cancelled, " + armed.armed + " armed");
+    }
+
+    /**
+     * Arms the alarms of every enabled notification now within the horizon (ones already armed
+     * are skipped by the batch) and re-arms the advance alarm. Called when the advance alarm
+     * fires. Returns {@code null} if no horizon applies.
+     */
+    static AlarmBatchReport advance(Context context, long now) throws JSONException {
+        if (!isEnabled(context)) {
+            cancelAdvanceAlarm(context);
+            return null;
+        }
+        NotificationStore store = NotificationRepository.get(context).snapshot();
+        AlarmBatchReport report = NotifUtils.scheduleAlarms(context, within(context, store, now));
+        armAdvance(context, store, now, 0L);
+        AppLogger.d(TAG, "🔄 Horizon advanced: " + report);
+        return report;
+    }
+
+    /**
+     * Arms the advance alarm for half a horizon before the earliest enabled notification beyond
+     * the horizon ({@code deferred}, if positive, counts as one too), or cancels it if there is
+     * none. Returns the armed time, or {@code 0}.
+     */
+    static long armAdvance(Context context, NotificationStore store, long now, long deferred) {
+        long horizon = horizonMs(context);
+        long next = store.nextEnabledAfter(now + horizon);
+        if (deferred > now + horizon && (next <= 0 || deferred < next)) next = deferred;
+        if (next <= 0) {
+            cancelAdvanceAlarm(context);
+            return 0L;
+        }
+
+        AlarmManager alarmManager = (AlarmManager) context.getSystemService(Context.ALARM_SERVICE);
+        if (alarmManager == null) {
+            AppLogger.e(TAG, "❌ AlarmManager is null");
+            return 0L;
+        }
+        long at = next - horizon / 2;
+        // Not exact: the system may fold it into another wakeup within a quarter horizon
+        alarmManager.setWindow(AlarmManager.RTC_WAKEUP, at, horizon / 4,
+                advanceIntent(context, PendingIntent.FLAG_UPDATE_CURRENT));
+        AppLogger.d(TAG, "📅 Horizon advance armed for " + new Date(at));
+        return at;
+    }
+
+    /** Uses FLAG_NO_CREATE to probe whether the advance alarm is registered. */
+    static boolean isAdvanceArmed(Context context) {
+        return advanceIntent(context, PendingIntent.FLAG_NO_CREATE) != null;
+    }
+
+    private static void cancelAdvanceAlarm(Context context) {
+        PendingIntent existing = advanceIntent(context, PendingIntent.FLAG_NO_CREATE);
+        if (existing == null) return;
+        AlarmManager alarmManager = (AlarmManager) context.getSystemService(Context.ALARM_SERVICE);
+        if (alarmManager != null) {
+            alarmManager.cancel(existing);
+        }
+        existing.cancel();
+    }
+
+    private static PendingIntent advanceIntent(Context context, int flags) {
+        Intent intent = new Intent(context, NotificationReceiver.class);
+        intent.setAction(ACTION_ADVANCE);
+        return PendingIntent.getBroadcast(context, ADVANCE_REQUEST_CODE, intent,
+                flags | PendingIntent.FLAG_IMMUTABLE);
+    }
+}
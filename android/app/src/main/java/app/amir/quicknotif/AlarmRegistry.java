@@ -0,0 +1,406 @@
+package app.amir.quicknotif;
+
+import android.app.PendingIntent;
+import android.content.Context;
+import android.content.Intent;
+import android.content.SharedPreferences;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Native record of every per-notification alarm this app has armed: numeric id, trigger time,
+ * generation, and how it was armed (delivery class and clock).
+ *
+ * <p>Asking the system whether an alarm exists means creating a PendingIntent with
+ * FLAG_NO_CREATE, one system-server call per notification. The registry answers the same
+ * question from memory instead. {@link NotifUtils} records every alarm it arms and removes
+ * every alarm it cancels, and {@link NotificationReceiver} removes an alarm once it has fired.
+ * Entries are persisted in their own preferences file ({@link #PREFS_NAME}), not in
+ * {@link NotifUtils#PREFS_NAME}, so the web app never loads them.
+ *
+ * <p>The record only goes stale when the system drops alarms behind the app's back: on reboot
+ * ({@link #clear}), on package replace, or on force-stop ({@link #reconcile}). A force-stop
+ * cannot be observed directly, but it clears all of the app's alarms at once, so
+ * {@link #checkForLoss} detects it by probing just one alarm that should still be armed.
+ *
+ * <p>Each armed alarm gets a new, increasing generation number, so a re-armed alarm can be
+ * told apart from the one it replaced. An alarm only counts as already armed for an edit if the
+ * trigger time, the delivery class and the clock all match ({@link #isArmedAs}); those decide
+ * which AlarmManager call, lead and leader it was armed with.
+ *
+ * <p>A notification coalesced into another one's alarm (see {@link WakeupCoalescer}) has no
+ * alarm of its own. It is recorded as a follower of that leader alarm, and counts as armed
+ * until the leader fires or is cancelled.
+ */
+public final class AlarmRegistry {
+
+    private static final String TAG = "AlarmRegistry";
+
+    /** Preferences file holding the registry (separate from the web app's storage). */
+    public static final String PREFS_NAME = "QuickNotifAlarms";
+
+    private static final String KEY_PREFIX = "alarm_";
+    private static final String FOLLOWER_PREFIX = "ride_";
+    private static final String KEY_GENERATION = "generation";
+    private static final String CLOCK_ELAPSED = "e";
+    private static final String CLOCK_WALL = "w";
+
+    private static volatile AlarmRegistry instance;
+
+    /** One armed alarm, or a follower riding on the alarm of {@link #leader}. */
+    public static final class Entry {
+        public final String id;
+        public final int numericId;
+        public final long triggerAt;
+        public final long generation;
+        /** Numeric id of the alarm this notification rides on, or 0 if it has its own. */
+        public final int leader;
+        /** {@link DeliveryClass} it was armed as. */
+        public final String deliveryClass;
+        /** Whether it was armed on the elapsed-realtime clock (see {@link ElapsedSchedule}). */
+        public final boolean elapsed;
+
+        Entry(String id, int numericId, long triggerAt, long generation, int leader,
+              String deliveryClass, boolean elapsed) {
+            this.id = id;
+            this.numericId = numericId;
+            this.triggerAt = triggerAt;
+            this.generation = generation;
+            this.leader = leader;
+            this.deliveryClass = deliveryClass;
+            this.elapsed = elapsed;
+        }
+
+        public boolean isFollower() {
+            return leader != 0;
+        }
+
+        String encode() {
+            String value = triggerAt + ":" + generation + ":" + deliveryClass
+                    + ":" + (elapsed ? CLOCK_ELAPSED : CLOCK_WALL) + ":" + id;
+            return isFollower() ? leader + ":" + value : value;
+        }
+    }
+
+    private final SharedPreferences prefs;
+    private final Map<Integer, Entry> byNumericId = new HashMap<>();
+    // Armed alarms (not followers) by trigger time, for findLeader's range lookup
+    private final TreeMap<Long, Map<Integer, Entry>> byTriggerAt = new TreeMap<>();
+    private final Map<Integer, Entry> followers = new HashMap<>();
+    private long generation;
+
+    /** Loads the registry from {@code prefs}. Package-private for tests; use {@link #get}. */
+    AlarmRegistry(SharedPreferences prefs) {
+        this.prefs = prefs;
+        for (Map.Entry<String, ?> e : prefs.getAll().entrySet()) {
+            if (!(e.getValue() instanceof String)) continue;
+            if (e.getKey().startsWith(KEY_PREFIX)) {
+                Entry entry = decode(e.getKey(), (String) e.getValue());
+                if (entry != null) putArmed(entry);
+            } else if (e.getKey().startsWith(FOLLOWER_PREFIX)) {
+                Entry entry = decodeFollower(e.getKey(), (String) e.getValue());
+                if (entry != null) followers.put(entry.numericId, entry);
+            }
+        }
+        generation = prefs.getLong(KEY_GENERATION, 0L);
+    }
+
+    /** Returns the registry bound to the app's {@link #PREFS_NAME} preferences. */
+    public static AlarmRegistry get(Context context) {
+        SharedPreferences prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        AlarmRegistry registry = instance;
+        if (registry == null || registry.prefs != prefs) {
+            synchronized (AlarmRegistry.class) {
+                registry = instance;
+                if (registry == null || registry.prefs != prefs) {
+                    registry = new AlarmRegistry(prefs);
+                    instance = registry;
+                }
+            }
+        }
+        return registry;
+    }
+
+    /**
+     * Records that the alarm for {@code id} is armed for {@code triggerAt} as an
+     * {@link DeliveryClass#EXACT} wall-clock alarm; returns its entry.
+     */
+    public Entry record(String id, int numericId, long triggerAt) {
+        return record(id, numericId, triggerAt, DeliveryClass.EXACT, false);
+    }
+
+    /**
+     * Records that the alarm for {@code id} is armed for {@code triggerAt} as
+     * {@code deliveryClass}, on the elapsed-realtime clock if {@code elapsed}; returns its entry.
+     */
+    public synchronized Entry record(String id, int numericId, long triggerAt, String deliveryClass,
+                                     boolean elapsed) {
+        Entry entry = new Entry(id, numericId, triggerAt, ++generation, 0,
+                DeliveryClass.normalize(deliveryClass), elapsed);
+        putArmed(entry);
+        SharedPreferences.Editor editor = prefs.edit();
+        if (followers.remove(numericId) != null) editor.remove(FOLLOWER_PREFIX + numericId);
+        editor.putString(KEY_PREFIX + numericId, entry.encode())
+                .putLong(KEY_GENERATION, generation)
+                .apply();
+        return entry;
+    }
+
+    /**
+     * Records that {@code id}, due at {@code triggerAt} as {@code deliveryClass}, rides on the
+     * armed alarm of {@code leader} instead of having its own; returns its entry.
+     */
+    public synchronized Entry recordFollower(String id, int numericId, long triggerAt, int leader,
+                                             String deliveryClass, boolean elapsed) {
+        Entry entry = new Entry(id, numericId, triggerAt, ++generation, leader,
+                DeliveryClass.normalize(deliveryClass), elapsed);
+        followers.put(numericId, entry);
+        SharedPreferences.Editor editor = prefs.edit();
+        if (removeArmed(numericId) != null) editor.remove(KEY_PREFIX + numericId);
+        editor.putString(FOLLOWER_PREFIX + numericId, entry.encode())
+                .putLong(KEY_GENERATION, generation)
+                .apply();
+        return entry;
+    }
+
+    /**
+     * Forgets the alarm or follower entry for {@code numericId} (cancelled or fired). Followers
+     * of its alarm are left for the caller; see {@link #removeFollowersOf}.
+     */
+    public synchronized void remove(int numericId) {
+        SharedPreferences.Editor editor = null;
+        if (removeArmed(numericId) != null) {
+            editor = prefs.edit().remove(KEY_PREFIX + numericId);
+        }
+        if (followers.remove(numericId) != null) {
+            editor = (editor != null ? editor : prefs.edit()).remove(FOLLOWER_PREFIX + numericId);
+        }
+        if (editor != null) editor.apply();
+    }
+
+    /**
+     * Forgets the alarm of {@code numericId} if it is still the one armed as {@code generation};
+     * returns whether it was. The receiver claims a fired alarm this way before posting, so it
+     * is posted once even if a held delivery and its backstop both get there.
+     */
+    public synchronized boolean remove(int numericId, long generation) {
+        Entry entry = byNumericId.get(numericId);
+        if (entry == null || entry.generation != generation) return false;
+        remove(numericId);
+        return true;
+    }
+
+    /** Removes and returns the followers riding on the alarm of {@code leader}, soonest first. */
+    public synchronized List<Entry> removeFollowersOf(int leader) {
+        List<Entry> riders = new ArrayList<>();
+        for (Entry entry : followers.values()) {
+            if (entry.leader == leader) riders.add(entry);
+        }
+        if (riders.isEmpty()) return riders;
+        SharedPreferences.Editor editor = prefs.edit();
+        for (Entry entry : riders) {
+            followers.remove(entry.numericId);
+            editor.remove(FOLLOWER_PREFIX + entry.numericId);
+        }
+        editor.apply();
+        Collections.sort(riders, new Comparator<Entry>() {
+            @Override
+            public int compare(Entry a, Entry b) {
+                return Long.compare(a.triggerAt, b.triggerAt);
+            }
+        });
+        return riders;
+    }
+
+    /**
+     * The armed alarm (not a follower) due in [{@code triggerAt - windowMs}, {@code triggerAt}]
+     * and latest within it, other than {@code numericId}'s own; {@code null} if there is none.
+     */
+    public synchronized Entry findLeader(long triggerAt, long windowMs, int numericId) {
+        for (Map<Integer, Entry> due : byTriggerAt.subMap(triggerAt - windowMs, true, triggerAt, true)
+                .descendingMap().values()) {
+            for (Entry entry : due.values()) {
+                if (entry.numericId != numericId) return entry;
+            }
+        }
+        return null;
+    }
+
+    public synchronized int followerCount() {
+        return followers.size();
+    }
+
+    /** The armed alarm or follower entry for {@code numericId}, or {@code null}. */
+    public synchronized Entry get(int numericId) {
+        Entry entry = byNumericId.get(numericId);
+        return entry != null ? entry : followers.get(numericId);
+    }
+
+    /** Whether an alarm is armed (or ridden on) for {@code numericId} at exactly {@code triggerAt}. */
+    public synchronized boolean isArmedAt(int numericId, long triggerAt) {
+        Entry entry = get(numericId);
+        return entry != null && entry.triggerAt == triggerAt;
+    }
+
+    /**
+     * Whether an alarm is armed (or ridden on) for {@code numericId} at exactly {@code triggerAt},
+     * as {@code deliveryClass} and on the same clock, so arming it again would change nothing.
+     */
+    public synchronized boolean isArmedAs(int numericId, long triggerAt, String deliveryClass,
+                                          boolean elapsed) {
+        Entry entry = get(numericId);
+        return entry != null && entry.triggerAt == triggerAt && entry.elapsed == elapsed
+                && DeliveryClass.normalize(deliveryClass).equals(entry.deliveryClass);
+    }
+
+    public synchronized boolean isArmed(int numericId) {
+        return byNumericId.containsKey(numericId) || followers.containsKey(numericId);
+    }
+
+    /** The numeric ids in {@code numericIds} (a JSON array of ints) that have an armed alarm. */
+    public synchronized JSONArray filterArmed(JSONArray numericIds) throws JSONException {
+        JSONArray armed = new JSONArray();
+        for (int i = 0; i < numericIds.length(); i++) {
+            int numericId = numericIds.getInt(i);
+            if (isArmed(numericId)) armed.put(numericId);
+        }
+        return armed;
+    }
+
+    /** Armed alarms plus followers. */
+    public synchronized int size() {
+        return byNumericId.size() + followers.size();
+    }
+
+    /** Drops every entry, e.g. after a reboot, when the system has cleared all alarms. */
+    public synchronized void clear() {
+        byNumericId.clear();
+        byTriggerAt.clear();
+        followers.clear();
+        prefs.edit().clear().putLong(KEY_GENERATION, generation).apply();
+    }
+
+    /**
+     * Probes the system for every recorded alarm (FLAG_NO_CREATE) and drops the ones that no
+     * longer exist, along with their followers. Costs one system call per entry, so it is only
+     * run when alarms may have been lost. Returns the number of entries dropped.
+     */
+    public synchronized int reconcile(Context context) {
+        Intent intent = new Intent(context, NotificationReceiver.class);
+        List<Integer> lost = new ArrayList<>();
+        for (Entry entry : byNumericId.values()) {
+            PendingIntent existing = PendingIntent.getBroadcast(context, entry.numericId, intent,
+                    PendingIntent.FLAG_NO_CREATE | PendingIntent.FLAG_IMMUTABLE);
+            if (existing == null) lost.add(entry.numericId);
+        }
+        SharedPreferences.Editor editor = prefs.edit();
+        for (Integer numericId : lost) {
+            removeArmed(numericId);
+            editor.remove(KEY_PREFIX + numericId);
+        }
+        List<Integer> stranded = new ArrayList<>();
+        for (Entry entry : followers.values()) {
+            if (!byNumericId.containsKey(entry.leader)) stranded.add(entry.numericId);
+        }
+        for (Integer numericId : stranded) {
+            followers.remove(numericId);
+            editor.remove(FOLLOWER_PREFIX + numericId);
+            lost.add(numericId);
+        }
+        editor.apply();
+        AppLogger.d(TAG, "🔄 Reconciled alarm registry: " + lost.size() + " lost, " + byNumericId.size() + " armed");
+        return lost.size();
+    }
+
+    /**
+     * Cheap check for alarms lost to a force-stop or similar, which clear all of the app's
+     * alarms at once: probes a single recorded alarm that is still due after {@code now}. If that
+     * one is gone, the registry is {@link #reconcile reconciled}. Returns {@code true} if that
+     * happened.
+     */
+    public boolean checkForLoss(Context context, long now) {
+        Entry sentinel = null;
+        synchronized (this) {
+            for (Entry entry : byNumericId.values()) {
+                if (entry.triggerAt > now) {
+                    sentinel = entry;
+                    break;
+                }
+            }
+        }
+        if (sentinel == null) return false;
+
+        PendingIntent existing = PendingIntent.getBroadcast(context, sentinel.numericId,
+                new Intent(context, NotificationReceiver.class),
+                PendingIntent.FLAG_NO_CREATE | PendingIntent.FLAG_IMMUTABLE);
+        if (existing != null) return false;
+
+        AppLogger.w(TAG, "⚠️ Armed alarm " + sentinel.id + " is missing - alarms were cleared by the system");
+        reconcile(context);
+        return true;
+    }
+
+    private void putArmed(Entry entry) {
+        removeArmed(entry.numericId);
+        byNumericId.put(entry.numericId, entry);
+        Map<Integer, Entry> due = byTriggerAt.get(entry.triggerAt);
+        if (due == null) {
+            due = new HashMap<>();
+            byTriggerAt.put(entry.triggerAt, due);
+        }
+        due.put(entry.numericId, entry);
+    }
+
+    private Entry removeArmed(int numericId) {
+        Entry previous = byNumericId.remove(numericId);
+        if (previous == null) return null;
+        Map<Integer, Entry> due = byTriggerAt.get(previous.triggerAt);
+        if (due != null) {
+            due.remove(numericId);
+            if (due.isEmpty()) byTriggerAt.remove(previous.triggerAt);
+        }
+        return previous;
+    }
+
+    private static Entry decodeFollower(String key, String value) {
+        try {
+            int split = value.indexOf(':');
+            if (split < 0) return null;
+            return decode(key, key.substring(FOLLOWER_PREFIX.length()), value.substring(split + 1),
+                    Integer.parseInt(value.substring(0, split)));
+        } catch (NumberFormatException e) {
+            AppLogger.w(TAG, "⚠️ Dropping unreadable registry entry " + key);
+            return null;
+        }
+    }
+
+    private static Entry decode(String key, String value) {
+        return decode(key, key.substring(KEY_PREFIX.length()), value, 0);
+    }
+
+    /** Decodes {@code triggerAt:generation:class:clock:id}; anything else is dropped. */
+    private static Entry decode(String key, String numericId, String value, int leader) {
+        try {
+            String[] parts = value.split(":", 5);
+            if (parts.length < 5 || !DeliveryClass.isValid(parts[2])
+                    || !(CLOCK_ELAPSED.equals(parts[3]) || CLOCK_WALL.equals(parts[3]))) {
+                AppLogger.w(TAG, "⚠️ Dropping unreadable registry entry " + key);
+                return null;
+            }
+            return new Entry(parts[4], Integer.parseInt(numericId), Long.parseLong(parts[0]),
+                    Long.parseLong(parts[1]), leader, parts[2], CLOCK_ELAPSED.equals(parts[3]));
+        } catch (NumberFormatException e) {
+            AppLogger.w(TAG, "⚠️ Dropping unreadable registry entry " + key);
+            return null;
+        }
+    }
+}
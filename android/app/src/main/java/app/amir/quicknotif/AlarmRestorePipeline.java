@@ -0,0 +1,197 @@
+package app.amir.quicknotif;
+
+import android.app.AlarmManager;
+import android.content.Context;
+import android.content.Intent;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Arms many per-notification alarms at once, soonest due first, across a small pool of threads.
+ *
+ * <p>After a reboot every alarm has to be armed again, and each one is a binder call into
+ * AlarmManager. {@link NotifUtils#scheduleAlarms} makes them one after another. Here up to
+ * {@link #MAX_THREADS} workers take the next notification from one shared, due-time ordered
+ * list, so the soonest alarms are armed first whatever the pool size. Each worker builds its
+ * own intent and PendingIntent, and arms through {@link NotifUtils#armIfNeeded}, so alarms
+ * already recorded in the {@link AlarmRegistry} for the same time are skipped. A list of at
+ * most {@link #PER_THREAD} is armed on the calling thread, and so is any list while a
+ * {@link WakeupCoalescer} window is set: which alarm leads depends on those armed before it.
+ *
+ * <p>{@link #restore} waits at most {@link #TIMEOUT_MS}, which keeps a caller under
+ * {@code goAsync()} within the broadcast time limit; workers still running then carry on. The
+ * {@link Result} reports the time to the first armed alarm and the total time.
+ */
+public final class AlarmRestorePipeline {
+
+    private static final String TAG = "AlarmRestorePipeline";
+
+    /** Upper bound on worker threads; AlarmManager serialises calls on its side anyway. */
+    static final int MAX_THREADS = 4;
+    /** Notifications per worker before another one is added. */
+    static final int PER_THREAD = 64;
+    /** How long {@link #restore} waits for the workers. */
+    static final long TIMEOUT_MS = 8_000L;
+
+    /** Outcome of one {@link #restore} call. */
+    public static final class Result {
+        public final int requested;
+        public final int armed;
+        public final int skipped;
+        public final int failed;
+        public final int threads;
+        /** Time from the start to the first alarm armed; 0 if none was. */
+        public final long firstArmedNanos;
+        public final long totalNanos;
+        /** Whether every notification was handled within {@link #TIMEOUT_MS}. */
+        public final boolean completed;
+
+        Result(int requested, int armed, int skipped, int failed, int threads,
+               long firstArmedNanos, long totalNanos, boolean completed) {
+            this.requested = requested;
+            this.armed = armed;
+            this.skipped = skipped;
+            this.failed = failed;
+            this.threads = threads;
+            this.firstArmedNanos = firstArmedNanos;
+            this.totalNanos = totalNanos;
+            this.completed = completed;
+        }
+
+        public JSONObject toJson() throws JSONException {
+            return new JSONObject()
+                    .put("requested", requested)
+                    .put("armed", armed)
+                    .put("skipped", skipped)
+                    .put("failed", failed)
+                    .put("threads", threads)
+                    .put("firstArmedMs", firstArmedNanos / 1_000_000.0)
+                    .put("totalMs", totalNanos / 1_000_000.0)
+                    .put("completed", completed);
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US,
+                    "%d requested, %d armed, %d skipped, %d failed on %d threads, first after %.1fms, total %.1fms%s",
+                    requested, armed, skipped, failed, threads, firstArmedNanos / 1_000_000.0,
+                    totalNanos / 1_000_000.0, completed ? "" : " (timed out)");
+        }
+    }
+
+    private AlarmRestorePipeline() {}
+
+    /** Workers for {@code count} notifications: one per {@link #PER_THREAD}, at most {@link #MAX_THREADS}. */
+    static int threadsFor(int count) {
+        return Math.max(1, Math.min(MAX_THREADS, (count + PER_THREAD - 1) / PER_THREAD));
+    }
+
+    /**
+     * Arms the alarms of {@code notifications}, soonest due first. Entries without an id or
+     * time are counted as failed. In {@link AlarmDispatcher#MODE_NEXT_DUE} mode callers arm the
+     * dispatch alarm instead.
+     */
+    public static Result restore(Context context, Collection<JSONObject> notifications) {
+        long start = System.nanoTime();
+        AlarmManager alarmManager = (AlarmManager) context.getSystemService(Context.ALARM_SERVICE);
+        if (alarmManager == null) {
+            AppLogger.e(TAG, "❌ AlarmManager is null");
+            return new Result(notifications.size(), 0, 0, notifications.size(), 0, 0L,
+                    System.nanoTime() - start, true);
+        }
+
+        AtomicInteger failed = new AtomicInteger();
+        List<Pending> queue = new ArrayList<>(notifications.size());
+        for (JSONObject obj : notifications) {
+            String id = obj.optString(NotifUtils.JSON_KEY_ID, "");
+            long scheduledAt = NotifUtils.parseScheduledAt(obj);
+            if (id.isEmpty() || scheduledAt <= 0) {
+                failed.incrementAndGet();
+            } else {
+                queue.add(new Pending(id, scheduledAt, obj));
+            }
+        }
+        Pending[] ordered = queue.toArray(new Pending[0]);
+        Arrays.sort(ordered, new Comparator<Pending>() {
+            @Override
+            public int compare(Pending a, Pending b) {
+                return Long.compare(a.scheduledAt, b.scheduledAt);
+            }
+        });
+
+        AlarmRegistry registry = AlarmRegistry.get(context);
+        AtomicInteger next = new AtomicInteger();
+        AtomicInteger armed = new AtomicInteger();
+        AtomicInteger skipped = new AtomicInteger();
+        AtomicLong firstArmed = new AtomicLong();
+        Runnable worker = () -> {
+            Intent intent = new Intent(context, NotificationReceiver.class);
+            for (int i = next.getAndIncrement(); i < ordered.length; i = next.getAndIncrement()) {
+                Pending p = ordered[i];
+                try {
+                    if (NotifUtils.armIfNeeded(context, alarmManager, registry, intent, p.id, p.scheduledAt, p.obj)) {
+                        firstArmed.compareAndSet(0L, System.nanoTime() - start);
+                        armed.incrementAndGet();
+                    } else {
+                        skipped.incrementAndGet();
+                    }
+                } catch (Exception e) {
+                    AppLogger.e(TAG, "❌ Failed to arm alarm for ID: " + p.id, e);
+                    failed.incrementAndGet();
+                }
+            }
+        };
+
+        // Coalescing picks leaders from the alarms armed so far, so it needs them in order
+        int threads = WakeupCoalescer.windowMs(context) > 0 ? 1 : threadsFor(ordered.length);
+        boolean completed = true;
+        if (threads == 1) {
+            // Not worth a pool; the caller is off the main thread already
+            worker.run();
+        } else {
+            ExecutorService pool = Executors.newFixedThreadPool(threads, r -> {
+                Thread t = new Thread(r, "alarm-restore");
+                t.setDaemon(true);
+                return t;
+            });
+            for (int i = 0; i < threads; i++) pool.execute(worker);
+            pool.shutdown();
+            try {
+                completed = pool.awaitTermination(TIMEOUT_MS, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                completed = false;
+            }
+        }
+
+        Result result = new Result(notifications.size(), armed.get(), skipped.get(), failed.get(),
+                threads, firstArmed.get(), System.nanoTime() - start, completed);
+        AppLogger.d(TAG, "📊 Restore: " + result);
+        return result;
+    }
+
+    private static final class Pending {
+        final String id;
+        final long scheduledAt;
+        final JSONObject obj;
+
+        Pending(String id, long scheduledAt, JSONObject obj) {
+            this.id = id;
+            this.scheduledAt = scheduledAt;
+            this.obj = obj;
+        }
+    }
+}
@@ -1,28 +1,38 @@
 package app.amir.quicknotif;
 
-import android.app.PendingIntent;
 import android.content.Context;
-import android.content.Intent;
 import androidx.annotation.NonNull;
 import androidx.work.Worker;
 import androidx.work.WorkerParameters;
 
-import org.json.JSONArray;
+import org.json.JSONException;
 import org.json.JSONObject;
 
+import java.util.ArrayList;
+import java.util.List;
+
 
 /**
  * AlarmWatchdogWorker - periodic WorkManager task that detects and repairs missing alarms.
  *
- * Runs every 15 minutes (minimum WorkManager interval). For each enabled future notification,
- * it checks whether an AlarmManager alarm is still registered. If not (FLAG_NO_CREATE returns
- * null), it reschedules the alarm via NotifUtils.scheduleAlarm(). Already-alive alarms are
- * left untouched to avoid disrupting their trigger times.
+ * Runs every 15 minutes (minimum WorkManager interval). For each active (enabled, future) notification,
+ * it checks the {@link AlarmRegistry} for an alarm armed at its time, after one probe to detect
+ * alarms cleared by a force-stop. Missing ones are restored together in one
+ * NotifUtils.scheduleAlarms() batch. Already-alive alarms are left untouched to avoid disrupting
+ * their trigger times. In next-due mode only the single {@link AlarmDispatcher} alarm is checked.
+ * With an {@link AlarmHorizon} set only notifications due within it are checked, which also moves
+ * the horizon forward. Timers held in process by {@link ForegroundTimers} count as alive.
+ *
+ * {@link MainActivity} also enqueues it once per launch ({@link #LAUNCH_CHECK_WORK_NAME}), since a
+ * force-stop clears every alarm without telling the app.
  */
 public class AlarmWatchdogWorker extends Worker {
 
     private static final String TAG = "AlarmWatchdog";
 
+    /** Unique name of the one-off check run at each launch. */
+    public static final String LAUNCH_CHECK_WORK_NAME = "alarm_check";
+
     public AlarmWatchdogWorker(@NonNull Context context, @NonNull WorkerParameters params) {
         super(context, params);
     }
@@ -36,70 +46,80 @@ public class AlarmWatchdogWorker extends Worker {
     }
 
     /**
-     * Checks every enabled, future notification and reschedules any whose AlarmManager entry
-     * is missing. Package-private to allow direct invocation from unit tests.
+     * Checks every notification in the active partition (enabled and still due) and reschedules
+     * any without an armed alarm in the {@link AlarmRegistry}. Package-private to allow direct invocation from
+     * unit tests.
+     *
+     * Archived notifications (disabled or already fired) are never visited: the repository's
+     * {@link NotificationStore#active} index skips them. Entries without an id are counted as
+     * malformed and ignored.
      */
     static void rescheduleOrphanedAlarms(Context ctx) {
         try {
-            String notificationsJson = NotifUtils.readNotificationsJson(ctx);
+            NotificationStore store = NotificationRepository.get(ctx).snapshot();
+            int malformed = store.unindexedCount();
 
-            if (notificationsJson.equals("[]")) {
+            if (store.size() == 0 && malformed == 0) {
                 AppLogger.d(TAG, "📭 No notifications to check");
                 return;
             }
 
-            JSONArray array = new JSONArray(notificationsJson);
+            long now = System.currentTimeMillis();
+            if (AlarmDispatcher.isEnabled(ctx)) {
+                checkDispatchAlarm(ctx, store, now);
+                return;
+            }
 
-            long currentTime = System.currentTimeMillis();
-            int rescheduled = 0;
+            // One probe catches a force-stop; otherwise the registry answers locally
+            AlarmRegistry registry = AlarmRegistry.get(ctx);
+            registry.checkForLoss(ctx, now);
+
+            // With a horizon, only its slice needs alarms; arming what entered it advances it
+            boolean horizon = AlarmHorizon.isEnabled(ctx);
+            List<JSONObject> active = horizon ? AlarmHorizon.within(ctx, store, now) : store.active(now);
+            if (horizon && !AlarmHorizon.isAdvanceArmed(ctx)) {
+                AlarmHorizon.armAdvance(ctx, store, now, 0L);
+            }
+            List<JSONObject> missing = new ArrayList<>();
             int alive = 0;
-            int skipped = 0;
-
-            for (int i = 0; i < array.length(); i++) {
-                try {
-                    JSONObject obj = array.getJSONObject(i);
-                    boolean enabled = obj.optBoolean(NotifUtils.JSON_KEY_ENABLED, false);
-                    String id = obj.optString(NotifUtils.JSON_KEY_ID, "");
-                    long scheduledAt = NotifUtils.parseScheduledAt(obj);
-
-                    // Skip disabled or already-expired notifications
-                    if (!enabled || scheduledAt <= currentTime) {
-                        skipped++;
-                        continue;
-                    }
-
-                    // Use FLAG_NO_CREATE to probe whether the alarm still exists
-                    Intent intent = new Intent(ctx, NotificationReceiver.class);
-                    int numericId = NotifUtils.generateNumericId(id);
-                    PendingIntent existing = PendingIntent.getBroadcast(
-                            ctx,
-                            numericId,
-                            intent,
-                            PendingIntent.FLAG_NO_CREATE | PendingIntent.FLAG_IMMUTABLE
-                    );
-
-                    if (existing == null) {
-                        // Alarm was cleared by the OS - restore it
-                        String name = obj.optString(NotifUtils.JSON_KEY_NAME, "");
-                        NotifUtils.scheduleAlarm(ctx, id, name, scheduledAt);
-                        rescheduled++;
-                        AppLogger.w(TAG, "⚠️ Rescheduled missing alarm: " + name + " (ID: " + id + ")");
-                    } else {
-                        alive++;
-                        AppLogger.d(TAG, "✅ Alarm alive: " + obj.optString(NotifUtils.JSON_KEY_NAME, "")
-                                + " (ID: " + id + ")");
-                    }
-
-                } catch (Exception e) {
-                    AppLogger.e(TAG, "❌ Error checking notification at index " + i, e);
+            for (JSONObject obj : active) {
+                String id = obj.optString(NotifUtils.JSON_KEY_ID, "");
+                if (registry.isArmedAt(NotifUtils.numericIdFor(ctx, id), store.scheduledAtOf(id))
+                        || ForegroundTimers.holds(id, store.scheduledAtOf(id))) {
+                    alive++;
+                } else {
+                    missing.add(obj);
+                    AppLogger.w(TAG, "⚠️ Missing alarm: " + obj.optString(NotifUtils.JSON_KEY_NAME, "") + " (ID: " + id + ")");
                 }
             }
+            int rescheduled = 0;
+            if (!missing.isEmpty()) {
+                AlarmBatchReport report = NotifUtils.scheduleAlarms(ctx, missing);
+                rescheduled = report.armed;
+                AppLogger.w(TAG, "⚠️ Rescheduled missing alarms: " + report);
+            }
 
-            AppLogger.d(TAG, String.format("📊 Watchdog complete: %d rescheduled, %d alive, %d skipped",
-                    rescheduled, alive, skipped));
+            if (malformed > 0) {
+                AppLogger.w(TAG, "⚠️ Skipped " + malformed + " malformed notification(s)");
+            }
+            AppLogger.d(TAG, String.format("📊 Watchdog complete: %d rescheduled, %d alive, %d skipped, %d malformed",
+                    rescheduled, alive, store.size() - active.size(), malformed));
 
         } catch (Exception e) {
             AppLogger.e(TAG, "❌ Watchdog failed", e);
         }
     }
+
+    /** Next-due mode: the single dispatch alarm must exist while anything is still due. */
+    private static void checkDispatchAlarm(Context ctx, NotificationStore store, long now)
+            throws JSONException {
+        if (store.nextEnabledAfter(now) <= 0) {
+            AppLogger.d(TAG, "📭 No active notifications to check");
+        } else if (AlarmDispatcher.isArmed(ctx)) {
+            AppLogger.d(TAG, "✅ Dispatch alarm alive");
+        } else {
+            AlarmDispatcher.arm(ctx, now);
+            AppLogger.w(TAG, "⚠️ Re-armed missing dispatch alarm");
+        }
+    }
 }
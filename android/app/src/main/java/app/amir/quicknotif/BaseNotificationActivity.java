@@ -48,6 +48,18 @@ public abstract class BaseNotificationActivity extends Activity {
         onAfterViewsInitialized();
     }
 
+    @Override
+    protected void onResume() {
+        super.onResume();
+        ForegroundTimers.activityResumed();
+    }
+
+    @Override
+    protected void onPause() {
+        ForegroundTimers.activityPaused();
+        super.onPause();
+    }
+
     /**
      * Template method called after common views are ready.
      * Subclasses override this to do layout-specific setup
@@ -3,80 +3,136 @@ package app.amir.quicknotif;
 import android.content.BroadcastReceiver;
 import android.content.Context;
 import android.content.Intent;
-import org.json.JSONArray;
+import org.json.JSONException;
 import org.json.JSONObject;
 
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+
 
 /**
- * BootReceiver — reschedules all active notifications after device reboot.
+ * BootReceiver — reschedules all active notifications after device reboot or app update.
  *
  * Android cancels all AlarmManager alarms on reboot. This receiver listens for
- * BOOT_COMPLETED and calls NotifUtils.scheduleAlarm() directly for every enabled
- * future notification, without launching any Activity.
+ * BOOT_COMPLETED and arms every enabled future notification through the
+ * {@link AlarmRestorePipeline}, soonest due first across a few threads, without launching any
+ * Activity. In next-due mode the single {@link AlarmDispatcher} alarm is re-armed instead.
+ * The work runs off the main thread under {@link #goAsync()}; the timings of the last restore
+ * are kept in {@link #PREFS_NAME} for the web app.
+ *
+ * On MY_PACKAGE_REPLACED the {@link AlarmRegistry} is first reconciled with the system, so
+ * only alarms lost in the update are re-armed. With an {@link AlarmHorizon} set, only
+ * notifications due within it are scheduled, and the horizon's advance alarm is re-armed.
+ *
+ * Boot is the only time relative notifications are rebased onto the elapsed-realtime clock
+ * (see {@link ElapsedSchedule}); clock and timezone changes leave their alarms alone.
  */
 public class BootReceiver extends BroadcastReceiver {
 
     private static final String TAG = "QuickNotifBoot";
 
+    /** Preferences file holding the last restore's {@link AlarmRestorePipeline.Result}. */
+    public static final String PREFS_NAME = "QuickNotifBoot";
+    private static final String KEY_LAST = "lastRestore";
+
+    private static final Executor DEFAULT_WORKER = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "boot-restore");
+        t.setDaemon(true);
+        return t;
+    });
+    private static volatile Executor worker = DEFAULT_WORKER;
+
+    /** Replaces the restore thread; {@code null} restores the default. For tests. */
+    static void setExecutor(Executor executor) {
+        worker = executor != null ? executor : DEFAULT_WORKER;
+    }
+
     @Override
     public void onReceive(Context context, Intent intent) {
         String action = intent.getAction();
+        boolean boot = Intent.ACTION_BOOT_COMPLETED.equals(action)
+                || "android.intent.action.QUICKBOOT_POWERON".equals(action);
+        if (!boot && !Intent.ACTION_MY_PACKAGE_REPLACED.equals(action)) return;
 
         AppLogger.init(context);
-        if (Intent.ACTION_BOOT_COMPLETED.equals(action) ||
-                "android.intent.action.QUICKBOOT_POWERON".equals(action)) {
+        Context appContext = context.getApplicationContext();
+        PendingResult pending = goAsync();
+        worker.execute(() -> {
+            try {
+                restore(appContext, boot);
+            } finally {
+                if (pending != null) pending.finish();
+            }
+        });
+    }
+
+    /**
+     * After a reboot ({@code boot}) or an app update: brings the registry in line with the
+     * system and re-arms the active notifications.
+     */
+    static void restore(Context context, boolean boot) {
+        if (boot) {
             AppLogger.d(TAG, "🔄 Device rebooted - rescheduling notifications");
-            rescheduleNotifications(context);
+            // Every alarm is gone after a reboot, and elapsed realtime has restarted
+            AlarmRegistry.get(context).clear();
+            ElapsedSchedule.rebase(context);
+        } else {
+            AppLogger.d(TAG, "🔄 App updated - checking alarms");
+            AlarmRegistry.get(context).reconcile(context);
         }
+        rescheduleNotifications(context);
     }
 
-    private void rescheduleNotifications(Context context) {
+    /** The last restore's timings as JSON, or {@code "{}"} if there has been none. */
+    public static String lastResultJson(Context context) {
+        return context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE).getString(KEY_LAST, "{}");
+    }
+
+    private static void rescheduleNotifications(Context context) {
         try {
-            String notificationsJson = NotifUtils.readNotificationsJson(context);
+            NotificationStore store = NotificationRepository.get(context).snapshot();
 
-            if (notificationsJson.equals("[]")) {
+            if (store.size() == 0) {
                 AppLogger.d(TAG,"📭 No notifications to reschedule");
                 return;
             }
 
-            JSONArray array = new JSONArray(notificationsJson);
-
             long currentTime = System.currentTimeMillis();
-            int rescheduled = 0;
-            int skipped = 0;
-
-            for (int i = 0; i < array.length(); i++) {
-                try {
-                    JSONObject obj = array.getJSONObject(i);
-                    boolean enabled = obj.optBoolean(NotifUtils.JSON_KEY_ENABLED, false);
-                    String id = obj.optString(NotifUtils.JSON_KEY_ID, "");
-
-                    long scheduledAt = NotifUtils.parseScheduledAt(obj);
-
-                    if (enabled && scheduledAt > currentTime) {
-                        String name = obj.optString(NotifUtils.JSON_KEY_NAME, "");
-                        NotifUtils.scheduleAlarm(context, id, name, scheduledAt);
-                        rescheduled++;
-                        AppLogger.d(TAG,String.format("✅ Rescheduled: %s (ID: %s)", name, id));
-                    } else {
-                        skipped++;
-                        if (!enabled) {
-                            AppLogger.d(TAG,"⏭️ Skipped disabled: " + obj.optString(NotifUtils.JSON_KEY_NAME, ""));
-                        } else {
-                            AppLogger.d(TAG,"⏭️ Skipped expired: " + obj.optString(NotifUtils.JSON_KEY_NAME, ""));
-                        }
-                    }
-
-                } catch (Exception e) {
-                    AppLogger.e(TAG,"❌ Failed to process notification " + i, e);
-                }
+            if (AlarmDispatcher.isEnabled(context)) {
+                // One alarm covers every active notification
+                long next = AlarmDispatcher.restore(context, currentTime);
+                AppLogger.d(TAG, String.format("📊 Boot reschedule complete: dispatch alarm %s, %d active",
+                        next > 0 ? "armed" : "not needed", store.active(currentTime).size()));
+                return;
+            }
+
+            // Only the active partition (enabled, still due) needs an alarm, and with a horizon
+            // only the part of it due within the horizon
+            boolean horizon = AlarmHorizon.isEnabled(context);
+            List<JSONObject> active = horizon
+                    ? AlarmHorizon.within(context, store, currentTime)
+                    : store.active(currentTime);
+            AlarmRestorePipeline.Result result = AlarmRestorePipeline.restore(context, active);
+            if (horizon) {
+                AlarmHorizon.armAdvance(context, store, currentTime, 0L);
             }
+            saveResult(context, result);
 
-            AppLogger.d(TAG,String.format("📊 Boot reschedule complete: %d rescheduled, %d skipped",
-                    rescheduled, skipped));
+            AppLogger.d(TAG,String.format("📊 Boot reschedule complete: %d rescheduled, %d skipped (%s)",
+                    result.armed, store.size() - result.armed, result));
 
         } catch (Exception e) {
             AppLogger.e(TAG,"❌ Failed to reschedule notifications after boot", e);
         }
     }
+
+    private static void saveResult(Context context, AlarmRestorePipeline.Result result) {
+        try {
+            context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE).edit()
+                    .putString(KEY_LAST, result.toJson().toString()).apply();
+        } catch (JSONException e) {
+            AppLogger.e(TAG, "❌ Failed to save restore result", e);
+        }
+    }
 }
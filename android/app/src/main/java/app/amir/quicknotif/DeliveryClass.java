@@ -0,0 +1,127 @@
+package app.amir.quicknotif;
+
+import android.app.AlarmManager;
+import android.app.PendingIntent;
+import android.content.Context;
+import android.content.Intent;
+import android.content.SharedPreferences;
+
+import org.json.JSONObject;
+
+/**
+ * How a notification's alarm is armed, stored per notification under
+ * {@link NotifUtils#JSON_KEY_DELIVERY_CLASS}.
+ *
+ * <ul>
+ *   <li>{@link #ALARM_CLOCK}: {@code setAlarmClock}. Exempt from Doze and shown in the status bar
+ *       as the next alarm; for items that must not be late.</li>
+ *   <li>{@link #EXACT} (default): {@code setExactAndAllowWhileIdle}. On time, but under Doze
+ *       rate-limited to about one every 9 minutes.</li>
+ *   <li>{@link #WINDOWED}: {@code setWindow} from the due time, with a tolerance of
+ *       {@link #KEY_WINDOW_TOLERANCE_MS} (default {@link #DEFAULT_WINDOW_TOLERANCE_MS}). The system
+ *       may fire it anywhere in that window, so it can share a wakeup with other alarms.</li>
+ * </ul>
+ *
+ * <p>Without the exact-alarm permission, exact and alarm-clock alarms are armed in
+ * {@code setWindow} slots instead (see {@link InexactFallback}).
+ *
+ * <p>Lateness and wakeups per class are collected by {@link DeliveryMetrics}. The tolerance is
+ * kept in its own preferences file ({@link #PREFS_NAME}).
+ */
+public final class DeliveryClass {
+
+    public static final String ALARM_CLOCK = "alarmClock";
+    public static final String EXACT       = "exact";
+    public static final String WINDOWED    = "windowed";
+
+    /** Preferences file holding the {@link #WINDOWED} tolerance. */
+    public static final String PREFS_NAME = "QuickNotifDelivery";
+
+    /** Preferences key: window length for {@link #WINDOWED} alarms, in millis. */
+    public static final String KEY_WINDOW_TOLERANCE_MS = "windowedToleranceMs";
+    public static final long DEFAULT_WINDOW_TOLERANCE_MS = 10 * 60_000L;
+
+    private DeliveryClass() {}
+
+    /** Whether {@code deliveryClass} is one of the known classes. */
+    public static boolean isValid(String deliveryClass) {
+        return ALARM_CLOCK.equals(deliveryClass) || EXACT.equals(deliveryClass) || WINDOWED.equals(deliveryClass);
+    }
+
+    /** The class stored on {@code notification}; {@link #EXACT} if missing or unknown. */
+    public static String of(JSONObject notification) {
+        if (notification == null) return EXACT;
+        return normalize(notification.optString(NotifUtils.JSON_KEY_DELIVERY_CLASS, EXACT));
+    }
+
+    /** {@code deliveryClass} if known, otherwise {@link #EXACT}. */
+    public static String normalize(String deliveryClass) {
+        return isValid(deliveryClass) ? deliveryClass : EXACT;
+    }
+
+    private static SharedPreferences prefs(Context context) {
+        return context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+    }
+
+    public static long windowTolerance(Context context) {
+        return prefs(context).getLong(KEY_WINDOW_TOLERANCE_MS, DEFAULT_WINDOW_TOLERANCE_MS);
+    }
+
+    /** Sets the {@link #WINDOWED} tolerance; applies to alarms armed from now on. */
+    public static void setWindowTolerance(Context context, long toleranceMs) {
+        if (toleranceMs <= 0) {
+            throw new IllegalArgumentException("Window tolerance must be positive: " + toleranceMs);
+        }
+        prefs(context).edit().putLong(KEY_WINDOW_TOLERANCE_MS, toleranceMs).apply();
+    }
+
+    /** Arms {@code operation} at {@code triggerAt} with the AlarmManager call for the class. */
+    static void arm(Context context, AlarmManager alarmManager, String deliveryClass,
+                    long triggerAt, PendingIntent operation) {
+        switch (normalize(deliveryClass)) {
+            case ALARM_CLOCK:
+                if (!InexactFallback.exactAllowed(context)) {
+                    InexactFallback.armSlot(context, alarmManager, AlarmManager.RTC_WAKEUP, triggerAt, operation);
+                    break;
+                }
+                alarmManager.setAlarmClock(
+                        new AlarmManager.AlarmClockInfo(triggerAt, showAppIntent(context)), operation);
+                break;
+            case WINDOWED:
+                alarmManager.setWindow(AlarmManager.RTC_WAKEUP, triggerAt, windowTolerance(context), operation);
+                break;
+            default:
+                InexactFallback.setExact(context, alarmManager, AlarmManager.RTC_WAKEUP, triggerAt, operation);
+                break;
+        }
+    }
+
+    /**
+     * {@link #arm} on the elapsed-realtime clock, at {@code elapsedAt} (see
+     * {@link ElapsedSchedule}). {@link #ALARM_CLOCK} has no elapsed variant and is armed at the
+     * wall-clock {@code triggerAt}.
+     */
+    static void armElapsed(Context context, AlarmManager alarmManager, String deliveryClass,
+                           long triggerAt, long elapsedAt, PendingIntent operation) {
+        switch (normalize(deliveryClass)) {
+            case ALARM_CLOCK:
+                arm(context, alarmManager, deliveryClass, triggerAt, operation);
+                break;
+            case WINDOWED:
+                alarmManager.setWindow(AlarmManager.ELAPSED_REALTIME_WAKEUP, elapsedAt,
+                        windowTolerance(context), operation);
+                break;
+            default:
+                InexactFallback.setExact(context, alarmManager, AlarmManager.ELAPSED_REALTIME_WAKEUP, elapsedAt, operation);
+                break;
+        }
+    }
+
+    /** Opened when the user taps the system's next-alarm indicator. */
+    private static PendingIntent showAppIntent(Context context) {
+        Intent intent = new Intent(context, MainActivity.class);
+        intent.setFlags(Intent.FLAG_ACTIVITY_NEW_TASK | Intent.FLAG_ACTIVITY_CLEAR_TOP);
+        return PendingIntent.getActivity(context, 0, intent,
+                PendingIntent.FLAG_IMMUTABLE | PendingIntent.FLAG_UPDATE_CURRENT);
+    }
+}
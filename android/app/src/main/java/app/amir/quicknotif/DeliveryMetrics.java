@@ -0,0 +1,133 @@
+package app.amir.quicknotif;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Lateness and wakeup counts per {@link DeliveryClass}, to compare what each class costs and
+ * how late it fires.
+ *
+ * <p>{@link NotificationReceiver} records every alarm it handles. A delivery more than
+ * {@link #WAKEUP_GAP_MS} after the previous one is counted as a new wakeup for its class;
+ * deliveries closer together shared a wakeup (e.g. windowed alarms the system batched) and only
+ * count as batched. Lateness is the time from the due time to the delivery. Counters are kept
+ * in their own preferences file ({@link #PREFS_NAME}) until {@link #reset}.
+ */
+public final class DeliveryMetrics {
+
+    private static final String TAG = "DeliveryMetrics";
+
+    /** Preferences file holding the counters. */
+    public static final String PREFS_NAME = "QuickNotifDeliveryMetrics";
+
+    /** Deliveries closer together than this belong to the same wakeup. */
+    public static final long WAKEUP_GAP_MS = 1_000L;
+
+    private static final String[] CLASSES = {
+            DeliveryClass.ALARM_CLOCK, DeliveryClass.EXACT, DeliveryClass.WINDOWED
+    };
+    private static final String KEY_LAST_DELIVERY = "lastDeliveryAt";
+
+    private static volatile DeliveryMetrics instance;
+
+    /** Counters for one class. */
+    public static final class Stats {
+        public final long delivered;
+        public final long wakeups;
+        public final long totalLatenessMs;
+        public final long maxLatenessMs;
+
+        Stats(long delivered, long wakeups, long totalLatenessMs, long maxLatenessMs) {
+            this.delivered = delivered;
+            this.wakeups = wakeups;
+            this.totalLatenessMs = totalLatenessMs;
+            this.maxLatenessMs = maxLatenessMs;
+        }
+
+        public long averageLatenessMs() {
+            return delivered == 0 ? 0 : totalLatenessMs / delivered;
+        }
+
+        /** Deliveries that shared a wakeup with an earlier one. */
+        public long batched() {
+            return delivered - wakeups;
+        }
+    }
+
+    private final SharedPreferences prefs;
+
+    /** Package-private for tests; use {@link #get}. */
+    DeliveryMetrics(SharedPreferences prefs) {
+        this.prefs = prefs;
+    }
+
+    /** Returns the metrics bound to the app's {@link #PREFS_NAME} preferences. */
+    public static DeliveryMetrics get(Context context) {
+        SharedPreferences prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        DeliveryMetrics metrics = instance;
+        if (metrics == null || metrics.prefs != prefs) {
+            synchronized (DeliveryMetrics.class) {
+                metrics = instance;
+                if (metrics == null || metrics.prefs != prefs) {
+                    metrics = new DeliveryMetrics(prefs);
+                    instance = metrics;
+                }
+            }
+        }
+        return metrics;
+    }
+
+    /**
+     * Records a delivery at {@code deliveredAt} of a notification due at {@code scheduledAt}
+     * (0 if unknown: counted, but not in the lateness).
+     */
+    public synchronized void record(String deliveryClass, long scheduledAt, long deliveredAt) {
+        String cls = DeliveryClass.normalize(deliveryClass);
+        Stats stats = stats(cls);
+        boolean newWakeup = deliveredAt - prefs.getLong(KEY_LAST_DELIVERY, Long.MIN_VALUE / 2) > WAKEUP_GAP_MS;
+        long lateness = scheduledAt > 0 ? Math.max(0, deliveredAt - scheduledAt) : 0;
+
+        prefs.edit()
+                .putLong(cls + ".delivered", stats.delivered + 1)
+                .putLong(cls + ".wakeups", stats.wakeups + (newWakeup ? 1 : 0))
+                .putLong(cls + ".totalLatenessMs", stats.totalLatenessMs + lateness)
+                .putLong(cls + ".maxLatenessMs", Math.max(stats.maxLatenessMs, lateness))
+                .putLong(KEY_LAST_DELIVERY, Math.max(deliveredAt, prefs.getLong(KEY_LAST_DELIVERY, 0L)))
+                .apply();
+        AppLogger.d(TAG, "📊 " + cls + " delivered " + lateness + "ms late" + (newWakeup ? "" : " (batched)"));
+    }
+
+    public synchronized Stats stats(String deliveryClass) {
+        String cls = DeliveryClass.normalize(deliveryClass);
+        return new Stats(
+                prefs.getLong(cls + ".delivered", 0L),
+                prefs.getLong(cls + ".wakeups", 0L),
+                prefs.getLong(cls + ".totalLatenessMs", 0L),
+                prefs.getLong(cls + ".maxLatenessMs", 0L));
+    }
+
+    /**
+     * All classes as
+     * {@code {"exact": {"delivered", "wakeups", "batched", "avgLatenessMs", "maxLatenessMs"}, ...}}.
+     */
+    public synchronized JSONObject toJson() throws JSONException {
+        JSONObject json = new JSONObject();
+        for (String cls : CLASSES) {
+            Stats stats = stats(cls);
+            json.put(cls, new JSONObject()
+                    .put("delivered", stats.delivered)
+                    .put("wakeups", stats.wakeups)
+                    .put("batched", stats.batched())
+                    .put("avgLatenessMs", stats.averageLatenessMs())
+                    .put("maxLatenessMs", stats.maxLatenessMs));
+        }
+        return json;
+    }
+
+    public synchronized void reset() {
+        prefs.edit().clear().apply();
+    }
+}
@@ -0,0 +1,139 @@
+package app.amir.quicknotif;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.SystemClock;
+
+import org.json.JSONObject;
+
+/**
+ * Monotonic due times for relative notifications ("in 30 minutes").
+ *
+ * <p>A relative notification is stored with a wall-clock {@code scheduledAt}, and an
+ * {@code RTC_WAKEUP} alarm for it follows the wall clock: after a manual clock change, an NTP
+ * correction or a timezone change, every relative alarm would fire at the wrong moment unless
+ * it was re-armed. {@link NotifUtils} arms them with {@code ELAPSED_REALTIME_WAKEUP} instead, at
+ * the time returned by {@link #elapsedAt}. That time is derived from {@code scheduledAt} once,
+ * when the notification is first armed, and recorded in {@link #PREFS_NAME} against that
+ * {@code scheduledAt}. Later wall-clock changes then move neither the record nor the alarm.
+ * Editing the notification gives it a new {@code scheduledAt}, so it is derived again.
+ *
+ * <p>Elapsed realtime restarts at boot, so {@link BootReceiver} calls {@link #rebase} to drop
+ * every record before alarms are restored; they are derived again from {@code scheduledAt}.
+ *
+ * <p>{@link DeliveryClass#ALARM_CLOCK} alarms only exist on the wall clock and stay
+ * {@code RTC_WAKEUP}.
+ */
+public final class ElapsedSchedule {
+
+    private static final String TAG = "ElapsedSchedule";
+
+    /** Preferences file mapping notification id to {@code scheduledAt:elapsedAt}. */
+    public static final String PREFS_NAME = "QuickNotifElapsed";
+
+    /** The two clocks due times are converted between. */
+    interface Clock {
+        long wallMillis();
+
+        long elapsedMillis();
+    }
+
+    static final Clock SYSTEM = new Clock() {
+        @Override
+        public long wallMillis() {
+            return System.currentTimeMillis();
+        }
+
+        @Override
+        public long elapsedMillis() {
+            return SystemClock.elapsedRealtime();
+        }
+    };
+
+    private static volatile Clock clock = SYSTEM;
+
+    private ElapsedSchedule() {}
+
+    static Clock clock() {
+        return clock;
+    }
+
+    /** Replaces the clock; for tests. {@code null} restores the system clocks. */
+    static void setClock(Clock replacement) {
+        clock = replacement != null ? replacement : SYSTEM;
+    }
+
+    /**
+     * Whether {@code notification} is armed on the elapsed-realtime clock: relative, and not
+     * {@link DeliveryClass#ALARM_CLOCK}.
+     */
+    public static boolean applies(JSONObject notification) {
+        return notification != null
+                && NotifUtils.TYPE_RELATIVE.equals(notification.optString(NotifUtils.JSON_KEY_TYPE, ""))
+                && !DeliveryClass.ALARM_CLOCK.equals(DeliveryClass.of(notification));
+    }
+
+    /**
+     * The elapsed-realtime due time of {@code id}, due at {@code scheduledAt} on the wall clock.
+     * Returns the recorded value if there is one for this {@code scheduledAt}; otherwise derives
+     * it from the current clocks and records it.
+     */
+    public static synchronized long elapsedAt(Context context, String id, long scheduledAt) {
+        long recorded = recorded(context, id, scheduledAt);
+        if (recorded > 0) return recorded;
+        Clock c = clock;
+        long elapsedAt = c.elapsedMillis() + (scheduledAt - c.wallMillis());
+        prefs(context).edit().putString(id, scheduledAt + ":" + elapsedAt).apply();
+        return elapsedAt;
+    }
+
+    /**
+     * The recorded elapsed-realtime due time of {@code id} for this {@code scheduledAt}, or
+     * {@code 0} if there is none. Never records one.
+     */
+    public static synchronized long recorded(Context context, String id, long scheduledAt) {
+        String record = prefs(context).getString(id, null);
+        if (record == null) return 0L;
+        int colon = record.indexOf(':');
+        try {
+            if (colon > 0 && Long.parseLong(record.substring(0, colon)) == scheduledAt) {
+                return Long.parseLong(record.substring(colon + 1));
+            }
+        } catch (NumberFormatException e) {
+            AppLogger.w(TAG, "⚠️ Dropping unreadable record for " + id);
+        }
+        return 0L;
+    }
+
+    /** The current wall-clock equivalent of an elapsed-realtime time. */
+    public static long wallTimeOf(long elapsedAt) {
+        Clock c = clock;
+        return c.wallMillis() + (elapsedAt - c.elapsedMillis());
+    }
+
+    /** Forgets the record of {@code id} once its alarm has fired or been cancelled. */
+    public static void forget(Context context, String id) {
+        SharedPreferences prefs = prefs(context);
+        if (prefs.contains(id)) {
+            prefs.edit().remove(id).apply();
+        }
+    }
+
+    /**
+     * Drops every record after a reboot, when elapsed realtime has restarted. Returns how many
+     * there were.
+     */
+    public static synchronized int rebase(Context context) {
+        SharedPreferences prefs = prefs(context);
+        int dropped = prefs.getAll().size();
+        prefs.edit().clear().apply();
+        if (dropped > 0) {
+            AppLogger.d(TAG, "🔄 Rebased " + dropped + " relative timers after boot");
+        }
+        return dropped;
+    }
+
+    private static SharedPreferences prefs(Context context) {
+        return context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+    }
+}
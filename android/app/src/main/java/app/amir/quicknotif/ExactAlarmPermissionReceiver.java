@@ -0,0 +1,35 @@
+package app.amir.quicknotif;
+
+import android.app.AlarmManager;
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+
+/**
+ * ExactAlarmPermissionReceiver — switches back to exact alarms when the user allows them again.
+ *
+ * The system sends {@link AlarmManager#ACTION_SCHEDULE_EXACT_ALARM_PERMISSION_STATE_CHANGED}
+ * when the exact-alarm permission is granted. If alarms were armed in slots meanwhile (see
+ * {@link InexactFallback}), they are re-armed exactly in one batch, on a background thread
+ * under {@link #goAsync()}.
+ */
+public class ExactAlarmPermissionReceiver extends BroadcastReceiver {
+
+    private static final String TAG = "ExactAlarmPermission";
+
+    @Override
+    public void onReceive(Context context, Intent intent) {
+        if (!AlarmManager.ACTION_SCHEDULE_EXACT_ALARM_PERMISSION_STATE_CHANGED.equals(intent.getAction())) {
+            return;
+        }
+
+        AppLogger.init(context);
+        AppLogger.d(TAG, "🔓 Exact alarm permission changed");
+        if (!InexactFallback.isActive(context)) return;
+
+        PendingResult pending = goAsync();
+        InexactFallback.restoreExactAsync(context, () -> {
+            if (pending != null) pending.finish();
+        });
+    }
+}
@@ -0,0 +1,160 @@
+package app.amir.quicknotif;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.Arrays;
+
+/**
+ * Early-arming offset for {@link DeliveryClass#EXACT exact} alarms, learned from how late this
+ * device delivers them.
+ *
+ * <p>Some OEM builds deliver {@code setExactAndAllowWhileIdle} alarms seconds late.
+ * {@link NotificationReceiver} records, for every exact alarm, how long after the time it was
+ * armed for it was delivered. The lead is the {@link #PERCENTILE}th percentile of the last
+ * {@link #CAPACITY} of those delays, once there are {@link #MIN_SAMPLES}, capped at
+ * {@link #KEY_MAX_LEAD_MS} (default {@link #DEFAULT_MAX_LEAD_MS}; {@code 0} turns it off) and
+ * never more than {@link #HOLD_LIMIT_MS}.
+ * {@link NotifUtils#scheduleAlarm} arms exact alarms that much before the due time and puts
+ * the lead on the intent, so the delay measured is the system's and not the lead's.
+ *
+ * <p>An alarm that arrives early is held by the receiver until the due time, which is at most
+ * {@link #HOLD_LIMIT_MS} away; one that arrives earlier still is armed again for the rest, so a
+ * notification is never shown early. Alarm-clock and windowed alarms are not moved: the
+ * first is shown to the user as the next alarm, the second is allowed to be late.
+ * Samples and the largest lead are kept in their own preferences file ({@link #PREFS_NAME}).
+ */
+public final class FireLead {
+
+    private static final String TAG = "FireLead";
+
+    /** Preferences file holding the samples and {@link #KEY_MAX_LEAD_MS}. */
+    public static final String PREFS_NAME = "QuickNotifFireLead";
+
+    /** Preferences key: largest lead in millis; 0 turns it off. */
+    public static final String KEY_MAX_LEAD_MS = "fireLeadMaxMs";
+
+    /** Longest wait for the due time of an alarm that arrived early; within the receiver's time. */
+    public static final long HOLD_LIMIT_MS = 8_000L;
+
+    public static final long DEFAULT_MAX_LEAD_MS = 5_000L;
+    /** Upper bound for {@link #KEY_MAX_LEAD_MS}: a longer lead could not be held. */
+    public static final long MAX_LEAD_MS = HOLD_LIMIT_MS;
+
+    static final int CAPACITY = 64;
+    static final int MIN_SAMPLES = 8;
+    static final int PERCENTILE = 95;
+
+    private static final String KEY_SAMPLES = "samples";
+
+    private static volatile FireLead instance;
+
+    private final SharedPreferences prefs;
+    /** Ring of the last {@link #CAPACITY} delays, oldest first once full. */
+    private final long[] samples = new long[CAPACITY];
+    private int count;
+    private int next;
+
+    /** Package-private for tests; use {@link #get}. */
+    FireLead(SharedPreferences prefs) {
+        this.prefs = prefs;
+        String stored = prefs.getString(KEY_SAMPLES, "");
+        for (String s : stored.split(",")) {
+            if (s.isEmpty()) continue;
+            try {
+                add(Long.parseLong(s));
+            } catch (NumberFormatException e) {
+                AppLogger.w(TAG, "⚠️ Dropping unreadable sample " + s);
+            }
+        }
+    }
+
+    /** Returns the estimator bound to the app's {@link #PREFS_NAME} preferences. */
+    public static FireLead get(Context context) {
+        SharedPreferences prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        FireLead lead = instance;
+        if (lead == null || lead.prefs != prefs) {
+            synchronized (FireLead.class) {
+                lead = instance;
+                if (lead == null || lead.prefs != prefs) {
+                    lead = new FireLead(prefs);
+                    instance = lead;
+                }
+            }
+        }
+        return lead;
+    }
+
+    public static long maxLeadMs(Context context) {
+        return get(context).prefs.getLong(KEY_MAX_LEAD_MS, DEFAULT_MAX_LEAD_MS);
+    }
+
+    /**
+     * Sets the largest lead in millis ({@code 0} turns it off). Applies to alarms armed from
+     * now on.
+     *
+     * @throws IllegalArgumentException if negative or above {@link #MAX_LEAD_MS}.
+     */
+    public static void setMaxLeadMs(Context context, long maxLeadMs) {
+        if (maxLeadMs < 0 || maxLeadMs > MAX_LEAD_MS) {
+            throw new IllegalArgumentException("Fire lead out of range: " + maxLeadMs + "ms");
+        }
+        get(context).prefs.edit().putLong(KEY_MAX_LEAD_MS, maxLeadMs).apply();
+        AppLogger.d(TAG, "🔄 Largest fire lead set to " + maxLeadMs + "ms");
+    }
+
+    /** The lead to arm an exact alarm with now, in millis; at most {@link #HOLD_LIMIT_MS}. */
+    public static long leadMs(Context context) {
+        return Math.min(Math.min(get(context).percentileMs(), maxLeadMs(context)), HOLD_LIMIT_MS);
+    }
+
+    /** Records that an alarm armed for some time was delivered {@code delayMs} after it. */
+    public synchronized void record(long delayMs) {
+        add(Math.max(0L, delayMs));
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            if (i > 0) sb.append(',');
+            sb.append(samples[(next - count + i + CAPACITY) % CAPACITY]);
+        }
+        prefs.edit().putString(KEY_SAMPLES, sb.toString()).apply();
+    }
+
+    /** The {@link #PERCENTILE}th percentile delay, or 0 with fewer than {@link #MIN_SAMPLES}. */
+    public synchronized long percentileMs() {
+        if (count < MIN_SAMPLES) return 0L;
+        long[] sorted = Arrays.copyOf(samples, count);
+        Arrays.sort(sorted);
+        int rank = (int) Math.ceil(PERCENTILE / 100.0 * count) - 1;
+        return sorted[Math.max(0, rank)];
+    }
+
+    public synchronized int sampleCount() {
+        return count;
+    }
+
+    /** {@code {"leadMs", "percentileMs", "maxLeadMs", "samples"}}. */
+    public static JSONObject toJson(Context context) throws JSONException {
+        FireLead lead = get(context);
+        return new JSONObject()
+                .put("leadMs", leadMs(context))
+                .put("percentileMs", lead.percentileMs())
+                .put("maxLeadMs", maxLeadMs(context))
+                .put("samples", lead.sampleCount());
+    }
+
+    /** Forgets the samples; the largest lead stays as set. */
+    public synchronized void reset() {
+        count = 0;
+        next = 0;
+        prefs.edit().remove(KEY_SAMPLES).apply();
+    }
+
+    private void add(long delayMs) {
+        samples[next] = delayMs;
+        next = (next + 1) % CAPACITY;
+        if (count < CAPACITY) count++;
+    }
+}
@@ -0,0 +1,405 @@
+package app.amir.quicknotif;
+
+import android.app.AlarmManager;
+import android.app.PendingIntent;
+import android.content.Context;
+import android.content.Intent;
+import android.content.SharedPreferences;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * In-process timers for short notifications created while the app is in the foreground.
+ *
+ * <p>A quick-button timer (5 to 60 minutes, see {@link BaseNotificationActivity#setDuration}) is
+ * usually created, changed or cancelled while the app is open, and every one of those is an
+ * AlarmManager call. While an activity is resumed, {@link NotifUtils#scheduleAlarm} offers
+ * {@link DeliveryClass#EXACT} notifications due within {@link #MAX_DELAY_MS} here instead. They
+ * are kept on a {@link TimingWheel} served by a dedicated thread, which delivers them to
+ * {@link NotificationReceiver} directly, to the millisecond, without a system broadcast.
+ * Cancelling one only touches the wheel.
+ *
+ * <p>The wheel dies with the process, so one backstop alarm ({@link #ACTION_BACKSTOP}) is kept
+ * armed for the earliest timer. It is only re-armed when a sooner timer is added or after the
+ * wheel fires, not for every timer. Held timers are also recorded in {@link #PREFS_NAME}. When
+ * the backstop fires in a new process, that process takes over the record, delivers what is
+ * due, and hands the rest to AlarmManager unless an activity is in the foreground again.
+ *
+ * <p>Timers stay on the wheel when the app goes to the background; only new ones need the
+ * foreground. Next-due mode (see {@link AlarmDispatcher}) already uses a single alarm and
+ * bypasses the wheel.
+ */
+public final class ForegroundTimers {
+
+    private static final String TAG = "ForegroundTimers";
+
+    /** Preferences file recording held timers (id to due time) and the backstop time. */
+    public static final String PREFS_NAME = "QuickNotifForegroundTimers";
+
+    public static final String ACTION_BACKSTOP = "app.amir.quicknotif.TIMER_BACKSTOP";
+
+    /** Request code of the backstop alarm, outside the range of notification request codes. */
+    static final int BACKSTOP_REQUEST_CODE = -1;
+
+    /** Only notifications due within this long are held in process. */
+    public static final long MAX_DELAY_MS = 3_600_000L;
+
+    private static final String KEY_BACKSTOP_AT = "backstopAt";
+    private static final String KEY_PREFIX = "timer_";
+
+    // Activities between onResume and onPause
+    private static final AtomicInteger resumed = new AtomicInteger();
+
+    private static volatile ForegroundTimers instance;
+
+    private final Context context;
+    private final SharedPreferences prefs;
+    private final TimingWheel wheel;
+    private final Thread thread;
+    private long backstopAt;
+    private boolean quit;
+
+    // Since the process started
+    private long held;
+    private long fired;
+    private long cancelled;
+    private long backstopArms;
+    private long totalLatenessMs;
+    private long maxLatenessMs;
+
+    /** Takes over the timers recorded in {@code prefs}. Package-private for tests; use {@link #get}. */
+    ForegroundTimers(Context context, SharedPreferences prefs, long now) {
+        this.context = context.getApplicationContext();
+        this.prefs = prefs;
+        this.wheel = new TimingWheel(now);
+        this.backstopAt = prefs.getLong(KEY_BACKSTOP_AT, 0L);
+        adopt(now);
+        thread = new Thread(this::run, "foreground-timers");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /** Returns the timers bound to the app's {@link #PREFS_NAME} preferences, starting them if needed. */
+    public static ForegroundTimers get(Context context) {
+        SharedPreferences prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        ForegroundTimers timers = instance;
+        if (timers == null || timers.prefs != prefs) {
+            synchronized (ForegroundTimers.class) {
+                timers = instance;
+                if (timers == null || timers.prefs != prefs) {
+                    if (timers != null) timers.quit();
+                    timers = new ForegroundTimers(context, prefs, System.currentTimeMillis());
+                    instance = timers;
+                }
+            }
+        }
+        return timers;
+    }
+
+    /** Called from {@code onResume} of every activity. */
+    public static void activityResumed() {
+        resumed.incrementAndGet();
+    }
+
+    /** Called from {@code onPause} of every activity. */
+    public static void activityPaused() {
+        int n;
+        do {
+            n = resumed.get();
+        } while (n > 0 && !resumed.compareAndSet(n, n - 1));
+    }
+
+    public static boolean isForeground() {
+        return resumed.get() > 0;
+    }
+
+    /**
+     * Holds the notification on the wheel if it qualifies: an activity is in the foreground, it
+     * is {@link DeliveryClass#EXACT}, per-notification mode is on and it is due within
+     * {@link #MAX_DELAY_MS}. Returns {@code false} if the caller has to arm an alarm instead.
+     */
+    static boolean offer(Context context, String id, String name, long scheduledAt,
+                         String deliveryClass, long now) {
+        if (!isForeground()
+                || !DeliveryClass.EXACT.equals(DeliveryClass.normalize(deliveryClass))
+                || AlarmDispatcher.isEnabled(context)
+                || scheduledAt <= now
+                || scheduledAt - now > MAX_DELAY_MS) {
+            return false;
+        }
+        get(context).hold(id, name, scheduledAt);
+        return true;
+    }
+
+    /**
+     * Drops the timer for {@code id} if the running wheel holds one. Returns {@code true} if it
+     * did, in which case no alarm was armed for it by this process.
+     */
+    static boolean release(String id) {
+        ForegroundTimers timers = instance;
+        return timers != null && timers.cancel(id);
+    }
+
+    /** Whether the running wheel holds a timer for {@code id}. */
+    static boolean holds(String id) {
+        ForegroundTimers timers = instance;
+        return timers != null && timers.isHeld(id, 0L);
+    }
+
+    /** Whether the running wheel holds a timer for {@code id} due at {@code scheduledAt}. */
+    static boolean holds(String id, long scheduledAt) {
+        ForegroundTimers timers = instance;
+        return timers != null && timers.isHeld(id, scheduledAt);
+    }
+
+    /** Handles the backstop alarm: see the class comment. */
+    static void onBackstop(Context context, long now) {
+        get(context).backstop(now);
+    }
+
+    void hold(String id, String name, long scheduledAt) {
+        boolean armBackstop;
+        synchronized (this) {
+            wheel.schedule(id, name, scheduledAt);
+            held++;
+            armBackstop = backstopAt <= 0 || scheduledAt < backstopAt;
+            notifyAll();
+        }
+        prefs.edit().putLong(KEY_PREFIX + id, scheduledAt).apply();
+        if (armBackstop) {
+            armBackstop(scheduledAt);
+        }
+        AppLogger.d(TAG, "⏱️ Holding " + name + " in process until " + new Date(scheduledAt));
+    }
+
+    synchronized boolean cancel(String id) {
+        if (wheel.cancel(id) == null) return false;
+        cancelled++;
+        // The backstop is left as it is: if it fires for nothing it moves on to the next timer
+        prefs.edit().remove(KEY_PREFIX + id).apply();
+        notifyAll();
+        return true;
+    }
+
+    /** Whether a timer is held for {@code id}, due at {@code scheduledAt} unless that is 0. */
+    synchronized boolean isHeld(String id, long scheduledAt) {
+        TimingWheel.Timer timer = wheel.get(id);
+        return timer != null && (scheduledAt == 0L || timer.deadline == scheduledAt);
+    }
+
+    synchronized int size() {
+        return wheel.size();
+    }
+
+    /** Time the backstop alarm is armed for, or {@code 0}. */
+    synchronized long backstopAt() {
+        return backstopAt;
+    }
+
+    /**
+     * Backstop wakeup at {@code now}: delivers every timer due, then re-arms the backstop, or,
+     * with no activity in the foreground, moves the remaining timers to AlarmManager.
+     */
+    void backstop(long now) {
+        deliverDue(now);
+        if (isForeground()) {
+            rearmBackstop();
+            return;
+        }
+        List<JSONObject> handOver = new ArrayList<>();
+        synchronized (this) {
+            try {
+                NotificationStore store = NotificationRepository.get(context).snapshot();
+                for (String id : wheel.ids()) {
+                    JSONObject obj = store.get(id);
+                    wheel.cancel(id);
+                    if (obj != null) handOver.add(obj);
+                }
+            } catch (JSONException e) {
+                AppLogger.e(TAG, "❌ Failed to read notifications for the backstop", e);
+            }
+        }
+        prefs.edit().clear().apply();
+        cancelBackstop();
+        if (!handOver.isEmpty()) {
+            AppLogger.d(TAG, "🔄 Handed timers to AlarmManager: " + NotifUtils.scheduleAlarms(context, handOver));
+        }
+    }
+
+    /** Delivers every timer due by {@code now}; returns how many. */
+    int deliverDue(long now) {
+        List<TimingWheel.Timer> due = new ArrayList<>();
+        synchronized (this) {
+            wheel.advanceTo(now, due);
+        }
+        if (due.isEmpty()) return 0;
+
+        SharedPreferences.Editor editor = prefs.edit();
+        for (TimingWheel.Timer timer : due) {
+            editor.remove(KEY_PREFIX + timer.id);
+        }
+        editor.apply();
+        int delivered = 0;
+        for (TimingWheel.Timer timer : due) {
+            if (deliver(timer, now)) delivered++;
+        }
+        rearmBackstop();
+        return delivered;
+    }
+
+    /** Runs the receiver for {@code timer} in process, if its notification is still due then. */
+    private boolean deliver(TimingWheel.Timer timer, long now) {
+        try {
+            JSONObject obj = NotificationRepository.get(context).snapshot().get(timer.id);
+            if (obj == null || !obj.optBoolean(NotifUtils.JSON_KEY_ENABLED, false)
+                    || NotifUtils.parseScheduledAt(obj) != timer.deadline) {
+                AppLogger.d(TAG, "⏭️ Timer for " + timer.id + " no longer matches storage, dropped");
+                return false;
+            }
+            long lateness = Math.max(0, now - timer.deadline);
+            synchronized (this) {
+                fired++;
+                totalLatenessMs += lateness;
+                maxLatenessMs = Math.max(maxLatenessMs, lateness);
+            }
+
+            Intent intent = new Intent(context, NotificationReceiver.class);
+            intent.putExtra(NotifUtils.EXTRA_NOTIFICATION_ID, timer.id);
+            intent.putExtra(NotifUtils.EXTRA_SCHEDULED_AT, timer.deadline);
+            new NotificationReceiver().onReceive(context, intent);
+            return true;
+        } catch (Exception e) {
+            AppLogger.e(TAG, "❌ Failed to deliver timer " + timer.id, e);
+            return false;
+        }
+    }
+
+    /**
+     * Counters since the process started, as JSON: {@code pending}, {@code held}, {@code fired},
+     * {@code cancelled}, {@code backstopArms}, {@code avgLatenessMs} and {@code maxLatenessMs}.
+     */
+    public synchronized JSONObject metricsJson() throws JSONException {
+        return new JSONObject()
+                .put("pending", wheel.size())
+                .put("held", held)
+                .put("fired", fired)
+                .put("cancelled", cancelled)
+                .put("backstopArms", backstopArms)
+                .put("avgLatenessMs", fired == 0 ? 0 : totalLatenessMs / fired)
+                .put("maxLatenessMs", maxLatenessMs);
+    }
+
+    /** Stops the thread; pending timers stay recorded for the next instance. */
+    synchronized void quit() {
+        quit = true;
+        notifyAll();
+    }
+
+    private void run() {
+        while (true) {
+            long now = System.currentTimeMillis();
+            synchronized (this) {
+                if (quit) return;
+                long next = wheel.nextEventTime();
+                if (next < 0 || next > now) {
+                    try {
+                        if (next < 0) {
+                            wait();
+                        } else {
+                            wait(next - now);
+                        }
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    continue;
+                }
+            }
+            deliverDue(now);
+        }
+    }
+
+    /** Puts the recorded timers of an earlier process on the wheel, except ones with an alarm. */
+    private void adopt(long now) {
+        AlarmRegistry registry = AlarmRegistry.get(context);
+        SharedPreferences.Editor editor = null;
+        for (Map.Entry<String, ?> e : prefs.getAll().entrySet()) {
+            if (!e.getKey().startsWith(KEY_PREFIX) || !(e.getValue() instanceof Long)) continue;
+            String id = e.getKey().substring(KEY_PREFIX.length());
+            long scheduledAt = (Long) e.getValue();
+            if (registry.isArmedAt(NotifUtils.numericIdFor(context, id), scheduledAt)) {
+                // The watchdog already armed it
+                if (editor == null) editor = prefs.edit();
+                editor.remove(e.getKey());
+                continue;
+            }
+            wheel.schedule(id, "", scheduledAt);
+        }
+        if (editor != null) editor.apply();
+        if (wheel.size() > 0) {
+            AppLogger.d(TAG, "🔄 Took over " + wheel.size() + " timers from an earlier process");
+        }
+    }
+
+    /** Arms the backstop for the earliest timer, or cancels it if there is none. */
+    private void rearmBackstop() {
+        long earliest;
+        synchronized (this) {
+            earliest = wheel.earliestDeadline();
+            if (earliest == backstopAt) return;
+        }
+        if (earliest <= 0) {
+            cancelBackstop();
+        } else {
+            armBackstop(earliest);
+        }
+    }
+
+    private void armBackstop(long at) {
+        AlarmManager alarmManager = (AlarmManager) context.getSystemService(Context.ALARM_SERVICE);
+        if (alarmManager == null) {
+            AppLogger.e(TAG, "❌ AlarmManager is null");
+            return;
+        }
+        // Setting the same PendingIntent again replaces the previous alarm
+        InexactFallback.setExact(context, alarmManager, AlarmManager.RTC_WAKEUP, at,
+                backstopIntent(context, PendingIntent.FLAG_UPDATE_CURRENT));
+        synchronized (this) {
+            backstopAt = at;
+            backstopArms++;
+        }
+        prefs.edit().putLong(KEY_BACKSTOP_AT, at).apply();
+    }
+
+    private void cancelBackstop() {
+        synchronized (this) {
+            backstopAt = 0L;
+        }
+        prefs.edit().remove(KEY_BACKSTOP_AT).apply();
+        PendingIntent existing = backstopIntent(context, PendingIntent.FLAG_NO_CREATE);
+        if (existing == null) return;
+        AlarmManager alarmManager = (AlarmManager) context.getSystemService(Context.ALARM_SERVICE);
+        if (alarmManager != null) {
+            alarmManager.cancel(existing);
+        }
+        existing.cancel();
+    }
+
+    /** Uses FLAG_NO_CREATE to probe whether the backstop alarm is registered. */
+    static boolean isBackstopArmed(Context context) {
+        return backstopIntent(context, PendingIntent.FLAG_NO_CREATE) != null;
+    }
+
+    private static PendingIntent backstopIntent(Context context, int flags) {
+        Intent intent = new Intent(context, NotificationReceiver.class);
+        intent.setAction(ACTION_BACKSTOP);
+        return PendingIntent.getBroadcast(context, BACKSTOP_REQUEST_CODE, intent,
+                flags | PendingIntent.FLAG_IMMUTABLE);
+    }
+}
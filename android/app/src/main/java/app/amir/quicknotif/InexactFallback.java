@@ -0,0 +1,208 @@
+package app.amir.quicknotif;
+
+import android.app.AlarmManager;
+import android.app.PendingIntent;
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.Build;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Degraded scheduling for when the user has not allowed exact alarms.
+ *
+ * <p>Without the exact-alarm permission (Android 12+), {@code setExactAndAllowWhileIdle} and
+ * {@code setAlarmClock} throw a {@link SecurityException}. {@link DeliveryClass#arm} then arms
+ * {@link DeliveryClass#EXACT exact} and {@link DeliveryClass#ALARM_CLOCK alarm-clock} alarms
+ * with {@code setWindow} instead, in slots of {@link #SLOT_MS} (the shortest window the system
+ * honours): every alarm due within one slot gets a window that ends at the same slot boundary,
+ * so the system can deliver them in one wakeup, and none fires before its due time.
+ * {@link NotificationReceiver} records how late each of those deliveries was.
+ *
+ * <p>The first slotted alarm puts the app in fallback mode. When the permission is back
+ * ({@link ExactAlarmPermissionReceiver}, or {@link MainActivity#onResume}), {@link #restoreExact}
+ * re-arms every pending alarm exactly with one {@link NotifUtils#scheduleAlarms} call and
+ * leaves the mode. State and counters are kept in their own preferences file
+ * ({@link #PREFS_NAME}).
+ */
+public final class InexactFallback {
+
+    private static final String TAG = "InexactFallback";
+
+    /** Preferences file holding the mode and the lateness counters. */
+    public static final String PREFS_NAME = "QuickNotifInexact";
+
+    /** Slot length; also the window the system enforces at least for {@code setWindow}. */
+    public static final long SLOT_MS = 10 * 60_000L;
+
+    private static final String KEY_SINCE = "since";
+    private static final String KEY_DELIVERED = "delivered";
+    private static final String KEY_TOTAL_LATENESS = "totalLatenessMs";
+    private static final String KEY_MAX_LATENESS = "maxLatenessMs";
+    private static final String KEY_LAST_RESTORE = "lastRestore";
+
+    private static final ExecutorService worker = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "exact-restore");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private static volatile InexactFallback instance;
+
+    private final SharedPreferences prefs;
+
+    /** Package-private for tests; use {@link #get}. */
+    InexactFallback(SharedPreferences prefs) {
+        this.prefs = prefs;
+    }
+
+    /** Returns the fallback state bound to the app's {@link #PREFS_NAME} preferences. */
+    public static InexactFallback get(Context context) {
+        SharedPreferences prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        InexactFallback fallback = instance;
+        if (fallback == null || fallback.prefs != prefs) {
+            synchronized (InexactFallback.class) {
+                fallback = instance;
+                if (fallback == null || fallback.prefs != prefs) {
+                    fallback = new InexactFallback(prefs);
+                    instance = fallback;
+                }
+            }
+        }
+        return fallback;
+    }
+
+    /** Whether the app may arm exact alarms; always before Android 12. */
+    public static boolean exactAllowed(Context context) {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.S) return true;
+        AlarmManager alarmManager = (AlarmManager) context.getSystemService(Context.ALARM_SERVICE);
+        return alarmManager == null || alarmManager.canScheduleExactAlarms();
+    }
+
+    /** Whether alarms have been armed in slots since exact alarms were last allowed. */
+    public static boolean isActive(Context context) {
+        return get(context).prefs.getLong(KEY_SINCE, 0L) > 0;
+    }
+
+    /** End of the slot window for an alarm due at {@code at}: a shared boundary one to two slots on. */
+    static long slotEnd(long at) {
+        return (at / SLOT_MS + 2) * SLOT_MS;
+    }
+
+    /**
+     * {@code setExactAndAllowWhileIdle} if exact alarms are allowed, otherwise a slot window.
+     * Returns whether the alarm was armed exactly.
+     */
+    static boolean setExact(Context context, AlarmManager alarmManager, int type, long at,
+                            PendingIntent operation) {
+        if (exactAllowed(context)) {
+            try {
+                alarmManager.setExactAndAllowWhileIdle(type, at, operation);
+                return true;
+            } catch (SecurityException e) {
+                AppLogger.w(TAG, "⚠️ Exact alarm refused: " + e.getMessage());
+            }
+        }
+        armSlot(context, alarmManager, type, at, operation);
+        return false;
+    }
+
+    /** Arms {@code operation} in the slot window of {@code at} and enters fallback mode. */
+    static void armSlot(Context context, AlarmManager alarmManager, int type, long at,
+                        PendingIntent operation) {
+        alarmManager.setWindow(type, at, slotEnd(at) - at, operation);
+        get(context).enter(System.currentTimeMillis());
+    }
+
+    private synchronized void enter(long now) {
+        if (prefs.getLong(KEY_SINCE, 0L) > 0) return;
+        prefs.edit().putLong(KEY_SINCE, now).apply();
+        AppLogger.w(TAG, "⚠️ Exact alarms not allowed, arming in " + SLOT_MS / 60_000L + "-minute slots");
+    }
+
+    /** Records a slotted alarm due at {@code dueAt} delivered at {@code deliveredAt}. */
+    public synchronized void record(long dueAt, long deliveredAt) {
+        long lateness = dueAt > 0 ? Math.max(0, deliveredAt - dueAt) : 0;
+        prefs.edit()
+                .putLong(KEY_DELIVERED, prefs.getLong(KEY_DELIVERED, 0L) + 1)
+                .putLong(KEY_TOTAL_LATENESS, prefs.getLong(KEY_TOTAL_LATENESS, 0L) + lateness)
+                .putLong(KEY_MAX_LATENESS, Math.max(prefs.getLong(KEY_MAX_LATENESS, 0L), lateness))
+                .apply();
+        AppLogger.d(TAG, "📊 Slotted alarm delivered " + lateness + "ms late");
+    }
+
+    /**
+     * Leaves fallback mode if exact alarms are allowed again: every pending per-notification
+     * alarm is re-armed exactly in one batch. Returns the batch, or {@code null} if the mode
+     * was not active or exact alarms are still not allowed.
+     */
+    static AlarmBatchReport restoreExact(Context context, long now) {
+        if (!isActive(context) || !exactAllowed(context)) return null;
+
+        AlarmRegistry registry = AlarmRegistry.get(context);
+        List<JSONObject> pending = new ArrayList<>();
+        for (JSONObject obj : NotificationRepository.get(context).snapshot().active(now)) {
+            int numericId = NotifUtils.numericIdFor(context, obj.optString(NotifUtils.JSON_KEY_ID, ""));
+            AlarmRegistry.Entry entry = registry.get(numericId);
+            if (entry == null || entry.isFollower()) continue;
+            // Forgotten so the batch does not skip it as already armed
+            registry.remove(numericId);
+            pending.add(obj);
+        }
+        InexactFallback fallback = get(context);
+        synchronized (fallback) {
+            fallback.prefs.edit().putLong(KEY_SINCE, 0L).apply();
+        }
+        AlarmBatchReport report = NotifUtils.scheduleAlarms(context, pending);
+        try {
+            fallback.prefs.edit().putString(KEY_LAST_RESTORE, new JSONObject()
+                    .put("at", now)
+                    .put("rearmed", report.armed)
+                    .put("failed", report.failed)
+                    .put("durationMs", report.durationNanos / 1_000_000L)
+                    .toString()).apply();
+        } catch (JSONException e) {
+            AppLogger.e(TAG, "❌ Failed to save restore result", e);
+        }
+        AppLogger.d(TAG, "✅ Exact alarms allowed again, re-armed " + report.armed + " alarms");
+        return report;
+    }
+
+    /** {@link #restoreExact} on a background thread; {@code done} runs afterwards, if given. */
+    static void restoreExactAsync(Context context, Runnable done) {
+        Context appContext = context.getApplicationContext();
+        worker.execute(() -> {
+            try {
+                restoreExact(appContext, System.currentTimeMillis());
+            } catch (Exception e) {
+                AppLogger.e(TAG, "❌ Failed to restore exact alarms", e);
+            } finally {
+                if (done != null) done.run();
+            }
+        });
+    }
+
+    /**
+     * {@code {"exactAllowed", "active", "since", "delivered", "avgLatenessMs", "maxLatenessMs",
+     * "lastRestore"}}.
+     */
+    public static JSONObject toJson(Context context) throws JSONException {
+        SharedPreferences prefs = get(context).prefs;
+        long delivered = prefs.getLong(KEY_DELIVERED, 0L);
+        String lastRestore = prefs.getString(KEY_LAST_RESTORE, null);
+        return new JSONObject()
+                .put("exactAllowed", exactAllowed(context))
+                .put("active", isActive(context))
+                .put("since", prefs.getLong(KEY_SINCE, 0L))
+                .put("delivered", delivered)
+                .put("avgLatenessMs", delivered == 0 ? 0 : prefs.getLong(KEY_TOTAL_LATENESS, 0L) / delivered)
+                .put("maxLatenessMs", prefs.getLong(KEY_MAX_LATENESS, 0L))
+                .put("lastRestore", lastRestore != null ? new JSONObject(lastRestore) : JSONObject.NULL);
+    }
+}
@@ -14,7 +14,10 @@ import android.webkit.JavascriptInterface;
 
 import androidx.activity.OnBackPressedCallback;
 
+import androidx.work.Constraints;
 import androidx.work.ExistingPeriodicWorkPolicy;
+import androidx.work.ExistingWorkPolicy;
+import androidx.work.OneTimeWorkRequest;
 import androidx.work.PeriodicWorkRequest;
 import androidx.work.WorkManager;
 
@@ -22,6 +25,7 @@ import com.getcapacitor.BridgeActivity;
 
 import org.json.JSONArray;
 import org.json.JSONException;
+import org.json.JSONObject;
 
 import java.util.concurrent.TimeUnit;
 
@@ -31,6 +35,10 @@ public class MainActivity extends BridgeActivity {
 
     @Override
     public void onCreate(Bundle savedInstanceState) {
+        // Fold widget/activity edits from the native journal into the stored array; the web app
+        // waits for it through NativeScheduler.flush() before it loads the key
+        NotificationRepository.get(this).flushAsync();
+        registerPlugin(NativeSchedulerPlugin.class);
         super.onCreate(savedInstanceState);
 
         AppLogger.init(this);
@@ -52,6 +60,12 @@ public class MainActivity extends BridgeActivity {
             }
         });
 
+        // A force-stop clears every alarm without telling the app: check once per launch
+        WorkManager.getInstance(this).enqueueUniqueWork(
+                AlarmWatchdogWorker.LAUNCH_CHECK_WORK_NAME,
+                ExistingWorkPolicy.KEEP,
+                new OneTimeWorkRequest.Builder(AlarmWatchdogWorker.class).build());
+
         // Register periodic watchdog that reschedules any alarms cleared by the OS
         PeriodicWorkRequest watchdog = new PeriodicWorkRequest.Builder(
                 AlarmWatchdogWorker.class, 60, TimeUnit.MINUTES)
@@ -60,6 +74,21 @@ public class MainActivity extends BridgeActivity {
                 "alarm_watchdog",
                 ExistingPeriodicWorkPolicy.KEEP,
                 watchdog);
+
+        // Register daily retention pass that purges old expired/disabled notifications.
+        // Low priority: only runs while the device is idle and charging.
+        Constraints retentionConstraints = new Constraints.Builder()
+                .setRequiresDeviceIdle(true)
+                .setRequiresCharging(true)
+                .build();
+        PeriodicWorkRequest retention = new PeriodicWorkRequest.Builder(
+                RetentionWorker.class, 1, TimeUnit.DAYS)
+                .setConstraints(retentionConstraints)
+                .build();
+        WorkManager.getInstance(this).enqueueUniquePeriodicWork(
+                RetentionWorker.UNIQUE_WORK_NAME,
+                ExistingPeriodicWorkPolicy.KEEP,
+                retention);
     }
 
     public class WebAppInterface {
@@ -166,37 +195,30 @@ public class MainActivity extends BridgeActivity {
             }
         }
 
+        /**
+         * Whether a native alarm is armed for the numeric id, answered from the
+         * {@link AlarmRegistry} without a system call. A timer held in process by
+         * {@link ForegroundTimers} counts as armed.
+         */
         @JavascriptInterface
         public boolean isAlarmScheduled(int notificationId) {
-            try {
-                Intent intent = new Intent(MainActivity.this, NotificationReceiver.class);
-                PendingIntent pendingIntent = PendingIntent.getBroadcast(
-                        MainActivity.this,
-                        notificationId,
-                        intent,
-                        PendingIntent.FLAG_NO_CREATE | PendingIntent.FLAG_IMMUTABLE
-                );
-                return pendingIntent != null;
-            } catch (Exception e) {
-                AppLogger.e(TAG,"Error checking alarm: " + e.getMessage());
-                return false;
-            }
+            return AlarmRegistry.get(MainActivity.this).isArmed(notificationId)
+                    || isHeldInProcess(notificationId);
         }
 
+        /** The numeric ids in the given JSON array that have an armed alarm, as a JSON array. */
         @JavascriptInterface
         public String checkAllAlarms(String notificationIdsJson) {
             try {
                 JSONArray ids = new JSONArray(notificationIdsJson);
-                JSONArray scheduled = new JSONArray();
-
-                for (int i = 0; i < ids.length(); i++) {
-                    int notifId = ids.getInt(i);
-                    if (isAlarmScheduled(notifId)) {
-                        scheduled.put(notifId);
+                JSONArray armed = AlarmRegistry.get(MainActivity.this).filterArmed(ids);
+                if (armed.length() < ids.length()) {
+                    armed = new JSONArray();
+                    for (int i = 0; i < ids.length(); i++) {
+                        if (isAlarmScheduled(ids.getInt(i))) armed.put(ids.getInt(i));
                     }
                 }
-
-                return scheduled.toString();
+                return armed.toString();
             } catch (JSONException e) {
                 AppLogger.e(TAG,"Error checking alarms: " + e.getMessage());
                 return "[]";
@@ -214,9 +236,13 @@ public class MainActivity extends BridgeActivity {
 
                 Intent notificationIntent = new Intent(MainActivity.this, NotificationReceiver.class);
                 notificationIntent.putExtra(NotifUtils.EXTRA_NOTIFICATION_ID, notificationId);
-                notificationIntent.putExtra(NotifUtils.EXTRA_NOTIFICATION_NAME, "");
 
-                int numericId = NotifUtils.generateNumericId(notificationId);
+                int numericId = NotifUtils.numericIdFor(MainActivity.this, notificationId);
+                if (ForegroundTimers.release(notificationId)
+                        && !AlarmRegistry.get(MainActivity.this).isArmed(numericId)) {
+                    AppLogger.d(TAG,"✅ Canceled in-process timer for ID: " + notificationId);
+                    return;
+                }
 
                 PendingIntent pendingIntent = PendingIntent.getBroadcast(
                         MainActivity.this,
@@ -226,6 +252,7 @@ public class MainActivity extends BridgeActivity {
                 );
 
                 alarmManager.cancel(pendingIntent);
+                NotifUtils.forgetAlarm(MainActivity.this, numericId);
                 AppLogger.d(TAG,"✅ Canceled AlarmManager alarm for ID: " + notificationId
                         + " (numeric: " + numericId + ")");
             } catch (Exception e) {
@@ -233,6 +260,20 @@ public class MainActivity extends BridgeActivity {
             }
         }
 
+        /**
+         * The collision-free numeric id for a string notification id (see
+         * {@link NumericIdAllocator}); used by {@code toNumericId} in the web app.
+         */
+        @JavascriptInterface
+        public int getNumericId(String notificationId) {
+            return NotifUtils.numericIdFor(MainActivity.this, notificationId);
+        }
+
+        private boolean isHeldInProcess(int numericId) {
+            String id = NumericIdAllocator.get(MainActivity.this).idFor(numericId);
+            return id != null && ForegroundTimers.holds(id);
+        }
+
         @JavascriptInterface
         public void refreshWidget() {
             NotifUtils.refreshAllWidgets(MainActivity.this);
@@ -246,21 +287,231 @@ public class MainActivity extends BridgeActivity {
             }
             return true; // Pre-Android 12: always allowed
         }
+
+        /**
+         * Selects how native alarms are armed: {@code "perNotification"} (one alarm each, the
+         * default) or {@code "nextDue"} (a single alarm for the earliest due notification, see
+         * {@link AlarmDispatcher}). Returns {@code false} for an unknown mode.
+         */
+        @JavascriptInterface
+        public boolean setAlarmDispatchMode(String mode) {
+            try {
+                AlarmDispatcher.setMode(MainActivity.this, mode);
+                return true;
+            } catch (IllegalArgumentException e) {
+                AppLogger.w(TAG, "⚠️ " + e.getMessage());
+                return false;
+            } catch (JSONException e) {
+                AppLogger.e(TAG, "❌ Failed to switch alarm mode", e);
+                return false;
+            }
+        }
+
+        @JavascriptInterface
+        public String getAlarmDispatchMode() {
+            return AlarmDispatcher.isEnabled(MainActivity.this)
+                    ? AlarmDispatcher.MODE_NEXT_DUE : AlarmDispatcher.MODE_PER_NOTIFICATION;
+        }
+
+        /**
+         * Arms only alarms due within the next {@code hours} (see {@link AlarmHorizon});
+         * {@code 0} arms every notification. Returns {@code false} if it could not be applied.
+         */
+        @JavascriptInterface
+        public boolean setAlarmHorizonHours(long hours) {
+            try {
+                AlarmHorizon.setHorizonHours(MainActivity.this, hours);
+                return true;
+            } catch (IllegalArgumentException e) {
+                AppLogger.w(TAG, "⚠️ " + e.getMessage());
+                return false;
+            } catch (JSONException e) {
+                AppLogger.e(TAG, "❌ Failed to apply alarm horizon", e);
+                return false;
+            }
+        }
+
+        @JavascriptInterface
+        public long getAlarmHorizonHours() {
+            return AlarmHorizon.horizonMs(MainActivity.this) / 3_600_000L;
+        }
+
+        /** Queue depth and commit latency of the native notifications writer, as JSON. */
+        @JavascriptInterface
+        public String getWriteQueueMetrics() {
+            return NotificationRepository.get(MainActivity.this).writeQueue().metricsJson();
+        }
+
+        /**
+         * Storage format counters as JSON: {@code schemaVersion} and {@code isoTimestampFallbacks}
+         * (timestamps that still had to be parsed from ISO strings in this process).
+         */
+        @JavascriptInterface
+        public String getStorageMetrics() {
+            JSONObject metrics = new JSONObject();
+            try {
+                metrics.put("schemaVersion",
+                        NotificationSchema.storedVersion(NotificationSchema.prefs(MainActivity.this)));
+                metrics.put("isoTimestampFallbacks", NotifUtils.isoTimestampFallbackCount());
+            } catch (JSONException e) {
+                AppLogger.e(TAG, "❌ Failed to build storage metrics", e);
+            }
+            return metrics.toString();
+        }
+
+        /**
+         * Delivered count, wakeups, batched deliveries and average / max lateness per
+         * {@link DeliveryClass}, as JSON (see {@link DeliveryMetrics}).
+         */
+        @JavascriptInterface
+        public String getDeliveryMetrics() {
+            try {
+                return DeliveryMetrics.get(MainActivity.this).toJson().toString();
+            } catch (JSONException e) {
+                AppLogger.e(TAG, "❌ Failed to build delivery metrics", e);
+                return "{}";
+            }
+        }
+
+        /**
+         * Counters of the in-process timers for short notifications (see
+         * {@link ForegroundTimers#metricsJson}), as JSON.
+         */
+        @JavascriptInterface
+        public String getForegroundTimerMetrics() {
+            try {
+                return ForegroundTimers.get(MainActivity.this).metricsJson().toString();
+            } catch (JSONException e) {
+                AppLogger.e(TAG, "❌ Failed to build timer metrics", e);
+                return "{}";
+            }
+        }
+
+        /**
+         * Outcome of the last rebase of absolute notifications after a clock or timezone change
+         * (see {@link TimeChangeReceiver}), as JSON.
+         */
+        @JavascriptInterface
+        public String getLastTimeRebase() {
+            return TimeChangeReceiver.lastResultJson(MainActivity.this);
+        }
+
+        /**
+         * How early exact alarms are armed, learned from how late they were delivered (see
+         * {@link FireLead#toJson}), as JSON.
+         */
+        @JavascriptInterface
+        public String getFireLead() {
+            try {
+                return FireLead.toJson(MainActivity.this).toString();
+            } catch (JSONException e) {
+                AppLogger.e(TAG, "❌ Failed to build fire lead", e);
+                return "{}";
+            }
+        }
+
+        /**
+         * Sets the largest early-arming offset for exact alarms, in millis; {@code 0} turns it
+         * off. Returns {@code false} if out of range.
+         */
+        @JavascriptInterface
+        public boolean setFireLeadMaxMs(long maxLeadMs) {
+            try {
+                FireLead.setMaxLeadMs(MainActivity.this, maxLeadMs);
+                return true;
+            } catch (IllegalArgumentException e) {
+                AppLogger.w(TAG, "⚠️ " + e.getMessage());
+                return false;
+            }
+        }
+
+        /**
+         * Whether alarms are armed in slots because exact alarms are not allowed, and how late
+         * those were delivered (see {@link InexactFallback#toJson}), as JSON.
+         */
+        @JavascriptInterface
+        public String getInexactFallback() {
+            try {
+                return InexactFallback.toJson(MainActivity.this).toString();
+            } catch (JSONException e) {
+                AppLogger.e(TAG, "❌ Failed to build fallback state", e);
+                return "{}";
+            }
+        }
+
+        /**
+         * Timings of the last alarm restore after a reboot or update, including the time to the
+         * first armed alarm (see {@link AlarmRestorePipeline}), as JSON.
+         */
+        @JavascriptInterface
+        public String getLastBootRestore() {
+            return BootReceiver.lastResultJson(MainActivity.this);
+        }
+
+        @JavascriptInterface
+        public void resetDeliveryMetrics() {
+            DeliveryMetrics.get(MainActivity.this).reset();
+        }
+
+        /**
+         * Sets the window, in seconds, within which per-notification alarms share one wakeup
+         * (see {@link WakeupCoalescer}); {@code 0} disables it. Returns {@code false} if out of range.
+         */
+        @JavascriptInterface
+        public boolean setCoalesceWindowSeconds(long seconds) {
+            try {
+                WakeupCoalescer.setWindowSeconds(MainActivity.this, seconds);
+                return true;
+            } catch (IllegalArgumentException e) {
+                AppLogger.w(TAG, "⚠️ " + e.getMessage());
+                return false;
+            }
+        }
+
+        @JavascriptInterface
+        public long getCoalesceWindowSeconds() {
+            return WakeupCoalescer.windowMs(MainActivity.this) / 1_000L;
+        }
+
+        /** Sets how late the system may fire {@code windowed} notifications, in millis. */
+        @JavascriptInterface
+        public boolean setWindowedTolerance(long toleranceMs) {
+            try {
+                DeliveryClass.setWindowTolerance(MainActivity.this, toleranceMs);
+                return true;
+            } catch (IllegalArgumentException e) {
+                AppLogger.w(TAG, "⚠️ " + e.getMessage());
+                return false;
+            }
+        }
     }
 
     @Override
     public void onResume() {
+        // Before super: the web app reloads notifications on the appStateChange it dispatches,
+        // after waiting for this through NativeScheduler.flush()
+        NotificationRepository.get(this).flushAsync();
         super.onResume();
+        ForegroundTimers.activityResumed();
         if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.S) {
             AlarmManager alarmManager = (AlarmManager) getSystemService(Context.ALARM_SERVICE);
             if (alarmManager != null && !alarmManager.canScheduleExactAlarms()) {
                 bridge.getWebView().evaluateJavascript(
                     "if(window.onExactAlarmPermissionMissing) window.onExactAlarmPermissionMissing();",
                     null);
+            } else if (InexactFallback.isActive(this)) {
+                // Allowed again from the settings screen the callback led to
+                InexactFallback.restoreExactAsync(this, null);
             }
         }
     }
 
+    @Override
+    public void onPause() {
+        ForegroundTimers.activityPaused();
+        super.onPause();
+    }
+
     /** Prompts the user to grant exact-alarm permission on Android 12+. */
     private void requestExactAlarmPermission() {
         if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.S) {
@@ -0,0 +1,188 @@
+package app.amir.quicknotif;
+
+import android.content.Context;
+
+import com.getcapacitor.JSArray;
+import com.getcapacitor.JSObject;
+import com.getcapacitor.Plugin;
+import com.getcapacitor.PluginCall;
+import com.getcapacitor.PluginMethod;
+import com.getcapacitor.annotation.CapacitorPlugin;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Capacitor plugin through which the web app arms, cancels and checks notification alarms.
+ *
+ * <p>The web app used to schedule with {@code @capacitor/local-notifications} and then poll
+ * {@code getPending()} with sleeps until the notification showed up, while {@link NotifUtils}
+ * armed its own {@link NotificationReceiver} alarm for the same id: two alarms and two wakeups
+ * per notification. Each call here goes through {@link NotifUtils} and answers from the
+ * {@link AlarmRegistry} once it returns, so there is one alarm per notification and the
+ * promise resolves when it is armed.
+ *
+ * <p>The web app stores the notification before calling {@code schedule} and {@code cancel};
+ * the alarm is armed for the stored entry, with its stored delivery class and type. Calls run
+ * on Capacitor's plugin thread, not the main thread.
+ */
+@CapacitorPlugin(name = "NativeScheduler")
+public class NativeSchedulerPlugin extends Plugin {
+
+    private static final String TAG = "NativeScheduler";
+
+    /** How a notification is covered, as reported to the web app. */
+    static final String ARMED_ALARM      = "alarm";
+    static final String ARMED_IN_PROCESS = "inProcess";
+    static final String ARMED_DISPATCH   = "dispatch";
+    static final String ARMED_DEFERRED   = "deferred";
+
+    /**
+     * Arms the alarm of the stored notification {@code id} and resolves with
+     * {@code {id, numericId, scheduledAt, armedAs}}. Rejects if it is not stored, is disabled,
+     * or is not armed afterwards.
+     */
+    @PluginMethod
+    public void schedule(PluginCall call) {
+        String id = call.getString("id");
+        if (id == null || id.isEmpty()) {
+            call.reject("Missing notification id");
+            return;
+        }
+        try {
+            call.resolve(toJS(schedule(getContext(), id, System.currentTimeMillis())));
+        } catch (IllegalStateException e) {
+            call.reject(e.getMessage());
+        } catch (JSONException e) {
+            AppLogger.e(TAG, "❌ Failed to read notification " + id, e);
+            call.reject("Failed to read stored notifications", e);
+        }
+    }
+
+    /** Cancels the alarm of {@code id} and resolves with {@code {id, cancelled}}. */
+    @PluginMethod
+    public void cancel(PluginCall call) {
+        String id = call.getString("id");
+        if (id == null || id.isEmpty()) {
+            call.reject("Missing notification id");
+            return;
+        }
+        JSObject result = new JSObject();
+        result.put("id", id);
+        result.put("cancelled", cancel(getContext(), id));
+        call.resolve(result);
+    }
+
+    /**
+     * Resolves once native edits are folded into the {@code notifications} key (see
+     * {@link NotificationRepository#flush()}), so a read of the key that follows sees them.
+     */
+    @PluginMethod
+    public void flush(PluginCall call) {
+        NotificationRepository.get(getContext()).flush();
+        call.resolve();
+    }
+
+    /** Resolves with {@code {armed, missing}}: which of {@code ids} have their alarm armed. */
+    @PluginMethod
+    public void verify(PluginCall call) {
+        JSArray ids = call.getArray("ids");
+        if (ids == null) {
+            call.reject("Missing notification ids");
+            return;
+        }
+        try {
+            call.resolve(toJS(verify(getContext(), ids, System.currentTimeMillis())));
+        } catch (JSONException e) {
+            AppLogger.e(TAG, "❌ Failed to verify alarms", e);
+            call.reject("Failed to verify alarms", e);
+        }
+    }
+
+    /**
+     * Arms the stored notification {@code id} through {@link NotifUtils#scheduleAlarm}.
+     *
+     * @throws IllegalStateException if it is not stored, is disabled, or is not armed afterwards.
+     */
+    static JSONObject schedule(Context context, String id, long now) throws JSONException {
+        JSONObject stored = NotificationRepository.get(context).snapshot().get(id);
+        if (stored == null) {
+            throw new IllegalStateException("Notification " + id + " is not stored");
+        }
+        if (!stored.optBoolean(NotifUtils.JSON_KEY_ENABLED, false)) {
+            throw new IllegalStateException("Notification " + id + " is disabled");
+        }
+        String name = stored.optString(NotifUtils.JSON_KEY_NAME, "");
+        long scheduledAt = NotifUtils.parseScheduledAt(stored);
+        if (scheduledAt <= 0) {
+            throw new IllegalStateException("Notification " + id + " has no scheduled time");
+        }
+
+        NotifUtils.scheduleAlarm(context, id, name, scheduledAt, DeliveryClass.of(stored));
+        String armedAs = armedAs(context, id, scheduledAt, now);
+        if (armedAs == null) {
+            throw new IllegalStateException("Alarm for " + id + " was not armed");
+        }
+
+        JSONObject result = new JSONObject();
+        result.put("id", id);
+        result.put("numericId", NotifUtils.numericIdFor(context, id));
+        result.put("scheduledAt", scheduledAt);
+        result.put("armedAs", armedAs);
+        return result;
+    }
+
+    /** Cancels the alarm of {@code id}; returns whether one was armed or held. */
+    static boolean cancel(Context context, String id) {
+        boolean had = AlarmRegistry.get(context).isArmed(NotifUtils.numericIdFor(context, id))
+                || ForegroundTimers.holds(id);
+        NotifUtils.cancelAlarm(context, id);
+        return had;
+    }
+
+    /** Splits {@code ids} into the ones whose stored notification is covered and the rest. */
+    static JSONObject verify(Context context, JSONArray ids, long now) throws JSONException {
+        NotificationStore store = NotificationRepository.get(context).snapshot();
+        JSONArray armed = new JSONArray();
+        JSONArray missing = new JSONArray();
+        for (int i = 0; i < ids.length(); i++) {
+            String id = ids.optString(i, "");
+            long scheduledAt = store.scheduledAtOf(id);
+            if (scheduledAt > 0 && armedAs(context, id, scheduledAt, now) != null) {
+                armed.put(id);
+            } else {
+                missing.put(id);
+            }
+        }
+        JSONObject result = new JSONObject();
+        result.put("armed", armed);
+        result.put("missing", missing);
+        return result;
+    }
+
+    /**
+     * How the notification {@code id} due at {@code scheduledAt} is covered, or {@code null} if
+     * it is not: its own alarm (or a coalesced one), an in-process timer, the single dispatch
+     * alarm, or, beyond the {@link AlarmHorizon}, the horizon's advance alarm.
+     */
+    static String armedAs(Context context, String id, long scheduledAt, long now) {
+        if (AlarmDispatcher.isEnabled(context)) {
+            return AlarmDispatcher.isArmed(context) ? ARMED_DISPATCH : null;
+        }
+        if (ForegroundTimers.holds(id, scheduledAt)) {
+            return ARMED_IN_PROCESS;
+        }
+        if (AlarmRegistry.get(context).isArmedAt(NotifUtils.numericIdFor(context, id), scheduledAt)) {
+            return ARMED_ALARM;
+        }
+        if (AlarmHorizon.defers(context, scheduledAt, now)) {
+            return AlarmHorizon.isAdvanceArmed(context) ? ARMED_DEFERRED : null;
+        }
+        return null;
+    }
+
+    private static JSObject toJS(JSONObject json) throws JSONException {
+        return JSObject.fromJSONObject(json);
+    }
+}
@@ -8,12 +8,19 @@ import android.content.ComponentName;
 import android.content.Context;
 import android.content.Intent;
 import android.content.SharedPreferences;
+
+import org.json.JSONObject;
+
 import java.io.File;
 import java.io.FileWriter;
 import java.text.SimpleDateFormat;
+import java.util.Collection;
 import java.util.Date;
+import java.util.List;
 import java.util.Locale;
 import java.util.TimeZone;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Shared constants and utility methods used across widget, receiver, and activity classes.
@@ -37,9 +44,11 @@ public final class NotifUtils {
     public static final String JSON_KEY_ENABLED      = "enabled";
     public static final String JSON_KEY_SCHEDULED_AT = "scheduledAt";
     public static final String JSON_KEY_UPDATED_AT   = "updatedAt";
+    public static final String JSON_KEY_CREATED_AT   = "createdAt";
     public static final String JSON_KEY_TYPE         = "type";
     public static final String JSON_KEY_TIME         = "time";
     public static final String JSON_KEY_INTERVAL     = "interval";
+    public static final String JSON_KEY_DELIVERY_CLASS = "deliveryClass";
 
     // Notification type values (must match TypeScript string literals)
     public static final String TYPE_RELATIVE = "relative";
@@ -53,15 +62,28 @@ public final class NotifUtils {
     public static final String EXTRA_NOTIFICATION_ID   = "notificationId";
     public static final String EXTRA_NOTIFICATION_NAME = "notificationName";
     public static final String EXTRA_NOTIFICATION_TYPE = "notificationType";
+    public static final String EXTRA_SCHEDULED_AT      = "scheduledAt";
+    public static final String EXTRA_GENERATION        = "generation";
+    public static final String EXTRA_LEAD_MS           = "leadMs";
+    public static final String EXTRA_SLOTTED           = "slotted";
 
     // Logging
     public static final String LOG_FILE_NAME = "notification_debug.log";
 
+    private static final String[] TIMESTAMP_KEYS = {
+            JSON_KEY_SCHEDULED_AT, JSON_KEY_UPDATED_AT, JSON_KEY_CREATED_AT
+    };
+
+    // Timestamps that had to be parsed from ISO strings (see parseIsoTimestamp)
+    private static final AtomicLong isoTimestampFallbacks = new AtomicLong();
+
     private NotifUtils() {}
 
     /**
      * DJB2-variant hash: converts a string notification ID to a stable positive int.
-     * MUST stay identical to toNumericId() in notificationService.ts.
+     * MUST stay identical to legacyNumericId() in notificationUtils.ts.
+     * Different ids can hash to the same int; use {@link #numericIdFor} for request codes and
+     * notification ids. This hash is only its first choice.
      */
     public static int generateNumericId(String stringId) {
         int hash = 5381;
@@ -71,73 +93,172 @@ public final class NotifUtils {
         return Math.abs(hash) % (Integer.MAX_VALUE - 1) + 1;
     }
 
+    /**
+     * The collision-free int for a string notification ID, used as its PendingIntent request
+     * code and NotificationManager id (see {@link NumericIdAllocator}).
+     */
+    public static int numericIdFor(Context context, String stringId) {
+        return NumericIdAllocator.get(context).numericIdFor(stringId);
+    }
+
     public static SharedPreferences getPrefs(Context context) {
         return context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
     }
 
     /**
      * Parse the {@code scheduledAt} field from a notification JSONObject.
-     * Tries to read it as a long (milliseconds since epoch); falls back to an ISO 8601 string.
+     * Timestamps are stored as milliseconds since epoch (schema version 2, see
+     * {@link NotificationSchema}); an ISO 8601 string left by older data is still accepted
+     * through the counted {@link #parseIsoTimestamp} fallback.
      * Returns {@code 0} if the field is absent or cannot be parsed.
      */
     public static long parseScheduledAt(org.json.JSONObject obj) {
+        return parseTimestamp(obj.opt(JSON_KEY_SCHEDULED_AT));
+    }
+
+    /**
+     * Parse a stored timestamp value: a number of epoch millis (the canonical form), a numeric
+     * string, or an ISO 8601 string. Returns {@code 0} if absent or unparseable.
+     */
+    public static long parseTimestamp(Object value) {
+        if (value instanceof Number) {
+            return ((Number) value).longValue();
+        }
+        if (!(value instanceof String)) return 0L;
+        String s = (String) value;
         try {
-            return obj.getLong(JSON_KEY_SCHEDULED_AT);
-        } catch (Exception e) {
-            String s = obj.optString(JSON_KEY_SCHEDULED_AT, "");
-            if (!s.isEmpty()) {
-                try {
-                    SimpleDateFormat fmt = new SimpleDateFormat(ISO_DATE_FORMAT, Locale.US);
-                    fmt.setTimeZone(TimeZone.getTimeZone(UTC_TIMEZONE));
-                    Date parsed = fmt.parse(s);
-                    if (parsed != null) return parsed.getTime();
-                } catch (Exception ignored) {}
+            return Long.parseLong(s);
+        } catch (NumberFormatException e) {
+            return parseIsoTimestamp(s);
+        }
+    }
+
+    /**
+     * Rewrites the {@code scheduledAt}, {@code updatedAt} and {@code createdAt} fields of
+     * {@code obj} to epoch millis if they are stored as strings. Unparseable values are left as
+     * they are. Returns {@code true} if anything changed.
+     */
+    public static boolean normalizeTimestamps(org.json.JSONObject obj) throws org.json.JSONException {
+        boolean changed = false;
+        for (String key : TIMESTAMP_KEYS) {
+            Object value = obj.opt(key);
+            if (!(value instanceof String)) continue;
+            long millis = parseTimestamp(value);
+            if (millis > 0) {
+                obj.put(key, millis);
+                changed = true;
             }
         }
+        return changed;
+    }
+
+    /**
+     * Number of timestamps parsed from ISO strings since the process started. Should stay at 0
+     * once storage has been migrated to epoch millis; anything else means a writer is still
+     * producing strings.
+     */
+    public static long isoTimestampFallbackCount() {
+        return isoTimestampFallbacks.get();
+    }
+
+    /**
+     * Parse an ISO 8601 timestamp in {@link #ISO_DATE_FORMAT} (as written by {@code Date.toJSON()}).
+     * Returns {@code 0} if the string is empty or cannot be parsed. This is the slow path
+     * (a new SimpleDateFormat per call) and every use is counted in
+     * {@link #isoTimestampFallbackCount()}.
+     */
+    public static long parseIsoTimestamp(String s) {
+        if (s == null || s.isEmpty()) return 0L;
+        isoTimestampFallbacks.incrementAndGet();
+        try {
+            SimpleDateFormat fmt = new SimpleDateFormat(ISO_DATE_FORMAT, Locale.US);
+            fmt.setTimeZone(TimeZone.getTimeZone(UTC_TIMEZONE));
+            Date parsed = fmt.parse(s);
+            if (parsed != null) return parsed.getTime();
+        } catch (Exception ignored) {}
         return 0L;
     }
 
+    /**
+     * Returns the stored notifications array. Pending journal records are folded into the
+     * snapshot first (see {@link NotificationRepository#flush()}), so the result is complete.
+     */
     public static String readNotificationsJson(Context context) {
-        return getPrefs(context).getString(KEY_NOTIFICATIONS, "[]");
+        NotificationRepository repository = NotificationRepository.get(context);
+        repository.flush();
+        return repository.writeQueue().peek();
     }
 
-    public static synchronized void saveNotificationsJson(Context context, String json) {
-        boolean success = getPrefs(context).edit().putString(KEY_NOTIFICATIONS, json).commit();
-        if (!success) {
-            AppLogger.e(TAG, "❌ Failed to commit notifications to SharedPreferences");
+    /**
+     * Queues {@code json} to be written to {@link #KEY_NOTIFICATIONS} on the background writer
+     * (see {@link NotificationWriteQueue}) and returns without waiting for disk I/O. The new value
+     * is visible to {@link #readNotificationsJson} immediately. Callers that need durability can
+     * wait on the returned future, which completes with {@code true} once the write is on disk.
+     */
+    public static Future<Boolean> saveNotificationsJson(Context context, String json) {
+        return NotificationRepository.get(context).writeQueue().enqueue(json);
+    }
+
+    /**
+     * Schedule an alarm for the given notification with the {@link DeliveryClass} stored on it
+     * ({@link DeliveryClass#EXACT} if it has none or is not stored yet).
+     */
+    public static void scheduleAlarm(Context context, String id, String name, long scheduledAt) {
+        String deliveryClass = DeliveryClass.EXACT;
+        try {
+            deliveryClass = DeliveryClass.of(NotificationRepository.get(context).snapshot().get(id));
+        } catch (Exception e) {
+            AppLogger.w(TAG,"⚠️ Could not read delivery class of " + id + ", using exact");
         }
+        scheduleAlarm(context, id, name, scheduledAt, deliveryClass);
     }
 
     /**
-     * Schedule an exact alarm for the given notification.
+     * Schedule an alarm for the given notification, armed as {@code deliveryClass} (see
+     * {@link DeliveryClass}).
      * Cancels any existing alarm for the same ID first to prevent duplicates.
+     * In {@link AlarmDispatcher#MODE_NEXT_DUE} mode no per-notification alarm is created; the
+     * single dispatch alarm is re-armed instead, so the notification must already be stored.
+     * With an {@link AlarmHorizon} set, a notification due beyond it is not armed yet; any
+     * earlier alarm it had is cancelled and the horizon's advance alarm is armed for it.
+     * While the app is in the foreground, a short exact timer is held by {@link ForegroundTimers}
+     * instead of getting an alarm.
      */
-    public static void scheduleAlarm(Context context, String id, String name, long scheduledAt) {
+    public static void scheduleAlarm(Context context, String id, String name, long scheduledAt,
+                                     String deliveryClass) {
         try {
             AppLogger.d(TAG,"📅 Scheduling alarm: " + name + " at " + new Date(scheduledAt));
 
-            Intent notificationIntent = new Intent(context, NotificationReceiver.class);
-            notificationIntent.putExtra(EXTRA_NOTIFICATION_ID, id);
-            notificationIntent.putExtra(EXTRA_NOTIFICATION_NAME, name);
-
-            int numericId = generateNumericId(id);
-
-            PendingIntent pendingIntent = PendingIntent.getBroadcast(
-                    context,
-                    numericId,
-                    notificationIntent,
-                    PendingIntent.FLAG_UPDATE_CURRENT | PendingIntent.FLAG_IMMUTABLE
-            );
+            if (AlarmDispatcher.isEnabled(context)) {
+                AlarmDispatcher.schedule(context, scheduledAt, System.currentTimeMillis());
+                return;
+            }
 
             AlarmManager alarmManager = (AlarmManager) context.getSystemService(Context.ALARM_SERVICE);
-            if (alarmManager != null) {
-                alarmManager.cancel(pendingIntent);
-                alarmManager.setExactAndAllowWhileIdle(
-                        AlarmManager.RTC_WAKEUP,
-                        scheduledAt,
-                        pendingIntent
-                );
-                AppLogger.d(TAG,"✅ Alarm for " + name + " scheduled in AlarmManager");
+            long now = System.currentTimeMillis();
+            if (alarmManager != null && AlarmHorizon.defers(context, scheduledAt, now)) {
+                cancelIfArmed(context, alarmManager, new Intent(context, NotificationReceiver.class), id);
+                AlarmHorizon.armAdvance(context, NotificationRepository.get(context).snapshot(), now, scheduledAt);
+                AppLogger.d(TAG,"⏭️ " + name + " is beyond the alarm horizon, not armed yet");
+            } else if (ForegroundTimers.offer(context, id, name, scheduledAt, deliveryClass, now)) {
+                // Only asks the system to cancel if an alarm was armed for it before
+                if (alarmManager != null) {
+                    cancelArmedAlarm(context, alarmManager, new Intent(context, NotificationReceiver.class),
+                            numericIdFor(context, id));
+                }
+                AppLogger.d(TAG,"✅ " + name + " held in process, no alarm needed");
+            } else if (alarmManager != null) {
+                boolean relative = armsOnElapsedClock(context, id, deliveryClass);
+                if (AlarmRegistry.get(context).isArmedAs(numericIdFor(context, id), scheduledAt,
+                        deliveryClass, relative)) {
+                    // The alarm carries only the id, so an edit that keeps the time, class and
+                    // clock changes nothing
+                    AppLogger.d(TAG,"✅ Alarm for " + name + " already armed for that time");
+                } else {
+                    armAlarm(context, alarmManager, new Intent(context, NotificationReceiver.class),
+                            id, name, scheduledAt, deliveryClass, relative);
+                    AppLogger.d(TAG,"✅ Alarm for " + name + " scheduled in AlarmManager");
+                }
             } else {
                 AppLogger.e(TAG,"❌ AlarmManager is null");
             }
@@ -146,14 +267,182 @@ public final class NotifUtils {
         }
     }
 
-    /** Cancel an existing alarm by string notification ID. */
+    /**
+     * Schedule alarms for many notifications in one pass, e.g. after boot. Services are looked
+     * up once, and a notification is skipped if the {@link AlarmRegistry} shows its alarm armed
+     * for the same {@code scheduledAt}, without asking the system. Entries without an id or time are
+     * counted as failed. The {@link AlarmHorizon} is not applied here; with one set, callers pass
+     * only the slice within it. In {@link AlarmDispatcher#MODE_NEXT_DUE} mode this re-arms the single
+     * dispatch alarm instead.
+     */
+    public static AlarmBatchReport scheduleAlarms(Context context, Collection<JSONObject> notifications) {
+        long start = System.nanoTime();
+        int armed = 0, skipped = 0, failed = 0;
+        long alarmNanos = 0;
+
+        if (AlarmDispatcher.isEnabled(context)) {
+            try {
+                long t = System.nanoTime();
+                armed = AlarmDispatcher.arm(context, System.currentTimeMillis()) > 0 ? 1 : 0;
+                alarmNanos = System.nanoTime() - t;
+                skipped = notifications.size() - armed;
+            } catch (Exception e) {
+                AppLogger.e(TAG,"❌ Failed to arm dispatch alarm", e);
+                failed = notifications.size();
+            }
+            return new AlarmBatchReport(notifications.size(), armed, skipped, 0, failed,
+                    System.nanoTime() - start, alarmNanos);
+        }
+
+        AlarmManager alarmManager = (AlarmManager) context.getSystemService(Context.ALARM_SERVICE);
+        if (alarmManager == null) {
+            AppLogger.e(TAG,"❌ AlarmManager is null");
+            return new AlarmBatchReport(notifications.size(), 0, 0, 0, notifications.size(),
+                    System.nanoTime() - start, 0);
+        }
+        AlarmRegistry registry = AlarmRegistry.get(context);
+        Intent intent = new Intent(context, NotificationReceiver.class);
+        for (JSONObject obj : notifications) {
+            String id = obj.optString(JSON_KEY_ID, "");
+            long scheduledAt = parseScheduledAt(obj);
+            if (id.isEmpty() || scheduledAt <= 0) {
+                failed++;
+                continue;
+            }
+            long t = System.nanoTime();
+            try {
+                if (armIfNeeded(context, alarmManager, registry, intent, id, scheduledAt, obj)) {
+                    armed++;
+                } else {
+                    skipped++;
+                }
+            } catch (Exception e) {
+                AppLogger.e(TAG,"❌ Failed to schedule alarm for ID: " + id, e);
+                failed++;
+            }
+            alarmNanos += System.nanoTime() - t;
+        }
+        return new AlarmBatchReport(notifications.size(), armed, skipped, 0, failed,
+                System.nanoTime() - start, alarmNanos);
+    }
+
+    /**
+     * Arms the alarm of the stored entry {@code obj} ({@code id}, due at {@code scheduledAt})
+     * unless the {@link AlarmRegistry} shows it armed for that time, delivery class and clock;
+     * returns whether it armed one. {@code intent} is filled in for the alarm, so concurrent
+     * callers need one each.
+     */
+    static boolean armIfNeeded(Context context, AlarmManager alarmManager, AlarmRegistry registry,
+                               Intent intent, String id, long scheduledAt, JSONObject obj) {
+        String deliveryClass = DeliveryClass.of(obj);
+        boolean elapsed = ElapsedSchedule.applies(obj);
+        if (registry.isArmedAs(numericIdFor(context, id), scheduledAt, deliveryClass, elapsed)) return false;
+        armAlarm(context, alarmManager, intent, id, obj.optString(JSON_KEY_NAME, ""), scheduledAt,
+                deliveryClass, elapsed);
+        return true;
+    }
+
+    /**
+     * Arms the per-notification alarm for {@code id} and records its trigger time, or records it
+     * as riding on an alarm due shortly before (see {@link WakeupCoalescer}). A timer
+     * {@link ForegroundTimers} held for it is dropped. A {@code relative} notification is armed
+     * on the elapsed-realtime clock (see {@link ElapsedSchedule}). Exact alarms are armed
+     * {@link FireLead} early.
+     */
+    private static void armAlarm(Context context, AlarmManager alarmManager, Intent intent,
+                                 String id, String name, long scheduledAt, String deliveryClass,
+                                 boolean relative) {
+        ForegroundTimers.release(id);
+        int numericId = numericIdFor(context, id);
+        AlarmRegistry registry = AlarmRegistry.get(context);
+        // Followers of the alarm being moved have to find a new one
+        List<AlarmRegistry.Entry> orphans = registry.removeFollowersOf(numericId);
+
+        AlarmRegistry.Entry leader = WakeupCoalescer.leaderFor(context, numericId, scheduledAt, deliveryClass);
+        if (leader != null) {
+            cancelIfArmed(context, alarmManager, intent, id);
+            registry.recordFollower(id, numericId, scheduledAt, leader.numericId, deliveryClass, relative);
+            AppLogger.d(TAG,"🔗 " + name + " coalesced into the alarm of " + leader.id);
+            WakeupCoalescer.rehome(context, orphans);
+            return;
+        }
+
+        // Only the id and the generation travel with the alarm; the receiver reads the rest
+        // from storage, so renames need no re-arm
+        AlarmRegistry.Entry entry = registry.record(id, numericId, scheduledAt, deliveryClass, relative);
+        intent.putExtra(EXTRA_NOTIFICATION_ID, id);
+        intent.putExtra(EXTRA_GENERATION, entry.generation);
+        // Without the exact-alarm permission it goes into a slot (see InexactFallback)
+        boolean slotted = !DeliveryClass.WINDOWED.equals(DeliveryClass.normalize(deliveryClass))
+                && !InexactFallback.exactAllowed(context);
+        // Exact alarms go off early by how late this device tends to deliver them
+        long lead = !slotted && DeliveryClass.EXACT.equals(DeliveryClass.normalize(deliveryClass))
+                ? FireLead.leadMs(context) : 0L;
+        intent.putExtra(EXTRA_LEAD_MS, lead);
+        intent.putExtra(EXTRA_SLOTTED, slotted);
+
+        PendingIntent pendingIntent = PendingIntent.getBroadcast(
+                context,
+                numericId,
+                intent,
+                PendingIntent.FLAG_UPDATE_CURRENT | PendingIntent.FLAG_IMMUTABLE
+        );
+
+        try {
+            alarmManager.cancel(pendingIntent);
+            if (relative) {
+                long elapsedAt = ElapsedSchedule.elapsedAt(context, id, scheduledAt);
+                DeliveryClass.armElapsed(context, alarmManager, deliveryClass, scheduledAt - lead,
+                        elapsedAt - lead, pendingIntent);
+            } else {
+                DeliveryClass.arm(context, alarmManager, deliveryClass, scheduledAt - lead, pendingIntent);
+            }
+        } catch (RuntimeException e) {
+            registry.remove(numericId);
+            throw e;
+        }
+        WakeupCoalescer.rehome(context, orphans);
+    }
+
+    /**
+     * Whether the stored notification {@code id}, armed as {@code deliveryClass}, goes on the
+     * elapsed clock: the same rule as {@link #armIfNeeded}, {@link ElapsedSchedule#applies}.
+     */
+    private static boolean armsOnElapsedClock(Context context, String id, String deliveryClass) {
+        if (DeliveryClass.ALARM_CLOCK.equals(DeliveryClass.normalize(deliveryClass))) return false;
+        try {
+            return ElapsedSchedule.applies(NotificationRepository.get(context).snapshot().get(id));
+        } catch (Exception e) {
+            AppLogger.w(TAG,"⚠️ Could not read type of " + id + ", using the wall clock");
+            return false;
+        }
+    }
+
+    /**
+     * Forgets the alarm of {@code numericId} in the {@link AlarmRegistry} once it has been
+     * cancelled, and schedules again any notifications that were coalesced into it.
+     */
+    static void forgetAlarm(Context context, int numericId) {
+        AlarmRegistry registry = AlarmRegistry.get(context);
+        registry.remove(numericId);
+        WakeupCoalescer.rehome(context, registry.removeFollowersOf(numericId));
+    }
+
+    /**
+     * Cancel an existing alarm by string notification ID. Call after the notification has been
+     * disabled or deleted in storage, so the dispatch alarm (next-due mode) skips it.
+     */
     public static void cancelAlarm(Context context, String id) {
         try {
             Intent notificationIntent = new Intent(context, NotificationReceiver.class);
             notificationIntent.putExtra(EXTRA_NOTIFICATION_ID, id);
-            notificationIntent.putExtra(EXTRA_NOTIFICATION_NAME, "");
 
-            int numericId = generateNumericId(id);
+            int numericId = numericIdFor(context, id);
+            ElapsedSchedule.forget(context, id);
+            if (ForegroundTimers.release(id) && !AlarmRegistry.get(context).isArmed(numericId)) {
+                AppLogger.d(TAG,"✅ In-process timer canceled for ID: " + id);
+                return;
+            }
 
             PendingIntent pendingIntent = PendingIntent.getBroadcast(
                     context,
@@ -165,13 +454,98 @@ public final class NotifUtils {
             AlarmManager alarmManager = (AlarmManager) context.getSystemService(Context.ALARM_SERVICE);
             if (alarmManager != null) {
                 alarmManager.cancel(pendingIntent);
+                forgetAlarm(context, numericId);
                 AppLogger.d(TAG,"✅ Alarm canceled for ID: " + id);
             }
+
+            if (AlarmDispatcher.isEnabled(context)) {
+                // Moves the dispatch alarm on if this was the next notification due
+                AlarmDispatcher.arm(context, System.currentTimeMillis());
+            }
         } catch (Exception e) {
             AppLogger.e(TAG,"❌ Failed to cancel alarm", e);
         }
     }
 
+    /**
+     * Cancel the alarm for a string notification ID and release its PendingIntent, but only if
+     * the {@link AlarmRegistry} records one; ids it does not know cost no system call.
+     * Returns {@code true} if there was one to cancel.
+     */
+    public static boolean cancelPendingAlarm(Context context, String id) {
+        AlarmManager alarmManager = (AlarmManager) context.getSystemService(Context.ALARM_SERVICE);
+        boolean cancelled = cancelIfArmed(context, alarmManager, new Intent(context, NotificationReceiver.class), id);
+        if (cancelled) {
+            AppLogger.d(TAG,"✅ Cancelled leftover alarm for ID: " + id);
+        }
+        return cancelled;
+    }
+
+    /**
+     * {@link #cancelPendingAlarm} for many ids in one pass, with services looked up once. Ids
+     * the registry records no alarm for are counted as skipped, without a system call.
+     */
+    public static AlarmBatchReport cancelAlarms(Context context, Collection<String> ids) {
+        long start = System.nanoTime();
+        int cancelled = 0, skipped = 0, failed = 0;
+        long alarmNanos = 0;
+        AlarmManager alarmManager = (AlarmManager) context.getSystemService(Context.ALARM_SERVICE);
+        Intent intent = new Intent(context, NotificationReceiver.class);
+        for (String id : ids) {
+            long t = System.nanoTime();
+            try {
+                if (cancelIfArmed(context, alarmManager, intent, id)) {
+                    cancelled++;
+                } else {
+                    skipped++;
+                }
+            } catch (Exception e) {
+                AppLogger.e(TAG,"❌ Failed to cancel alarm for ID: " + id, e);
+                failed++;
+            }
+            alarmNanos += System.nanoTime() - t;
+        }
+        return new AlarmBatchReport(ids.size(), 0, skipped, cancelled, failed,
+                System.nanoTime() - start, alarmNanos);
+    }
+
+    private static boolean cancelIfArmed(Context context, AlarmManager alarmManager, Intent intent, String id) {
+        int numericId = numericIdFor(context, id);
+        ElapsedSchedule.forget(context, id);
+        if (ForegroundTimers.release(id) && !AlarmRegistry.get(context).isArmed(numericId)) {
+            // Held in process only: nothing to ask the system about
+            return true;
+        }
+        return cancelArmedAlarm(context, alarmManager, intent, numericId);
+    }
+
+    /**
+     * Cancels the alarm the {@link AlarmRegistry} records for {@code numericId}. Only recorded
+     * alarms are looked up with the system; whether the registry still matches the system is
+     * {@link AlarmRegistry#reconcile}'s job. A follower has no alarm of its own and is only
+     * forgotten.
+     */
+    private static boolean cancelArmedAlarm(Context context, AlarmManager alarmManager, Intent intent,
+                                            int numericId) {
+        AlarmRegistry.Entry entry = AlarmRegistry.get(context).get(numericId);
+        if (entry == null) return false;
+        forgetAlarm(context, numericId);
+        if (entry.isFollower()) return false;
+        PendingIntent existing = PendingIntent.getBroadcast(
+                context,
+                numericId,
+                intent,
+                PendingIntent.FLAG_NO_CREATE | PendingIntent.FLAG_IMMUTABLE
+        );
+        if (existing == null) return false;
+
+        if (alarmManager != null) {
+            alarmManager.cancel(existing);
+        }
+        existing.cancel();
+        return true;
+    }
+
     /**
      * Append a line to the debug log file in Documents/.
      * Pass scheduledAt=0 when there is no scheduled time to report.
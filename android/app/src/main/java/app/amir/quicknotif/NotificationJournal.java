@@ -0,0 +1,384 @@
+package app.amir.quicknotif;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Append-only write-ahead journal of notification mutations, stored next to the
+ * {@link NotifUtils#KEY_NOTIFICATIONS} snapshot.
+ *
+ * <p>Each mutation is one JSON object on its own line, e.g.
+ * {@code {"op":"create","entry":{...}}} or {@code {"op":"delete","id":"..."}}, and is written
+ * with a single append followed by an fsync, so a write costs the size of the record rather than
+ * the size of the whole list. {@link NotificationRepository} replays the journal on top of the
+ * snapshot when it loads, and folds it back into the snapshot during compaction.
+ *
+ * <p>The records only make sense on top of the snapshot they were written against. The first
+ * line of the file is a header, {@code {"op":"base","snapshots":[...]}}, listing the
+ * {@link #fingerprint fingerprints} of the snapshots the records build on (set with
+ * {@link #rebase}). If another writer, such as the web app's {@code Preferences.set}, has
+ * replaced the key since, the snapshot is newer than every record and {@link #replay} discards
+ * them rather than letting them override its edits. Files without a header are replayed as is.
+ *
+ * <p>Crash recovery: records carry complete entries (or an id, for deletes), so replaying one
+ * that is already part of the snapshot is harmless. A crash during an append can leave a partial
+ * last line; {@link #replay} ignores it and truncates the file back to the last complete record
+ * so later appends start on a fresh line. Compaction lists both the old and the new snapshot in
+ * the header while the new one is written, and commits it before it truncates the journal, so a
+ * crash in between only causes the same records to be replayed again.
+ *
+ * <p>Not thread-safe; the repository serialises all access.
+ */
+public final class NotificationJournal {
+
+    private static final String TAG = "NotificationJournal";
+
+    public static final String FILE_NAME = "notifications.journal";
+
+    // Operation names written to the journal
+    public static final String OP_CREATE     = "create";
+    public static final String OP_UPDATE     = "update";
+    public static final String OP_REACTIVATE = "reactivate";
+    public static final String OP_DELETE     = "delete";
+    // Header line, never counted as a record
+    private static final String OP_BASE      = "base";
+
+    private static final String KEY_OP        = "op";
+    private static final String KEY_ENTRY     = "entry";
+    private static final String KEY_ID        = "id";
+    private static final String KEY_SNAPSHOTS = "snapshots";
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final File file;
+    private int recordCount;
+    // Sequence number of the first record in the file; records are numbered in append order
+    private long firstSeq;
+    // Fingerprints of the snapshots the records build on; empty until the first rebase
+    private List<String> bases = Collections.emptyList();
+
+    public NotificationJournal(File file) {
+        this.file = file;
+    }
+
+    /** One journaled mutation: a put carrying the full entry, or a delete carrying the id. */
+    public static final class Record {
+        final String op;
+        final String id;
+        final JSONObject entry;
+
+        private Record(String op, String id, JSONObject entry) {
+            this.op = op;
+            this.id = id;
+            this.entry = entry;
+        }
+
+        /** A create / update / reactivate record. */
+        public static Record put(String op, JSONObject entry) {
+            return new Record(op, null, entry);
+        }
+
+        public static Record delete(String id) {
+            return new Record(OP_DELETE, id, null);
+        }
+
+        String encode() throws JSONException {
+            JSONObject record = new JSONObject();
+            record.put(KEY_OP, op);
+            if (entry != null) {
+                record.put(KEY_ENTRY, entry);
+            } else {
+                record.put(KEY_ID, id);
+            }
+            return record.toString();
+        }
+    }
+
+    /** Appends a create / update / reactivate record carrying the full entry. */
+    public void appendPut(String op, JSONObject entry) throws IOException {
+        append(Collections.singletonList(Record.put(op, entry)));
+    }
+
+    /** Appends a delete record. */
+    public void appendDelete(String id) throws IOException {
+        append(Collections.singletonList(Record.delete(id)));
+    }
+
+    /**
+     * Appends the records with a single write and fsync. A crash can tear at most the last
+     * line, so a transaction's records are either replayed up to that line or not at all.
+     */
+    public void append(List<Record> records) throws IOException {
+        StringBuilder lines = new StringBuilder();
+        try {
+            if (isEmpty() && !bases.isEmpty()) {
+                lines.append(header()).append('\n');
+            }
+            for (Record record : records) {
+                lines.append(record.encode()).append('\n');
+            }
+        } catch (JSONException e) {
+            throw new IOException("Cannot encode journal record", e);
+        }
+        try (FileOutputStream out = new FileOutputStream(file, true)) {
+            out.write(lines.toString().getBytes(UTF_8));
+            out.getFD().sync();
+        }
+        recordCount += records.size();
+    }
+
+    /**
+     * Applies every complete record to {@code store} in order, whatever snapshot it was loaded
+     * from. Unreadable records are logged and skipped; a partial last line is dropped from the
+     * file.
+     *
+     * @return the number of records applied.
+     */
+    public int replay(NotificationStore store) throws IOException {
+        return replay(store, null);
+    }
+
+    /**
+     * Applies every complete record to {@code store}, which was loaded from {@code snapshot}.
+     * If the header does not list that snapshot, the records predate it and are discarded
+     * instead. Unreadable records are logged and skipped; a partial last line is dropped from the
+     * file.
+     *
+     * @param snapshot the snapshot string {@code store} was parsed from, or {@code null} to
+     *                 apply the records without checking.
+     * @return the number of records applied.
+     */
+    public int replay(NotificationStore store, String snapshot) throws IOException {
+        recordCount = 0;
+        if (!file.exists()) return 0;
+
+        byte[] bytes = readAll();
+        List<JSONObject> records = new ArrayList<>();
+        List<String> header = null;
+        int applied = 0;
+        int lineStart = 0;
+        for (int i = 0; i < bytes.length; i++) {
+            if (bytes[i] != '\n') continue;
+            String line = new String(bytes, lineStart, i - lineStart, UTF_8);
+            boolean first = lineStart == 0;
+            lineStart = i + 1;
+            try {
+                JSONObject record = new JSONObject(line);
+                if (first && OP_BASE.equals(record.optString(KEY_OP))) {
+                    header = readBases(record);
+                    continue;
+                }
+                records.add(record);
+            } catch (JSONException e) {
+                records.add(null);
+                AppLogger.w(TAG, "⚠️ Skipping unreadable journal record " + records.size() + ": " + e.getMessage());
+            }
+        }
+        recordCount = records.size();
+
+        if (lineStart < bytes.length) {
+            AppLogger.w(TAG, "⚠️ Dropping partial journal record ("
+                    + (bytes.length - lineStart) + " bytes) left by an interrupted write");
+            try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+                raf.setLength(recordCount == 0 ? 0 : lineStart);
+                raf.getFD().sync();
+            }
+        }
+
+        if (header != null) bases = header;
+        if (snapshot != null && header != null && !header.contains(fingerprint(snapshot))) {
+            AppLogger.w(TAG, "⚠️ Snapshot was replaced by another writer, discarding "
+                    + recordCount + " older journal records");
+            truncate();
+            return 0;
+        }
+
+        for (int i = 0; i < records.size(); i++) {
+            JSONObject record = records.get(i);
+            if (record == null) continue;
+            try {
+                apply(record, store);
+                applied++;
+            } catch (JSONException | IllegalArgumentException e) {
+                AppLogger.w(TAG, "⚠️ Skipping unreadable journal record " + (i + 1) + ": " + e.getMessage());
+            }
+        }
+        return applied;
+    }
+
+    private static void apply(JSONObject record, NotificationStore store) throws JSONException {
+        String op = record.getString(KEY_OP);
+        if (OP_DELETE.equals(op)) {
+            store.delete(record.getString(KEY_ID));
+        } else {
+            store.put(record.getJSONObject(KEY_ENTRY));
+        }
+    }
+
+    /**
+     * Fingerprint of a snapshot string: its length and hash, so equal contents match whichever
+     * string instance they are read into.
+     */
+    static String fingerprint(String snapshot) {
+        if (snapshot == null) return "-";
+        return snapshot.length() + ":" + Integer.toHexString(snapshot.hashCode());
+    }
+
+    /** Whether the header lists {@code snapshot} as one the records build on. */
+    public boolean buildsOn(String snapshot) {
+        return bases.contains(fingerprint(snapshot));
+    }
+
+    /**
+     * Records that the journal's records build on {@code snapshots} (any of them, while a new
+     * snapshot is being written over an old one). Rewrites the header if there are records;
+     * otherwise it is written with the next append.
+     */
+    public void rebase(String... snapshots) throws IOException {
+        List<String> fingerprints = new ArrayList<>(snapshots.length);
+        for (String snapshot : snapshots) {
+            String fingerprint = fingerprint(snapshot);
+            if (!fingerprints.contains(fingerprint)) fingerprints.add(fingerprint);
+        }
+        if (fingerprints.equals(bases)) return;
+        bases = fingerprints;
+        if (isEmpty()) return;
+        byte[] bytes = readAll();
+        rewrite(bytes, bodyStart(bytes));
+    }
+
+    /**
+     * Sequence number the next appended record will get. Capture it before writing a snapshot
+     * and pass it to {@link #dropBefore} once that snapshot is durable.
+     */
+    public long endSeq() {
+        return firstSeq + recordCount;
+    }
+
+    /**
+     * Removes the records numbered below {@code seq}, keeping any appended after them. Used once
+     * those records are part of a committed snapshot. Calling it again with the same or an
+     * older mark is a no-op.
+     */
+    public void dropBefore(long seq) throws IOException {
+        long count = seq - firstSeq;
+        if (count <= 0) return;
+        dropFirst((int) Math.min(count, recordCount));
+    }
+
+    /**
+     * Removes the first {@code count} records, keeping any appended after them.
+     */
+    public void dropFirst(int count) throws IOException {
+        if (count >= recordCount) {
+            truncate();
+            return;
+        }
+        byte[] bytes = readAll();
+        int offset = bodyStart(bytes);
+        for (int dropped = 0; dropped < count && offset < bytes.length; offset++) {
+            if (bytes[offset] == '\n') dropped++;
+        }
+        rewrite(bytes, offset);
+        recordCount -= count;
+        firstSeq += count;
+    }
+
+    /** Empties the journal. */
+    public void truncate() throws IOException {
+        if (file.exists()) {
+            try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+                raf.setLength(0);
+                raf.getFD().sync();
+            }
+        }
+        firstSeq += recordCount;
+        recordCount = 0;
+    }
+
+    /** Number of records written since the last replay or truncation. */
+    public int recordCount() {
+        return recordCount;
+    }
+
+    /** Size of the journal on disk, in bytes. */
+    public long sizeBytes() {
+        return file.length();
+    }
+
+    public boolean isEmpty() {
+        return file.length() == 0;
+    }
+
+    /** Replaces the file with the current header followed by {@code bytes} from {@code offset}. */
+    private void rewrite(byte[] bytes, int offset) throws IOException {
+        File tmp = new File(file.getPath() + ".tmp");
+        try (FileOutputStream out = new FileOutputStream(tmp)) {
+            if (!bases.isEmpty()) {
+                out.write((header() + '\n').getBytes(UTF_8));
+            }
+            out.write(bytes, offset, bytes.length - offset);
+            out.getFD().sync();
+        }
+        if (!tmp.renameTo(file)) {
+            throw new IOException("Failed to replace journal file");
+        }
+    }
+
+    /** Offset of the first record, past the header line if there is one. */
+    private static int bodyStart(byte[] bytes) {
+        int end = 0;
+        while (end < bytes.length && bytes[end] != '\n') end++;
+        if (end == bytes.length) return 0;
+        try {
+            JSONObject first = new JSONObject(new String(bytes, 0, end, UTF_8));
+            return OP_BASE.equals(first.optString(KEY_OP)) ? end + 1 : 0;
+        } catch (JSONException e) {
+            return 0;
+        }
+    }
+
+    private String header() throws IOException {
+        try {
+            return new JSONObject()
+                    .put(KEY_OP, OP_BASE)
+                    .put(KEY_SNAPSHOTS, new JSONArray(bases))
+                    .toString();
+        } catch (JSONException e) {
+            throw new IOException("Cannot encode journal header", e);
+        }
+    }
+
+    private static List<String> readBases(JSONObject header) throws JSONException {
+        JSONArray snapshots = header.getJSONArray(KEY_SNAPSHOTS);
+        List<String> bases = new ArrayList<>(snapshots.length());
+        for (int i = 0; i < snapshots.length(); i++) {
+            bases.add(snapshots.getString(i));
+        }
+        return bases;
+    }
+
+    private byte[] readAll() throws IOException {
+        try (FileInputStream in = new FileInputStream(file)) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream((int) Math.max(file.length(), 32));
+            byte[] buffer = new byte[8192];
+            int n;
+            while ((n = in.read(buffer)) != -1) {
+                out.write(buffer, 0, n);
+            }
+            return out.toByteArray();
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package app.amir.quicknotif;
 
+import android.app.AlarmManager;
 import android.app.NotificationChannel;
 import android.app.NotificationManager;
 import android.app.PendingIntent;
@@ -9,44 +10,343 @@ import android.content.Intent;
 import android.os.Build;
 import androidx.core.app.NotificationCompat;
 
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
 /**
  * Receives AlarmManager broadcasts and displays the scheduled notification.
  * This is the delivery endpoint for every notification in the app — whether
  * scheduled from the React UI, the widget, or restored after reboot.
+ *
+ * In next-due mode (see {@link AlarmDispatcher}) a single broadcast with
+ * {@link AlarmDispatcher#ACTION_DISPATCH} delivers every notification due at that point.
+ * {@link AlarmHorizon#ACTION_ADVANCE} arms the alarms that have come within the horizon.
+ * Timers held in process by {@link ForegroundTimers} are delivered here directly by its thread,
+ * and {@link ForegroundTimers#ACTION_BACKSTOP} covers them if the process died.
+ * Notifications coalesced into another one's alarm (see {@link WakeupCoalescer}) are delivered
+ * with it, posted as one group with a summary that is the only one to alert.
+ *
+ * Alarm intents carry only the notification id and the {@link AlarmRegistry} generation they
+ * were armed under. The name, delivery class and due time are read from the
+ * {@link NotificationRepository} when the alarm fires, so alarms superseded since, or left by
+ * deleted or disabled notifications, are dropped instead of posted.
+ *
+ * Exact alarms are armed {@link FireLead} early; how late each one arrived is recorded there,
+ * and one that arrives before its due time is held until then, with the alarm armed again for
+ * the due time as a backstop. The registry entry is only removed once the notification is
+ * posted or dropped.
  */
 public class NotificationReceiver extends BroadcastReceiver {
     private static final String TAG = "NotificationReceiver";
 
+    /** Holds exact alarms armed {@link FireLead} early until their due time. */
+    private static final ScheduledExecutorService DEFAULT_HOLDER = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "fire-hold");
+        t.setDaemon(true);
+        return t;
+    });
+    /** Replacement for {@link #DEFAULT_HOLDER}, or {@code null}. */
+    private static volatile Executor holder;
+
+    /**
+     * Hands held alarms to {@code executor} at once instead of waiting for their due time;
+     * {@code null} restores the default. For tests.
+     */
+    static void setHolder(Executor executor) {
+        holder = executor;
+    }
+
     @Override
     public void onReceive(Context context, Intent intent) {
         AppLogger.init(context);
 
-        String notificationId   = intent.getStringExtra(NotifUtils.EXTRA_NOTIFICATION_ID);
-        String notificationName = intent.getStringExtra(NotifUtils.EXTRA_NOTIFICATION_NAME);
+        if (AlarmDispatcher.ACTION_DISPATCH.equals(intent.getAction())) {
+            deliverDue(context);
+            return;
+        }
+        if (ForegroundTimers.ACTION_BACKSTOP.equals(intent.getAction())) {
+            try {
+                ForegroundTimers.onBackstop(context, System.currentTimeMillis());
+            } catch (Exception e) {
+                AppLogger.e(TAG, "❌ Failed to handle the timer backstop", e);
+            }
+            return;
+        }
+        if (AlarmHorizon.ACTION_ADVANCE.equals(intent.getAction())) {
+            try {
+                AlarmHorizon.advance(context, System.currentTimeMillis());
+            } catch (Exception e) {
+                AppLogger.e(TAG, "❌ Failed to advance the alarm horizon", e);
+            }
+            return;
+        }
 
+        String notificationId = intent.getStringExtra(NotifUtils.EXTRA_NOTIFICATION_ID);
         if (notificationId == null || notificationId.isEmpty()) {
             AppLogger.e(TAG, "❌ Missing notificationId in intent — cannot display notification");
             return;
         }
 
+        long now = System.currentTimeMillis();
+        int numericId = NotifUtils.numericIdFor(context, notificationId);
+        AlarmRegistry registry = AlarmRegistry.get(context);
+        long generation = intent.getLongExtra(NotifUtils.EXTRA_GENERATION, 0L);
+        long dueAt;
+        if (generation > 0) {
+            AlarmRegistry.Entry armed = registry.get(numericId);
+            if (armed == null || armed.isFollower() || armed.generation != generation) {
+                // Re-armed, coalesced or cancelled since; whatever replaced it is still armed
+                AppLogger.w(TAG, "⚠️ Dropping superseded alarm for " + notificationId);
+                return;
+            }
+            dueAt = armed.triggerAt;
+        } else {
+            // In-process timers, and alarms armed before generations, carry the due time
+            dueAt = intent.getLongExtra(NotifUtils.EXTRA_SCHEDULED_AT, 0L);
+        }
+
+        JSONObject stored = NotificationRepository.get(context).snapshot().get(notificationId);
+        if (stored == null || !stored.optBoolean(NotifUtils.JSON_KEY_ENABLED, false)) {
+            AppLogger.w(TAG, "👻 Dropping alarm for deleted or disabled notification " + notificationId);
+            registry.remove(numericId);
+            ElapsedSchedule.forget(context, notificationId);
+            return;
+        }
+        String notificationName = displayName(stored);
+        long scheduledAt = NotifUtils.parseScheduledAt(stored);
+        if (dueAt > 0 && scheduledAt != dueAt) {
+            // Stored under a new time the alarm was not re-armed for
+            AppLogger.w(TAG, "⚠️ Alarm for " + notificationName + " is no longer due");
+            registry.remove(numericId);
+            if (scheduledAt > now) {
+                NotifUtils.scheduleAlarm(context, notificationId, notificationName, scheduledAt,
+                        DeliveryClass.of(stored));
+            }
+            return;
+        }
+
         AppLogger.d(TAG, "🔔 Received notification broadcast: " + notificationName);
+        // A relative alarm was due on the elapsed clock, whatever the wall clock did since
+        long elapsedAt = ElapsedSchedule.applies(stored)
+                ? ElapsedSchedule.recorded(context, notificationId, scheduledAt) : 0L;
+        long dueWall = elapsedAt > 0 ? ElapsedSchedule.wallTimeOf(elapsedAt) : scheduledAt;
+        String deliveryClass = DeliveryClass.of(stored);
+        long lead = intent.getLongExtra(NotifUtils.EXTRA_LEAD_MS, 0L);
+        long early = dueWall - now;
+        if (generation > 0 && lead > 0 && early > FireLead.HOLD_LIMIT_MS) {
+            // Longer than the receiver may hold it, e.g. armed under an older, larger lead
+            AppLogger.w(TAG, "⚠️ Alarm for " + notificationName + " arrived " + early + "ms early, arming again");
+            registry.remove(numericId);
+            NotifUtils.scheduleAlarm(context, notificationId, notificationName, scheduledAt, deliveryClass);
+            return;
+        }
+
+        if (intent.getBooleanExtra(NotifUtils.EXTRA_SLOTTED, false)) {
+            InexactFallback.get(context).record(dueWall, now);
+        } else if (generation > 0 && DeliveryClass.EXACT.equals(deliveryClass)) {
+            // How late the system was for the time the alarm was armed for
+            FireLead.get(context).record(now - (dueWall - lead));
+        }
+
+        if (generation > 0 && lead > 0 && early > 0) {
+            // Armed early and the system was on time: wait for the due time
+            hold(context, notificationId, numericId, generation, dueWall, early);
+            return;
+        }
+        if (generation > 0) {
+            if (!registry.remove(numericId, generation)) {
+                // The backstop of a hold that has delivered it already
+                AppLogger.w(TAG, "⚠️ Alarm for " + notificationName + " was already delivered");
+                return;
+            }
+        } else {
+            registry.remove(numericId);
+        }
+        deliver(context, notificationId, numericId, stored, deliveryClass, dueWall);
+    }
+
+    /**
+     * Waits {@code early} millis, at most {@link FireLead#HOLD_LIMIT_MS}, for the due time of an
+     * alarm armed {@link FireLead} early and delivered before it. The registry entry stays until
+     * then, and the alarm is armed again for the due time, so the notification is still posted
+     * if the process dies meanwhile. The stored notification and its registry entry are read
+     * again before posting, so an edit, disable or delete during the wait is honoured.
+     */
+    private void hold(Context context, String notificationId, int numericId, long generation,
+                      long dueWall, long early) {
+        Context appContext = context.getApplicationContext();
+        armBackstop(appContext, notificationId, numericId, generation, dueWall);
+        PendingResult pending = goAsync();
+        Runnable task = () -> {
+            try {
+                JSONObject stored = NotificationRepository.get(appContext).snapshot().get(notificationId);
+                boolean due = stored != null && stored.optBoolean(NotifUtils.JSON_KEY_ENABLED, false)
+                        && AlarmRegistry.get(appContext).isArmedAt(numericId, NotifUtils.parseScheduledAt(stored));
+                if (!due || !AlarmRegistry.get(appContext).remove(numericId, generation)) {
+                    // Edited, disabled or deleted during the hold, or the backstop got there first
+                    AppLogger.w(TAG, "⚠️ Dropping held alarm for " + notificationId);
+                    return;
+                }
+                cancelBackstop(appContext, numericId);
+                deliver(appContext, notificationId, numericId, stored, DeliveryClass.of(stored), dueWall);
+            } catch (Exception e) {
+                AppLogger.e(TAG, "❌ Failed to deliver held notification " + notificationId, e);
+            } finally {
+                if (pending != null) pending.finish();
+            }
+        };
+        Executor replaced = holder;
+        if (replaced != null) {
+            replaced.execute(task);
+        } else {
+            DEFAULT_HOLDER.schedule(task, early, TimeUnit.MILLISECONDS);
+        }
+    }
 
-        if (notificationName == null || notificationName.isEmpty()) {
-            notificationName = NotifUtils.CHANNEL_NAME;
+    /** Arms the spent alarm again for {@code dueWall}, without a lead, under the same generation. */
+    private static void armBackstop(Context context, String notificationId, int numericId,
+                                    long generation, long dueWall) {
+        AlarmManager alarmManager = (AlarmManager) context.getSystemService(Context.ALARM_SERVICE);
+        if (alarmManager == null) return;
+        Intent intent = new Intent(context, NotificationReceiver.class)
+                .putExtra(NotifUtils.EXTRA_NOTIFICATION_ID, notificationId)
+                .putExtra(NotifUtils.EXTRA_GENERATION, generation);
+        PendingIntent backstop = PendingIntent.getBroadcast(context, numericId, intent,
+                PendingIntent.FLAG_UPDATE_CURRENT | PendingIntent.FLAG_IMMUTABLE);
+        try {
+            InexactFallback.setExact(context, alarmManager, AlarmManager.RTC_WAKEUP, dueWall, backstop);
+        } catch (RuntimeException e) {
+            AppLogger.e(TAG, "❌ Failed to arm backstop for held alarm " + notificationId, e);
         }
+    }
+
+    private static void cancelBackstop(Context context, int numericId) {
+        PendingIntent backstop = PendingIntent.getBroadcast(context, numericId,
+                new Intent(context, NotificationReceiver.class),
+                PendingIntent.FLAG_NO_CREATE | PendingIntent.FLAG_IMMUTABLE);
+        if (backstop == null) return;
+        AlarmManager alarmManager = (AlarmManager) context.getSystemService(Context.ALARM_SERVICE);
+        if (alarmManager != null) alarmManager.cancel(backstop);
+        backstop.cancel();
+    }
 
-        showNotification(context, notificationId, notificationName);
-        NotifUtils.writeToLog(context, "FIRE", notificationId, notificationName, 0L);
+    /**
+     * Posts the stored notification {@code stored}, with whatever rides on its alarm, and
+     * records it as delivered for {@code dueWall}. The caller has already removed the alarm
+     * from the {@link AlarmRegistry}.
+     */
+    private void deliver(Context context, String notificationId, int numericId, JSONObject stored,
+                         String deliveryClass, long dueWall) {
+        long now = System.currentTimeMillis();
+        String notificationName = displayName(stored);
+        ElapsedSchedule.forget(context, notificationId);
+        DeliveryMetrics.get(context).record(deliveryClass, dueWall, now);
+        List<JSONObject> riders = WakeupCoalescer.takeRiders(context, numericId);
+
+        if (riders.isEmpty()) {
+            showNotification(context, notificationId, notificationName);
+        } else {
+            List<String[]> burst = new ArrayList<>();
+            burst.add(new String[]{notificationId, notificationName});
+            for (JSONObject obj : riders) {
+                burst.add(new String[]{obj.optString(NotifUtils.JSON_KEY_ID, ""), displayName(obj)});
+                DeliveryMetrics.get(context).record(DeliveryClass.EXACT, NotifUtils.parseScheduledAt(obj), now);
+                NotifUtils.writeToLog(context, "FIRE", obj.optString(NotifUtils.JSON_KEY_ID, ""),
+                        obj.optString(NotifUtils.JSON_KEY_NAME, ""), NotifUtils.parseScheduledAt(obj));
+            }
+            showGroup(context, burst);
+        }
+        NotifUtils.writeToLog(context, "FIRE", notificationId,
+                stored.optString(NotifUtils.JSON_KEY_NAME, ""), NotifUtils.parseScheduledAt(stored));
         NotifUtils.refreshAllWidgets(context);
     }
 
+    /**
+     * Next-due mode wakeup: shows every notification {@link AlarmDispatcher#dispatch} returns.
+     * The dispatch alarm is exact, so deliveries are counted as {@link DeliveryClass#EXACT}.
+     */
+    private void deliverDue(Context context) {
+        long now = System.currentTimeMillis();
+        List<JSONObject> due;
+        try {
+            due = AlarmDispatcher.dispatch(context, now);
+        } catch (Exception e) {
+            AppLogger.e(TAG, "❌ Failed to read due notifications", e);
+            return;
+        }
+        for (JSONObject obj : due) {
+            String id = obj.optString(NotifUtils.JSON_KEY_ID, "");
+            String name = obj.optString(NotifUtils.JSON_KEY_NAME, "");
+            try {
+                showNotification(context, id, displayName(obj));
+                DeliveryMetrics.get(context).record(DeliveryClass.EXACT, NotifUtils.parseScheduledAt(obj), now);
+                NotifUtils.writeToLog(context, "FIRE", id, name, NotifUtils.parseScheduledAt(obj));
+            } catch (Exception e) {
+                AppLogger.e(TAG, "❌ Failed to deliver notification " + id, e);
+            }
+        }
+        if (!due.isEmpty()) {
+            NotifUtils.refreshAllWidgets(context);
+        }
+    }
+
+    private static String displayName(JSONObject obj) {
+        String name = obj.optString(NotifUtils.JSON_KEY_NAME, "");
+        return name.isEmpty() ? NotifUtils.CHANNEL_NAME : name;
+    }
+
     private void showNotification(Context context, String id, String name) {
+        NotificationManager notificationManager = notificationManager(context);
+        if (notificationManager == null) return;
+
+        int numericId = NotifUtils.numericIdFor(context, id);
+        notificationManager.notify(numericId, builder(context, name).build());
+
+        AppLogger.d(TAG,"✅ Notification shown: " + name);
+    }
+
+    /**
+     * Posts several notifications delivered by one wakeup: each {@code {id, name}} in
+     * {@link WakeupCoalescer#GROUP_KEY}, silently, plus an inbox-style summary listing them that
+     * alerts once for the whole burst.
+     */
+    private void showGroup(Context context, List<String[]> burst) {
+        NotificationManager notificationManager = notificationManager(context);
+        if (notificationManager == null) return;
+
+        NotificationCompat.InboxStyle inbox = new NotificationCompat.InboxStyle();
+        for (String[] item : burst) {
+            notificationManager.notify(NotifUtils.numericIdFor(context, item[0]), builder(context, item[1])
+                    .setGroup(WakeupCoalescer.GROUP_KEY)
+                    .setGroupAlertBehavior(NotificationCompat.GROUP_ALERT_SUMMARY)
+                    .build());
+            inbox.addLine(item[1]);
+        }
+        String summary = burst.size() + " reminders";
+        notificationManager.notify(WakeupCoalescer.SUMMARY_NOTIFICATION_ID, builder(context, summary)
+                .setStyle(inbox.setSummaryText(summary))
+                .setGroup(WakeupCoalescer.GROUP_KEY)
+                .setGroupSummary(true)
+                .setGroupAlertBehavior(NotificationCompat.GROUP_ALERT_SUMMARY)
+                .build());
+
+        AppLogger.d(TAG,"✅ " + summary + " shown as a group");
+    }
+
+    /** The NotificationManager, with the app's channel created if needed; {@code null} if unavailable. */
+    private NotificationManager notificationManager(Context context) {
         NotificationManager notificationManager =
                 (NotificationManager) context.getSystemService(Context.NOTIFICATION_SERVICE);
 
         if (notificationManager == null) {
             AppLogger.e(TAG,"❌ NotificationManager is null");
-            return;
+            return null;
         }
 
         // Create notification channel for Android O+ only if it doesn't already exist
@@ -63,7 +363,10 @@ public class NotificationReceiver extends BroadcastReceiver {
             channel.setLightColor(NotifUtils.ACCENT_COLOR);
             notificationManager.createNotificationChannel(channel);
         }
+        return notificationManager;
+    }
 
+    private NotificationCompat.Builder builder(Context context, String name) {
         Intent appIntent = new Intent(context, MainActivity.class);
         appIntent.setFlags(Intent.FLAG_ACTIVITY_NEW_TASK | Intent.FLAG_ACTIVITY_CLEAR_TOP);
 
@@ -74,7 +377,7 @@ public class NotificationReceiver extends BroadcastReceiver {
                 PendingIntent.FLAG_IMMUTABLE | PendingIntent.FLAG_UPDATE_CURRENT
         );
 
-        NotificationCompat.Builder builder = new NotificationCompat.Builder(context, NotifUtils.CHANNEL_ID)
+        return new NotificationCompat.Builder(context, NotifUtils.CHANNEL_ID)
                 .setSmallIcon(R.drawable.ic_stat_notification)
                 .setColor(NotifUtils.ACCENT_COLOR)
                 .setContentTitle(NotifUtils.CHANNEL_NAME)
@@ -86,10 +389,5 @@ public class NotificationReceiver extends BroadcastReceiver {
                 .setVibrate(new long[]{0, 250, 250, 250})
                 .setLights(NotifUtils.ACCENT_COLOR, 1000, 1000)
                 .setContentIntent(pendingIntent);
-
-        int numericId = NotifUtils.generateNumericId(id);
-        notificationManager.notify(numericId, builder.build());
-
-        AppLogger.d(TAG,"✅ Notification shown: " + name);
     }
 }
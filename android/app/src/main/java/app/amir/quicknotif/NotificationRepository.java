@@ -0,0 +1,587 @@
+package app.amir.quicknotif;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Process-wide cache of the parsed notifications payload.
+ *
+ * <p>Every component (receivers, the watchdog, widget service and activities) used to read
+ * {@link NotifUtils#KEY_NOTIFICATIONS} and build a fresh {@link org.json.JSONArray} on each
+ * event. The repository parses the payload once into a {@link NotificationStore} and hands
+ * the same instance to every reader until the stored value changes.
+ *
+ * <p>Invalidation:
+ * <ul>
+ *   <li>An {@link SharedPreferences.OnSharedPreferenceChangeListener} drops the cached copy
+ *       when another writer (e.g. the web app's {@code Preferences.set}) replaces the key,
+ *       and bumps {@link #version()}.</li>
+ *   <li>Each read also compares the stored string by reference against the one the cache was
+ *       built from. SharedPreferences hands back the same instance until the value is replaced,
+ *       so this is O(1) and catches changes the listener reports late or not at all (commits
+ *       from background threads are dispatched to the main looper; {@code clear()} is not
+ *       reported before API 30).</li>
+ * </ul>
+ *
+ * <p>The parsed state is owned by a single {@link NotificationStorageActor} thread. Loads and
+ * writes ({@link #transaction}, {@link #update}, {@link #updateAll}, and the {@link #put} /
+ * {@link #delete} shorthands) run there one at a time in submission order, whichever thread
+ * the caller is on, so they never contend for a lock and their order is deterministic. Readers
+ * get the current {@link NotificationStore#freeze() frozen} snapshot without going through the
+ * actor unless it is stale. A transaction is re-run on the newer state if the web app replaced
+ * the key while it ran.
+ *
+ * <p>Each transaction's changes are appended to a {@link NotificationJournal} instead of
+ * re-serialising the whole list. The current state is therefore the snapshot under
+ * {@link NotifUtils#KEY_NOTIFICATIONS} with the journal replayed on top. The journal records
+ * which snapshot its records were written against; when the web app has replaced the key since,
+ * its snapshot is the newer state and the older records are discarded instead of replayed over
+ * it. Once the journal grows
+ * past {@link #COMPACT_THRESHOLD_BYTES} it is folded back into the snapshot on a background
+ * thread; {@link #flush()} does the same synchronously for readers of the raw key (the web app,
+ * through {@link NativeSchedulerPlugin#flush}, and {@link NotifUtils#readNotificationsJson}),
+ * and {@link #flushAsync()} starts it from the main thread without waiting.
+ *
+ * <p>Native writes keep timestamps in the canonical epoch-millis form, and the first load in a
+ * process migrates older payloads to it (see {@link NotificationSchema}).
+ *
+ * <p>Whole-list writes go through the repository's {@link NotificationWriteQueue}, and reads of
+ * the key use its {@link NotificationWriteQueue#peek() view}, so a queued write is already
+ * visible here before it reaches SharedPreferences.
+ */
+public final class NotificationRepository {
+
+    private static final String TAG = "NotificationRepository";
+
+    /** Journal size above which a background compaction is scheduled. */
+    static final long COMPACT_THRESHOLD_BYTES = 64 * 1024;
+
+    /**
+     * Attempts before a transaction that keeps being invalidated by external writes commits
+     * anyway; its changes are then applied to the newest state and journaled against it.
+     */
+    static final int MAX_ATTEMPTS = 8;
+
+    private static volatile NotificationRepository instance;
+
+    private static final ExecutorService compactor = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "notif-journal-compactor");
+        t.setDaemon(true);
+        return t;
+    });
+
+    /**
+     * Changes a store inside {@link #transaction}. Runs on the storage thread and may be run more
+     * than once; keep it short and free of side effects.
+     */
+    public interface Transaction<T> {
+        T run(NotificationStore store) throws JSONException;
+    }
+
+    /**
+     * Edits a mutable copy of one notification inside {@link #update}. Return {@code false} to
+     * leave the notification unchanged. May be run more than once; keep it free of side effects.
+     */
+    public interface Mutator {
+        boolean mutate(JSONObject notification) throws JSONException;
+    }
+
+    private final SharedPreferences prefs;
+    private final SharedPreferences schemaPrefs;
+    private final NotificationJournal journal;
+    private final NotificationWriteQueue writes;
+    private final NotificationStorageActor actor = new NotificationStorageActor("notif-storage");
+    private final AtomicLong version = new AtomicLong();
+    private final AtomicLong conflicts = new AtomicLong();
+    // Replaced only on the actor thread; the listener may clear it
+    private final AtomicReference<Cached> state = new AtomicReference<>();
+    private final Object compactionLock = new Object();
+    // Actor thread only
+    private boolean schemaChecked;
+    // Set on the actor thread, read by tests
+    private volatile Future<?> pendingJournalTask;
+    long compactThresholdBytes = COMPACT_THRESHOLD_BYTES;
+
+    // Held in a field: SharedPreferences only keeps weak references to its listeners
+    private final SharedPreferences.OnSharedPreferenceChangeListener listener = (p, key) -> {
+        if (key != null && !NotifUtils.KEY_NOTIFICATIONS.equals(key)) return;
+        Cached current = state.get();
+        if (current != null && current.raw != readRaw() && state.compareAndSet(current, null)) {
+            version.incrementAndGet();
+        }
+    };
+
+    private NotificationRepository(Context context, SharedPreferences prefs) {
+        this.prefs = prefs;
+        this.schemaPrefs = NotificationSchema.prefs(context);
+        this.journal = new NotificationJournal(new File(context.getFilesDir(), NotificationJournal.FILE_NAME));
+        this.writes = new NotificationWriteQueue(prefs);
+        prefs.registerOnSharedPreferenceChangeListener(listener);
+    }
+
+    /** Returns the repository bound to the app's {@link NotifUtils#PREFS_NAME} preferences. */
+    public static NotificationRepository get(Context context) {
+        SharedPreferences prefs = NotifUtils.getPrefs(context);
+        NotificationRepository repo = instance;
+        if (repo == null || repo.prefs != prefs) {
+            synchronized (NotificationRepository.class) {
+                repo = instance;
+                if (repo == null || repo.prefs != prefs) {
+                    if (repo != null) {
+                        repo.prefs.unregisterOnSharedPreferenceChangeListener(repo.listener);
+                        repo.actor.quit();
+                    }
+                    repo = new NotificationRepository(context.getApplicationContext(), prefs);
+                    instance = repo;
+                }
+            }
+        }
+        return repo;
+    }
+
+    /**
+     * Returns the current notifications as a frozen store, shared with other readers and safe to
+     * read from any thread. Use {@link #edit}, {@link #transaction} or {@link #update} to make
+     * changes.
+     *
+     * @throws JSONException if the stored payload is not a valid JSON array.
+     */
+    public NotificationStore snapshot() throws JSONException {
+        return current().store;
+    }
+
+    /** Returns the current state, reloading it on the actor if stale. */
+    private Cached current() throws JSONException {
+        Cached current = state.get();
+        if (current != null && current.raw == readRaw()) {
+            return current;
+        }
+        return onActor(this::load);
+    }
+
+    /** Re-reads the snapshot and replays the journal if the cached state is stale. Actor thread only. */
+    private Cached load() throws JSONException {
+        Cached current = state.get();
+        String raw = readRaw();
+        if (current != null && current.raw == raw) {
+            return current;
+        }
+        NotificationStore store = NotificationStore.fromJson(raw);
+        int replayed = 0;
+        try {
+            replayed = journal.replay(store, raw);
+            if (!journal.buildsOn(raw)) journal.rebase(raw);
+        } catch (IOException e) {
+            AppLogger.e(TAG, "❌ Failed to replay notification journal", e);
+        }
+        AppLogger.d(TAG, "📦 Parsed " + store.size() + " notifications into cache"
+                + (replayed > 0 ? " (" + replayed + " journal records replayed)" : ""));
+
+        if (!schemaChecked) {
+            schemaChecked = true;
+            int storedVersion = NotificationSchema.storedVersion(schemaPrefs);
+            if (storedVersion < NotificationSchema.CURRENT_VERSION) {
+                return migrate(raw, store, storedVersion);
+            }
+        }
+
+        store.freeze();
+        current = new Cached(raw, store, version.incrementAndGet());
+        state.set(current);
+        return current;
+    }
+
+    /**
+     * Brings a freshly loaded store up to {@link NotificationSchema#CURRENT_VERSION} in one pass
+     * and writes it back with a single whole-list write. The version is recorded once that write
+     * is durable; if the process dies first, the migration simply runs again. Actor thread only.
+     */
+    private Cached migrate(String raw, NotificationStore store, int fromVersion) throws JSONException {
+        long start = System.currentTimeMillis();
+        int changed = NotificationSchema.migrate(store, fromVersion);
+        if (changed == 0) {
+            NotificationSchema.markCurrent(schemaPrefs);
+            store.freeze();
+            Cached current = new Cached(raw, store, version.incrementAndGet());
+            state.set(current);
+            return current;
+        }
+
+        Future<Boolean> written = commitOnActor(store);
+        runInBackground(() -> {
+            if (written.get()) NotificationSchema.markCurrent(schemaPrefs);
+        });
+        AppLogger.d(TAG, "🔄 Migrated " + changed + " notifications from schema " + fromVersion
+                + " to " + NotificationSchema.CURRENT_VERSION + " in "
+                + (System.currentTimeMillis() - start) + "ms");
+        return state.get();
+    }
+
+    /** Returns a private, modifiable copy of the current notifications. */
+    public NotificationStore edit() throws JSONException {
+        return snapshot().copy();
+    }
+
+    /**
+     * Runs {@code fn} on the storage thread against a private copy of the current notifications
+     * and publishes the entries it puts or deletes as one journal append and one new version.
+     * Returns whatever {@code fn} returned in the attempt that committed.
+     */
+    public <T> T transaction(Transaction<T> fn) throws JSONException {
+        return transaction(null, fn);
+    }
+
+    /**
+     * Applies {@code mutator} to the notification with the given id.
+     *
+     * @return the committed notification, or {@code null} if there is no such id or the
+     *         mutator returned {@code false}.
+     */
+    public JSONObject update(String id, Mutator mutator) throws JSONException {
+        return update(NotificationJournal.OP_UPDATE, id, mutator);
+    }
+
+    /** {@link #update(String, Mutator)}, recording {@code op} as the journal operation. */
+    public JSONObject update(String op, String id, Mutator mutator) throws JSONException {
+        return transaction(op, store -> {
+            JSONObject entry = store.getMutable(id);
+            if (entry == null || !mutator.mutate(entry)) return null;
+            NotifUtils.normalizeTimestamps(entry);
+            store.put(entry);
+            return entry;
+        });
+    }
+
+    /**
+     * Applies {@code mutator} to each of {@code ids} in a single transaction, for bulk operations:
+     * one pass over the store, one journal append, one new version.
+     *
+     * @return the committed notifications, in {@code ids} order; ids that do not exist or whose
+     *         mutator returned {@code false} are left out.
+     */
+    public List<JSONObject> updateAll(String op, Collection<String> ids, Mutator mutator) throws JSONException {
+        return transaction(op, store -> {
+            List<JSONObject> updated = new ArrayList<>();
+            for (String id : ids) {
+                JSONObject entry = store.getMutable(id);
+                if (entry == null || !mutator.mutate(entry)) continue;
+                NotifUtils.normalizeTimestamps(entry);
+                store.put(entry);
+                updated.add(entry);
+            }
+            return updated;
+        });
+    }
+
+    /**
+     * Inserts or replaces a single notification. The change is appended to the journal —
+     * O(size of the entry) in I/O — rather than rewriting the whole list.
+     *
+     * @param op one of the {@code NotificationJournal.OP_*} names, recorded for diagnostics.
+     */
+    public void put(String op, JSONObject notification) throws JSONException {
+        NotifUtils.normalizeTimestamps(notification);
+        transaction(op, store -> {
+            store.put(notification);
+            return null;
+        });
+    }
+
+    /**
+     * Removes a single notification, recording the delete in the journal.
+     *
+     * @return the removed entry, or {@code null} if no notification has that id.
+     */
+    public JSONObject delete(String id) throws JSONException {
+        return transaction(null, store -> store.delete(id));
+    }
+
+    private <T> T transaction(String op, Transaction<T> fn) throws JSONException {
+        return onActor(() -> {
+            for (int attempt = 1; ; attempt++) {
+                Cached base = load();
+                NotificationStore working = base.store.trackedCopy();
+                T result = fn.run(working);
+                if (working.changes().isEmpty()) return result;
+
+                // The web app may have replaced the key while fn ran, or fn ran a nested write
+                Cached latest = state.get();
+                boolean current = latest != null && latest.version == base.version && readRaw() == latest.raw;
+                if (!current && attempt < MAX_ATTEMPTS) {
+                    conflicts.incrementAndGet();
+                    continue;
+                }
+                if (!current) {
+                    AppLogger.w(TAG, "⚠️ Notifications kept changing during transaction, committed after "
+                            + attempt + " attempts");
+                    // Journal against the newest snapshot, or the records would be discarded as stale
+                    Cached newest = load();
+                    NotificationStore rebased = newest.store.trackedCopy();
+                    for (Map.Entry<String, JSONObject> change : working.changes().entrySet()) {
+                        if (change.getValue() == null) {
+                            rebased.delete(change.getKey());
+                        } else {
+                            rebased.put(change.getValue());
+                        }
+                    }
+                    base = newest;
+                    working = rebased;
+                }
+                publish(base, working, op);
+                maybeCompact();
+                return result;
+            }
+        });
+    }
+
+    /** Journals the changes of {@code working} and makes it the current version. Actor thread only. */
+    private void publish(Cached base, NotificationStore working, String op) {
+        Map<String, JSONObject> changes = working.changes();
+        List<NotificationJournal.Record> records = new ArrayList<>(changes.size());
+        for (Map.Entry<String, JSONObject> change : changes.entrySet()) {
+            JSONObject entry = change.getValue();
+            if (entry == null) {
+                records.add(NotificationJournal.Record.delete(change.getKey()));
+            } else {
+                String recordOp = op != null ? op
+                        : base.store.contains(change.getKey()) ? NotificationJournal.OP_UPDATE
+                        : NotificationJournal.OP_CREATE;
+                records.add(NotificationJournal.Record.put(recordOp, entry));
+            }
+        }
+        working.freeze();
+        try {
+            journal.append(records);
+            state.set(new Cached(base.raw, working, version.incrementAndGet()));
+        } catch (IOException e) {
+            AppLogger.e(TAG, "❌ Journal append failed, writing full snapshot instead", e);
+            commitOnActor(working);
+        }
+    }
+
+    /**
+     * Replaces the whole list: queues {@code edited} to be written to
+     * {@link NotifUtils#KEY_NOTIFICATIONS} and publishes it as the cached copy, so subsequent
+     * readers see the change without re-parsing. {@code edited} is frozen and must not be modified
+     * afterwards. Journal records it supersedes are dropped on a background thread once the write
+     * is durable.
+     */
+    public void commit(NotificationStore edited) throws JSONException {
+        onActor(() -> {
+            commitOnActor(edited);
+            return null;
+        });
+    }
+
+    private Future<Boolean> commitOnActor(NotificationStore edited) {
+        edited.freeze();
+        String json = edited.toJson();
+        long mark = journal.endSeq();
+        rebaseJournal(readRaw(), json);
+        Future<Boolean> written = writes.enqueue(json);
+        state.set(new Cached(json, edited, version.incrementAndGet()));
+        runInBackground(() -> {
+            if (written.get()) {
+                actor.call(() -> {
+                    journal.dropBefore(mark);
+                    if (readRaw() == json) rebaseJournal(json);
+                    return null;
+                });
+            }
+        });
+        return written;
+    }
+
+    /**
+     * Marks the journal's remaining records as building on {@code snapshots}: the old and the
+     * new snapshot while a whole-list write is pending, the new one once it is durable. A failure
+     * leaves the header as it was, at worst discarding records at the next load. Actor thread only.
+     */
+    private void rebaseJournal(String... snapshots) {
+        try {
+            journal.rebase(snapshots);
+        } catch (IOException e) {
+            AppLogger.e(TAG, "❌ Failed to update notification journal header", e);
+        }
+    }
+
+    /**
+     * Folds any pending journal records into {@link NotifUtils#KEY_NOTIFICATIONS} and waits for
+     * queued writes, so a reader of the raw key (or of SharedPreferences directly, like the web
+     * app) sees the complete list. Returns at once when there is nothing pending.
+     */
+    public void flush() {
+        try {
+            if (!journal.isEmpty()) {
+                compact();
+            }
+            writes.awaitIdle();
+        } catch (Exception e) {
+            AppLogger.e(TAG, "❌ Failed to flush notification journal", e);
+        }
+    }
+
+    /**
+     * {@link #flush()} on the journal thread, for callers that must not block (the main
+     * thread). The future completes once the raw key is complete; a later {@link #flush()}
+     * waits for it, so readers that need the complete list can call that instead of holding on
+     * to the future.
+     */
+    public Future<?> flushAsync() {
+        return compactor.submit(this::flush);
+    }
+
+    /**
+     * Writes the current state to {@link NotifUtils#KEY_NOTIFICATIONS} and drops the journal
+     * records it covers. The snapshot is frozen, so it is serialised off the storage thread
+     * without blocking writers; records appended meanwhile stay in the journal. Records are only
+     * dropped once the snapshot is durable, so a crash in between just replays records that are
+     * already applied.
+     */
+    void compact() throws Exception {
+        synchronized (compactionLock) {
+            final long[] mark = new long[1];
+            Cached base = actor.call(() -> {
+                Cached loaded = load();
+                mark[0] = journal.endSeq();
+                return journal.isEmpty() ? null : loaded;
+            });
+            if (base == null) return;
+
+            long start = System.currentTimeMillis();
+            String json = base.store.toJson();
+
+            Future<Boolean> written = actor.call(() -> {
+                if (readRaw() != base.raw) {
+                    // The web app replaced the key meanwhile; its write wins and the journal
+                    // records it supersedes are discarded at the next load
+                    AppLogger.w(TAG, "⚠️ Snapshot changed during compaction, skipping");
+                    return null;
+                }
+                rebaseJournal(base.raw, json);
+                Future<Boolean> write = writes.enqueue(json);
+                // Same contents under the new snapshot string; not a new version
+                Cached current = state.get();
+                state.set(current != null
+                        ? new Cached(json, current.store, current.version)
+                        : new Cached(json, base.store, base.version));
+                return write;
+            });
+            if (written == null) return;
+
+            if (!written.get()) {
+                AppLogger.w(TAG, "⚠️ Compacted snapshot was not written, keeping journal");
+                return;
+            }
+            actor.call(() -> {
+                journal.dropBefore(mark[0]);
+                if (readRaw() == json) rebaseJournal(json);
+                return null;
+            });
+            AppLogger.d(TAG, "🗜️ Compacted journal into snapshot in "
+                    + (System.currentTimeMillis() - start) + "ms");
+        }
+    }
+
+    /** Schedules a background compaction once the journal is large enough. Actor thread only. */
+    private void maybeCompact() {
+        if (journal.sizeBytes() < compactThresholdBytes) return;
+        Future<?> pending = pendingJournalTask;
+        if (pending != null && !pending.isDone()) return;
+        runInBackground(this::compact);
+    }
+
+    /** Work that may block on disk I/O, run on the journal thread. */
+    private interface JournalTask {
+        void run() throws Exception;
+    }
+
+    /** Actor thread only. */
+    private void runInBackground(JournalTask task) {
+        pendingJournalTask = compactor.submit(() -> {
+            try {
+                task.run();
+            } catch (Exception e) {
+                AppLogger.e(TAG, "❌ Background journal task failed", e);
+            }
+        });
+    }
+
+    /** Blocks until the last scheduled background journal task has finished. For tests. */
+    void awaitBackgroundWork() throws Exception {
+        Future<?> pending = pendingJournalTask;
+        if (pending != null) pending.get();
+        writes.awaitIdle();
+    }
+
+    /**
+     * Runs {@code work} on the storage actor and waits for it, passing its
+     * {@link JSONException}s and runtime exceptions through unchanged.
+     */
+    private <T> T onActor(Callable<T> work) throws JSONException {
+        try {
+            return actor.call(work);
+        } catch (JSONException | RuntimeException e) {
+            throw e;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for notification storage", e);
+        } catch (Exception e) {
+            throw new IllegalStateException("Notification storage task failed", e);
+        }
+    }
+
+    /** The queue that writes {@link NotifUtils#KEY_NOTIFICATIONS} for this repository. */
+    public NotificationWriteQueue writeQueue() {
+        return writes;
+    }
+
+    /**
+     * Monotonically increasing storage version, bumped whenever the notifications change
+     * (own writes, reloads, or external writes detected by the listener).
+     */
+    public long version() {
+        return version.get();
+    }
+
+    /** Number of transaction attempts discarded because the notifications changed while they ran. */
+    public long conflictCount() {
+        return conflicts.get();
+    }
+
+    private String readRaw() {
+        return writes.peek();
+    }
+
+    /**
+     * Parsed store (snapshot plus replayed journal) paired with the exact snapshot string
+     * instance it was built from and the version it was published as.
+     */
+    private static final class Cached {
+        final String raw;
+        final NotificationStore store;
+        final long version;
+
+        Cached(String raw, NotificationStore store, long version) {
+            this.raw = raw;
+            this.store = store;
+            this.version = version;
+        }
+    }
+}
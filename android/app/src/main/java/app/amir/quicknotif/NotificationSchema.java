@@ -0,0 +1,73 @@
+package app.amir.quicknotif;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Version of the {@link NotifUtils#KEY_NOTIFICATIONS} payload format, and the migrations
+ * between versions.
+ *
+ * <ul>
+ *   <li>1 — timestamps ({@code scheduledAt}, {@code updatedAt}, {@code createdAt}) stored as
+ *       ISO 8601 strings, as {@code JSON.stringify} writes {@code Date}s.</li>
+ *   <li>2 — timestamps stored as numeric epoch millis. Native writers and the web app both
+ *       write this form; reading strings is a counted fallback
+ *       ({@link NotifUtils#isoTimestampFallbackCount()}).</li>
+ * </ul>
+ *
+ * <p>{@link NotificationRepository} checks the stored version the first time it loads in a
+ * process and, if it is older, migrates the whole list in one pass and writes it back once.
+ * The version is native bookkeeping, so it is kept in its own preferences file
+ * ({@link #PREFS_NAME}) rather than next to the list in the web app's storage.
+ */
+public final class NotificationSchema {
+
+    private static final String TAG = "NotificationSchema";
+
+    /** Preferences file holding the schema version. */
+    public static final String PREFS_NAME = "QuickNotifSchema";
+
+    /** Preferences key holding the schema version of the stored notifications. */
+    public static final String KEY_SCHEMA_VERSION = "notificationsSchemaVersion";
+
+    public static final int VERSION_ISO_TIMESTAMPS = 1;
+    public static final int VERSION_EPOCH_MILLIS   = 2;
+    public static final int CURRENT_VERSION        = VERSION_EPOCH_MILLIS;
+
+    private NotificationSchema() {}
+
+    /** The {@link #PREFS_NAME} preferences. */
+    public static SharedPreferences prefs(Context context) {
+        return context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+    }
+
+    /** Stored schema version; data written before versioning is treated as version 1. */
+    public static int storedVersion(SharedPreferences prefs) {
+        return prefs.getInt(KEY_SCHEMA_VERSION, VERSION_ISO_TIMESTAMPS);
+    }
+
+    /** Records that the stored notifications are in the current format. */
+    public static void markCurrent(SharedPreferences prefs) {
+        prefs.edit().putInt(KEY_SCHEMA_VERSION, CURRENT_VERSION).apply();
+    }
+
+    /**
+     * Migrates every entry of a freshly loaded (not yet published) store to the current
+     * version, in place.
+     *
+     * @return the number of entries that changed.
+     */
+    public static int migrate(NotificationStore store, int fromVersion) throws JSONException {
+        int changed = 0;
+        if (fromVersion < VERSION_EPOCH_MILLIS) {
+            for (JSONObject obj : store.all()) {
+                // Same instant, so the scheduledAt index is unaffected
+                if (NotifUtils.normalizeTimestamps(obj)) changed++;
+            }
+        }
+        return changed;
+    }
+}
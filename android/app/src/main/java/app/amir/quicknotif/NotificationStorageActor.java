@@ -0,0 +1,76 @@
+package app.amir.quicknotif;
+
+import android.os.Handler;
+import android.os.HandlerThread;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+/**
+ * Serial executor that owns the notification storage state.
+ *
+ * <p>Native code reaches storage from many threads: broadcast receivers and activities on the
+ * main thread, WorkManager threads, and binder threads for {@code @JavascriptInterface} calls.
+ * {@link NotificationRepository} runs every read-modify-write on this actor's
+ * {@link HandlerThread} instead, one at a time and in the order they were submitted, so its state
+ * and journal are only ever touched by one thread and need no lock.
+ *
+ * <p>{@link #call} blocks the caller until the work has run and returns its result. Work that
+ * is already running on the actor's thread (e.g. a transaction that reads a snapshot) runs
+ * inline rather than being queued behind itself.
+ */
+public final class NotificationStorageActor {
+
+    private static final String TAG = "NotificationStorageActor";
+
+    private final HandlerThread thread;
+    private final Handler handler;
+
+    public NotificationStorageActor(String name) {
+        thread = new HandlerThread(name);
+        thread.start();
+        handler = new Handler(thread.getLooper());
+    }
+
+    /** Whether the caller is running on the actor's thread. */
+    public boolean isCurrentThread() {
+        return Thread.currentThread() == thread;
+    }
+
+    /**
+     * Runs {@code action} on the actor's thread and returns its result, rethrowing whatever it
+     * threw.
+     *
+     * @throws IllegalStateException if the actor has been {@link #quit()}.
+     */
+    public <T> T call(Callable<T> action) throws Exception {
+        if (isCurrentThread()) {
+            return action.call();
+        }
+        FutureTask<T> task = new FutureTask<>(action);
+        if (!handler.post(task)) {
+            throw new IllegalStateException("Storage thread " + thread.getName() + " has quit");
+        }
+        try {
+            return task.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof Exception) throw (Exception) cause;
+            if (cause instanceof Error) throw (Error) cause;
+            throw e;
+        }
+    }
+
+    /** Queues {@code work} to run on the actor's thread without waiting for it. */
+    public void post(Runnable work) {
+        if (!handler.post(work)) {
+            AppLogger.w(TAG, "⚠️ Storage thread " + thread.getName() + " has quit, dropping work");
+        }
+    }
+
+    /** Stops the thread once the work already queued has run. */
+    public void quit() {
+        thread.quitSafely();
+    }
+}
@@ -0,0 +1,356 @@
+package app.amir.quicknotif;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * In-memory index over the stored notifications, keyed by notification id.
+ *
+ * <p>Notifications are held in an insertion-ordered hash map, giving O(1) get / put / delete
+ * by id, with a sorted secondary index on {@code scheduledAt} for range scans (O(log n) to
+ * locate, then linear in the number of matches). The store is loaded from and exported back to
+ * the {@link NotifUtils#KEY_NOTIFICATIONS} JSON array (see {@link NotificationRepository}), so the
+ * TypeScript {@code notificationService.loadFromStorage} keeps reading the same key, in the same
+ * order.
+ *
+ * <p>Notifications are also partitioned by state. The <em>active</em> partition holds enabled
+ * notifications that are still due, i.e. the ones that need an alarm; everything else (disabled,
+ * already fired, or never scheduled) is the <em>archive</em>. Enabled notifications are kept in
+ * their own {@code scheduledAt} index, so the active partition is read in O(log n + k) without
+ * visiting archived entries. An entry leaves the active partition when it is disabled (on
+ * {@link #put}) or when its time passes and it fires, with no write needed. Both partitions are
+ * stored in the same JSON array, which the web layer reads as a whole.
+ *
+ * <p>Entries without an {@code id} (or entries that are not JSON objects) cannot be indexed;
+ * they are kept as-is and written back unchanged after the indexed entries.
+ *
+ * <p>Not thread-safe while it is being modified. Once {@link #freeze() frozen}, a store rejects
+ * further changes and can be read from any thread; {@link NotificationRepository} only hands out
+ * frozen stores. Entries returned by {@link #get} may be shared with other copies of the
+ * store and must be treated as read-only; to change an entry, take a {@link #getMutable} copy
+ * and {@link #put} it back so the {@code scheduledAt} index stays consistent.
+ */
+public final class NotificationStore {
+
+    private static final String TAG = "NotificationStore";
+
+    private final LinkedHashMap<String, JSONObject> byId = new LinkedHashMap<>();
+    private final HashMap<String, Long> scheduledAtById = new HashMap<>();
+    private final TreeSet<IndexKey> byScheduledAt = new TreeSet<>();
+    // Enabled entries with a valid scheduledAt; those after "now" form the active partition
+    private final TreeSet<IndexKey> enabledByScheduledAt = new TreeSet<>();
+    private final List<Object> unindexed = new ArrayList<>();
+    // Ids put or deleted since tracking started (null value = deleted); null when not tracking
+    private LinkedHashMap<String, JSONObject> changes;
+    private boolean frozen;
+
+    public NotificationStore() {}
+
+    /**
+     * Returns a copy of this store that can be modified independently, even if this store is
+     * frozen. Entries are shared,
+     * not cloned — O(n) in the number of entries, with no JSON parsing.
+     */
+    public NotificationStore copy() {
+        NotificationStore copy = new NotificationStore();
+        copy.byId.putAll(byId);
+        copy.scheduledAtById.putAll(scheduledAtById);
+        copy.byScheduledAt.addAll(byScheduledAt);
+        copy.enabledByScheduledAt.addAll(enabledByScheduledAt);
+        copy.unindexed.addAll(unindexed);
+        return copy;
+    }
+
+    /**
+     * Returns a {@link #copy()} that records which ids are put or deleted, for
+     * {@link NotificationRepository} to turn into journal records.
+     */
+    NotificationStore trackedCopy() {
+        NotificationStore copy = copy();
+        copy.changes = new LinkedHashMap<>();
+        return copy;
+    }
+
+    /**
+     * Ids changed since {@link #trackedCopy()}, in the order first changed, mapped to the entry
+     * now stored or {@code null} if deleted. Empty when the store is not tracking.
+     */
+    Map<String, JSONObject> changes() {
+        return changes != null ? changes : Collections.<String, JSONObject>emptyMap();
+    }
+
+    /** Stops recording changes, e.g. before the store is shared with readers. */
+    void stopTracking() {
+        changes = null;
+    }
+
+    /**
+     * Makes this store read-only: {@link #put} and {@link #delete} throw from now on. Used by
+     * {@link NotificationRepository} before a store is published to readers.
+     */
+    void freeze() {
+        changes = null;
+        frozen = true;
+    }
+
+    /** Whether {@link #freeze()} has been called. */
+    public boolean isFrozen() {
+        return frozen;
+    }
+
+    private void checkNotFrozen() {
+        if (frozen) {
+            throw new IllegalStateException("Notification snapshot is read-only; use edit() for a copy");
+        }
+    }
+
+    /**
+     * Builds a store from a JSON array string as stored under {@link NotifUtils#KEY_NOTIFICATIONS}.
+     *
+     * @throws JSONException if {@code json} is not a JSON array.
+     */
+    public static NotificationStore fromJson(String json) throws JSONException {
+        JSONArray array = new JSONArray(json);
+        NotificationStore store = new NotificationStore();
+        for (int i = 0; i < array.length(); i++) {
+            Object entry = array.opt(i);
+            if (entry instanceof JSONObject) {
+                JSONObject obj = (JSONObject) entry;
+                String id = obj.optString(NotifUtils.JSON_KEY_ID, "");
+                if (!id.isEmpty()) {
+                    if (store.byId.containsKey(id)) {
+                        AppLogger.w(TAG, "⚠️ Duplicate notification id in storage, keeping the later entry: " + id);
+                    }
+                    store.put(obj);
+                    continue;
+                }
+            }
+            store.unindexed.add(entry);
+        }
+        return store;
+    }
+
+    /** Returns the notification with the given id, or {@code null} if absent. O(1). */
+    public JSONObject get(String id) {
+        return byId.get(id);
+    }
+
+    /**
+     * Returns a shallow copy of the notification with the given id that is safe to modify,
+     * or {@code null} if absent. Call {@link #put} with the result to apply the change.
+     */
+    public JSONObject getMutable(String id) throws JSONException {
+        JSONObject obj = byId.get(id);
+        if (obj == null) return null;
+        JSONObject copy = new JSONObject();
+        for (Iterator<String> keys = obj.keys(); keys.hasNext(); ) {
+            String key = keys.next();
+            copy.put(key, obj.opt(key));
+        }
+        return copy;
+    }
+
+    /**
+     * Returns the indexed {@code scheduledAt} of the given notification without re-parsing it,
+     * or {@code 0} if absent or unparseable.
+     */
+    public long scheduledAtOf(String id) {
+        Long scheduledAt = scheduledAtById.get(id);
+        return scheduledAt != null ? scheduledAt : 0L;
+    }
+
+    public boolean contains(String id) {
+        return byId.containsKey(id);
+    }
+
+    /**
+     * Inserts or replaces a notification, keyed by its {@code id} field. O(log n) for the
+     * {@code scheduledAt} index, O(1) otherwise. A replaced entry keeps its original position.
+     *
+     * @throws IllegalArgumentException if the notification has no {@code id}.
+     * @throws IllegalStateException if the store is frozen.
+     */
+    public void put(JSONObject notification) {
+        checkNotFrozen();
+        String id = notification.optString(NotifUtils.JSON_KEY_ID, "");
+        if (id.isEmpty()) {
+            throw new IllegalArgumentException("Notification has no id");
+        }
+        unindex(id);
+        long scheduledAt = NotifUtils.parseScheduledAt(notification);
+        byId.put(id, notification);
+        scheduledAtById.put(id, scheduledAt);
+        IndexKey key = new IndexKey(scheduledAt, id);
+        byScheduledAt.add(key);
+        if (scheduledAt > 0 && notification.optBoolean(NotifUtils.JSON_KEY_ENABLED, false)) {
+            enabledByScheduledAt.add(key);
+        }
+        if (changes != null) changes.put(id, notification);
+    }
+
+    /**
+     * Removes the notification with the given id. Returns the removed entry, or {@code null}.
+     *
+     * @throws IllegalStateException if the store is frozen.
+     */
+    public JSONObject delete(String id) {
+        checkNotFrozen();
+        JSONObject removed = byId.remove(id);
+        if (removed != null) {
+            unindex(id);
+            if (changes != null) changes.put(id, null);
+        }
+        return removed;
+    }
+
+    /** Number of indexed notifications (entries without an id are not counted). */
+    public int size() {
+        return byId.size();
+    }
+
+    /** All indexed notifications in storage order. The returned view is read-only. */
+    public Collection<JSONObject> all() {
+        return Collections.unmodifiableCollection(byId.values());
+    }
+
+    /**
+     * Returns notifications whose {@code scheduledAt} falls in {@code [fromInclusive, toExclusive)},
+     * ordered by {@code scheduledAt} ascending (ties broken by id).
+     */
+    public List<JSONObject> rangeByScheduledAt(long fromInclusive, long toExclusive) {
+        List<JSONObject> result = new ArrayList<>();
+        if (fromInclusive >= toExclusive) return result;
+        for (IndexKey key : byScheduledAt.subSet(
+                new IndexKey(fromInclusive, ""), true,
+                new IndexKey(toExclusive, ""), false)) {
+            result.add(byId.get(key.id));
+        }
+        return result;
+    }
+
+    /**
+     * Active partition: enabled notifications due after {@code now}, soonest first. These are
+     * the only entries that need an alarm. O(log n + k) in the number returned.
+     */
+    public List<JSONObject> active(long now) {
+        return entries(enabledByScheduledAt.tailSet(new IndexKey(now + 1, ""), true));
+    }
+
+    /**
+     * Enabled notifications whose time is at or before {@code now} (they have fired), oldest
+     * first: the part of the archive the widget lists as expired.
+     */
+    public List<JSONObject> expired(long now) {
+        return entries(enabledByScheduledAt.headSet(new IndexKey(now + 1, ""), false));
+    }
+
+    /**
+     * Enabled notifications due in {@code (afterExclusive, upToInclusive]}, soonest first: the
+     * ones {@link AlarmDispatcher} delivers when its alarm fires. O(log n + k).
+     */
+    public List<JSONObject> enabledDueBetween(long afterExclusive, long upToInclusive) {
+        if (afterExclusive >= upToInclusive) return new ArrayList<>();
+        return entries(enabledByScheduledAt.subSet(
+                new IndexKey(afterExclusive + 1, ""), true,
+                new IndexKey(upToInclusive + 1, ""), false));
+    }
+
+    /**
+     * The earliest {@code scheduledAt} of an enabled notification due after {@code after}, or
+     * {@code 0} if there is none. O(log n).
+     */
+    public long nextEnabledAfter(long after) {
+        IndexKey next = enabledByScheduledAt.ceiling(new IndexKey(after + 1, ""));
+        return next != null ? next.scheduledAt : 0L;
+    }
+
+    /**
+     * Archive partition: every notification not in {@link #active(long) active(now)} — disabled,
+     * expired or never scheduled — in storage order. O(n); meant for history views.
+     */
+    public List<JSONObject> archive(long now) {
+        List<JSONObject> result = new ArrayList<>();
+        for (JSONObject obj : byId.values()) {
+            String id = obj.optString(NotifUtils.JSON_KEY_ID, "");
+            long scheduledAt = scheduledAtOf(id);
+            if (scheduledAt <= now || !enabledByScheduledAt.contains(new IndexKey(scheduledAt, id))) {
+                result.add(obj);
+            }
+        }
+        return result;
+    }
+
+    /** Number of entries kept as-is because they have no id or are not JSON objects. */
+    public int unindexedCount() {
+        return unindexed.size();
+    }
+
+    private List<JSONObject> entries(Collection<IndexKey> keys) {
+        List<JSONObject> result = new ArrayList<>(keys.size());
+        for (IndexKey key : keys) {
+            result.add(byId.get(key.id));
+        }
+        return result;
+    }
+
+    /** Serializes the store to the JSON array format shared with the web layer. */
+    public String toJson() {
+        JSONArray array = new JSONArray();
+        for (JSONObject obj : byId.values()) {
+            array.put(obj);
+        }
+        for (Object entry : unindexed) {
+            array.put(entry);
+        }
+        return array.toString();
+    }
+
+    private void unindex(String id) {
+        Long previous = scheduledAtById.remove(id);
+        if (previous != null) {
+            IndexKey key = new IndexKey(previous, id);
+            byScheduledAt.remove(key);
+            enabledByScheduledAt.remove(key);
+        }
+    }
+
+    /** Sort key for the {@code scheduledAt} index. The empty id sorts before any real id. */
+    private static final class IndexKey implements Comparable<IndexKey> {
+        final long scheduledAt;
+        final String id;
+
+        IndexKey(long scheduledAt, String id) {
+            this.scheduledAt = scheduledAt;
+            this.id = id;
+        }
+
+        @Override
+        public int compareTo(IndexKey other) {
+            int byTime = Long.compare(scheduledAt, other.scheduledAt);
+            return byTime != 0 ? byTime : id.compareTo(other.id);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof IndexKey)) return false;
+            IndexKey other = (IndexKey) o;
+            return scheduledAt == other.scheduledAt && id.equals(other.id);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * (int) (scheduledAt ^ (scheduledAt >>> 32)) + id.hashCode();
+        }
+    }
+}
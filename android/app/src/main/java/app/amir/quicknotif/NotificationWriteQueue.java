@@ -0,0 +1,211 @@
+package app.amir.quicknotif;
+
+import android.content.SharedPreferences;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+
+/**
+ * Single background writer for {@link NotifUtils#KEY_NOTIFICATIONS}.
+ *
+ * <p>{@link #enqueue} returns immediately. Saves that arrive before the writer thread gets to them
+ * are grouped: only the latest payload is committed, with one {@code commit()} (and one fsync)
+ * for the whole group, and every save in the group shares the same {@link Future}. Callers that
+ * need durability wait on it; the result is {@code true} once the payload is on disk.
+ *
+ * <p>Reads go through {@link #peek()}, which returns the newest queued payload before it reaches
+ * SharedPreferences, so a save is visible to readers in this process immediately.
+ *
+ * <p>The web app writes the same key through Capacitor Preferences, which this queue does not see.
+ * If the stored value changes after a group was queued, the group is dropped rather than
+ * overwriting the newer value, matching the order the two writes were made in. Its future then
+ * completes with {@code false}.
+ */
+public final class NotificationWriteQueue {
+
+    private static final String TAG = "NotificationWriteQueue";
+
+    private static final ExecutorService writer = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "notif-prefs-writer");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private final SharedPreferences prefs;
+    private final Executor executor;
+    private final Object lock = new Object();
+
+    // Guarded by lock
+    private Group queued;
+    private Group inFlight;
+
+    // Metrics, guarded by lock
+    private long saves;
+    private long coalesced;
+    private long commits;
+    private long superseded;
+    private long failures;
+    private int maxDepth;
+    private long lastCommitMs;
+    private long maxCommitMs;
+    private long totalCommitMs;
+    private long lastLatencyMs;
+    private long maxLatencyMs;
+
+    public NotificationWriteQueue(SharedPreferences prefs) {
+        this(prefs, writer);
+    }
+
+    /** Package-private to let unit tests control when queued groups are written. */
+    NotificationWriteQueue(SharedPreferences prefs, Executor executor) {
+        this.prefs = prefs;
+        this.executor = executor;
+    }
+
+    /** Saves waiting for the same commit. */
+    private final class Group {
+        final String base;
+        final long firstEnqueuedAt = System.currentTimeMillis();
+        final FutureTask<Boolean> task = new FutureTask<>(() -> write(this));
+        String json;
+        int size;
+
+        Group(String base) {
+            this.base = base;
+        }
+    }
+
+    /**
+     * Queues {@code json} to be written. Returns a future that completes with {@code true} once
+     * it (or a later save grouped with it) has been committed to disk.
+     */
+    public Future<Boolean> enqueue(String json) {
+        Group group;
+        boolean schedule = false;
+        synchronized (lock) {
+            group = queued;
+            if (group == null) {
+                group = new Group(peekLocked());
+                queued = group;
+                schedule = true;
+            } else {
+                coalesced++;
+            }
+            group.json = json;
+            group.size++;
+            saves++;
+            maxDepth = Math.max(maxDepth, depthLocked());
+        }
+        if (schedule) {
+            executor.execute(group.task);
+        }
+        return group.task;
+    }
+
+    /** Returns the newest payload: queued, being written, or already stored. */
+    public String peek() {
+        synchronized (lock) {
+            return peekLocked();
+        }
+    }
+
+    private String peekLocked() {
+        if (queued != null) return queued.json;
+        if (inFlight != null) return inFlight.json;
+        return prefs.getString(NotifUtils.KEY_NOTIFICATIONS, "[]");
+    }
+
+    /** Blocks until every save queued so far has been written (or dropped). */
+    public void awaitIdle() throws Exception {
+        Future<Boolean> last;
+        synchronized (lock) {
+            last = queued != null ? queued.task : inFlight != null ? inFlight.task : null;
+        }
+        if (last != null) last.get();
+    }
+
+    private boolean write(Group group) {
+        String json;
+        synchronized (lock) {
+            if (queued == group) queued = null;
+            inFlight = group;
+            json = group.json;
+        }
+
+        boolean written = false;
+        boolean dropped = false;
+        long start = System.currentTimeMillis();
+        try {
+            if (prefs.getString(NotifUtils.KEY_NOTIFICATIONS, "[]") != group.base) {
+                AppLogger.w(TAG, "⚠️ Notifications were replaced by another writer, dropping "
+                        + group.size + " queued save(s)");
+                dropped = true;
+                return false;
+            }
+            written = prefs.edit().putString(NotifUtils.KEY_NOTIFICATIONS, json).commit();
+            if (!written) {
+                AppLogger.e(TAG, "❌ Failed to commit notifications to SharedPreferences");
+            }
+            return written;
+        } finally {
+            long end = System.currentTimeMillis();
+            synchronized (lock) {
+                if (inFlight == group) inFlight = null;
+                if (written) {
+                    commits++;
+                    lastCommitMs = end - start;
+                    maxCommitMs = Math.max(maxCommitMs, lastCommitMs);
+                    totalCommitMs += lastCommitMs;
+                    lastLatencyMs = end - group.firstEnqueuedAt;
+                    maxLatencyMs = Math.max(maxLatencyMs, lastLatencyMs);
+                } else if (dropped) {
+                    superseded++;
+                } else {
+                    failures++;
+                }
+            }
+        }
+    }
+
+    private int depthLocked() {
+        return (queued != null ? queued.size : 0) + (inFlight != null ? inFlight.size : 0);
+    }
+
+    /**
+     * Returns queue depth and commit latency counters as a JSON string:
+     * {@code saves}, {@code coalesced} (saves folded into another save's commit), and per group
+     * {@code commits}, {@code superseded} and {@code failures}; {@code depth} / {@code maxDepth}
+     * (saves queued or being written), and
+     * {@code lastCommitMs} / {@code avgCommitMs} / {@code maxCommitMs} (time spent in
+     * {@code commit()}) and {@code lastLatencyMs} / {@code maxLatencyMs} (first save queued
+     * to durable).
+     */
+    public String metricsJson() {
+        JSONObject metrics = new JSONObject();
+        synchronized (lock) {
+            try {
+                metrics.put("saves", saves);
+                metrics.put("commits", commits);
+                metrics.put("coalesced", coalesced);
+                metrics.put("superseded", superseded);
+                metrics.put("failures", failures);
+                metrics.put("depth", depthLocked());
+                metrics.put("maxDepth", maxDepth);
+                metrics.put("lastCommitMs", lastCommitMs);
+                metrics.put("avgCommitMs", commits > 0 ? totalCommitMs / commits : 0);
+                metrics.put("maxCommitMs", maxCommitMs);
+                metrics.put("lastLatencyMs", lastLatencyMs);
+                metrics.put("maxLatencyMs", maxLatencyMs);
+            } catch (JSONException e) {
+                AppLogger.e(TAG, "❌ Failed to build write queue metrics", e);
+            }
+        }
+        return metrics.toString();
+    }
+}
@@ -0,0 +1,153 @@
+package app.amir.quicknotif;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Hands out the int used for a notification's PendingIntent request code and
+ * NotificationManager id, unique per string id.
+ *
+ * <p>{@link NotifUtils#generateNumericId} hashes string ids into the int space, and
+ * by the birthday bound two of a few tens of thousands of ids already share a value. Two
+ * notifications with the same number share a PendingIntent, so one alarm silently replaces
+ * the other. The allocator still tries the hash first, so ids armed before it existed keep
+ * resolving to the same number. If that number is taken by another id, it probes upward to
+ * the next free one instead. The assignment is persisted in its own preferences file
+ * ({@link #PREFS_NAME}); the web app reaches it through the {@code getNumericId} bridge method
+ * used by {@code toNumericId}. Ints of deleted notifications are {@link #release released};
+ * {@link RetentionWorker} also frees those of ids deleted by the web app ({@link #releaseUnused}).
+ */
+public final class NumericIdAllocator {
+
+    private static final String TAG = "NumericIdAllocator";
+
+    /** Preferences file mapping string id to allocated int. */
+    public static final String PREFS_NAME = "QuickNotifNumericIds";
+
+    private static volatile NumericIdAllocator instance;
+
+    private final SharedPreferences prefs;
+    private final Map<String, Integer> byId = new HashMap<>();
+    private final Map<Integer, String> byNumber = new HashMap<>();
+    // Allocations whose legacy hash was already taken, since the process started
+    private long collisions;
+
+    /** Loads the allocations from {@code prefs}. Package-private for tests; use {@link #get}. */
+    NumericIdAllocator(SharedPreferences prefs) {
+        this.prefs = prefs;
+        for (Map.Entry<String, ?> e : prefs.getAll().entrySet()) {
+            if (!(e.getValue() instanceof Integer)) continue;
+            Integer number = (Integer) e.getValue();
+            if (byNumber.containsKey(number)) {
+                AppLogger.w(TAG, "⚠️ Ignoring duplicate allocation of " + number + " to " + e.getKey());
+                continue;
+            }
+            byId.put(e.getKey(), number);
+            byNumber.put(number, e.getKey());
+        }
+    }
+
+    /** Returns the allocator bound to the app's {@link #PREFS_NAME} preferences. */
+    public static NumericIdAllocator get(Context context) {
+        SharedPreferences prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        NumericIdAllocator allocator = instance;
+        if (allocator == null || allocator.prefs != prefs) {
+            synchronized (NumericIdAllocator.class) {
+                allocator = instance;
+                if (allocator == null || allocator.prefs != prefs) {
+                    allocator = new NumericIdAllocator(prefs);
+                    instance = allocator;
+                }
+            }
+        }
+        return allocator;
+    }
+
+    /** The int for {@code id}, allocating and persisting one on first use. */
+    public synchronized int numericIdFor(String id) {
+        Integer existing = byId.get(id);
+        if (existing != null) return existing;
+        int number = allocate(id);
+        prefs.edit().putInt(id, number).apply();
+        return number;
+    }
+
+    /** {@link #numericIdFor} for many ids, persisted with a single write. */
+    public synchronized Map<String, Integer> numericIdsFor(Collection<String> ids) {
+        Map<String, Integer> result = new HashMap<>();
+        SharedPreferences.Editor editor = null;
+        for (String id : ids) {
+            Integer number = byId.get(id);
+            if (number == null) {
+                number = allocate(id);
+                if (editor == null) editor = prefs.edit();
+                editor.putInt(id, number);
+            }
+            result.put(id, number);
+        }
+        if (editor != null) editor.apply();
+        return result;
+    }
+
+    /** The string id the int was allocated to, or {@code null}. */
+    public synchronized String idFor(int numericId) {
+        return byNumber.get(numericId);
+    }
+
+    /** Frees the ints of deleted notifications so they can be handed out again. */
+    public synchronized void release(Collection<String> ids) {
+        SharedPreferences.Editor editor = prefs.edit();
+        for (String id : ids) {
+            Integer number = byId.remove(id);
+            if (number != null) {
+                byNumber.remove(number);
+                editor.remove(id);
+            }
+        }
+        editor.apply();
+    }
+
+    /**
+     * Frees the ints of ids that are no longer in {@code store} and have no alarm in
+     * {@code registry}, e.g. notifications the web app deleted. Returns how many were freed.
+     */
+    public synchronized int releaseUnused(NotificationStore store, AlarmRegistry registry) {
+        List<String> unused = new ArrayList<>();
+        for (Map.Entry<String, Integer> e : byId.entrySet()) {
+            if (!store.contains(e.getKey()) && !registry.isArmed(e.getValue())) unused.add(e.getKey());
+        }
+        if (!unused.isEmpty()) release(unused);
+        return unused.size();
+    }
+
+    public synchronized int size() {
+        return byId.size();
+    }
+
+    /** Allocations since the process started that could not use the id's legacy hash. */
+    public synchronized long collisionCount() {
+        return collisions;
+    }
+
+    private int allocate(String id) {
+        int number = NotifUtils.generateNumericId(id);
+        if (byNumber.containsKey(number)) {
+            collisions++;
+            do {
+                // Stay in [1, Integer.MAX_VALUE - 1], the range of the legacy hash
+                number = number >= Integer.MAX_VALUE - 1 ? 1 : number + 1;
+            } while (byNumber.containsKey(number));
+            AppLogger.d(TAG, "🔢 " + id + " collides with " + byNumber.get(NotifUtils.generateNumericId(id))
+                    + ", allocated " + number);
+        }
+        byId.put(id, number);
+        byNumber.put(number, id);
+        return number;
+    }
+}
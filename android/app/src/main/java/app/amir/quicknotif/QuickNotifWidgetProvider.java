@@ -10,11 +10,11 @@ import android.net.Uri;
 import android.os.SystemClock;
 import android.widget.RemoteViews;
 
-import org.json.JSONArray;
 import org.json.JSONObject;
 
 import java.text.SimpleDateFormat;
 import java.util.Calendar;
+import java.util.Collections;
 import java.util.Date;
 import java.util.Locale;
 
@@ -111,18 +111,10 @@ public class QuickNotifWidgetProvider extends AppWidgetProvider {
 
     private void deleteNotification(Context context, String notificationId) {
         try {
-            String notificationsJson = NotifUtils.readNotificationsJson(context);
-            JSONArray array = new JSONArray(notificationsJson);
-            JSONArray newArray = new JSONArray();
-
-            for (int i = 0; i < array.length(); i++) {
-                JSONObject obj = array.getJSONObject(i);
-                if (!notificationId.equals(obj.optString(NotifUtils.JSON_KEY_ID, ""))) {
-                    newArray.put(obj);
-                }
-            }
-
-            NotifUtils.saveNotificationsJson(context, newArray.toString());
+            if (NotificationRepository.get(context).delete(notificationId) == null) return;
+            // Its alarm goes first, so the int can be handed to another id
+            NotifUtils.cancelAlarm(context, notificationId);
+            NumericIdAllocator.get(context).release(Collections.singletonList(notificationId));
         } catch (Exception e) {
             AppLogger.e(TAG,"❌ Failed to delete notification: " + notificationId, e);
         }
@@ -130,52 +122,46 @@ public class QuickNotifWidgetProvider extends AppWidgetProvider {
 
     private void reactivateNotification(Context context, String notificationId) {
         try {
-            String notificationsJson = NotifUtils.readNotificationsJson(context);
-            JSONArray array = new JSONArray(notificationsJson);
-
-            for (int i = 0; i < array.length(); i++) {
-                JSONObject obj = array.getJSONObject(i);
-                String id = obj.optString(NotifUtils.JSON_KEY_ID, "");
-
-                if (id.equals(notificationId)) {
-                    String name = obj.optString(NotifUtils.JSON_KEY_NAME, "");
-                    String time = obj.optString(NotifUtils.JSON_KEY_TIME, "");
-                    String type = obj.optString(NotifUtils.JSON_KEY_TYPE, "");
-
-                    // Reject notifications with an invalid or missing type field
-                    if (!NotifUtils.TYPE_RELATIVE.equals(type) && !NotifUtils.TYPE_ABSOLUTE.equals(type)) {
-                        AppLogger.e(TAG, "❌ Invalid or missing type for notification: " + name + " — skipping reactivation");
-                        break;
-                    }
+            JSONObject obj = NotificationRepository.get(context).update(
+                    NotificationJournal.OP_REACTIVATE, notificationId, entry -> {
+                String name = entry.optString(NotifUtils.JSON_KEY_NAME, "");
+                String time = entry.optString(NotifUtils.JSON_KEY_TIME, "");
+                String type = entry.optString(NotifUtils.JSON_KEY_TYPE, "");
+
+                // Reject notifications with an invalid or missing type field
+                if (!NotifUtils.TYPE_RELATIVE.equals(type) && !NotifUtils.TYPE_ABSOLUTE.equals(type)) {
+                    AppLogger.e(TAG, "❌ Invalid or missing type for notification: " + name + " — skipping reactivation");
+                    return false;
+                }
 
-                    long interval = 0L;
-                    if (NotifUtils.TYPE_RELATIVE.equals(type)) {
-                        interval = obj.optLong(NotifUtils.JSON_KEY_INTERVAL, 0L);
-                        if (interval <= 0 && !time.isEmpty()) {
-                            interval = parseRelativeIntervalMs(time);
-                            if (interval > 0) {
-                                obj.put(NotifUtils.JSON_KEY_INTERVAL, interval);
-                            }
+                long interval = 0L;
+                if (NotifUtils.TYPE_RELATIVE.equals(type)) {
+                    interval = entry.optLong(NotifUtils.JSON_KEY_INTERVAL, 0L);
+                    if (interval <= 0 && !time.isEmpty()) {
+                        interval = parseRelativeIntervalMs(time);
+                        if (interval > 0) {
+                            entry.put(NotifUtils.JSON_KEY_INTERVAL, interval);
                         }
                     }
+                }
 
-                    long newScheduledAt = calculateNewScheduleTime(type, time, interval);
-                    if (newScheduledAt <= 0) {
-                        AppLogger.e(TAG,"❌ Could not calculate schedule time for: " + name);
-                        break;
-                    }
-
-                    obj.put(NotifUtils.JSON_KEY_SCHEDULED_AT, newScheduledAt);
-                    obj.put(NotifUtils.JSON_KEY_UPDATED_AT, System.currentTimeMillis());
-                    obj.put(NotifUtils.JSON_KEY_ENABLED, true);
-
-                    NotifUtils.saveNotificationsJson(context, array.toString());
-                    NotifUtils.scheduleAlarm(context, id, name, newScheduledAt);
-                    NotifUtils.writeToLog(context, "REACTIVATE", id, name, newScheduledAt);
-
-                    break;
+                long newScheduledAt = calculateNewScheduleTime(type, time, interval);
+                if (newScheduledAt <= 0) {
+                    AppLogger.e(TAG,"❌ Could not calculate schedule time for: " + name);
+                    return false;
                 }
-            }
+
+                entry.put(NotifUtils.JSON_KEY_SCHEDULED_AT, newScheduledAt);
+                entry.put(NotifUtils.JSON_KEY_UPDATED_AT, System.currentTimeMillis());
+                entry.put(NotifUtils.JSON_KEY_ENABLED, true);
+                return true;
+            });
+            if (obj == null) return;
+
+            String name = obj.optString(NotifUtils.JSON_KEY_NAME, "");
+            long newScheduledAt = obj.getLong(NotifUtils.JSON_KEY_SCHEDULED_AT);
+            NotifUtils.scheduleAlarm(context, notificationId, name, newScheduledAt, DeliveryClass.of(obj));
+            NotifUtils.writeToLog(context, "REACTIVATE", notificationId, name, newScheduledAt);
         } catch (Exception e) {
             AppLogger.e(TAG,"❌ Failed to reactivate notification: " + notificationId, e);
         }
@@ -6,12 +6,10 @@ import android.view.View;
 import android.widget.RemoteViews;
 import android.widget.RemoteViewsService;
 
-import org.json.JSONArray;
 import org.json.JSONObject;
 
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.Date;
 import java.util.List;
 import java.util.Locale;
@@ -29,12 +27,13 @@ import java.util.Locale;
  *       with an {@link Intent} targeting this service.</li>
  *   <li>The system binds to this service and calls {@link #onGetViewFactory}, which returns
  *       a {@link QuickNotifRemoteViewsFactory}.</li>
- *   <li>The factory's {@code onCreate} loads notifications from SharedPreferences, sorts them
- *       (expired first, then by scheduled time), and holds them in memory.</li>
+ *   <li>The factory's {@code onCreate} loads the enabled notifications from
+ *       {@link NotificationRepository} (expired first, then active, each by scheduled time)
+ *       and holds them in memory.</li>
  *   <li>The system calls {@code getViewAt} for each visible row, which inflates
  *       {@code widget_item} and sets text, colors, and click intents per row.</li>
  *   <li>On widget refresh ({@code notifyAppWidgetViewDataChanged}), the system calls
- *       {@code onDataSetChanged}, which reloads from SharedPreferences to reflect any
+ *       {@code onDataSetChanged}, which reloads from the repository to reflect any
  *       changes made by widget actions or the React app.</li>
  * </ol>
  */
@@ -73,7 +72,7 @@ public class QuickNotifWidgetService extends RemoteViewsService {
 
         /**
          * Called when {@code notifyAppWidgetViewDataChanged} is triggered. Reloads
-         * from SharedPreferences so the widget reflects the latest state.
+         * from {@link NotificationRepository} so the widget reflects the latest state.
          */
         @Override
         public void onDataSetChanged() {
@@ -185,8 +184,7 @@ public class QuickNotifWidgetService extends RemoteViewsService {
         private void loadNotifications() {
             notifications.clear();
             try {
-                String notificationsJson = NotifUtils.readNotificationsJson(context);
-                JSONArray array = new JSONArray(notificationsJson);
+                NotificationStore store = NotificationRepository.get(context).snapshot();
 
                 SimpleDateFormat timeFormat = new SimpleDateFormat(TIME_DISPLAY_FORMAT, Locale.getDefault());
                 SimpleDateFormat dateFormat = new SimpleDateFormat(DATE_DISPLAY_FORMAT, Locale.getDefault());
@@ -194,31 +192,10 @@ public class QuickNotifWidgetService extends RemoteViewsService {
                 List<NotificationData> tempNotifications = new ArrayList<>();
                 long currentTime = System.currentTimeMillis();
 
-                for (int i = 0; i < array.length(); i++) {
-                    JSONObject obj = array.getJSONObject(i);
-                    boolean enabled = obj.optBoolean(NotifUtils.JSON_KEY_ENABLED, false);
-                    String id = obj.optString(NotifUtils.JSON_KEY_ID, "");
-
-                    long scheduledAt = NotifUtils.parseScheduledAt(obj);
-
-                    if (enabled && scheduledAt > 0) {
-                        String name = obj.optString(NotifUtils.JSON_KEY_NAME, "");
-                        String time = obj.optString(NotifUtils.JSON_KEY_TIME, "");
-                        String type = obj.optString(NotifUtils.JSON_KEY_TYPE, NotifUtils.TYPE_RELATIVE);
-                        String timeString = timeFormat.format(new Date(scheduledAt));
-                        String dateString = dateFormat.format(new Date(scheduledAt));
-                        boolean isExpired = scheduledAt <= currentTime;
-                        tempNotifications.add(new NotificationData(id, name, timeString, dateString, scheduledAt, isExpired, time, type));
-                    }
-                }
-
-                // Sort: expired first, then by scheduled time ascending
-                Collections.sort(tempNotifications, (n1, n2) -> {
-                    if (n1.isExpired() != n2.isExpired()) {
-                        return n1.isExpired() ? -1 : 1;
-                    }
-                    return Long.compare(n1.scheduledAt(), n2.scheduledAt());
-                });
+                // Expired first, then upcoming; each partition is already ordered by scheduled time.
+                // Disabled notifications are never visited.
+                addRows(tempNotifications, store, store.expired(currentTime), true, timeFormat, dateFormat);
+                addRows(tempNotifications, store, store.active(currentTime), false, timeFormat, dateFormat);
 
                 notifications.addAll(tempNotifications);
             } catch (Exception e) {
@@ -226,6 +203,21 @@ public class QuickNotifWidgetService extends RemoteViewsService {
             }
         }
 
+        private static void addRows(List<NotificationData> rows, NotificationStore store,
+                                    List<JSONObject> entries, boolean isExpired,
+                                    SimpleDateFormat timeFormat, SimpleDateFormat dateFormat) {
+            for (JSONObject obj : entries) {
+                String id = obj.optString(NotifUtils.JSON_KEY_ID, "");
+                long scheduledAt = store.scheduledAtOf(id);
+                String name = obj.optString(NotifUtils.JSON_KEY_NAME, "");
+                String time = obj.optString(NotifUtils.JSON_KEY_TIME, "");
+                String type = obj.optString(NotifUtils.JSON_KEY_TYPE, NotifUtils.TYPE_RELATIVE);
+                String timeString = timeFormat.format(new Date(scheduledAt));
+                String dateString = dateFormat.format(new Date(scheduledAt));
+                rows.add(new NotificationData(id, name, timeString, dateString, scheduledAt, isExpired, time, type));
+            }
+        }
+
         /** Immutable data holder for a single notification row in the widget list. */
         private record NotificationData(
                 String id,
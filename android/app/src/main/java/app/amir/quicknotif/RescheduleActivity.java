@@ -4,7 +4,6 @@ import android.widget.RadioButton;
 import android.widget.TextView;
 import android.widget.Toast;
 
-import org.json.JSONArray;
 import org.json.JSONObject;
 
 import java.util.Locale;
@@ -89,43 +88,39 @@ public class RescheduleActivity extends BaseNotificationActivity {
 
     private void updateNotification(String id, String time, String type, long scheduledAt) {
         try {
-            String notificationsJson = NotifUtils.readNotificationsJson(this);
-            JSONArray array = new JSONArray(notificationsJson);
-
-            for (int i = 0; i < array.length(); i++) {
-                JSONObject obj = array.getJSONObject(i);
-                if (id.equals(obj.optString(NotifUtils.JSON_KEY_ID, ""))) {
-                    obj.put(NotifUtils.JSON_KEY_TIME, time);
-                    obj.put(NotifUtils.JSON_KEY_TYPE, type);
-                    obj.put(NotifUtils.JSON_KEY_SCHEDULED_AT, scheduledAt);
-                    obj.put(NotifUtils.JSON_KEY_UPDATED_AT, System.currentTimeMillis());
-                    obj.put(NotifUtils.JSON_KEY_ENABLED, true);
-
-                    if (NotifUtils.TYPE_RELATIVE.equals(type)) {
-                        // Parse the time string to derive the interval in ms
-                        String[] parts = time.toLowerCase().split(" ");
-                        long totalMinutes = 0;
-                        for (int j = 0; j < parts.length - 1; j += 2) {
-                            try {
-                                int value = Integer.parseInt(parts[j]);
-                                String unit = parts[j + 1];
-                                if (unit.contains("hour")) {
-                                    totalMinutes += value * 60L;
-                                } else if (unit.contains("minute")) {
-                                    totalMinutes += value;
-                                }
-                            } catch (Exception ignored) {}
-                        }
-                        obj.put(NotifUtils.JSON_KEY_INTERVAL, totalMinutes * 60 * 1000);
-                    } else {
-                        obj.remove(NotifUtils.JSON_KEY_INTERVAL);
+            JSONObject updated = NotificationRepository.get(this).update(id, obj -> {
+                obj.put(NotifUtils.JSON_KEY_TIME, time);
+                obj.put(NotifUtils.JSON_KEY_TYPE, type);
+                obj.put(NotifUtils.JSON_KEY_SCHEDULED_AT, scheduledAt);
+                obj.put(NotifUtils.JSON_KEY_UPDATED_AT, System.currentTimeMillis());
+                obj.put(NotifUtils.JSON_KEY_ENABLED, true);
+
+                if (NotifUtils.TYPE_RELATIVE.equals(type)) {
+                    // Parse the time string to derive the interval in ms
+                    String[] parts = time.toLowerCase().split(" ");
+                    long totalMinutes = 0;
+                    for (int j = 0; j < parts.length - 1; j += 2) {
+                        try {
+                            int value = Integer.parseInt(parts[j]);
+                            String unit = parts[j + 1];
+                            if (unit.contains("hour")) {
+                                totalMinutes += value * 60L;
+                            } else if (unit.contains("minute")) {
+                                totalMinutes += value;
+                            }
+                        } catch (Exception ignored) {}
                     }
-
-                    break;
+                    obj.put(NotifUtils.JSON_KEY_INTERVAL, totalMinutes * 60 * 1000);
+                } else {
+                    obj.remove(NotifUtils.JSON_KEY_INTERVAL);
                 }
-            }
+                return true;
+            });
 
-            NotifUtils.saveNotificationsJson(this, array.toString());
+            if (updated == null) {
+                AppLogger.w(TAG, "⚠️ Notification not found in storage: " + id);
+                return;
+            }
             AppLogger.d(TAG,"✅ Updated SharedPreferences");
 
         } catch (Exception e) {
@@ -0,0 +1,164 @@
+package app.amir.quicknotif;
+
+import android.content.SharedPreferences;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Decides which archived notifications {@link RetentionWorker} removes from storage.
+ *
+ * <p>Only the archive partition (disabled, fired or unscheduled entries, see
+ * {@link NotificationStore#archive}) is ever considered; active notifications are always kept.
+ * Three independent rules apply, each turned off by a value of {@code 0}:
+ * <ul>
+ *   <li>{@code maxAgeDays} — purge entries whose last activity (the time they fired, or their
+ *       {@code updatedAt}, whichever is later) is older than this;</li>
+ *   <li>{@code keepPerName} — keep only the newest N archived entries with the same name;</li>
+ *   <li>{@code maxArchived} — keep only the newest N archived entries overall.</li>
+ * </ul>
+ *
+ * <p>The web app can override the defaults by storing a JSON object with any of those fields
+ * under {@link #KEY_RETENTION_POLICY} in {@link NotifUtils#PREFS_NAME}.
+ */
+public final class RetentionPolicy {
+
+    private static final String TAG = "RetentionPolicy";
+
+    /** Preferences key holding the policy as JSON, e.g. {@code {"maxAgeDays":30}}. */
+    public static final String KEY_RETENTION_POLICY = "retentionPolicy";
+
+    static final String JSON_KEY_MAX_AGE_DAYS  = "maxAgeDays";
+    static final String JSON_KEY_MAX_ARCHIVED  = "maxArchived";
+    static final String JSON_KEY_KEEP_PER_NAME = "keepPerName";
+
+    public static final int DEFAULT_MAX_AGE_DAYS  = 90;
+    public static final int DEFAULT_MAX_ARCHIVED  = 500;
+    public static final int DEFAULT_KEEP_PER_NAME = 0;
+
+    private static final long DAY_MS = 24L * 60 * 60 * 1000;
+
+    public final int maxAgeDays;
+    public final int maxArchived;
+    public final int keepPerName;
+
+    public RetentionPolicy(int maxAgeDays, int maxArchived, int keepPerName) {
+        this.maxAgeDays = Math.max(0, maxAgeDays);
+        this.maxArchived = Math.max(0, maxArchived);
+        this.keepPerName = Math.max(0, keepPerName);
+    }
+
+    /** Reads the policy from preferences, falling back to the defaults for missing fields. */
+    public static RetentionPolicy fromPrefs(SharedPreferences prefs) {
+        String json = prefs.getString(KEY_RETENTION_POLICY, null);
+        if (json == null) {
+            return new RetentionPolicy(DEFAULT_MAX_AGE_DAYS, DEFAULT_MAX_ARCHIVED, DEFAULT_KEEP_PER_NAME);
+        }
+        try {
+            JSONObject obj = new JSONObject(json);
+            return new RetentionPolicy(
+                    obj.optInt(JSON_KEY_MAX_AGE_DAYS, DEFAULT_MAX_AGE_DAYS),
+                    obj.optInt(JSON_KEY_MAX_ARCHIVED, DEFAULT_MAX_ARCHIVED),
+                    obj.optInt(JSON_KEY_KEEP_PER_NAME, DEFAULT_KEEP_PER_NAME));
+        } catch (JSONException e) {
+            AppLogger.w(TAG, "⚠️ Ignoring unreadable retention policy: " + e.getMessage());
+            return new RetentionPolicy(DEFAULT_MAX_AGE_DAYS, DEFAULT_MAX_ARCHIVED, DEFAULT_KEEP_PER_NAME);
+        }
+    }
+
+    /**
+     * Returns the ids of the archived notifications to purge, in storage order. Does not modify
+     * {@code store}.
+     */
+    public List<String> select(NotificationStore store, long now) {
+        List<Candidate> archived = new ArrayList<>();
+        for (JSONObject obj : store.archive(now)) {
+            String id = obj.optString(NotifUtils.JSON_KEY_ID, "");
+            archived.add(new Candidate(id, obj.optString(NotifUtils.JSON_KEY_NAME, ""),
+                    lastActivity(obj, store.scheduledAtOf(id), now), archived.size()));
+        }
+
+        Set<String> purge = new LinkedHashSet<>();
+        if (maxAgeDays > 0) {
+            long cutoff = now - maxAgeDays * DAY_MS;
+            for (Candidate c : archived) {
+                if (c.lastActivity > 0 && c.lastActivity < cutoff) purge.add(c.id);
+            }
+        }
+
+        // Newest first, so the "keep N" rules keep the most recent entries
+        List<Candidate> newestFirst = new ArrayList<>(archived);
+        Collections.sort(newestFirst, (a, b) -> {
+            int byActivity = Long.compare(b.lastActivity, a.lastActivity);
+            return byActivity != 0 ? byActivity : Integer.compare(b.position, a.position);
+        });
+
+        if (keepPerName > 0) {
+            Map<String, Integer> keptByName = new HashMap<>();
+            for (Candidate c : newestFirst) {
+                if (purge.contains(c.id)) continue;
+                Integer kept = keptByName.get(c.name);
+                int count = kept != null ? kept : 0;
+                if (count >= keepPerName) {
+                    purge.add(c.id);
+                } else {
+                    keptByName.put(c.name, count + 1);
+                }
+            }
+        }
+
+        if (maxArchived > 0) {
+            int kept = 0;
+            for (Candidate c : newestFirst) {
+                if (purge.contains(c.id)) continue;
+                if (kept >= maxArchived) {
+                    purge.add(c.id);
+                } else {
+                    kept++;
+                }
+            }
+        }
+
+        List<String> ordered = new ArrayList<>(purge.size());
+        for (Candidate c : archived) {
+            if (purge.contains(c.id)) ordered.add(c.id);
+        }
+        return ordered;
+    }
+
+    /**
+     * When the entry was last relevant: the later of the time it fired (if it has) and
+     * {@code updatedAt}. {@code 0} if neither is known, which exempts it from the age rule.
+     */
+    private static long lastActivity(JSONObject obj, long scheduledAt, long now) {
+        long fired = scheduledAt > 0 && scheduledAt <= now ? scheduledAt : 0L;
+        return Math.max(fired, NotifUtils.parseTimestamp(obj.opt(NotifUtils.JSON_KEY_UPDATED_AT)));
+    }
+
+    @Override
+    public String toString() {
+        return "maxAgeDays=" + maxAgeDays + ", maxArchived=" + maxArchived + ", keepPerName=" + keepPerName;
+    }
+
+    private static final class Candidate {
+        final String id;
+        final String name;
+        final long lastActivity;
+        final int position;
+
+        Candidate(String id, String name, long lastActivity, int position) {
+            this.id = id;
+            this.name = name;
+            this.lastActivity = lastActivity;
+            this.position = position;
+        }
+    }
+}
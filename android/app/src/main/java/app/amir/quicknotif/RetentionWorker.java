@@ -0,0 +1,139 @@
+package app.amir.quicknotif;
+
+import android.content.Context;
+import androidx.annotation.NonNull;
+import androidx.work.Data;
+import androidx.work.Worker;
+import androidx.work.WorkerParameters;
+
+import java.nio.charset.Charset;
+import java.util.List;
+
+
+/**
+ * RetentionWorker - low-priority WorkManager task that purges old archived notifications.
+ *
+ * Runs once a day while the device is idle and charging (see MainActivity). The ids chosen by
+ * {@link RetentionPolicy} are deleted in a single repository transaction and the result is
+ * written back to the notifications key in one pass. Any PendingIntent still registered for a
+ * purged id is cancelled. Numeric ids of notifications no longer stored, whether purged here or
+ * deleted by the web app, are released (see {@link NumericIdAllocator#releaseUnused}). The number
+ * of entries and bytes reclaimed is logged and returned as the work's output data.
+ */
+public class RetentionWorker extends Worker {
+
+    private static final String TAG = "RetentionWorker";
+
+    public static final String UNIQUE_WORK_NAME = "notification_retention";
+
+    // Output data keys
+    public static final String OUTPUT_PURGED           = "purged";
+    public static final String OUTPUT_BYTES_RECLAIMED  = "bytesReclaimed";
+    public static final String OUTPUT_ALARMS_CANCELLED = "alarmsCancelled";
+    public static final String OUTPUT_IDS_RELEASED     = "idsReleased";
+    public static final String OUTPUT_DURATION_MS      = "durationMs";
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    public RetentionWorker(@NonNull Context context, @NonNull WorkerParameters params) {
+        super(context, params);
+    }
+
+    @NonNull
+    @Override
+    public Result doWork() {
+        Context ctx = getApplicationContext();
+        AppLogger.init(ctx);
+        try {
+            Report report = purge(ctx, RetentionPolicy.fromPrefs(NotifUtils.getPrefs(ctx)),
+                    System.currentTimeMillis());
+            return Result.success(new Data.Builder()
+                    .putInt(OUTPUT_PURGED, report.purged)
+                    .putLong(OUTPUT_BYTES_RECLAIMED, report.bytesReclaimed())
+                    .putInt(OUTPUT_ALARMS_CANCELLED, report.alarmsCancelled)
+                    .putInt(OUTPUT_IDS_RELEASED, report.idsReleased)
+                    .putLong(OUTPUT_DURATION_MS, report.durationMs)
+                    .build());
+        } catch (Exception e) {
+            AppLogger.e(TAG, "❌ Retention pass failed", e);
+            return Result.retry();
+        }
+    }
+
+    /** Outcome of one retention pass. */
+    static final class Report {
+        final int scanned;
+        final int purged;
+        final int alarmsCancelled;
+        final int idsReleased;
+        final long bytesBefore;
+        final long bytesAfter;
+        final long durationMs;
+
+        Report(int scanned, int purged, int alarmsCancelled, int idsReleased, long bytesBefore,
+               long bytesAfter, long durationMs) {
+            this.scanned = scanned;
+            this.purged = purged;
+            this.alarmsCancelled = alarmsCancelled;
+            this.idsReleased = idsReleased;
+            this.bytesBefore = bytesBefore;
+            this.bytesAfter = bytesAfter;
+            this.durationMs = durationMs;
+        }
+
+        long bytesReclaimed() {
+            return Math.max(0, bytesBefore - bytesAfter);
+        }
+    }
+
+    /**
+     * Applies {@code policy} to the stored notifications. Package-private to allow direct
+     * invocation from unit tests.
+     */
+    static Report purge(Context ctx, RetentionPolicy policy, long now) throws Exception {
+        long start = System.currentTimeMillis();
+        NotificationRepository repository = NotificationRepository.get(ctx);
+        long bytesBefore = storedBytes(ctx);
+        int scanned = repository.snapshot().size();
+
+        List<String> purged = repository.transaction(store -> {
+            List<String> ids = policy.select(store, now);
+            for (String id : ids) {
+                store.delete(id);
+            }
+            return ids;
+        });
+
+        if (purged.isEmpty()) {
+            int released = releaseUnused(ctx, repository);
+            AppLogger.d(TAG, "📭 Nothing to purge (" + scanned + " notifications, " + policy + "), "
+                    + released + " unused ids released");
+            return new Report(scanned, 0, 0, released, bytesBefore, bytesBefore,
+                    System.currentTimeMillis() - start);
+        }
+
+        // Fold the deletes into the stored array with one write
+        repository.flush();
+        long bytesAfter = storedBytes(ctx);
+
+        int alarmsCancelled = NotifUtils.cancelAlarms(ctx, purged).cancelled;
+        int released = releaseUnused(ctx, repository);
+
+        Report report = new Report(scanned, purged.size(), alarmsCancelled, released, bytesBefore, bytesAfter,
+                System.currentTimeMillis() - start);
+        AppLogger.d(TAG, String.format("🧹 Retention complete: purged %d of %d notifications, reclaimed %d bytes, "
+                        + "cancelled %d leftover alarms, released %d ids in %dms",
+                report.purged, report.scanned, report.bytesReclaimed(), report.alarmsCancelled,
+                report.idsReleased, report.durationMs));
+        return report;
+    }
+
+    /** Releases the numeric ids of notifications no longer stored and without an armed alarm. */
+    private static int releaseUnused(Context ctx, NotificationRepository repository) {
+        return NumericIdAllocator.get(ctx).releaseUnused(repository.snapshot(), AlarmRegistry.get(ctx));
+    }
+
+    private static long storedBytes(Context ctx) {
+        return NotifUtils.readNotificationsJson(ctx).getBytes(UTF_8).length;
+    }
+}
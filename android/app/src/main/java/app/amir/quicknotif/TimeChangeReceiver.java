@@ -0,0 +1,212 @@
+package app.amir.quicknotif;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * TimeChangeReceiver — moves absolute notifications back onto their local time after the clock
+ * or the timezone changes.
+ *
+ * An absolute notification stores the local {@code HH:mm} the user picked in {@code time}, but
+ * is armed for the epoch millis that time had when it was created. After a timezone or DST
+ * change that moment reads as a different local time. On TIME_SET and TIMEZONE_CHANGED this
+ * receiver recomputes {@code scheduledAt} of the active absolute notifications from
+ * {@code time}, commits the ones that moved in one transaction, and re-arms them with one
+ * {@link NotifUtils#scheduleAlarms} call. Relative notifications are on the elapsed-realtime
+ * clock (see {@link ElapsedSchedule}) and are left alone.
+ *
+ * The work runs on a background thread under {@link #goAsync()}. The outcome of the last run is
+ * kept in {@link #PREFS_NAME} for the web app.
+ */
+public class TimeChangeReceiver extends BroadcastReceiver {
+
+    private static final String TAG = "QuickNotifTimeChange";
+
+    /** Preferences file holding the last {@link Result}. */
+    public static final String PREFS_NAME = "QuickNotifTimeChange";
+    private static final String KEY_LAST = "lastRebase";
+
+    private static final long DAY = 86_400_000L;
+
+    private static final ExecutorService worker = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "time-rebase");
+        t.setDaemon(true);
+        return t;
+    });
+
+    /** Outcome of one {@link #rebase} call. */
+    public static final class Result {
+        /** Active absolute notifications looked at. */
+        public final int examined;
+        /** Notifications whose {@code scheduledAt} moved. */
+        public final int rebased;
+        /** Wall time of the whole rebase, storage and alarms included. */
+        public final long durationNanos;
+        /** The batch that re-armed the moved notifications, or {@code null} if none moved. */
+        public final AlarmBatchReport alarms;
+
+        Result(int examined, int rebased, long durationNanos, AlarmBatchReport alarms) {
+            this.examined = examined;
+            this.rebased = rebased;
+            this.durationNanos = durationNanos;
+            this.alarms = alarms;
+        }
+
+        public JSONObject toJson() throws JSONException {
+            JSONObject json = new JSONObject();
+            json.put("examined", examined);
+            json.put("rebased", rebased);
+            json.put("durationMs", durationNanos / 1e6);
+            json.put("armed", alarms != null ? alarms.armed : 0);
+            json.put("failed", alarms != null ? alarms.failed : 0);
+            return json;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US, "%d of %d absolute notifications rebased in %.1fms (%s)",
+                    rebased, examined, durationNanos / 1e6, alarms != null ? alarms : "no alarms");
+        }
+    }
+
+    @Override
+    public void onReceive(Context context, Intent intent) {
+        String action = intent.getAction();
+        if (!Intent.ACTION_TIME_CHANGED.equals(action) && !Intent.ACTION_TIMEZONE_CHANGED.equals(action)) {
+            return;
+        }
+
+        AppLogger.init(context);
+        AppLogger.d(TAG, "🕐 " + action + " - rebasing absolute notifications");
+        Context appContext = context.getApplicationContext();
+        PendingResult pending = goAsync();
+        worker.execute(() -> {
+            try {
+                rebase(appContext, System.currentTimeMillis());
+            } catch (Exception e) {
+                AppLogger.e(TAG, "❌ Failed to rebase absolute notifications", e);
+            } finally {
+                if (pending != null) pending.finish();
+            }
+        });
+    }
+
+    /**
+     * Recomputes {@code scheduledAt} of every active absolute notification from its {@code time}
+     * in the current timezone and re-arms the ones that moved.
+     */
+    static Result rebase(Context context, long now) throws JSONException {
+        long start = System.nanoTime();
+        NotificationRepository repository = NotificationRepository.get(context);
+
+        List<String> ids = new ArrayList<>();
+        int examined = 0;
+        for (JSONObject obj : repository.snapshot().active(now)) {
+            if (!NotifUtils.TYPE_ABSOLUTE.equals(obj.optString(NotifUtils.JSON_KEY_TYPE, ""))) continue;
+            examined++;
+            long scheduledAt = NotifUtils.parseScheduledAt(obj);
+            long rebased = rebasedTime(obj.optString(NotifUtils.JSON_KEY_TIME, ""), scheduledAt, now);
+            if (rebased > 0 && rebased != scheduledAt) {
+                ids.add(obj.optString(NotifUtils.JSON_KEY_ID, ""));
+            }
+        }
+
+        AlarmBatchReport alarms = null;
+        List<JSONObject> moved = new ArrayList<>();
+        if (!ids.isEmpty()) {
+            moved = repository.updateAll(NotificationJournal.OP_UPDATE, ids, entry -> {
+                long scheduledAt = NotifUtils.parseScheduledAt(entry);
+                long rebased = rebasedTime(entry.optString(NotifUtils.JSON_KEY_TIME, ""), scheduledAt, now);
+                if (rebased <= 0 || rebased == scheduledAt) return false;
+                entry.put(NotifUtils.JSON_KEY_SCHEDULED_AT, rebased);
+                entry.put(NotifUtils.JSON_KEY_UPDATED_AT, now);
+                return true;
+            });
+            alarms = rearm(context, repository.snapshot(), moved, now);
+        }
+
+        Result result = new Result(examined, moved.size(), System.nanoTime() - start, alarms);
+        context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE).edit()
+                .putString(KEY_LAST, result.toJson().toString()).apply();
+        AppLogger.d(TAG, "📊 Time change rebase complete: " + result);
+        return result;
+    }
+
+    /**
+     * Re-arms the moved notifications in one batch. With an {@link AlarmHorizon} set, ones that
+     * moved beyond it lose their alarm instead, and the advance alarm follows.
+     */
+    private static AlarmBatchReport rearm(Context context, NotificationStore store,
+                                          List<JSONObject> moved, long now) {
+        if (!AlarmHorizon.isEnabled(context)) {
+            return NotifUtils.scheduleAlarms(context, moved);
+        }
+        List<JSONObject> within = new ArrayList<>();
+        List<String> beyond = new ArrayList<>();
+        for (JSONObject obj : moved) {
+            if (AlarmHorizon.defers(context, NotifUtils.parseScheduledAt(obj), now)) {
+                beyond.add(obj.optString(NotifUtils.JSON_KEY_ID, ""));
+            } else {
+                within.add(obj);
+            }
+        }
+        if (!beyond.isEmpty()) NotifUtils.cancelAlarms(context, beyond);
+        AlarmBatchReport report = NotifUtils.scheduleAlarms(context, within);
+        AlarmHorizon.armAdvance(context, store, now, 0L);
+        return report;
+    }
+
+    /**
+     * The epoch millis of local {@code time} (HH:mm) in the current timezone that is nearest to
+     * {@code scheduledAt}, so a notification set for tomorrow stays tomorrow, moved on by whole
+     * days until it is after {@code now}. Returns {@code -1} if {@code time} cannot be parsed.
+     */
+    static long rebasedTime(String time, long scheduledAt, long now) {
+        Date timeDate;
+        try {
+            timeDate = new SimpleDateFormat("HH:mm", Locale.getDefault()).parse(time);
+        } catch (Exception e) {
+            return -1L;
+        }
+        if (timeDate == null) return -1L;
+        Calendar timeCal = Calendar.getInstance();
+        timeCal.setTime(timeDate);
+
+        Calendar cal = Calendar.getInstance();
+        cal.setTimeInMillis(scheduledAt);
+        cal.set(Calendar.HOUR_OF_DAY, timeCal.get(Calendar.HOUR_OF_DAY));
+        cal.set(Calendar.MINUTE, timeCal.get(Calendar.MINUTE));
+        cal.set(Calendar.SECOND, 0);
+        cal.set(Calendar.MILLISECOND, 0);
+
+        // The same local time on the day before or after may be nearer
+        long candidate = cal.getTimeInMillis();
+        if (candidate - scheduledAt > DAY / 2) {
+            cal.add(Calendar.DAY_OF_MONTH, -1);
+        } else if (scheduledAt - candidate > DAY / 2) {
+            cal.add(Calendar.DAY_OF_MONTH, 1);
+        }
+        while (cal.getTimeInMillis() <= now) {
+            cal.add(Calendar.DAY_OF_MONTH, 1);
+        }
+        return cal.getTimeInMillis();
+    }
+
+    /** The outcome of the last rebase as JSON, or {@code "{}"} if there was none. */
+    public static String lastResultJson(Context context) {
+        return context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE).getString(KEY_LAST, "{}");
+    }
+}
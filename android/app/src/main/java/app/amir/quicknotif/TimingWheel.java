@@ -0,0 +1,240 @@
+package app.amir.quicknotif;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Hierarchical timing wheel with 1 ms ticks, keyed by notification id.
+ *
+ * <p>There are {@link #LEVELS} levels of 64 slots. Level {@code l} covers
+ * {@code 64^(l+1)} ms, and each of its slots covers {@code 64^l} ms, so the four levels span
+ * about 4.6 hours. A timer is placed at the lowest level whose current slot one level up also
+ * contains its deadline. When time reaches a slot of a higher level, that slot is cascaded
+ * into the levels below. Level 0 slots hold timers due at exactly that millisecond. Timers
+ * beyond the top level wait in an overflow list until the top level wraps.
+ *
+ * <p>Each level keeps a 64-bit occupancy mask, so {@link #advanceTo} jumps straight to the next
+ * occupied slot instead of stepping every tick. Scheduling and cancelling are O(1). A cancelled
+ * timer stays in its slot, marked, until the wheel reaches that slot.
+ *
+ * <p>Not thread-safe; {@link ForegroundTimers} guards it with its own lock.
+ */
+final class TimingWheel {
+
+    static final int LEVELS = 4;
+    private static final int BITS = 6;
+    private static final int SLOTS = 1 << BITS;
+    private static final long SLOT_MASK = SLOTS - 1;
+
+    /** One pending timer. */
+    static final class Timer {
+        final String id;
+        final String name;
+        final long deadline;
+        boolean cancelled;
+
+        Timer(String id, String name, long deadline) {
+            this.id = id;
+            this.name = name;
+            this.deadline = deadline;
+        }
+    }
+
+    private static final Comparator<Timer> BY_DEADLINE = new Comparator<Timer>() {
+        @Override
+        public int compare(Timer a, Timer b) {
+            return Long.compare(a.deadline, b.deadline);
+        }
+    };
+
+    private final List<List<Timer>> slots = new ArrayList<>();
+    private final long[] occupied = new long[LEVELS];
+    private final List<Timer> overflow = new ArrayList<>();
+    // Scheduled at or before the current time, returned by the next advanceTo
+    private final List<Timer> ready = new ArrayList<>();
+    private final Map<String, Timer> byId = new HashMap<>();
+    private long current;
+
+    /** A wheel whose time starts at {@code now} (epoch millis). */
+    TimingWheel(long now) {
+        current = now;
+        for (int i = 0; i < LEVELS * SLOTS; i++) {
+            slots.add(new ArrayList<Timer>());
+        }
+    }
+
+    /** Time up to which the wheel has advanced. */
+    long currentTime() {
+        return current;
+    }
+
+    /** Number of pending (not cancelled) timers. */
+    int size() {
+        return byId.size();
+    }
+
+    Timer get(String id) {
+        return byId.get(id);
+    }
+
+    /** Ids of the pending timers. */
+    List<String> ids() {
+        return new ArrayList<>(byId.keySet());
+    }
+
+    /** Schedules a timer for {@code id} at {@code deadline}, replacing any pending one for it. */
+    Timer schedule(String id, String name, long deadline) {
+        cancel(id);
+        Timer timer = new Timer(id, name, deadline);
+        byId.put(id, timer);
+        place(timer);
+        return timer;
+    }
+
+    /** Cancels the pending timer for {@code id}; returns it, or {@code null} if there was none. */
+    Timer cancel(String id) {
+        Timer timer = byId.remove(id);
+        if (timer != null) timer.cancelled = true;
+        return timer;
+    }
+
+    /** Deadline of the earliest pending timer, or {@code 0} if there is none. */
+    long earliestDeadline() {
+        long earliest = 0L;
+        for (Timer timer : byId.values()) {
+            if (earliest == 0L || timer.deadline < earliest) earliest = timer.deadline;
+        }
+        return earliest;
+    }
+
+    /**
+     * When {@link #advanceTo} next has work to do: a deadline or a cascade. {@code -1} if no timer
+     * is pending.
+     */
+    long nextEventTime() {
+        if (!ready.isEmpty()) return current;
+        if (byId.isEmpty()) return -1L;
+        for (int l = 0; l < LEVELS; l++) {
+            int shift = BITS * l;
+            long above = occupied[l] & slotsAfter((int) ((current >>> shift) & SLOT_MASK));
+            if (above != 0) {
+                long base = (current >>> (shift + BITS)) << BITS;
+                return (base | Long.numberOfTrailingZeros(above)) << shift;
+            }
+        }
+        // Nothing left on the wheel: the overflow is re-placed when the top level wraps
+        return ((current >>> (BITS * LEVELS)) + 1) << (BITS * LEVELS);
+    }
+
+    /**
+     * Moves the wheel to {@code now} and adds every timer due by then to {@code expired}, in
+     * deadline order. Time never moves backwards; an earlier {@code now} only returns timers
+     * scheduled in the past.
+     */
+    void advanceTo(long now, List<Timer> expired) {
+        drainReady(expired);
+        if (byId.isEmpty()) {
+            // Only cancelled timers can be left: drop them and jump
+            clear();
+            current = Math.max(current, now);
+            return;
+        }
+        while (current < now) {
+            long next = nextEventTime();
+            if (next < 0 || next > now) {
+                current = now;
+                break;
+            }
+            current = next;
+            cascade();
+            expire(slot(0, (int) (current & SLOT_MASK)), 0, (int) (current & SLOT_MASK), expired);
+            drainReady(expired);
+        }
+    }
+
+    /** Re-places the slots that time has just entered, top level first. */
+    private void cascade() {
+        if ((current & ((1L << (BITS * LEVELS)) - 1)) == 0 && !overflow.isEmpty()) {
+            List<Timer> waiting = new ArrayList<>(overflow);
+            overflow.clear();
+            for (Timer timer : waiting) {
+                if (!timer.cancelled) place(timer);
+            }
+        }
+        for (int l = LEVELS - 1; l >= 1; l--) {
+            int shift = BITS * l;
+            if ((current & ((1L << shift) - 1)) != 0) continue;
+            int index = (int) ((current >>> shift) & SLOT_MASK);
+            if ((occupied[l] & (1L << index)) == 0) continue;
+            List<Timer> slot = slot(l, index);
+            List<Timer> moving = new ArrayList<>(slot);
+            slot.clear();
+            occupied[l] &= ~(1L << index);
+            for (Timer timer : moving) {
+                if (!timer.cancelled) place(timer);
+            }
+        }
+    }
+
+    private void clear() {
+        for (int l = 0; l < LEVELS; l++) {
+            for (long bits = occupied[l]; bits != 0; bits &= bits - 1) {
+                slot(l, Long.numberOfTrailingZeros(bits)).clear();
+            }
+            occupied[l] = 0L;
+        }
+        overflow.clear();
+    }
+
+    private void expire(List<Timer> slot, int level, int index, List<Timer> expired) {
+        for (Timer timer : slot) {
+            if (timer.cancelled) continue;
+            byId.remove(timer.id);
+            expired.add(timer);
+        }
+        slot.clear();
+        occupied[level] &= ~(1L << index);
+    }
+
+    private void drainReady(List<Timer> expired) {
+        if (ready.isEmpty()) return;
+        Collections.sort(ready, BY_DEADLINE);
+        for (Timer timer : ready) {
+            if (timer.cancelled) continue;
+            byId.remove(timer.id);
+            expired.add(timer);
+        }
+        ready.clear();
+    }
+
+    private void place(Timer timer) {
+        long deadline = timer.deadline;
+        if (deadline <= current) {
+            ready.add(timer);
+            return;
+        }
+        for (int l = 0; l < LEVELS; l++) {
+            int parent = BITS * (l + 1);
+            if ((deadline >>> parent) == (current >>> parent)) {
+                int index = (int) ((deadline >>> (BITS * l)) & SLOT_MASK);
+                slot(l, index).add(timer);
+                occupied[l] |= 1L << index;
+                return;
+            }
+        }
+        overflow.add(timer);
+    }
+
+    private List<Timer> slot(int level, int index) {
+        return slots.get(level * SLOTS + index);
+    }
+
+    /** Mask of the slots after {@code index} in a level. */
+    private static long slotsAfter(int index) {
+        return index == SLOTS - 1 ? 0L : -1L << (index + 1);
+    }
+}
@@ -0,0 +1,143 @@
+package app.amir.quicknotif;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Coalesces per-notification alarms that are due close together into one wakeup.
+ *
+ * <p>A burst of relative timers created back to back, or an import that lands many reminders on
+ * the same minute, would otherwise wake the device once per notification. With a coalescing
+ * window of {@link #KEY_COALESCE_WINDOW_MS} set, {@link NotifUtils#scheduleAlarm} does not arm
+ * an alarm for an {@link DeliveryClass#EXACT exact} notification due at most that long after an
+ * alarm that is already armed. The notification is recorded in the {@link AlarmRegistry} as a
+ * follower of that leader alarm instead, and is delivered with it, up to the window early.
+ * {@link NotificationReceiver} then posts the whole burst as one notification group that alerts
+ * once.
+ *
+ * <p>If the leader is cancelled or moved before it fires, its followers are scheduled again
+ * ({@link #rehome}), so the earliest of them arms its own alarm and the rest ride on that.
+ * The window is off ({@code 0}) unless set; next-due mode (see {@link AlarmDispatcher}) already
+ * delivers everything due within {@link AlarmDispatcher#DELIVERY_WINDOW_MS} of one wakeup.
+ * The window is kept in its own preferences file ({@link #PREFS_NAME}).
+ */
+public final class WakeupCoalescer {
+
+    private static final String TAG = "WakeupCoalescer";
+
+    /** Preferences file holding the window. */
+    public static final String PREFS_NAME = "QuickNotifCoalesce";
+
+    /** Preferences key: coalescing window in millis; 0 or unset disables coalescing. */
+    public static final String KEY_COALESCE_WINDOW_MS = "alarmCoalesceWindowMs";
+
+    /** Upper bound for the window, so reminders are never delivered more than this early. */
+    public static final long MAX_WINDOW_MS = 5 * 60_000L;
+
+    /** Notification group of a coalesced burst. */
+    public static final String GROUP_KEY = "app.amir.quicknotif.COALESCED";
+
+    /** NotificationManager id of the group summary; the allocator never hands it out. */
+    public static final int SUMMARY_NOTIFICATION_ID = Integer.MAX_VALUE;
+
+    private WakeupCoalescer() {}
+
+    private static SharedPreferences prefs(Context context) {
+        return context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+    }
+
+    public static long windowMs(Context context) {
+        return prefs(context).getLong(KEY_COALESCE_WINDOW_MS, 0L);
+    }
+
+    /**
+     * Sets the coalescing window in seconds ({@code 0} disables it). Applies to alarms armed
+     * from now on.
+     *
+     * @throws IllegalArgumentException if negative or above {@link #MAX_WINDOW_MS}.
+     */
+    public static void setWindowSeconds(Context context, long seconds) {
+        long windowMs = seconds * 1_000L;
+        if (seconds < 0 || windowMs > MAX_WINDOW_MS) {
+            throw new IllegalArgumentException("Coalescing window out of range: " + seconds + "s");
+        }
+        prefs(context).edit().putLong(KEY_COALESCE_WINDOW_MS, windowMs).apply();
+        AppLogger.d(TAG, "🔄 Coalescing window set to " + seconds + "s");
+    }
+
+    /**
+     * The armed alarm a notification due at {@code triggerAt} can ride on, or {@code null} if it
+     * needs its own. Only exact notifications are coalesced, and only onto a future alarm that is
+     * not windowed (which could fire late).
+     */
+    static AlarmRegistry.Entry leaderFor(Context context, int numericId, long triggerAt, String deliveryClass) {
+        long window = windowMs(context);
+        if (window <= 0 || !DeliveryClass.EXACT.equals(deliveryClass)) return null;
+
+        AlarmRegistry.Entry leader = AlarmRegistry.get(context).findLeader(triggerAt, window, numericId);
+        if (leader == null || leader.triggerAt <= System.currentTimeMillis()) return null;
+        try {
+            JSONObject stored = NotificationRepository.get(context).snapshot().get(leader.id);
+            if (DeliveryClass.WINDOWED.equals(DeliveryClass.of(stored))) return null;
+        } catch (JSONException e) {
+            AppLogger.w(TAG, "⚠️ Could not read leader " + leader.id + ", not coalescing");
+            return null;
+        }
+        return leader;
+    }
+
+    /**
+     * Schedules again the followers of a leader alarm that was cancelled or moved. Followers that
+     * were disabled, deleted or are no longer in the future are dropped.
+     */
+    static void rehome(Context context, List<AlarmRegistry.Entry> orphans) {
+        if (orphans.isEmpty()) return;
+        NotificationStore store;
+        try {
+            store = NotificationRepository.get(context).snapshot();
+        } catch (JSONException e) {
+            AppLogger.e(TAG, "❌ Failed to read notifications, " + orphans.size() + " followers left unarmed", e);
+            return;
+        }
+        long now = System.currentTimeMillis();
+        for (AlarmRegistry.Entry orphan : orphans) {
+            JSONObject obj = store.get(orphan.id);
+            if (obj == null || !obj.optBoolean(NotifUtils.JSON_KEY_ENABLED, false)) continue;
+            long scheduledAt = NotifUtils.parseScheduledAt(obj);
+            if (scheduledAt <= now) continue;
+            NotifUtils.scheduleAlarm(context, orphan.id, obj.optString(NotifUtils.JSON_KEY_NAME, ""),
+                    scheduledAt, DeliveryClass.of(obj));
+        }
+    }
+
+    /**
+     * Removes the followers of the alarm {@code leader} that just fired and returns the ones still
+     * to be delivered with it (enabled, and still due at the time they were coalesced for),
+     * soonest first.
+     */
+    static List<JSONObject> takeRiders(Context context, int leader) {
+        List<AlarmRegistry.Entry> riders = AlarmRegistry.get(context).removeFollowersOf(leader);
+        if (riders.isEmpty()) return Collections.emptyList();
+        List<JSONObject> due = new ArrayList<>(riders.size());
+        try {
+            NotificationStore store = NotificationRepository.get(context).snapshot();
+            for (AlarmRegistry.Entry rider : riders) {
+                JSONObject obj = store.get(rider.id);
+                if (obj != null && obj.optBoolean(NotifUtils.JSON_KEY_ENABLED, false)
+                        && NotifUtils.parseScheduledAt(obj) == rider.triggerAt) {
+                    due.add(obj);
+                }
+            }
+        } catch (JSONException e) {
+            AppLogger.e(TAG, "❌ Failed to read coalesced notifications", e);
+        }
+        return due;
+    }
+}
@@ -0,0 +1,261 @@
+package app.amir.quicknotif;
+
+import static app.amir.quicknotif.AlarmTestFixtures.*;
+import static org.junit.Assert.*;
+
+import android.app.NotificationManager;
+import android.content.Context;
+import android.content.Intent;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.Shadows;
+import org.robolectric.annotation.Config;
+import org.robolectric.shadows.ShadowAlarmManager;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 34)
+public class AlarmDispatcherTest {
+
+    private static final long MINUTE = 60_000L;
+
+    private Context context;
+    private NotificationRepository repository;
+    private long base;
+
+    @Before
+    public void setUp() {
+        context = freshContext(AlarmDispatcher.PREFS_NAME);
+        repository = NotificationRepository.get(context);
+        base = System.currentTimeMillis() + 3_600_000L; // 1 hour ahead
+    }
+
+    private long nextTrigger() throws Exception {
+        ShadowAlarmManager.ScheduledAlarm alarm = shadowAlarmManager(context).getNextScheduledAlarm();
+        assertNotNull("Expected the dispatch alarm to be armed", alarm);
+        return triggerOf(alarm);
+    }
+
+    private static List<String> ids(List<JSONObject> entries) throws JSONException {
+        List<String> ids = new ArrayList<>();
+        for (JSONObject entry : entries) ids.add(entry.getString("id"));
+        return ids;
+    }
+
+    // ─── mode ─────────────────────────────────────────────────────────────────
+
+    @Test
+    public void defaultMode_isPerNotification() {
+        assertFalse(AlarmDispatcher.isEnabled(context));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void setMode_unknown_throws() throws Exception {
+        AlarmDispatcher.setMode(context, "hourly");
+    }
+
+    @Test
+    public void setMode_nextDue_replacesPerNotificationAlarmsWithOne() throws Exception {
+        store(context, notification("n_a", base + 2 * MINUTE), notification("n_b", base + MINUTE));
+        NotifUtils.scheduleAlarm(context, "n_a", "A", base + 2 * MINUTE);
+        NotifUtils.scheduleAlarm(context, "n_b", "B", base + MINUTE);
+        assertEquals(2, shadowAlarmManager(context).getScheduledAlarms().size());
+
+        AlarmDispatcher.setMode(context, AlarmDispatcher.MODE_NEXT_DUE);
+
+        assertTrue(AlarmDispatcher.isEnabled(context));
+        assertEquals(1, shadowAlarmManager(context).getScheduledAlarms().size());
+        assertEquals(base + MINUTE, nextTrigger());
+        assertTrue(AlarmDispatcher.isArmed(context));
+    }
+
+    @Test
+    public void setMode_perNotification_restoresPerIdAlarms() throws Exception {
+        store(context, notification("n_a", base + 2 * MINUTE), notification("n_b", base + MINUTE));
+        AlarmDispatcher.setMode(context, AlarmDispatcher.MODE_NEXT_DUE);
+
+        AlarmDispatcher.setMode(context, AlarmDispatcher.MODE_PER_NOTIFICATION);
+
+        assertFalse(AlarmDispatcher.isArmed(context));
+        assertEquals(2, shadowAlarmManager(context).getScheduledAlarms().size());
+    }
+
+    @Test
+    public void mode_isKeptOutOfWebPreferences() throws Exception {
+        AlarmDispatcher.setMode(context, AlarmDispatcher.MODE_NEXT_DUE);
+
+        assertFalse(NotifUtils.getPrefs(context).contains(AlarmDispatcher.KEY_DISPATCH_MODE));
+        assertFalse(NotifUtils.getPrefs(context).contains(AlarmDispatcher.KEY_DISPATCH_CURSOR));
+    }
+
+    // ─── arming ───────────────────────────────────────────────────────────────
+
+    @Test
+    public void scheduleAlarm_inNextDueMode_armsEarliestOnly() throws Exception {
+        AlarmDispatcher.setMode(context, AlarmDispatcher.MODE_NEXT_DUE);
+
+        store(context, notification("n_late", base + 10 * MINUTE));
+        NotifUtils.scheduleAlarm(context, "n_late", "Late", base + 10 * MINUTE);
+        store(context, notification("n_early", base + MINUTE));
+        NotifUtils.scheduleAlarm(context, "n_early", "Early", base + MINUTE);
+
+        assertEquals(1, shadowAlarmManager(context).getScheduledAlarms().size());
+        assertEquals(base + MINUTE, nextTrigger());
+    }
+
+    @Test
+    public void cancelAlarm_inNextDueMode_movesToNextNotification() throws Exception {
+        store(context, notification("n_a", base + MINUTE), notification("n_b", base + 5 * MINUTE));
+        AlarmDispatcher.setMode(context, AlarmDispatcher.MODE_NEXT_DUE);
+
+        repository.delete("n_a");
+        NotifUtils.cancelAlarm(context, "n_a");
+
+        assertEquals(base + 5 * MINUTE, nextTrigger());
+    }
+
+    @Test
+    public void nothingDue_leavesNoAlarm() throws Exception {
+        AlarmDispatcher.setMode(context, AlarmDispatcher.MODE_NEXT_DUE);
+        assertEquals(0L, AlarmDispatcher.arm(context, System.currentTimeMillis()));
+        assertNull(shadowAlarmManager(context).getNextScheduledAlarm());
+    }
+
+    // ─── dispatch ─────────────────────────────────────────────────────────────
+
+    @Test
+    public void dispatch_deliversEverythingInWindowAndRearms() throws Exception {
+        store(context, notification("n_1", base),
+                notification("n_2", base + AlarmDispatcher.DELIVERY_WINDOW_MS - 1),
+                notification("n_3", base + MINUTE));
+        AlarmDispatcher.setMode(context, AlarmDispatcher.MODE_NEXT_DUE);
+
+        List<JSONObject> due = AlarmDispatcher.dispatch(context, base);
+
+        assertEquals(Arrays.asList("n_1", "n_2"), ids(due));
+        assertEquals(base + MINUTE, nextTrigger());
+    }
+
+    @Test
+    public void dispatch_lateWakeup_deliversBacklogOnce() throws Exception {
+        // Doze deferred the wakeup by 9 minutes: everything due meanwhile arrives together
+        for (int i = 0; i < 9; i++) {
+            store(context, notification("n_" + i, base + i * MINUTE));
+        }
+        AlarmDispatcher.setMode(context, AlarmDispatcher.MODE_NEXT_DUE);
+
+        List<JSONObject> late = AlarmDispatcher.dispatch(context, base + 9 * MINUTE);
+        List<JSONObject> again = AlarmDispatcher.dispatch(context, base + 9 * MINUTE + 1);
+
+        assertEquals(9, late.size());
+        assertEquals("n_0", late.get(0).getString("id"));
+        assertTrue(again.isEmpty());
+        assertNull(shadowAlarmManager(context).getNextScheduledAlarm());
+    }
+
+    @Test
+    public void dispatch_skipsDisabledAndDeletedNotifications() throws Exception {
+        JSONObject off = notification("n_off", base);
+        off.put("enabled", false);
+        store(context, notification("n_on", base), off, notification("n_gone", base));
+        repository.delete("n_gone");
+        AlarmDispatcher.setMode(context, AlarmDispatcher.MODE_NEXT_DUE);
+
+        assertEquals(Arrays.asList("n_on"), ids(AlarmDispatcher.dispatch(context, base)));
+    }
+
+    @Test
+    public void schedule_insideDeliveredWindow_isNotLost() throws Exception {
+        store(context, notification("n_first", base));
+        AlarmDispatcher.setMode(context, AlarmDispatcher.MODE_NEXT_DUE);
+        AlarmDispatcher.dispatch(context, base);
+
+        // Created right after the wakeup, due before the end of the window it already covered
+        store(context, notification("n_quick", base + 5_000L));
+        NotifUtils.scheduleAlarm(context, "n_quick", "Quick", base + 5_000L);
+
+        assertEquals(base + 5_000L, nextTrigger());
+        assertEquals(Arrays.asList("n_quick"), ids(AlarmDispatcher.dispatch(context, base + 5_000L)));
+    }
+
+    @Test
+    public void restore_skipsNotificationsMissedWhileOff() throws Exception {
+        store(context, notification("n_missed", base), notification("n_next", base + 10 * MINUTE));
+        AlarmDispatcher.setMode(context, AlarmDispatcher.MODE_NEXT_DUE);
+
+        assertEquals(base + 10 * MINUTE, AlarmDispatcher.restore(context, base + MINUTE));
+    }
+
+    @Test
+    public void receiver_dispatchIntent_postsDueNotifications() throws Exception {
+        AlarmDispatcher.setMode(context, AlarmDispatcher.MODE_NEXT_DUE);
+        long soon = System.currentTimeMillis() + 2_000L;
+        store(context, notification("n_a", soon), notification("n_b", soon + 1_000L));
+
+        Intent intent = new Intent(context, NotificationReceiver.class);
+        intent.setAction(AlarmDispatcher.ACTION_DISPATCH);
+        new NotificationReceiver().onReceive(context, intent);
+
+        NotificationManager nm = (NotificationManager) context.getSystemService(Context.NOTIFICATION_SERVICE);
+        Set<Integer> posted = new HashSet<>();
+        for (android.service.notification.StatusBarNotification sbn
+                : Shadows.shadowOf(nm).getActiveNotifications()) {
+            posted.add(sbn.getId());
+        }
+        assertEquals(new HashSet<>(Arrays.asList(NotifUtils.numericIdFor(context, "n_a"),
+                NotifUtils.numericIdFor(context, "n_b"))), posted);
+    }
+
+    // ─── load ─────────────────────────────────────────────────────────────────
+
+    @Test
+    public void load_10kNotifications_useOneAlarmAndAreEachDeliveredOnce() throws Exception {
+        final int count = 10_000;
+        AlarmDispatcher.setMode(context, AlarmDispatcher.MODE_NEXT_DUE);
+
+        // One per second, in reverse creation order so the index has to sort them
+        List<JSONObject> all = new ArrayList<>(count);
+        for (int i = count - 1; i >= 0; i--) {
+            all.add(notification("n_" + i, base + i * 1_000L));
+        }
+        store(context, all.toArray(new JSONObject[0]));
+
+        for (JSONObject n : all) {
+            NotifUtils.scheduleAlarm(context, n.getString("id"), n.getString("name"), n.getLong("scheduledAt"));
+        }
+
+        assertEquals("Per-notification mode would register " + count + " alarms",
+                1, shadowAlarmManager(context).getScheduledAlarms().size());
+        assertEquals(base, nextTrigger());
+
+        // Fire the dispatch alarm at each armed time until nothing is left
+        Set<String> delivered = new HashSet<>();
+        long previous = 0;
+        int wakeups = 0;
+        while (shadowAlarmManager(context).getNextScheduledAlarm() != null) {
+            long trigger = nextTrigger();
+            assertTrue("Armed times move forward", trigger > previous);
+            previous = trigger;
+            for (JSONObject n : AlarmDispatcher.dispatch(context, trigger)) {
+                assertTrue("Delivered twice: " + n.getString("id"), delivered.add(n.getString("id")));
+                assertTrue("Delivered too early", n.getLong("scheduledAt") <= trigger + AlarmDispatcher.DELIVERY_WINDOW_MS);
+            }
+            assertTrue(shadowAlarmManager(context).getScheduledAlarms().size() <= 1);
+            wakeups++;
+        }
+
+        assertEquals(count, delivered.size());
+        // 16 one-second-apart notifications fit in each 15 s window
+        assertEquals((count + 15) / 16, wakeups);
+    }
+}
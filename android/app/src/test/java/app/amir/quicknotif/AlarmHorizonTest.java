@@ -0,0 +1,211 @@
+package app.amir.quicknotif;
+
+import static app.amir.quicknotif.AlarmTestFixtures.*;
+import static org.junit.Assert.*;
+
+import android.content.Context;
+import android.content.Intent;
+import android.content.SharedPreferences;
+
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 34)
+public class AlarmHorizonTest {
+
+    private static final long HOUR = 3_600_000L;
+    private static final long DAY = 24 * HOUR;
+
+    private Context context;
+    private NotificationRepository repository;
+    private AlarmRegistry registry;
+    private long now;
+
+    @Before
+    public void setUp() {
+        context = freshContext(AlarmHorizon.PREFS_NAME);
+        repository = NotificationRepository.get(context);
+        registry = AlarmRegistry.get(context);
+        now = System.currentTimeMillis();
+        BootReceiver.setExecutor(Runnable::run);
+    }
+
+    @After
+    public void tearDown() {
+        BootReceiver.setExecutor(null);
+    }
+
+    private SharedPreferences horizonPrefs() {
+        return context.getSharedPreferences(AlarmHorizon.PREFS_NAME, Context.MODE_PRIVATE);
+    }
+
+    private boolean isArmed(String id) {
+        return registry.isArmed(NotifUtils.numericIdFor(context, id));
+    }
+
+    // ─── scheduling ───────────────────────────────────────────────────────────
+
+    @Test
+    public void noHorizon_armsEverything() throws Exception {
+        schedule(context, "n_h1_1", now + 30 * DAY);
+
+        assertFalse(AlarmHorizon.isEnabled(context));
+        assertTrue(isArmed("n_h1_1"));
+    }
+
+    @Test
+    public void beyondHorizon_isDeferredBehindAdvanceAlarm() throws Exception {
+        AlarmHorizon.setHorizonHours(context, 24);
+        long due = now + 3 * DAY;
+
+        schedule(context, "n_h2_1", due);
+
+        assertFalse(isArmed("n_h2_1"));
+        assertTrue(AlarmHorizon.isAdvanceArmed(context));
+        assertEquals(1, shadowAlarmManager(context).getScheduledAlarms().size());
+        assertEquals("Advance fires half a horizon before it is due",
+                due - 12 * HOUR, triggerOf(shadowAlarmManager(context).getNextScheduledAlarm()));
+    }
+
+    @Test
+    public void horizon_isKeptOutOfWebPreferences() throws Exception {
+        AlarmHorizon.setHorizonHours(context, 24);
+
+        assertEquals(DAY, horizonPrefs().getLong(AlarmHorizon.KEY_HORIZON_MS, 0L));
+        assertFalse(NotifUtils.getPrefs(context).contains(AlarmHorizon.KEY_HORIZON_MS));
+    }
+
+    @Test
+    public void withinHorizon_isArmed() throws Exception {
+        AlarmHorizon.setHorizonHours(context, 24);
+
+        schedule(context, "n_h3_1", now + HOUR);
+
+        assertTrue(isArmed("n_h3_1"));
+        assertFalse("Nothing beyond the horizon", AlarmHorizon.isAdvanceArmed(context));
+    }
+
+    @Test
+    public void rescheduledBeyondHorizon_cancelsOldAlarm() throws Exception {
+        AlarmHorizon.setHorizonHours(context, 24);
+        schedule(context, "n_h4_1", now + HOUR);
+
+        schedule(context, "n_h4_1", now + 7 * DAY);
+
+        assertFalse(isArmed("n_h4_1"));
+        assertEquals("Only the advance alarm is left", 1, shadowAlarmManager(context).getScheduledAlarms().size());
+    }
+
+    @Test
+    public void setHorizon_cancelsAlarmsBeyondIt() throws Exception {
+        schedule(context, "n_h5_near", now + HOUR);
+        schedule(context, "n_h5_far", now + 10 * DAY);
+
+        AlarmHorizon.setHorizonHours(context, 24);
+
+        assertTrue(isArmed("n_h5_near"));
+        assertFalse(isArmed("n_h5_far"));
+        assertTrue(AlarmHorizon.isAdvanceArmed(context));
+    }
+
+    @Test
+    public void setHorizonZero_armsEverythingAgain() throws Exception {
+        AlarmHorizon.setHorizonHours(context, 24);
+        schedule(context, "n_h6_far", now + 10 * DAY);
+
+        AlarmHorizon.setHorizonHours(context, 0);
+
+        assertTrue(isArmed("n_h6_far"));
+        assertFalse(AlarmHorizon.isAdvanceArmed(context));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void setHorizon_negative_throws() throws Exception {
+        AlarmHorizon.setHorizonHours(context, -1);
+    }
+
+    @Test
+    public void nextDueMode_ignoresHorizon() throws Exception {
+        AlarmHorizon.setHorizonHours(context, 24);
+        AlarmDispatcher.setMode(context, AlarmDispatcher.MODE_NEXT_DUE);
+
+        assertFalse(AlarmHorizon.isEnabled(context));
+    }
+
+    // ─── advancing ────────────────────────────────────────────────────────────
+
+    @Test
+    public void advance_armsWhatEnteredTheHorizon() throws Exception {
+        AlarmHorizon.setHorizonHours(context, 24);
+        long due = now + 3 * DAY;
+        schedule(context, "n_h7_1", due);
+        schedule(context, "n_h7_2", now + 10 * DAY);
+
+        // The advance alarm fires half a horizon before n_h7_1 is due
+        AlarmBatchReport report = AlarmHorizon.advance(context, due - 12 * HOUR);
+
+        assertEquals(1, report.armed);
+        assertTrue(isArmed("n_h7_1"));
+        assertFalse(isArmed("n_h7_2"));
+        assertTrue("Re-armed for the next deferred one", AlarmHorizon.isAdvanceArmed(context));
+    }
+
+    @Test
+    public void receiver_advanceIntent_armsNewSlice() throws Exception {
+        AlarmHorizon.setHorizonHours(context, 24);
+        // Stored without going through scheduleAlarm, as if it had just entered the horizon
+        repository.put(NotificationJournal.OP_CREATE, notification("n_h8_1", now + 2 * HOUR));
+
+        Intent intent = new Intent(context, NotificationReceiver.class);
+        intent.setAction(AlarmHorizon.ACTION_ADVANCE);
+        new NotificationReceiver().onReceive(context, intent);
+
+        assertTrue(isArmed("n_h8_1"));
+    }
+
+    @Test
+    public void watchdog_armsSliceAndAdvanceAlarm() throws Exception {
+        horizonPrefs().edit().putLong(AlarmHorizon.KEY_HORIZON_MS, DAY).commit();
+        List<JSONObject> all = new ArrayList<>();
+        all.add(notification("n_h9_near", now + HOUR));
+        all.add(notification("n_h9_far", now + 5 * DAY));
+        store(context, all);
+
+        AlarmWatchdogWorker.rescheduleOrphanedAlarms(context);
+
+        assertTrue(isArmed("n_h9_near"));
+        assertFalse(isArmed("n_h9_far"));
+        assertTrue(AlarmHorizon.isAdvanceArmed(context));
+    }
+
+    // ─── boot ─────────────────────────────────────────────────────────────────
+
+    @Test
+    public void boot_withHorizon_schedulesOnlyNearTermLoad() throws Exception {
+        final int near = 20, far = 2_000;
+        horizonPrefs().edit().putLong(AlarmHorizon.KEY_HORIZON_MS, DAY).commit();
+        List<JSONObject> all = new ArrayList<>();
+        for (int i = 0; i < near; i++) all.add(notification("n_boot_near_" + i, now + (i + 1) * HOUR / 2));
+        for (int i = 0; i < far; i++) all.add(notification("n_boot_far_" + i, now + 2 * DAY + i * HOUR));
+        store(context, all);
+
+        new BootReceiver().onReceive(context, new Intent(Intent.ACTION_BOOT_COMPLETED));
+
+        JSONObject last = new JSONObject(BootReceiver.lastResultJson(context));
+        assertEquals("The " + far + " notifications beyond the horizon are not visited",
+                near, last.getInt("requested"));
+        assertEquals(near, last.getInt("armed"));
+        assertEquals(near, registry.size());
+        assertEquals("Near-term alarms plus the advance alarm", near + 1,
+                shadowAlarmManager(context).getScheduledAlarms().size());
+    }
+}
@@ -0,0 +1,265 @@
+package app.amir.quicknotif;
+
+import static org.junit.Assert.*;
+
+import android.app.PendingIntent;
+import android.content.Context;
+import android.content.Intent;
+import android.content.SharedPreferences;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.util.Arrays;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 34)
+public class AlarmRegistryTest {
+
+    private Context context;
+    private AlarmRegistry registry;
+
+    @Before
+    public void setUp() {
+        context = RuntimeEnvironment.getApplication();
+        NotifUtils.getPrefs(context).edit().clear().commit();
+        registry = AlarmRegistry.get(context);
+    }
+
+    private long futureTs() {
+        return System.currentTimeMillis() + 3_600_000L; // 1 hour ahead
+    }
+
+    private JSONObject notification(String id, long scheduledAt) throws Exception {
+        JSONObject n = new JSONObject();
+        n.put("id", id);
+        n.put("name", "Registry " + id);
+        n.put("enabled", true);
+        n.put("scheduledAt", scheduledAt);
+        return n;
+    }
+
+    private AlarmRegistry.Entry record(String id, long triggerAt) {
+        return registry.record(id, NotifUtils.numericIdFor(context, id), triggerAt);
+    }
+
+    private boolean isArmedAt(String id, long triggerAt) {
+        return registry.isArmedAt(NotifUtils.numericIdFor(context, id), triggerAt);
+    }
+
+    /** Drops the system's PendingIntent for {@code id} without telling the registry. */
+    private void loseAlarm(String id) {
+        PendingIntent pi = PendingIntent.getBroadcast(context, NotifUtils.numericIdFor(context, id),
+                new Intent(context, NotificationReceiver.class),
+                PendingIntent.FLAG_NO_CREATE | PendingIntent.FLAG_IMMUTABLE);
+        assertNotNull(pi);
+        pi.cancel();
+    }
+
+    // ─── record / remove ──────────────────────────────────────────────────────
+
+    @Test
+    public void record_isVisibleByNumericIdAndTime() {
+        long t = futureTs();
+        AlarmRegistry.Entry entry = record("notification_r1_1", t);
+
+        assertEquals(NotifUtils.numericIdFor(context, "notification_r1_1"), entry.numericId);
+        assertTrue(registry.isArmed(entry.numericId));
+        assertTrue(isArmedAt("notification_r1_1", t));
+        assertFalse(isArmedAt("notification_r1_1", t + 1));
+        assertSame(entry, registry.get(entry.numericId));
+    }
+
+    @Test
+    public void record_rearming_getsNewerGeneration() {
+        AlarmRegistry.Entry first = record("notification_r2_1", futureTs());
+        AlarmRegistry.Entry second = record("notification_r2_1", futureTs() + 1);
+
+        assertTrue(second.generation > first.generation);
+        assertEquals(1, registry.size());
+    }
+
+    @Test
+    public void remove_forgetsEntry() {
+        AlarmRegistry.Entry entry = record("notification_r3_1", futureTs());
+        registry.remove(entry.numericId);
+        assertFalse(registry.isArmed(entry.numericId));
+    }
+
+    @Test
+    public void entries_surviveReload() {
+        long t = futureTs();
+        AlarmRegistry.Entry entry = record("notification_r4_1:with:colons", t);
+        SharedPreferences prefs = context.getSharedPreferences(AlarmRegistry.PREFS_NAME, Context.MODE_PRIVATE);
+
+        AlarmRegistry reloaded = new AlarmRegistry(prefs);
+
+        AlarmRegistry.Entry loaded = reloaded.get(entry.numericId);
+        assertNotNull(loaded);
+        assertEquals("notification_r4_1:with:colons", loaded.id);
+        assertEquals(t, loaded.triggerAt);
+        assertEquals(entry.generation, loaded.generation);
+        assertTrue(reloaded.record("notification_r4_2", NotifUtils.numericIdFor(context, "notification_r4_2"), t).generation > entry.generation);
+    }
+
+    @Test
+    public void isArmedAs_matchesTimeClassAndClock() {
+        long t = futureTs();
+        int numericId = NotifUtils.numericIdFor(context, "notification_r12_1");
+        registry.record("notification_r12_1", numericId, t, DeliveryClass.WINDOWED, true);
+
+        assertTrue(registry.isArmedAs(numericId, t, DeliveryClass.WINDOWED, true));
+        assertFalse(registry.isArmedAs(numericId, t, DeliveryClass.EXACT, true));
+        assertFalse(registry.isArmedAs(numericId, t, DeliveryClass.WINDOWED, false));
+        assertFalse(registry.isArmedAs(numericId, t + 1, DeliveryClass.WINDOWED, true));
+
+        AlarmRegistry reloaded = new AlarmRegistry(
+                context.getSharedPreferences(AlarmRegistry.PREFS_NAME, Context.MODE_PRIVATE));
+        assertTrue(reloaded.isArmedAs(numericId, t, DeliveryClass.WINDOWED, true));
+    }
+
+    @Test
+    public void entryInAnotherFormat_isDropped() {
+        long t = futureTs();
+        int numericId = NotifUtils.numericIdFor(context, "notification_r13_1");
+        SharedPreferences prefs = context.getSharedPreferences(AlarmRegistry.PREFS_NAME, Context.MODE_PRIVATE);
+        prefs.edit().putString("alarm_" + numericId, t + ":7:notification_r13_1").commit();
+
+        AlarmRegistry reloaded = new AlarmRegistry(prefs);
+
+        assertNull(reloaded.get(numericId));
+        assertFalse(reloaded.isArmed(numericId));
+    }
+
+    @Test
+    public void findLeader_latestArmedWithinWindow_followsRearmsAndRemovals() {
+        long t = futureTs();
+        AlarmRegistry.Entry a = record("notification_r14_1", t);
+        AlarmRegistry.Entry b = record("notification_r14_2", t + 5_000L);
+        int own = NotifUtils.numericIdFor(context, "notification_r14_3");
+
+        assertEquals(b.numericId, registry.findLeader(t + 8_000L, 10_000L, own).numericId);
+        assertEquals("Not its own leader", a.numericId,
+                registry.findLeader(t + 5_000L, 10_000L, b.numericId).numericId);
+        assertNull("Outside the window", registry.findLeader(t + 20_000L, 10_000L, own));
+
+        record("notification_r14_2", t + 30_000L);
+        assertEquals(a.numericId, registry.findLeader(t + 8_000L, 10_000L, own).numericId);
+        assertEquals(b.numericId, registry.findLeader(t + 35_000L, 10_000L, own).numericId);
+
+        registry.remove(a.numericId);
+        assertNull(registry.findLeader(t + 8_000L, 10_000L, own));
+        assertEquals(b.numericId, new AlarmRegistry(context.getSharedPreferences(
+                AlarmRegistry.PREFS_NAME, Context.MODE_PRIVATE)).findLeader(t + 35_000L, 10_000L, own).numericId);
+    }
+
+    @Test
+    public void clear_dropsEverything() {
+        record("notification_r5_1", futureTs());
+        registry.clear();
+        assertEquals(0, registry.size());
+    }
+
+    // ─── integration with NotifUtils / receiver ───────────────────────────────
+
+    @Test
+    public void scheduleAndCancel_keepRegistryInSync() throws Exception {
+        long t = futureTs();
+        NotifUtils.scheduleAlarm(context, "notification_r6_1", "Sync", t);
+        assertTrue(isArmedAt("notification_r6_1", t));
+
+        NotifUtils.cancelAlarm(context, "notification_r6_1");
+        assertFalse(registry.isArmed(NotifUtils.numericIdFor(context, "notification_r6_1")));
+    }
+
+    @Test
+    public void firedAlarm_isRemoved() {
+        NotifUtils.scheduleAlarm(context, "notification_r7_1", "Fired", futureTs());
+
+        Intent intent = new Intent(context, NotificationReceiver.class);
+        intent.putExtra(NotifUtils.EXTRA_NOTIFICATION_ID, "notification_r7_1");
+        intent.putExtra(NotifUtils.EXTRA_NOTIFICATION_NAME, "Fired");
+        new NotificationReceiver().onReceive(context, intent);
+
+        assertEquals(0, registry.size());
+    }
+
+    // ─── reconciliation ───────────────────────────────────────────────────────
+
+    @Test
+    public void reconcile_dropsAlarmsTheSystemNoLongerHas() throws Exception {
+        NotifUtils.scheduleAlarms(context, Arrays.asList(
+                notification("notification_r8_1", futureTs()), notification("notification_r8_2", futureTs())));
+        loseAlarm("notification_r8_2");
+
+        assertEquals(1, registry.reconcile(context));
+        assertTrue(registry.isArmed(NotifUtils.numericIdFor(context, "notification_r8_1")));
+        assertFalse(registry.isArmed(NotifUtils.numericIdFor(context, "notification_r8_2")));
+    }
+
+    @Test
+    public void checkForLoss_aliveAlarms_doesNotReconcile() throws Exception {
+        NotifUtils.scheduleAlarm(context, "notification_r9_1", "Alive", futureTs());
+        assertFalse(registry.checkForLoss(context, System.currentTimeMillis()));
+        assertEquals(1, registry.size());
+    }
+
+    @Test
+    public void checkForLoss_afterForceStop_reconciles() throws Exception {
+        NotifUtils.scheduleAlarms(context, Arrays.asList(
+                notification("notification_r10_1", futureTs()), notification("notification_r10_2", futureTs())));
+        // A force-stop clears every alarm of the app
+        loseAlarm("notification_r10_1");
+        loseAlarm("notification_r10_2");
+
+        assertTrue(registry.checkForLoss(context, System.currentTimeMillis()));
+        assertEquals(0, registry.size());
+    }
+
+    @Test
+    public void watchdog_afterForceStop_rearmsLostAlarms() throws Exception {
+        long t = futureTs();
+        JSONArray arr = new JSONArray();
+        arr.put(notification("notification_r11_1", t));
+        NotifUtils.saveNotificationsJson(context, arr.toString());
+        NotifUtils.scheduleAlarm(context, "notification_r11_1", "Lost", t);
+        loseAlarm("notification_r11_1");
+
+        AlarmWatchdogWorker.rescheduleOrphanedAlarms(context);
+
+        assertTrue(isArmedAt("notification_r11_1", t));
+        assertNotNull(PendingIntent.getBroadcast(context, NotifUtils.numericIdFor(context, "notification_r11_1"),
+                new Intent(context, NotificationReceiver.class),
+                PendingIntent.FLAG_NO_CREATE | PendingIntent.FLAG_IMMUTABLE));
+    }
+
+    // ─── status queries ───────────────────────────────────────────────────────
+
+    @Test
+    public void filterArmed_5kIds_answersFromTheRegistry() throws Exception {
+        final int count = 5_000;
+        JSONArray query = new JSONArray();
+        java.util.List<JSONObject> armed = new java.util.ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            String id = "notification_q_" + i;
+            if (i % 2 == 0) armed.add(notification(id, futureTs()));
+            query.put(NotifUtils.numericIdFor(context, id));
+        }
+        NotifUtils.scheduleAlarms(context, armed);
+        // With the system's PendingIntents gone, only the recorded state can answer
+        for (JSONObject n : armed) loseAlarm(n.getString("id"));
+
+        JSONArray result = registry.filterArmed(query);
+
+        assertEquals(armed.size(), result.length());
+        for (int i = 0; i < armed.size(); i++) {
+            assertEquals(NotifUtils.numericIdFor(context, armed.get(i).getString("id")), result.getInt(i));
+        }
+    }
+}
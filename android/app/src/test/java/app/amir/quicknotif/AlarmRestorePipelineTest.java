@@ -0,0 +1,149 @@
+package app.amir.quicknotif;
+
+import static app.amir.quicknotif.AlarmTestFixtures.*;
+import static org.junit.Assert.*;
+
+import android.content.Context;
+import android.content.Intent;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 34)
+public class AlarmRestorePipelineTest {
+
+    private static final long MINUTE = 60_000L;
+
+    private Context context;
+    private AlarmRegistry registry;
+    private long now;
+
+    @Before
+    public void setUp() {
+        context = freshContext(WakeupCoalescer.PREFS_NAME);
+        registry = AlarmRegistry.get(context);
+        now = System.currentTimeMillis();
+        BootReceiver.setExecutor(Runnable::run);
+    }
+
+    @After
+    public void tearDown() {
+        BootReceiver.setExecutor(null);
+    }
+
+    private int scheduledAlarms() {
+        return shadowAlarmManager(context).getScheduledAlarms().size();
+    }
+
+    private long generationOf(String id) {
+        return registry.get(NotifUtils.numericIdFor(context, id)).generation;
+    }
+
+    // ─── pool size ────────────────────────────────────────────────────────────
+
+    @Test
+    public void threadsFor_growsWithTheListUpToTheBound() {
+        assertEquals(1, AlarmRestorePipeline.threadsFor(0));
+        assertEquals(1, AlarmRestorePipeline.threadsFor(AlarmRestorePipeline.PER_THREAD));
+        assertEquals(2, AlarmRestorePipeline.threadsFor(AlarmRestorePipeline.PER_THREAD + 1));
+        assertEquals(AlarmRestorePipeline.MAX_THREADS, AlarmRestorePipeline.threadsFor(10_000));
+    }
+
+    @Test
+    public void restore_withCoalescing_armsOnOneThread() throws Exception {
+        final int count = 200;
+        WakeupCoalescer.setWindowSeconds(context, 60);
+        List<JSONObject> batch = new ArrayList<>();
+        for (int i = 0; i < count; i++) batch.add(notification("n_rp5_" + i, now + MINUTE + i * 10_000L));
+
+        AlarmRestorePipeline.Result result = AlarmRestorePipeline.restore(context, batch);
+
+        assertEquals(1, result.threads);
+        // Ten seconds apart, each leader takes the six after it
+        assertEquals((count + 6) / 7, scheduledAlarms());
+        assertEquals(count - (count + 6) / 7, registry.followerCount());
+    }
+
+    // ─── arming ───────────────────────────────────────────────────────────────
+
+    @Test
+    public void restore_armsSoonestDueFirst() throws Exception {
+        List<JSONObject> latestFirst = new ArrayList<>();
+        for (int i = 5; i >= 1; i--) {
+            latestFirst.add(notification("n_rp1_" + i, now + i * MINUTE));
+        }
+
+        AlarmRestorePipeline.Result result = AlarmRestorePipeline.restore(context, latestFirst);
+
+        assertEquals(5, result.armed);
+        assertEquals(5, scheduledAlarms());
+        for (int i = 1; i < 5; i++) {
+            assertTrue("n_rp1_" + i + " armed before n_rp1_" + (i + 1),
+                    generationOf("n_rp1_" + i) < generationOf("n_rp1_" + (i + 1)));
+        }
+    }
+
+    @Test
+    public void restore_skipsArmedAndCountsUnusable() throws Exception {
+        JSONObject armed = notification("n_rp2_1", now + MINUTE);
+        NotifUtils.scheduleAlarm(context, "n_rp2_1", "Timer", now + MINUTE);
+        List<JSONObject> batch = new ArrayList<>();
+        batch.add(armed);
+        batch.add(notification("n_rp2_2", now + 2 * MINUTE));
+        batch.add(new JSONObject().put("name", "No id"));
+
+        AlarmRestorePipeline.Result result = AlarmRestorePipeline.restore(context, batch);
+
+        assertEquals(3, result.requested);
+        assertEquals(1, result.armed);
+        assertEquals(1, result.skipped);
+        assertEquals(1, result.failed);
+        assertTrue(result.completed);
+    }
+
+    // ─── instrumentation ──────────────────────────────────────────────────────
+
+    @Test
+    public void restore_reportsTimeToFirstAlarmWithinTotal() throws Exception {
+        List<JSONObject> batch = new ArrayList<>();
+        for (int i = 0; i < 10; i++) batch.add(notification("n_rp3_" + i, now + (i + 1) * MINUTE));
+
+        AlarmRestorePipeline.Result result = AlarmRestorePipeline.restore(context, batch);
+
+        assertTrue(result.firstArmedNanos > 0);
+        assertTrue(result.firstArmedNanos <= result.totalNanos);
+    }
+
+    @Test
+    public void restore_nothingArmed_hasNoFirstAlarmTime() {
+        AlarmRestorePipeline.Result result = AlarmRestorePipeline.restore(context, new ArrayList<>());
+
+        assertEquals(0L, result.firstArmedNanos);
+        assertEquals(0, result.requested);
+    }
+
+    @Test
+    public void bootReceiver_savesRestoreTimings() throws Exception {
+        JSONArray arr = new JSONArray();
+        arr.put(notification("n_rp4_1", now + MINUTE));
+        arr.put(notification("n_rp4_2", now + 2 * MINUTE));
+        NotifUtils.saveNotificationsJson(context, arr.toString());
+
+        new BootReceiver().onReceive(context, new Intent(Intent.ACTION_BOOT_COMPLETED));
+
+        JSONObject last = new JSONObject(BootReceiver.lastResultJson(context));
+        assertEquals(2, last.getInt("armed"));
+        assertTrue(last.has("firstArmedMs"));
+        assertTrue(last.getDouble("totalMs") >= last.getDouble("firstArmedMs"));
+    }
+}
@@ -0,0 +1,68 @@
+package app.amir.quicknotif;
+
+import android.app.AlarmManager;
+import android.content.Context;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.Shadows;
+import org.robolectric.shadows.ShadowAlarmManager;
+
+import java.util.Arrays;
+import java.util.Collection;
+
+/** Notifications and alarm lookups shared by the scheduling tests. */
+final class AlarmTestFixtures {
+
+    private AlarmTestFixtures() {}
+
+    /** The application context, with the web app's storage and the {@code prefsNames} files cleared. */
+    static Context freshContext(String... prefsNames) {
+        Context context = RuntimeEnvironment.getApplication();
+        NotifUtils.getPrefs(context).edit().clear().commit();
+        for (String name : prefsNames) {
+            context.getSharedPreferences(name, Context.MODE_PRIVATE).edit().clear().commit();
+        }
+        return context;
+    }
+
+    /** An enabled notification named after {@code id}, due at {@code scheduledAt}. */
+    static JSONObject notification(String id, long scheduledAt) throws JSONException {
+        JSONObject n = new JSONObject();
+        n.put("id", id);
+        n.put("name", "Timer " + id);
+        n.put("enabled", true);
+        n.put("scheduledAt", scheduledAt);
+        return n;
+    }
+
+    /** Puts {@code notifications} into the repository in one transaction, without arming them. */
+    static void store(Context context, Collection<JSONObject> notifications) throws JSONException {
+        NotificationRepository.get(context).transaction(store -> {
+            for (JSONObject n : notifications) store.put(n);
+            return null;
+        });
+    }
+
+    static void store(Context context, JSONObject... notifications) throws JSONException {
+        store(context, Arrays.asList(notifications));
+    }
+
+    /** Stores the notification, then schedules it the way the widget does. */
+    static void schedule(Context context, String id, long scheduledAt) throws JSONException {
+        NotificationRepository.get(context).put(NotificationJournal.OP_CREATE, notification(id, scheduledAt));
+        NotifUtils.scheduleAlarm(context, id, "Timer " + id, scheduledAt);
+    }
+
+    static ShadowAlarmManager shadowAlarmManager(Context context) {
+        AlarmManager am = (AlarmManager) context.getSystemService(Context.ALARM_SERVICE);
+        return Shadows.shadowOf(am);
+    }
+
+    static long triggerOf(ShadowAlarmManager.ScheduledAlarm alarm) throws Exception {
+        java.lang.reflect.Field f = alarm.getClass().getDeclaredField("triggerAtMs");
+        f.setAccessible(true);
+        return f.getLong(alarm);
+    }
+}
@@ -226,4 +226,77 @@ public class AlarmWatchdogWorkerTest {
         assertEquals("Only the missing alarm should be added",
                 alarmsBefore + 1, alarmsAfter.size());
     }
+
+    // ─── malformed entries ────────────────────────────────────────────────────
+
+    @Test
+    public void malformedEntry_isSkippedAndOthersAreStillRescheduled() throws Exception {
+        JSONArray arr = new JSONArray();
+        arr.put("not an object");
+        JSONObject noId = new JSONObject();
+        noId.put("name", "No id");
+        noId.put("enabled", true);
+        noId.put("scheduledAt", futureTs());
+        arr.put(noId);
+        JSONObject valid = new JSONObject();
+        valid.put("id", "notification_w7_1");
+        valid.put("name", "Valid");
+        valid.put("enabled", true);
+        valid.put("scheduledAt", futureTs());
+        arr.put(valid);
+        NotifUtils.saveNotificationsJson(context, arr.toString());
+
+        AlarmWatchdogWorker.rescheduleOrphanedAlarms(context);
+
+        assertEquals(1, shadowAlarmManager().getScheduledAlarms().size());
+    }
+
+    @Test
+    public void isoStringScheduledAt_isRescheduled() throws Exception {
+        JSONArray arr = new JSONArray();
+        JSONObject n = new JSONObject();
+        n.put("id", "notification_w8_1");
+        n.put("name", "Iso");
+        n.put("enabled", true);
+        n.put("scheduledAt", "2099-06-15T10:30:00.000Z");
+        arr.put(n);
+        NotifUtils.saveNotificationsJson(context, arr.toString());
+
+        AlarmWatchdogWorker.rescheduleOrphanedAlarms(context);
+
+        ShadowAlarmManager.ScheduledAlarm alarm = shadowAlarmManager().getNextScheduledAlarm();
+        assertNotNull(alarm);
+        try {
+            java.lang.reflect.Field f = alarm.getClass().getDeclaredField("triggerAtMs");
+            f.setAccessible(true);
+            assertEquals(4085202600000L, f.getLong(alarm));
+        } catch (NoSuchFieldException | IllegalAccessException e) {
+            // Field not accessible in this Robolectric version — existence check is sufficient
+        }
+    }
+
+    // ─── next-due mode ────────────────────────────────────────────────────────
+
+    @Test
+    public void nextDueMode_rearmsMissingDispatchAlarmOnly() throws Exception {
+        JSONArray arr = new JSONArray();
+        for (int i = 0; i < 3; i++) {
+            JSONObject n = new JSONObject();
+            n.put("id", "notification_w9_" + i);
+            n.put("name", "Dispatch " + i);
+            n.put("enabled", true);
+            n.put("scheduledAt", futureTs() + i * 60_000L);
+            arr.put(n);
+        }
+        NotifUtils.saveNotificationsJson(context, arr.toString());
+        context.getSharedPreferences(AlarmDispatcher.PREFS_NAME, Context.MODE_PRIVATE).edit()
+                .putString(AlarmDispatcher.KEY_DISPATCH_MODE, AlarmDispatcher.MODE_NEXT_DUE)
+                .commit();
+        assertFalse(AlarmDispatcher.isArmed(context));
+
+        AlarmWatchdogWorker.rescheduleOrphanedAlarms(context);
+
+        assertEquals(1, shadowAlarmManager().getScheduledAlarms().size());
+        assertTrue(AlarmDispatcher.isArmed(context));
+    }
 }
@@ -8,6 +8,7 @@ import android.content.Intent;
 
 import org.json.JSONArray;
 import org.json.JSONObject;
+import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -31,6 +32,13 @@ public class BootReceiverTest {
         context = RuntimeEnvironment.getApplication();
         receiver = new BootReceiver();
         NotifUtils.getPrefs(context).edit().clear().commit();
+        // Restore inline, so its alarms are armed when onReceive returns
+        BootReceiver.setExecutor(Runnable::run);
+    }
+
+    @After
+    public void tearDown() {
+        BootReceiver.setExecutor(null);
     }
 
     private ShadowAlarmManager shadowAlarmManager() {
@@ -266,4 +274,60 @@ public class BootReceiverTest {
 
         assertNull(shadowAlarmManager().getNextScheduledAlarm());
     }
+
+    @Test
+    public void rescheduleNotifications_nextDueMode_armsSingleAlarm() throws Exception {
+        AlarmDispatcher.setMode(context, AlarmDispatcher.MODE_NEXT_DUE);
+        JSONArray arr = new JSONArray();
+        for (int i = 0; i < 3; i++) {
+            JSONObject n = new JSONObject();
+            n.put("id", "notification_50_" + i);
+            n.put("name", "Dispatch " + i);
+            n.put("enabled", true);
+            n.put("scheduledAt", futureTs() + i * 60_000L);
+            arr.put(n);
+        }
+        NotifUtils.saveNotificationsJson(context, arr.toString());
+
+        callReschedule();
+
+        assertEquals(1, shadowAlarmManager().getScheduledAlarms().size());
+        assertTrue(AlarmDispatcher.isArmed(context));
+    }
+
+    @Test
+    public void onReceive_packageReplaced_rearmsOnlyLostAlarms() throws Exception {
+        long ts = futureTs();
+        JSONArray arr = new JSONArray();
+        for (int i = 0; i < 2; i++) {
+            JSONObject n = new JSONObject();
+            n.put("id", "notification_60_" + i);
+            n.put("name", "Update " + i);
+            n.put("enabled", true);
+            n.put("scheduledAt", ts);
+            arr.put(n);
+        }
+        NotifUtils.saveNotificationsJson(context, arr.toString());
+        NotifUtils.scheduleAlarm(context, "notification_60_0", "Update 0", ts);
+        // Recorded as armed, but the system no longer has it
+        AlarmRegistry.get(context).record("notification_60_1",
+                NotifUtils.numericIdFor(context, "notification_60_1"), ts);
+        int alarmsBefore = shadowAlarmManager().getScheduledAlarms().size();
+
+        receiver.onReceive(context, new Intent(Intent.ACTION_MY_PACKAGE_REPLACED));
+
+        assertEquals(alarmsBefore + 1, shadowAlarmManager().getScheduledAlarms().size());
+        assertTrue(AlarmRegistry.get(context).isArmedAt(
+                NotifUtils.numericIdFor(context, "notification_60_1"), ts));
+    }
+
+    @Test
+    public void onReceive_bootCompleted_forgetsAlarmsFromBeforeReboot() throws Exception {
+        AlarmRegistry.get(context).record("notification_61_1",
+                NotifUtils.numericIdFor(context, "notification_61_1"), futureTs());
+
+        receiver.onReceive(context, new Intent(Intent.ACTION_BOOT_COMPLETED));
+
+        assertEquals(0, AlarmRegistry.get(context).size());
+    }
 }
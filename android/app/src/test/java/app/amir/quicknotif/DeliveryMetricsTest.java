@@ -0,0 +1,135 @@
+package app.amir.quicknotif;
+
+import static org.junit.Assert.*;
+
+import android.content.Context;
+import android.content.Intent;
+import android.content.SharedPreferences;
+
+import org.json.JSONObject;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 34)
+public class DeliveryMetricsTest {
+
+    private Context context;
+    private SharedPreferences prefs;
+    private DeliveryMetrics metrics;
+
+    @Before
+    public void setUp() {
+        context = RuntimeEnvironment.getApplication();
+        prefs = context.getSharedPreferences(DeliveryMetrics.PREFS_NAME, Context.MODE_PRIVATE);
+        prefs.edit().clear().commit();
+        metrics = new DeliveryMetrics(prefs);
+    }
+
+    // ─── lateness ─────────────────────────────────────────────────────────────
+
+    @Test
+    public void record_tracksAverageAndMaxLateness() {
+        long due = 1_000_000L;
+        metrics.record(DeliveryClass.WINDOWED, due, due + 60_000L);
+        metrics.record(DeliveryClass.WINDOWED, due + 600_000L, due + 600_000L + 180_000L);
+
+        DeliveryMetrics.Stats stats = metrics.stats(DeliveryClass.WINDOWED);
+        assertEquals(2, stats.delivered);
+        assertEquals(120_000L, stats.averageLatenessMs());
+        assertEquals(180_000L, stats.maxLatenessMs);
+    }
+
+    @Test
+    public void record_earlyOrUnknownDueTime_countsAsOnTime() {
+        metrics.record(DeliveryClass.EXACT, 5_000L, 4_000L);
+        metrics.record(DeliveryClass.EXACT, 0L, 10_000L);
+
+        DeliveryMetrics.Stats stats = metrics.stats(DeliveryClass.EXACT);
+        assertEquals(2, stats.delivered);
+        assertEquals(0L, stats.maxLatenessMs);
+    }
+
+    @Test
+    public void record_keepsClassesApart() {
+        metrics.record(DeliveryClass.ALARM_CLOCK, 1_000L, 1_010L);
+        metrics.record(DeliveryClass.EXACT, 100_000L, 100_500L);
+
+        assertEquals(1, metrics.stats(DeliveryClass.ALARM_CLOCK).delivered);
+        assertEquals(10L, metrics.stats(DeliveryClass.ALARM_CLOCK).maxLatenessMs);
+        assertEquals(1, metrics.stats(DeliveryClass.EXACT).delivered);
+        assertEquals(0, metrics.stats(DeliveryClass.WINDOWED).delivered);
+    }
+
+    // ─── wakeups ──────────────────────────────────────────────────────────────
+
+    @Test
+    public void record_deliveriesCloseTogether_shareOneWakeup() {
+        long at = 1_000_000L;
+        // The system fired three windowed alarms together, then one more later
+        metrics.record(DeliveryClass.WINDOWED, at - 60_000L, at);
+        metrics.record(DeliveryClass.WINDOWED, at - 30_000L, at + 5);
+        metrics.record(DeliveryClass.WINDOWED, at - 10_000L, at + 10);
+        metrics.record(DeliveryClass.WINDOWED, at, at + 300_000L);
+
+        DeliveryMetrics.Stats stats = metrics.stats(DeliveryClass.WINDOWED);
+        assertEquals(4, stats.delivered);
+        assertEquals(2, stats.wakeups);
+        assertEquals(2, stats.batched());
+    }
+
+    @Test
+    public void record_persistsAcrossReload() {
+        metrics.record(DeliveryClass.EXACT, 1_000L, 1_200L);
+
+        DeliveryMetrics reloaded = new DeliveryMetrics(prefs);
+
+        assertEquals(1, reloaded.stats(DeliveryClass.EXACT).wakeups);
+        assertEquals(200L, reloaded.stats(DeliveryClass.EXACT).maxLatenessMs);
+    }
+
+    @Test
+    public void toJson_reportsEveryClass() throws Exception {
+        metrics.record(DeliveryClass.EXACT, 1_000L, 1_300L);
+
+        JSONObject json = metrics.toJson();
+
+        assertEquals(1, json.getJSONObject(DeliveryClass.EXACT).getLong("wakeups"));
+        assertEquals(300L, json.getJSONObject(DeliveryClass.EXACT).getLong("avgLatenessMs"));
+        assertEquals(0, json.getJSONObject(DeliveryClass.ALARM_CLOCK).getLong("delivered"));
+        assertEquals(0, json.getJSONObject(DeliveryClass.WINDOWED).getLong("delivered"));
+    }
+
+    @Test
+    public void reset_clearsCounters() {
+        metrics.record(DeliveryClass.EXACT, 1_000L, 1_300L);
+        metrics.reset();
+        assertEquals(0, metrics.stats(DeliveryClass.EXACT).delivered);
+    }
+
+    // ─── receiver ─────────────────────────────────────────────────────────────
+
+    @Test
+    public void receiver_recordsClassAndDueTimeFromStore() throws Exception {
+        long due = System.currentTimeMillis() - 2_000L;
+        JSONObject n = new JSONObject();
+        n.put("id", "notification_m1_1");
+        n.put("name", "Metered");
+        n.put("enabled", true);
+        n.put("scheduledAt", due);
+        n.put("deliveryClass", DeliveryClass.WINDOWED);
+        NotificationRepository.get(context).put(NotificationJournal.OP_CREATE, n);
+
+        Intent intent = new Intent(context, NotificationReceiver.class);
+        intent.putExtra(NotifUtils.EXTRA_NOTIFICATION_ID, "notification_m1_1");
+        new NotificationReceiver().onReceive(context, intent);
+
+        DeliveryMetrics.Stats stats = DeliveryMetrics.get(context).stats(DeliveryClass.WINDOWED);
+        assertEquals(1, stats.delivered);
+        assertTrue(stats.maxLatenessMs >= 2_000L);
+    }
+}
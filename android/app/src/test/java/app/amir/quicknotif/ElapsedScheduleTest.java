@@ -0,0 +1,228 @@
+package app.amir.quicknotif;
+
+import static org.junit.Assert.*;
+
+import android.app.AlarmManager;
+import android.content.Context;
+import android.content.Intent;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.Shadows;
+import org.robolectric.annotation.Config;
+import org.robolectric.shadows.ShadowAlarmManager;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 34)
+public class ElapsedScheduleTest {
+
+    private static final long MINUTE = 60_000L;
+    private static final long HOUR = 60 * MINUTE;
+
+    /** Wall and elapsed clocks that only move when told to. */
+    private static final class FakeClock implements ElapsedSchedule.Clock {
+        long wall;
+        long elapsed;
+
+        FakeClock(long wall, long elapsed) {
+            this.wall = wall;
+            this.elapsed = elapsed;
+        }
+
+        @Override
+        public long wallMillis() {
+            return wall;
+        }
+
+        @Override
+        public long elapsedMillis() {
+            return elapsed;
+        }
+
+        void advance(long ms) {
+            wall += ms;
+            elapsed += ms;
+        }
+    }
+
+    private Context context;
+    private NotificationRepository repository;
+    private AlarmRegistry registry;
+    private FakeClock clock;
+
+    @Before
+    public void setUp() {
+        context = RuntimeEnvironment.getApplication();
+        NotifUtils.getPrefs(context).edit().clear().commit();
+        repository = NotificationRepository.get(context);
+        registry = AlarmRegistry.get(context);
+        clock = new FakeClock(System.currentTimeMillis(), 5 * HOUR);
+        ElapsedSchedule.setClock(clock);
+        BootReceiver.setExecutor(Runnable::run);
+    }
+
+    @After
+    public void tearDown() {
+        ElapsedSchedule.setClock(null);
+        BootReceiver.setExecutor(null);
+    }
+
+    private ShadowAlarmManager shadowAlarmManager() {
+        AlarmManager am = (AlarmManager) context.getSystemService(Context.ALARM_SERVICE);
+        return Shadows.shadowOf(am);
+    }
+
+    private static long field(ShadowAlarmManager.ScheduledAlarm alarm, String name) throws Exception {
+        java.lang.reflect.Field f = alarm.getClass().getDeclaredField(name);
+        f.setAccessible(true);
+        return ((Number) f.get(alarm)).longValue();
+    }
+
+    private static JSONObject notification(String id, String type, long scheduledAt) throws JSONException {
+        JSONObject n = new JSONObject();
+        n.put("id", id);
+        n.put("name", "Timer " + id);
+        n.put("type", type);
+        n.put("enabled", true);
+        n.put("scheduledAt", scheduledAt);
+        return n;
+    }
+
+    private void schedule(String id, String type, long scheduledAt) throws JSONException {
+        repository.put(NotificationJournal.OP_CREATE, notification(id, type, scheduledAt));
+        NotifUtils.scheduleAlarm(context, id, "Timer " + id, scheduledAt);
+    }
+
+    private long generationOf(String id) {
+        return registry.get(NotifUtils.numericIdFor(context, id)).generation;
+    }
+
+    // ─── arming ───────────────────────────────────────────────────────────────
+
+    @Test
+    public void relative_isArmedOnElapsedClock() throws Exception {
+        schedule("n_el1_1", NotifUtils.TYPE_RELATIVE, clock.wall + 30 * MINUTE);
+
+        ShadowAlarmManager.ScheduledAlarm alarm = shadowAlarmManager().getNextScheduledAlarm();
+        assertEquals(AlarmManager.ELAPSED_REALTIME_WAKEUP, field(alarm, "type"));
+        assertEquals(clock.elapsed + 30 * MINUTE, field(alarm, "triggerAtMs"));
+    }
+
+    @Test
+    public void absolute_staysOnWallClock() throws Exception {
+        schedule("n_el2_1", NotifUtils.TYPE_ABSOLUTE, clock.wall + 30 * MINUTE);
+
+        ShadowAlarmManager.ScheduledAlarm alarm = shadowAlarmManager().getNextScheduledAlarm();
+        assertEquals(AlarmManager.RTC_WAKEUP, field(alarm, "type"));
+        assertEquals(clock.wall + 30 * MINUTE, field(alarm, "triggerAtMs"));
+    }
+
+    @Test
+    public void relativeAlarmClock_staysOnWallClock() throws Exception {
+        JSONObject n = notification("n_el3_1", NotifUtils.TYPE_RELATIVE, clock.wall + 30 * MINUTE);
+        n.put(NotifUtils.JSON_KEY_DELIVERY_CLASS, DeliveryClass.ALARM_CLOCK);
+
+        assertFalse(ElapsedSchedule.applies(n));
+    }
+
+    @Test
+    public void relativeAlarmClock_isArmedOnWallClockAndNotArmedAgainByBatch() throws Exception {
+        JSONObject n = notification("n_el4_1", NotifUtils.TYPE_RELATIVE, clock.wall + 30 * MINUTE);
+        n.put(NotifUtils.JSON_KEY_DELIVERY_CLASS, DeliveryClass.ALARM_CLOCK);
+        repository.put(NotificationJournal.OP_CREATE, n);
+
+        NotifUtils.scheduleAlarm(context, "n_el4_1", "Timer", clock.wall + 30 * MINUTE);
+
+        assertFalse(registry.get(NotifUtils.numericIdFor(context, "n_el4_1")).elapsed);
+        assertEquals("Armed the same way as the batch path would",
+                1, NotifUtils.scheduleAlarms(context, java.util.Collections.singletonList(n)).skipped);
+    }
+
+    // ─── clock changes ────────────────────────────────────────────────────────
+
+    @Test
+    public void elapsedAt_isStableAcrossClockJumps() {
+        long scheduledAt = clock.wall + 20 * MINUTE;
+        long first = ElapsedSchedule.elapsedAt(context, "n_el4_1", scheduledAt);
+
+        clock.wall += 3 * HOUR;
+        assertEquals(first, ElapsedSchedule.elapsedAt(context, "n_el4_1", scheduledAt));
+        clock.wall -= 7 * HOUR;
+        assertEquals(first, ElapsedSchedule.elapsedAt(context, "n_el4_1", scheduledAt));
+    }
+
+    @Test
+    public void clockJumps_causeZeroRearms() throws Exception {
+        final int count = 50;
+        List<JSONObject> all = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            schedule("n_el5_" + i, NotifUtils.TYPE_RELATIVE, clock.wall + (i + 1) * MINUTE);
+            all.add(repository.snapshot().get("n_el5_" + i));
+        }
+        Map<String, Long> generations = new HashMap<>();
+        for (JSONObject n : all) {
+            String id = n.getString("id");
+            generations.put(id, generationOf(id));
+        }
+        int alarmsBefore = shadowAlarmManager().getScheduledAlarms().size();
+
+        // NTP jump forward, then a manual change back past the original time
+        clock.wall += 2 * HOUR;
+        AlarmBatchReport forward = NotifUtils.scheduleAlarms(context, all);
+        AlarmWatchdogWorker.rescheduleOrphanedAlarms(context);
+        clock.wall -= 5 * HOUR;
+        AlarmBatchReport back = NotifUtils.scheduleAlarms(context, all);
+        AlarmWatchdogWorker.rescheduleOrphanedAlarms(context);
+
+        assertEquals(0, forward.armed);
+        assertEquals(0, back.armed);
+        for (Map.Entry<String, Long> e : generations.entrySet()) {
+            assertEquals("Re-armed " + e.getKey(), (long) e.getValue(), generationOf(e.getKey()));
+        }
+        assertEquals(alarmsBefore, shadowAlarmManager().getScheduledAlarms().size());
+        for (ShadowAlarmManager.ScheduledAlarm alarm : shadowAlarmManager().getScheduledAlarms()) {
+            assertEquals(AlarmManager.ELAPSED_REALTIME_WAKEUP, field(alarm, "type"));
+        }
+    }
+
+    @Test
+    public void editedNotification_isDerivedAgain() {
+        long first = ElapsedSchedule.elapsedAt(context, "n_el6_1", clock.wall + 10 * MINUTE);
+        clock.advance(MINUTE);
+
+        long second = ElapsedSchedule.elapsedAt(context, "n_el6_1", clock.wall + 10 * MINUTE);
+
+        assertEquals(first + MINUTE, second);
+    }
+
+    // ─── boot ─────────────────────────────────────────────────────────────────
+
+    @Test
+    public void boot_rebasesFromWallClock() throws Exception {
+        long scheduledAt = clock.wall + 45 * MINUTE;
+        schedule("n_el7_1", NotifUtils.TYPE_RELATIVE, scheduledAt);
+
+        // Rebooted ten minutes later: elapsed realtime starts over
+        clock.wall += 10 * MINUTE;
+        clock.elapsed = 30_000L;
+        new BootReceiver().onReceive(context, new Intent(Intent.ACTION_BOOT_COMPLETED));
+
+        assertEquals(30_000L + 35 * MINUTE, ElapsedSchedule.elapsedAt(context, "n_el7_1", scheduledAt));
+    }
+
+    @Test
+    public void wallTimeOf_mapsElapsedToCurrentWallClock() {
+        assertEquals(clock.wall + MINUTE, ElapsedSchedule.wallTimeOf(clock.elapsed + MINUTE));
+    }
+}
@@ -0,0 +1,190 @@
+package app.amir.quicknotif;
+
+import static org.junit.Assert.*;
+
+import android.app.AlarmManager;
+import android.content.Context;
+import android.content.Intent;
+import android.content.SharedPreferences;
+
+import org.json.JSONObject;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.Shadows;
+import org.robolectric.annotation.Config;
+import org.robolectric.shadows.ShadowAlarmManager;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 34)
+public class FireLeadTest {
+
+    private static final long HOUR = 3_600_000L;
+
+    private Context context;
+    private SharedPreferences prefs;
+    private FireLead lead;
+
+    @Before
+    public void setUp() {
+        context = RuntimeEnvironment.getApplication();
+        NotifUtils.getPrefs(context).edit().clear().commit();
+        prefs = context.getSharedPreferences(FireLead.PREFS_NAME, Context.MODE_PRIVATE);
+        prefs.edit().clear().commit();
+        lead = FireLead.get(context);
+        lead.reset();
+    }
+
+    private void recordMany(int n, long delayMs) {
+        for (int i = 0; i < n; i++) lead.record(delayMs);
+    }
+
+    private static long triggerAt(ShadowAlarmManager.ScheduledAlarm alarm) throws Exception {
+        java.lang.reflect.Field f = alarm.getClass().getDeclaredField("triggerAtMs");
+        f.setAccessible(true);
+        return f.getLong(alarm);
+    }
+
+    private ShadowAlarmManager shadowAlarmManager() {
+        AlarmManager am = (AlarmManager) context.getSystemService(Context.ALARM_SERVICE);
+        return Shadows.shadowOf(am);
+    }
+
+    private void store(String id, String deliveryClass, long scheduledAt) throws Exception {
+        JSONObject n = new JSONObject();
+        n.put("id", id);
+        n.put("name", "Timer " + id);
+        n.put("type", NotifUtils.TYPE_ABSOLUTE);
+        n.put("enabled", true);
+        n.put("scheduledAt", scheduledAt);
+        n.put("deliveryClass", deliveryClass);
+        NotificationRepository.get(context).put(NotificationJournal.OP_CREATE, n);
+    }
+
+    // ─── estimate ─────────────────────────────────────────────────────────────
+
+    @Test
+    public void percentile_isZeroUntilEnoughSamples() {
+        recordMany(FireLead.MIN_SAMPLES - 1, 5_000L);
+        assertEquals(0L, lead.percentileMs());
+
+        lead.record(5_000L);
+        assertEquals(5_000L, lead.percentileMs());
+    }
+
+    @Test
+    public void percentile_overLastCapacitySamples() {
+        for (int i = 1; i <= 100; i++) lead.record(i);
+
+        assertEquals(FireLead.CAPACITY, lead.sampleCount());
+        // Samples 37..100 remain; the 95th percentile of 64 is the 61st smallest
+        assertEquals(97L, lead.percentileMs());
+    }
+
+    @Test
+    public void negativeDelay_countsAsOnTime() {
+        recordMany(FireLead.MIN_SAMPLES, -1_000L);
+        assertEquals(0L, lead.percentileMs());
+    }
+
+    @Test
+    public void samples_surviveReload() {
+        recordMany(FireLead.MIN_SAMPLES, 2_000L);
+
+        FireLead reloaded = new FireLead(prefs);
+
+        assertEquals(FireLead.MIN_SAMPLES, reloaded.sampleCount());
+        assertEquals(2_000L, reloaded.percentileMs());
+    }
+
+    // ─── bounds ───────────────────────────────────────────────────────────────
+
+    @Test
+    public void leadMs_isCappedAtConfiguredMax() throws Exception {
+        recordMany(FireLead.MIN_SAMPLES, 50_000L);
+        assertEquals(FireLead.DEFAULT_MAX_LEAD_MS, FireLead.leadMs(context));
+
+        FireLead.setMaxLeadMs(context, 4_000L);
+        assertEquals(4_000L, FireLead.leadMs(context));
+
+        FireLead.setMaxLeadMs(context, 0L);
+        assertEquals(0L, FireLead.leadMs(context));
+        assertEquals(50_000L, FireLead.toJson(context).getLong("percentileMs"));
+    }
+
+    @Test
+    public void maxLead_isKeptOutOfWebPreferences() {
+        FireLead.setMaxLeadMs(context, 3_000L);
+
+        assertEquals(3_000L, prefs.getLong(FireLead.KEY_MAX_LEAD_MS, -1L));
+        assertFalse(NotifUtils.getPrefs(context).contains(FireLead.KEY_MAX_LEAD_MS));
+    }
+
+    @Test
+    public void reset_keepsMaxLead() {
+        FireLead.setMaxLeadMs(context, 3_000L);
+        recordMany(FireLead.MIN_SAMPLES, 2_000L);
+
+        lead.reset();
+
+        assertEquals(0, lead.sampleCount());
+        assertEquals(3_000L, FireLead.maxLeadMs(context));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void setMaxLeadMs_aboveBound_throws() {
+        FireLead.setMaxLeadMs(context, FireLead.MAX_LEAD_MS + 1);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void setMaxLeadMs_negative_throws() {
+        FireLead.setMaxLeadMs(context, -1L);
+    }
+
+    // ─── arming ───────────────────────────────────────────────────────────────
+
+    @Test
+    public void exactAlarm_isArmedEarlyByLead() throws Exception {
+        recordMany(FireLead.MIN_SAMPLES, 2_000L);
+        long at = System.currentTimeMillis() + HOUR;
+        store("n_fl1_1", DeliveryClass.EXACT, at);
+
+        NotifUtils.scheduleAlarm(context, "n_fl1_1", "Timer", at);
+
+        assertEquals(at - 2_000L, triggerAt(shadowAlarmManager().getNextScheduledAlarm()));
+        assertTrue("Registry keeps the due time",
+                AlarmRegistry.get(context).isArmedAt(NotifUtils.numericIdFor(context, "n_fl1_1"), at));
+    }
+
+    @Test
+    public void windowedAlarm_isNotMoved() throws Exception {
+        recordMany(FireLead.MIN_SAMPLES, 2_000L);
+        long at = System.currentTimeMillis() + HOUR;
+        store("n_fl2_1", DeliveryClass.WINDOWED, at);
+
+        NotifUtils.scheduleAlarm(context, "n_fl2_1", "Timer", at);
+
+        assertEquals(at, triggerAt(shadowAlarmManager().getNextScheduledAlarm()));
+    }
+
+    // ─── receiver ─────────────────────────────────────────────────────────────
+
+    @Test
+    public void receiver_recordsHowLateAnExactAlarmArrived() throws Exception {
+        long at = System.currentTimeMillis() - 3_000L;
+        store("n_fl3_1", DeliveryClass.EXACT, at);
+        NotifUtils.scheduleAlarm(context, "n_fl3_1", "Timer", at);
+
+        Intent intent = new Intent(context, NotificationReceiver.class);
+        intent.putExtra(NotifUtils.EXTRA_NOTIFICATION_ID, "n_fl3_1");
+        intent.putExtra(NotifUtils.EXTRA_GENERATION,
+                AlarmRegistry.get(context).get(NotifUtils.numericIdFor(context, "n_fl3_1")).generation);
+        new NotificationReceiver().onReceive(context, intent);
+
+        assertEquals(1, lead.sampleCount());
+        recordMany(FireLead.MIN_SAMPLES - 1, 0L);
+        assertTrue(lead.percentileMs() >= 3_000L);
+    }
+}
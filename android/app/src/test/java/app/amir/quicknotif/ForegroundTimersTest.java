@@ -0,0 +1,224 @@
+package app.amir.quicknotif;
+
+import static app.amir.quicknotif.AlarmTestFixtures.*;
+import static org.junit.Assert.*;
+
+import android.app.NotificationManager;
+import android.content.Context;
+import android.content.SharedPreferences;
+
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.Shadows;
+import org.robolectric.annotation.Config;
+import org.robolectric.shadows.ShadowNotificationManager;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 34)
+public class ForegroundTimersTest {
+
+    private static final long MINUTE = 60_000L;
+    private static final long HOUR = 60 * MINUTE;
+
+    private Context context;
+    private NotificationRepository repository;
+    private AlarmRegistry registry;
+    private long now;
+    private boolean foreground;
+
+    @Before
+    public void setUp() {
+        context = freshContext();
+        repository = NotificationRepository.get(context);
+        registry = AlarmRegistry.get(context);
+        now = System.currentTimeMillis();
+    }
+
+    @After
+    public void tearDown() {
+        if (foreground) ForegroundTimers.activityPaused();
+    }
+
+    private void resume() {
+        ForegroundTimers.activityResumed();
+        foreground = true;
+    }
+
+    private void pause() {
+        ForegroundTimers.activityPaused();
+        foreground = false;
+    }
+
+    private ShadowNotificationManager shadowNotificationManager() {
+        NotificationManager nm = (NotificationManager) context.getSystemService(Context.NOTIFICATION_SERVICE);
+        return Shadows.shadowOf(nm);
+    }
+
+    private boolean isArmed(String id) {
+        return registry.isArmed(NotifUtils.numericIdFor(context, id));
+    }
+
+    // ─── holding ──────────────────────────────────────────────────────────────
+
+    @Test
+    public void foreground_shortTimer_isHeldBehindBackstop() throws Exception {
+        resume();
+
+        schedule(context, "n_ft1_1", now + 5 * MINUTE);
+
+        assertTrue(ForegroundTimers.holds("n_ft1_1", now + 5 * MINUTE));
+        assertFalse("No alarm of its own", isArmed("n_ft1_1"));
+        assertTrue(ForegroundTimers.isBackstopArmed(context));
+        assertEquals(1, shadowAlarmManager(context).getScheduledAlarms().size());
+    }
+
+    @Test
+    public void background_shortTimer_getsAlarm() throws Exception {
+        schedule(context, "n_ft2_1", now + 5 * MINUTE);
+
+        assertFalse(ForegroundTimers.holds("n_ft2_1"));
+        assertTrue(isArmed("n_ft2_1"));
+    }
+
+    @Test
+    public void foreground_longTimer_getsAlarm() throws Exception {
+        resume();
+
+        schedule(context, "n_ft3_1", now + 2 * HOUR);
+
+        assertFalse(ForegroundTimers.holds("n_ft3_1"));
+        assertTrue(isArmed("n_ft3_1"));
+    }
+
+    @Test
+    public void foreground_alarmClockClass_getsAlarm() throws Exception {
+        resume();
+        JSONObject n = notification("n_ft4_1", now + 5 * MINUTE);
+        n.put(NotifUtils.JSON_KEY_DELIVERY_CLASS, DeliveryClass.ALARM_CLOCK);
+        repository.put(NotificationJournal.OP_CREATE, n);
+
+        NotifUtils.scheduleAlarm(context, "n_ft4_1", "Timer", now + 5 * MINUTE);
+
+        assertFalse(ForegroundTimers.holds("n_ft4_1"));
+        assertTrue(isArmed("n_ft4_1"));
+    }
+
+    @Test
+    public void manyTimers_shareOneBackstop() throws Exception {
+        resume();
+
+        for (int i = 0; i < 20; i++) {
+            schedule(context, "n_ft5_" + i, now + (20 - i) * MINUTE);
+        }
+
+        assertEquals(20, ForegroundTimers.get(context).size());
+        assertEquals("Only the backstop alarm", 1, shadowAlarmManager(context).getScheduledAlarms().size());
+        assertEquals(now + MINUTE, ForegroundTimers.get(context).backstopAt());
+    }
+
+    @Test
+    public void heldTimer_replacesEarlierAlarm() throws Exception {
+        schedule(context, "n_ft6_1", now + 10 * MINUTE);
+        assertTrue(isArmed("n_ft6_1"));
+        resume();
+
+        NotifUtils.scheduleAlarm(context, "n_ft6_1", "Timer", now + 10 * MINUTE);
+
+        assertTrue(ForegroundTimers.holds("n_ft6_1"));
+        assertFalse(isArmed("n_ft6_1"));
+        assertEquals("Only the backstop alarm", 1, shadowAlarmManager(context).getScheduledAlarms().size());
+    }
+
+    @Test
+    public void cancel_heldTimer_onlyTouchesWheel() throws Exception {
+        resume();
+        schedule(context, "n_ft7_1", now + 5 * MINUTE);
+
+        NotifUtils.cancelAlarm(context, "n_ft7_1");
+
+        assertFalse(ForegroundTimers.holds("n_ft7_1"));
+        assertEquals(0, ForegroundTimers.get(context).size());
+    }
+
+    @Test
+    public void watchdog_countsHeldTimerAsAlive() throws Exception {
+        resume();
+        schedule(context, "n_ft8_1", now + 5 * MINUTE);
+
+        AlarmWatchdogWorker.rescheduleOrphanedAlarms(context);
+
+        assertFalse(isArmed("n_ft8_1"));
+        assertTrue(ForegroundTimers.holds("n_ft8_1"));
+    }
+
+    // ─── delivery ─────────────────────────────────────────────────────────────
+
+    @Test
+    public void deliverDue_postsNotificationInProcess() throws Exception {
+        resume();
+        schedule(context, "n_ft9_1", now + 5 * MINUTE);
+        schedule(context, "n_ft9_2", now + 30 * MINUTE);
+
+        int delivered = ForegroundTimers.get(context).deliverDue(now + 5 * MINUTE);
+
+        assertEquals(1, delivered);
+        assertEquals(1, shadowNotificationManager().getAllNotifications().size());
+        assertFalse(ForegroundTimers.holds("n_ft9_1"));
+        assertEquals("Backstop moved on to the next timer",
+                now + 30 * MINUTE, ForegroundTimers.get(context).backstopAt());
+        assertEquals(1, ForegroundTimers.get(context).metricsJson().getLong("fired"));
+    }
+
+    @Test
+    public void deliverDue_disabledInStorage_isDropped() throws Exception {
+        resume();
+        schedule(context, "n_ft10_1", now + 5 * MINUTE);
+        repository.update("n_ft10_1", obj -> {
+            obj.put(NotifUtils.JSON_KEY_ENABLED, false);
+            return true;
+        });
+
+        int delivered = ForegroundTimers.get(context).deliverDue(now + 5 * MINUTE);
+
+        assertEquals(0, delivered);
+        assertEquals(0, shadowNotificationManager().getAllNotifications().size());
+        assertFalse("Nothing left to back up", ForegroundTimers.isBackstopArmed(context));
+    }
+
+    // ─── backstop ─────────────────────────────────────────────────────────────
+
+    @Test
+    public void backstop_inBackground_handsRestToAlarmManager() throws Exception {
+        resume();
+        schedule(context, "n_ft11_1", now + 5 * MINUTE);
+        schedule(context, "n_ft11_2", now + 40 * MINUTE);
+        pause();
+
+        ForegroundTimers.onBackstop(context, now + 5 * MINUTE);
+
+        assertEquals(1, shadowNotificationManager().getAllNotifications().size());
+        assertTrue(isArmed("n_ft11_2"));
+        assertEquals(0, ForegroundTimers.get(context).size());
+        assertFalse(ForegroundTimers.isBackstopArmed(context));
+    }
+
+    @Test
+    public void newProcess_takesOverRecordedTimers() throws Exception {
+        resume();
+        schedule(context, "n_ft12_1", now + 5 * MINUTE);
+        SharedPreferences prefs = context.getSharedPreferences(ForegroundTimers.PREFS_NAME, Context.MODE_PRIVATE);
+
+        // As if the process had died and a new one started
+        ForegroundTimers restarted = new ForegroundTimers(context, prefs, now + MINUTE);
+        try {
+            assertTrue(restarted.isHeld("n_ft12_1", now + 5 * MINUTE));
+            assertEquals(now + 5 * MINUTE, restarted.backstopAt());
+        } finally {
+            restarted.quit();
+        }
+    }
+}
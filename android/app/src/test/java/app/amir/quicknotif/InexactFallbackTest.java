@@ -0,0 +1,162 @@
+package app.amir.quicknotif;
+
+import static org.junit.Assert.*;
+
+import android.app.AlarmManager;
+import android.content.Context;
+import android.content.Intent;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.Shadows;
+import org.robolectric.annotation.Config;
+import org.robolectric.shadows.ShadowAlarmManager;
+
+import java.util.List;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 34)
+public class InexactFallbackTest {
+
+    private static final long HOUR = 3_600_000L;
+
+    private Context context;
+    private NotificationRepository repository;
+    private AlarmRegistry registry;
+    private long now;
+
+    @Before
+    public void setUp() {
+        context = RuntimeEnvironment.getApplication();
+        NotifUtils.getPrefs(context).edit().clear().commit();
+        context.getSharedPreferences(InexactFallback.PREFS_NAME, Context.MODE_PRIVATE).edit().clear().commit();
+        repository = NotificationRepository.get(context);
+        registry = AlarmRegistry.get(context);
+        now = System.currentTimeMillis();
+    }
+
+    @After
+    public void tearDown() {
+        ShadowAlarmManager.setCanScheduleExactAlarms(true);
+    }
+
+    private ShadowAlarmManager shadowAlarmManager() {
+        AlarmManager am = (AlarmManager) context.getSystemService(Context.ALARM_SERVICE);
+        return Shadows.shadowOf(am);
+    }
+
+    private static long field(ShadowAlarmManager.ScheduledAlarm alarm, String name) throws Exception {
+        java.lang.reflect.Field f = alarm.getClass().getDeclaredField(name);
+        f.setAccessible(true);
+        return ((Number) f.get(alarm)).longValue();
+    }
+
+    private void schedule(String id, long scheduledAt) throws JSONException {
+        JSONObject n = new JSONObject();
+        n.put("id", id);
+        n.put("name", "Timer " + id);
+        n.put("type", NotifUtils.TYPE_ABSOLUTE);
+        n.put("enabled", true);
+        n.put("scheduledAt", scheduledAt);
+        repository.put(NotificationJournal.OP_CREATE, n);
+        NotifUtils.scheduleAlarm(context, id, "Timer " + id, scheduledAt);
+    }
+
+    // ─── slots ────────────────────────────────────────────────────────────────
+
+    @Test
+    public void slotEnd_isSharedWithinASlotAndAtLeastOneSlotAway() {
+        long slotStart = 1_000 * InexactFallback.SLOT_MS;
+        long a = slotStart + 1;
+        long b = slotStart + InexactFallback.SLOT_MS - 1;
+
+        assertEquals(InexactFallback.slotEnd(a), InexactFallback.slotEnd(b));
+        assertTrue(InexactFallback.slotEnd(b) - b >= InexactFallback.SLOT_MS);
+        assertTrue(InexactFallback.slotEnd(a) - a <= 2 * InexactFallback.SLOT_MS);
+    }
+
+    @Test
+    public void exactDenied_armsWindowInSlotAndEntersFallback() throws Exception {
+        ShadowAlarmManager.setCanScheduleExactAlarms(false);
+        long at = now + HOUR;
+
+        schedule("n_ix1_1", at);
+
+        List<ShadowAlarmManager.ScheduledAlarm> alarms = shadowAlarmManager().getScheduledAlarms();
+        assertEquals(1, alarms.size());
+        assertEquals(at, field(alarms.get(0), "triggerAtMs"));
+        assertEquals(InexactFallback.slotEnd(at) - at, field(alarms.get(0), "windowLengthMs"));
+        assertTrue(InexactFallback.isActive(context));
+    }
+
+    @Test
+    public void exactAllowed_staysOutOfFallback() throws Exception {
+        schedule("n_ix2_1", now + HOUR);
+
+        assertFalse(InexactFallback.isActive(context));
+        assertEquals(0L, field(shadowAlarmManager().getNextScheduledAlarm(), "windowLengthMs"));
+    }
+
+    // ─── lateness ─────────────────────────────────────────────────────────────
+
+    @Test
+    public void receiver_recordsLatenessOfSlottedAlarm() throws Exception {
+        ShadowAlarmManager.setCanScheduleExactAlarms(false);
+        schedule("n_ix3_1", now - 4_000L);
+
+        Intent intent = new Intent(context, NotificationReceiver.class);
+        intent.putExtra(NotifUtils.EXTRA_NOTIFICATION_ID, "n_ix3_1");
+        intent.putExtra(NotifUtils.EXTRA_GENERATION,
+                registry.get(NotifUtils.numericIdFor(context, "n_ix3_1")).generation);
+        intent.putExtra(NotifUtils.EXTRA_SLOTTED, true);
+        new NotificationReceiver().onReceive(context, intent);
+
+        JSONObject json = InexactFallback.toJson(context);
+        assertEquals(1, json.getLong("delivered"));
+        assertTrue(json.getLong("maxLatenessMs") >= 4_000L);
+        assertEquals("Not a sample for the exact lead", 0, FireLead.get(context).sampleCount());
+    }
+
+    // ─── restore ──────────────────────────────────────────────────────────────
+
+    @Test
+    public void restoreExact_whileStillDenied_doesNothing() throws Exception {
+        ShadowAlarmManager.setCanScheduleExactAlarms(false);
+        schedule("n_ix4_1", now + HOUR);
+
+        assertNull(InexactFallback.restoreExact(context, now));
+        assertTrue(InexactFallback.isActive(context));
+    }
+
+    @Test
+    public void restoreExact_rearmsAllPendingInOneBatch() throws Exception {
+        ShadowAlarmManager.setCanScheduleExactAlarms(false);
+        schedule("n_ix5_1", now + HOUR);
+        schedule("n_ix5_2", now + 2 * HOUR);
+        schedule("n_ix5_3", now + 3 * HOUR);
+        long generation = registry.get(NotifUtils.numericIdFor(context, "n_ix5_1")).generation;
+
+        ShadowAlarmManager.setCanScheduleExactAlarms(true);
+        AlarmBatchReport report = InexactFallback.restoreExact(context, now);
+
+        assertNotNull(report);
+        assertEquals(3, report.armed);
+        assertFalse(InexactFallback.isActive(context));
+        assertTrue(registry.get(NotifUtils.numericIdFor(context, "n_ix5_1")).generation > generation);
+        for (ShadowAlarmManager.ScheduledAlarm alarm : shadowAlarmManager().getScheduledAlarms()) {
+            assertEquals("Armed exactly", 0L, field(alarm, "windowLengthMs"));
+        }
+        assertEquals(3, InexactFallback.toJson(context).getJSONObject("lastRestore").getInt("rearmed"));
+    }
+
+    @Test
+    public void restoreExact_notInFallback_returnsNull() {
+        assertNull(InexactFallback.restoreExact(context, now));
+    }
+}
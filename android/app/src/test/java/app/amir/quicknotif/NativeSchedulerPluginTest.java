@@ -0,0 +1,130 @@
+package app.amir.quicknotif;
+
+import static org.junit.Assert.*;
+
+import android.app.AlarmManager;
+import android.content.Context;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.Shadows;
+import org.robolectric.annotation.Config;
+import org.robolectric.shadows.ShadowAlarmManager;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 34)
+public class NativeSchedulerPluginTest {
+
+    private static final long HOUR = 3_600_000L;
+
+    private Context context;
+    private NotificationRepository repository;
+    private long now;
+
+    @Before
+    public void setUp() {
+        context = RuntimeEnvironment.getApplication();
+        NotifUtils.getPrefs(context).edit().clear().commit();
+        repository = NotificationRepository.get(context);
+        now = System.currentTimeMillis();
+    }
+
+    private ShadowAlarmManager shadowAlarmManager() {
+        AlarmManager am = (AlarmManager) context.getSystemService(Context.ALARM_SERVICE);
+        return Shadows.shadowOf(am);
+    }
+
+    private void store(String id, boolean enabled, long scheduledAt) throws JSONException {
+        JSONObject n = new JSONObject();
+        n.put("id", id);
+        n.put("name", "Timer " + id);
+        n.put("type", NotifUtils.TYPE_ABSOLUTE);
+        n.put("enabled", enabled);
+        n.put("scheduledAt", scheduledAt);
+        repository.put(NotificationJournal.OP_CREATE, n);
+    }
+
+    // ─── schedule ─────────────────────────────────────────────────────────────
+
+    @Test
+    public void schedule_storedNotification_armsOneAlarmAndReportsIt() throws Exception {
+        store("n_ns1_1", true, now + HOUR);
+
+        JSONObject result = NativeSchedulerPlugin.schedule(context, "n_ns1_1", now);
+
+        assertEquals("n_ns1_1", result.getString("id"));
+        assertEquals(now + HOUR, result.getLong("scheduledAt"));
+        assertEquals(NativeSchedulerPlugin.ARMED_ALARM, result.getString("armedAs"));
+        assertEquals(NotifUtils.numericIdFor(context, "n_ns1_1"), result.getInt("numericId"));
+        assertEquals(1, shadowAlarmManager().getScheduledAlarms().size());
+    }
+
+    @Test
+    public void schedule_twice_keepsOneAlarm() throws Exception {
+        store("n_ns2_1", true, now + HOUR);
+
+        NativeSchedulerPlugin.schedule(context, "n_ns2_1", now);
+        NativeSchedulerPlugin.schedule(context, "n_ns2_1", now);
+
+        assertEquals(1, shadowAlarmManager().getScheduledAlarms().size());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void schedule_notStored_throws() throws Exception {
+        NativeSchedulerPlugin.schedule(context, "n_ns3_1", now);
+    }
+
+    @Test
+    public void schedule_disabled_throwsWithoutArming() throws Exception {
+        store("n_ns4_1", false, now + HOUR);
+
+        try {
+            NativeSchedulerPlugin.schedule(context, "n_ns4_1", now);
+            fail("Expected IllegalStateException");
+        } catch (IllegalStateException expected) {
+            assertTrue(shadowAlarmManager().getScheduledAlarms().isEmpty());
+        }
+    }
+
+    @Test
+    public void schedule_beyondHorizon_isReportedDeferred() throws Exception {
+        AlarmHorizon.setHorizonHours(context, 2);
+        store("n_ns5_1", true, now + 10 * HOUR);
+
+        JSONObject result = NativeSchedulerPlugin.schedule(context, "n_ns5_1", now);
+
+        assertEquals(NativeSchedulerPlugin.ARMED_DEFERRED, result.getString("armedAs"));
+    }
+
+    // ─── cancel / verify ──────────────────────────────────────────────────────
+
+    @Test
+    public void cancel_armedAlarm_returnsTrueAndDisarms() throws Exception {
+        store("n_ns6_1", true, now + HOUR);
+        NativeSchedulerPlugin.schedule(context, "n_ns6_1", now);
+
+        assertTrue(NativeSchedulerPlugin.cancel(context, "n_ns6_1"));
+        assertFalse(AlarmRegistry.get(context).isArmed(NotifUtils.numericIdFor(context, "n_ns6_1")));
+        assertFalse("Nothing left to cancel", NativeSchedulerPlugin.cancel(context, "n_ns6_1"));
+    }
+
+    @Test
+    public void verify_splitsArmedFromMissing() throws Exception {
+        store("n_ns7_1", true, now + HOUR);
+        store("n_ns7_2", true, now + 2 * HOUR);
+        NativeSchedulerPlugin.schedule(context, "n_ns7_1", now);
+
+        JSONObject result = NativeSchedulerPlugin.verify(context,
+                new JSONArray().put("n_ns7_1").put("n_ns7_2").put("n_ns7_unknown"), now);
+
+        assertEquals(1, result.getJSONArray("armed").length());
+        assertEquals("n_ns7_1", result.getJSONArray("armed").getString(0));
+        assertEquals(2, result.getJSONArray("missing").length());
+    }
+}
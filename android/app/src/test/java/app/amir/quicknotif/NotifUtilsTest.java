@@ -34,6 +34,7 @@ public class NotifUtilsTest {
         context = RuntimeEnvironment.getApplication();
         // Clear prefs between tests
         NotifUtils.getPrefs(context).edit().clear().commit();
+        context.getSharedPreferences(DeliveryClass.PREFS_NAME, Context.MODE_PRIVATE).edit().clear().commit();
     }
 
     // ─── generateNumericId golden values ──────────────────────────────────────
@@ -166,6 +167,37 @@ public class NotifUtilsTest {
         }
     }
 
+    @Test
+    public void scheduleAlarm_renamedAtSameTime_leavesArmedAlarmUntouched() {
+        long triggerMs = System.currentTimeMillis() + 60_000L;
+        NotifUtils.scheduleAlarm(context, "notification_0_0", "Before", triggerMs);
+        AlarmRegistry registry = AlarmRegistry.get(context);
+        int numericId = NotifUtils.numericIdFor(context, "notification_0_0");
+        long generation = registry.get(numericId).generation;
+
+        NotifUtils.scheduleAlarm(context, "notification_0_0", "After", triggerMs);
+
+        AlarmManager am = (AlarmManager) context.getSystemService(Context.ALARM_SERVICE);
+        assertEquals(1, Shadows.shadowOf(am).getScheduledAlarms().size());
+        assertEquals("Not re-armed", generation, registry.get(numericId).generation);
+    }
+
+    @Test
+    public void scheduleAlarm_classChangedAtSameTime_rearms() {
+        long triggerMs = System.currentTimeMillis() + 60_000L;
+        NotifUtils.scheduleAlarm(context, "notification_0_0", "Exact", triggerMs, DeliveryClass.EXACT);
+        AlarmRegistry registry = AlarmRegistry.get(context);
+        int numericId = NotifUtils.numericIdFor(context, "notification_0_0");
+        long generation = registry.get(numericId).generation;
+
+        NotifUtils.scheduleAlarm(context, "notification_0_0", "Windowed", triggerMs, DeliveryClass.WINDOWED);
+
+        AlarmManager am = (AlarmManager) context.getSystemService(Context.ALARM_SERVICE);
+        assertEquals(1, Shadows.shadowOf(am).getScheduledAlarms().size());
+        assertTrue("Re-armed", registry.get(numericId).generation > generation);
+        assertEquals(DeliveryClass.WINDOWED, registry.get(numericId).deliveryClass);
+    }
+
     @Test
     public void cancelAlarm_removesAlarmFromAlarmManager() {
         long triggerMs = System.currentTimeMillis() + 60_000L;
@@ -183,6 +215,248 @@ public class NotifUtilsTest {
         NotifUtils.cancelAlarm(context, "notification_nonexistent_0");
     }
 
+    // ─── Batch scheduling ─────────────────────────────────────────────────────
+
+    private static org.json.JSONObject entry(String id, long scheduledAt) throws Exception {
+        org.json.JSONObject n = new org.json.JSONObject();
+        n.put("id", id);
+        n.put("name", "Batch " + id);
+        n.put("enabled", true);
+        n.put("scheduledAt", scheduledAt);
+        return n;
+    }
+
+    @Test
+    public void scheduleAlarms_armsEachThenSkipsUnchanged() throws Exception {
+        long t = System.currentTimeMillis() + 60_000L;
+        java.util.List<org.json.JSONObject> batch = java.util.Arrays.asList(
+                entry("notification_b1_1", t), entry("notification_b1_2", t + 1), entry("notification_b1_3", t + 2));
+
+        AlarmBatchReport first = NotifUtils.scheduleAlarms(context, batch);
+        AlarmBatchReport second = NotifUtils.scheduleAlarms(context, batch);
+
+        assertEquals(3, first.armed);
+        assertEquals(0, first.skipped);
+        assertEquals(0, second.armed);
+        assertEquals(3, second.skipped);
+        AlarmManager am = (AlarmManager) context.getSystemService(Context.ALARM_SERVICE);
+        assertEquals(3, Shadows.shadowOf(am).getScheduledAlarms().size());
+    }
+
+    @Test
+    public void scheduleAlarms_rearmsOnlyChangedTimes() throws Exception {
+        long t = System.currentTimeMillis() + 60_000L;
+        NotifUtils.scheduleAlarms(context, java.util.Arrays.asList(
+                entry("notification_b2_1", t), entry("notification_b2_2", t)));
+
+        AlarmBatchReport report = NotifUtils.scheduleAlarms(context, java.util.Arrays.asList(
+                entry("notification_b2_1", t), entry("notification_b2_2", t + 60_000L)));
+
+        assertEquals(1, report.armed);
+        assertEquals(1, report.skipped);
+    }
+
+    @Test
+    public void scheduleAlarms_rearmsAlarmThatWasCancelled() throws Exception {
+        long t = System.currentTimeMillis() + 60_000L;
+        java.util.List<org.json.JSONObject> batch = java.util.Collections.singletonList(entry("notification_b3_1", t));
+        NotifUtils.scheduleAlarms(context, batch);
+        NotifUtils.cancelPendingAlarm(context, "notification_b3_1");
+
+        assertEquals(1, NotifUtils.scheduleAlarms(context, batch).armed);
+    }
+
+    @Test
+    public void scheduleAlarms_entryWithoutIdOrTime_countsAsFailed() throws Exception {
+        org.json.JSONObject noTime = entry("notification_b4_1", 0L);
+        noTime.remove("scheduledAt");
+        AlarmBatchReport report = NotifUtils.scheduleAlarms(context, java.util.Arrays.asList(
+                entry("", System.currentTimeMillis() + 60_000L), noTime));
+
+        assertEquals(2, report.failed);
+        assertEquals(0, report.armed);
+    }
+
+    @Test
+    public void cancelAlarms_cancelsRegisteredAndSkipsOthers() throws Exception {
+        long t = System.currentTimeMillis() + 60_000L;
+        NotifUtils.scheduleAlarms(context, java.util.Arrays.asList(
+                entry("notification_b5_1", t), entry("notification_b5_2", t)));
+
+        AlarmBatchReport report = NotifUtils.cancelAlarms(context, java.util.Arrays.asList(
+                "notification_b5_1", "notification_b5_2", "notification_b5_3"));
+
+        assertEquals(2, report.cancelled);
+        assertEquals(1, report.skipped);
+        AlarmManager am = (AlarmManager) context.getSystemService(Context.ALARM_SERVICE);
+        assertTrue(Shadows.shadowOf(am).getScheduledAlarms().isEmpty());
+    }
+
+    @Test
+    public void cancelAlarms_idUnknownToRegistry_isNotLookedUp() throws Exception {
+        // Armed behind the registry's back: only reconcile() asks the system about such alarms
+        AlarmManager am = (AlarmManager) context.getSystemService(Context.ALARM_SERVICE);
+        android.app.PendingIntent pi = android.app.PendingIntent.getBroadcast(context,
+                NotifUtils.numericIdFor(context, "notification_b7_1"),
+                new android.content.Intent(context, NotificationReceiver.class),
+                android.app.PendingIntent.FLAG_UPDATE_CURRENT | android.app.PendingIntent.FLAG_IMMUTABLE);
+        am.set(AlarmManager.RTC_WAKEUP, System.currentTimeMillis() + 60_000L, pi);
+
+        AlarmBatchReport report = NotifUtils.cancelAlarms(context,
+                java.util.Collections.singletonList("notification_b7_1"));
+
+        assertEquals(1, report.skipped);
+        assertEquals(1, Shadows.shadowOf(am).getScheduledAlarms().size());
+    }
+
+    @Test
+    public void scheduleAlarms_afterCancelAlarms_armsAgain() throws Exception {
+        long t = System.currentTimeMillis() + 60_000L;
+        java.util.List<org.json.JSONObject> batch = java.util.Collections.singletonList(entry("notification_b6_1", t));
+        NotifUtils.scheduleAlarms(context, batch);
+        NotifUtils.cancelAlarms(context, java.util.Collections.singletonList("notification_b6_1"));
+
+        assertEquals(1, NotifUtils.scheduleAlarms(context, batch).armed);
+    }
+
+    // ─── Delivery classes ─────────────────────────────────────────────────────
+
+    private static long windowLength(ShadowAlarmManager.ScheduledAlarm alarm) throws Exception {
+        java.lang.reflect.Field f = alarm.getClass().getDeclaredField("windowLengthMs");
+        f.setAccessible(true);
+        return f.getLong(alarm);
+    }
+
+    @Test
+    public void scheduleAlarm_alarmClock_usesSetAlarmClock() {
+        long t = System.currentTimeMillis() + 60_000L;
+        NotifUtils.scheduleAlarm(context, "notification_d1_1", "Critical", t, DeliveryClass.ALARM_CLOCK);
+
+        AlarmManager am = (AlarmManager) context.getSystemService(Context.ALARM_SERVICE);
+        assertNotNull("Shown as the next alarm clock", am.getNextAlarmClock());
+        assertEquals(t, am.getNextAlarmClock().getTriggerTime());
+    }
+
+    @Test
+    public void scheduleAlarm_windowed_usesConfiguredTolerance() throws Exception {
+        DeliveryClass.setWindowTolerance(context, 5 * 60_000L);
+        NotifUtils.scheduleAlarm(context, "notification_d2_1", "Low", System.currentTimeMillis() + 60_000L,
+                DeliveryClass.WINDOWED);
+
+        AlarmManager am = (AlarmManager) context.getSystemService(Context.ALARM_SERVICE);
+        ShadowAlarmManager.ScheduledAlarm alarm = Shadows.shadowOf(am).getNextScheduledAlarm();
+        assertNotNull(alarm);
+        assertEquals(5 * 60_000L, windowLength(alarm));
+        assertNull(am.getNextAlarmClock());
+    }
+
+    @Test
+    public void scheduleAlarm_withoutClass_usesStoredClass() throws Exception {
+        long t = System.currentTimeMillis() + 60_000L;
+        org.json.JSONObject n = entry("notification_d3_1", t);
+        n.put(NotifUtils.JSON_KEY_DELIVERY_CLASS, DeliveryClass.ALARM_CLOCK);
+        NotificationRepository.get(context).put(NotificationJournal.OP_CREATE, n);
+
+        NotifUtils.scheduleAlarm(context, "notification_d3_1", "Stored", t);
+
+        AlarmManager am = (AlarmManager) context.getSystemService(Context.ALARM_SERVICE);
+        assertNotNull(am.getNextAlarmClock());
+    }
+
+    @Test
+    public void scheduleAlarms_honorsClassOfEachEntry() throws Exception {
+        long t = System.currentTimeMillis() + 60_000L;
+        org.json.JSONObject windowed = entry("notification_d4_1", t);
+        windowed.put(NotifUtils.JSON_KEY_DELIVERY_CLASS, DeliveryClass.WINDOWED);
+
+        NotifUtils.scheduleAlarms(context, java.util.Collections.singletonList(windowed));
+
+        AlarmManager am = (AlarmManager) context.getSystemService(Context.ALARM_SERVICE);
+        assertEquals(DeliveryClass.DEFAULT_WINDOW_TOLERANCE_MS,
+                windowLength(Shadows.shadowOf(am).getNextScheduledAlarm()));
+    }
+
+    @Test
+    public void deliveryClass_unknownOrMissing_isExact() throws Exception {
+        org.json.JSONObject n = entry("notification_d5_1", 1L);
+        assertEquals(DeliveryClass.EXACT, DeliveryClass.of(n));
+        n.put(NotifUtils.JSON_KEY_DELIVERY_CLASS, "whenever");
+        assertEquals(DeliveryClass.EXACT, DeliveryClass.of(n));
+        assertEquals(DeliveryClass.EXACT, DeliveryClass.of(null));
+    }
+
+    @Test
+    public void windowTolerance_isKeptOutOfWebPreferences() {
+        DeliveryClass.setWindowTolerance(context, 2 * 60_000L);
+
+        assertEquals(2 * 60_000L, DeliveryClass.windowTolerance(context));
+        assertFalse(NotifUtils.getPrefs(context).contains(DeliveryClass.KEY_WINDOW_TOLERANCE_MS));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void setWindowTolerance_nonPositive_throws() {
+        DeliveryClass.setWindowTolerance(context, 0L);
+    }
+
+    // ─── Timestamps ───────────────────────────────────────────────────────────
+
+    private static final String ISO = "2099-06-15T10:30:00.000Z";
+    private static final long ISO_MILLIS = 4085202600000L;
+
+    @Test
+    public void parseTimestamp_acceptsNumbersNumericStringsAndIso() {
+        assertEquals(ISO_MILLIS, NotifUtils.parseTimestamp(ISO_MILLIS));
+        assertEquals(ISO_MILLIS, NotifUtils.parseTimestamp(String.valueOf(ISO_MILLIS)));
+        assertEquals(ISO_MILLIS, NotifUtils.parseTimestamp(ISO));
+        assertEquals(0L, NotifUtils.parseTimestamp(null));
+        assertEquals(0L, NotifUtils.parseTimestamp("not a date"));
+    }
+
+    @Test
+    public void parseScheduledAt_numericValue_doesNotUseIsoFallback() throws Exception {
+        org.json.JSONObject n = new org.json.JSONObject();
+        n.put("scheduledAt", ISO_MILLIS);
+        long before = NotifUtils.isoTimestampFallbackCount();
+
+        assertEquals(ISO_MILLIS, NotifUtils.parseScheduledAt(n));
+        assertEquals(before, NotifUtils.isoTimestampFallbackCount());
+    }
+
+    @Test
+    public void parseScheduledAt_isoString_isCountedAsFallback() throws Exception {
+        org.json.JSONObject n = new org.json.JSONObject();
+        n.put("scheduledAt", ISO);
+        long before = NotifUtils.isoTimestampFallbackCount();
+
+        assertEquals(ISO_MILLIS, NotifUtils.parseScheduledAt(n));
+        assertEquals(before + 1, NotifUtils.isoTimestampFallbackCount());
+    }
+
+    @Test
+    public void normalizeTimestamps_rewritesStringsToEpochMillis() throws Exception {
+        org.json.JSONObject n = new org.json.JSONObject();
+        n.put("scheduledAt", ISO);
+        n.put("updatedAt", ISO);
+        n.put("createdAt", 1_000L);
+        n.put("time", "14:30");
+
+        assertTrue(NotifUtils.normalizeTimestamps(n));
+        assertEquals(ISO_MILLIS, n.get("scheduledAt"));
+        assertEquals(ISO_MILLIS, n.get("updatedAt"));
+        assertEquals(1_000L, n.get("createdAt"));
+        assertEquals("14:30", n.get("time"));
+        assertFalse("Already canonical", NotifUtils.normalizeTimestamps(n));
+    }
+
+    @Test
+    public void normalizeTimestamps_leavesUnparseableValue() throws Exception {
+        org.json.JSONObject n = new org.json.JSONObject();
+        n.put("scheduledAt", "garbage");
+
+        assertFalse(NotifUtils.normalizeTimestamps(n));
+        assertEquals("garbage", n.get("scheduledAt"));
+    }
+
     // ─── Constants ────────────────────────────────────────────────────────────
 
     @Test
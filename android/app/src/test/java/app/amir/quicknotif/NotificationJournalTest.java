@@ -0,0 +1,210 @@
+package app.amir.quicknotif;
+
+import static org.junit.Assert.*;
+
+import org.json.JSONObject;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.io.File;
+import java.io.FileOutputStream;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 34)
+public class NotificationJournalTest {
+
+    private File file;
+    private NotificationJournal journal;
+
+    @Before
+    public void setUp() {
+        file = new File(RuntimeEnvironment.getApplication().getFilesDir(), "test.journal");
+        file.delete();
+        journal = new NotificationJournal(file);
+    }
+
+    private JSONObject notification(String id, String name) throws Exception {
+        JSONObject n = new JSONObject();
+        n.put("id", id);
+        n.put("name", name);
+        n.put("enabled", true);
+        n.put("scheduledAt", 1_000L);
+        return n;
+    }
+
+    private void appendRaw(String text) throws Exception {
+        try (FileOutputStream out = new FileOutputStream(file, true)) {
+            out.write(text.getBytes("UTF-8"));
+        }
+    }
+
+    // ─── append / replay ──────────────────────────────────────────────────────
+
+    @Test
+    public void replay_missingFile_appliesNothing() throws Exception {
+        NotificationStore store = new NotificationStore();
+        assertEquals(0, journal.replay(store));
+        assertTrue(journal.isEmpty());
+    }
+
+    @Test
+    public void replay_appliesRecordsInOrder() throws Exception {
+        journal.appendPut(NotificationJournal.OP_CREATE, notification("n_1", "Created"));
+        journal.appendPut(NotificationJournal.OP_CREATE, notification("n_2", "Other"));
+        journal.appendPut(NotificationJournal.OP_UPDATE, notification("n_1", "Updated"));
+        journal.appendDelete("n_2");
+
+        NotificationStore store = new NotificationStore();
+        assertEquals(4, journal.replay(store));
+
+        assertEquals(1, store.size());
+        assertEquals("Updated", store.get("n_1").getString("name"));
+        assertEquals(4, journal.recordCount());
+    }
+
+    @Test
+    public void replay_isIdempotentOverSnapshotThatAlreadyContainsRecords() throws Exception {
+        journal.appendPut(NotificationJournal.OP_CREATE, notification("n_1", "Created"));
+        journal.appendDelete("n_gone");
+
+        NotificationStore store = new NotificationStore();
+        store.put(notification("n_1", "Created"));
+        journal.replay(store);
+        journal.replay(store);
+
+        assertEquals(1, store.size());
+        assertEquals("Created", store.get("n_1").getString("name"));
+    }
+
+    // ─── crash recovery ───────────────────────────────────────────────────────
+
+    @Test
+    public void replay_partialLastRecord_isIgnoredAndTrimmed() throws Exception {
+        journal.appendPut(NotificationJournal.OP_CREATE, notification("n_1", "Complete"));
+        long completeLength = file.length();
+        appendRaw("{\"op\":\"create\",\"entry\":{\"id\":\"n_2\",\"na");
+
+        NotificationStore store = new NotificationStore();
+        assertEquals(1, journal.replay(store));
+
+        assertTrue(store.contains("n_1"));
+        assertFalse(store.contains("n_2"));
+        assertEquals(completeLength, file.length());
+    }
+
+    @Test
+    public void append_afterTrimmedPartialRecord_isReadable() throws Exception {
+        appendRaw("{\"op\":\"cre");
+        journal.replay(new NotificationStore());
+
+        journal.appendPut(NotificationJournal.OP_CREATE, notification("n_1", "After crash"));
+
+        NotificationStore store = new NotificationStore();
+        assertEquals(1, journal.replay(store));
+        assertTrue(store.contains("n_1"));
+    }
+
+    @Test
+    public void replay_unreadableRecord_isSkipped() throws Exception {
+        journal.appendPut(NotificationJournal.OP_CREATE, notification("n_1", "First"));
+        appendRaw("garbage\n");
+        journal.appendPut(NotificationJournal.OP_CREATE, notification("n_2", "Second"));
+
+        NotificationStore store = new NotificationStore();
+        assertEquals(2, journal.replay(store));
+        assertEquals(2, store.size());
+    }
+
+    // ─── truncate / dropFirst ─────────────────────────────────────────────────
+
+    @Test
+    public void truncate_emptiesJournal() throws Exception {
+        journal.appendPut(NotificationJournal.OP_CREATE, notification("n_1", "Gone"));
+        journal.truncate();
+
+        assertTrue(journal.isEmpty());
+        assertEquals(0, journal.recordCount());
+        assertEquals(0, journal.replay(new NotificationStore()));
+    }
+
+    @Test
+    public void dropFirst_keepsLaterRecords() throws Exception {
+        journal.appendPut(NotificationJournal.OP_CREATE, notification("n_1", "Folded"));
+        journal.appendPut(NotificationJournal.OP_CREATE, notification("n_2", "Folded"));
+        journal.appendPut(NotificationJournal.OP_CREATE, notification("n_3", "Kept"));
+
+        journal.dropFirst(2);
+
+        NotificationStore store = new NotificationStore();
+        assertEquals(1, journal.replay(store));
+        assertTrue(store.contains("n_3"));
+    }
+
+    @Test
+    public void dropBefore_isMonotonic() throws Exception {
+        journal.appendPut(NotificationJournal.OP_CREATE, notification("n_1", "Folded"));
+        long mark = journal.endSeq();
+        journal.appendPut(NotificationJournal.OP_CREATE, notification("n_2", "Kept"));
+
+        journal.dropBefore(mark);
+        journal.dropBefore(mark);
+
+        NotificationStore store = new NotificationStore();
+        assertEquals(1, journal.replay(store));
+        assertTrue(store.contains("n_2"));
+        assertEquals(mark + 1, journal.endSeq());
+    }
+
+    // ─── snapshot header ──────────────────────────────────────────────────────
+
+    @Test
+    public void replay_onSnapshotInHeader_appliesRecords() throws Exception {
+        journal.rebase("[]");
+        journal.appendPut(NotificationJournal.OP_CREATE, notification("n_1", "Native"));
+
+        NotificationStore store = new NotificationStore();
+        assertEquals(1, new NotificationJournal(file).replay(store, new String("[]".toCharArray())));
+        assertTrue(store.contains("n_1"));
+    }
+
+    @Test
+    public void replay_onNewerSnapshot_discardsRecords() throws Exception {
+        journal.rebase("[]");
+        journal.appendPut(NotificationJournal.OP_CREATE, notification("n_1", "Native"));
+
+        NotificationStore store = new NotificationStore();
+        assertEquals(0, journal.replay(store, "[{\"id\":\"n_web\"}]"));
+        assertFalse(store.contains("n_1"));
+        assertTrue(journal.isEmpty());
+        assertEquals(0, journal.recordCount());
+    }
+
+    @Test
+    public void rebase_acceptsOldAndNewSnapshotWhileWriting() throws Exception {
+        journal.rebase("old");
+        journal.appendPut(NotificationJournal.OP_CREATE, notification("n_1", "Native"));
+        journal.rebase("old", "new");
+
+        assertEquals(1, new NotificationJournal(file).replay(new NotificationStore(), "old"));
+        assertEquals(1, new NotificationJournal(file).replay(new NotificationStore(), "new"));
+        assertEquals(1, journal.recordCount());
+    }
+
+    @Test
+    public void dropFirst_keepsHeader() throws Exception {
+        journal.rebase("base");
+        journal.appendPut(NotificationJournal.OP_CREATE, notification("n_1", "Folded"));
+        journal.appendPut(NotificationJournal.OP_CREATE, notification("n_2", "Kept"));
+
+        journal.dropFirst(1);
+
+        NotificationStore store = new NotificationStore();
+        assertEquals(1, new NotificationJournal(file).replay(store, "base"));
+        assertTrue(store.contains("n_2"));
+        assertEquals(0, new NotificationJournal(file).replay(new NotificationStore(), "other"));
+    }
+}
@@ -8,6 +8,9 @@ import android.content.Context;
 import android.content.Intent;
 import android.service.notification.StatusBarNotification;
 
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -17,28 +20,77 @@ import org.robolectric.Shadows;
 import org.robolectric.annotation.Config;
 import org.robolectric.shadows.ShadowNotificationManager;
 
+import java.util.ArrayList;
+import java.util.List;
+
 @RunWith(RobolectricTestRunner.class)
 @Config(sdk = 34)
 public class NotificationReceiverTest {
 
+    private static final long HOUR = 3_600_000L;
+
     private Context context;
+    private NotificationRepository repository;
     private NotificationReceiver receiver;
     private NotificationManager notificationManager;
     private ShadowNotificationManager shadowNotificationManager;
+    /** Alarms held by the receiver, run by the test instead of at their due time. */
+    private final List<Runnable> held = new ArrayList<>();
 
     @Before
     public void setUp() {
         context = RuntimeEnvironment.getApplication();
+        NotifUtils.getPrefs(context).edit().clear().commit();
+        AlarmRegistry.get(context).clear();
+        repository = NotificationRepository.get(context);
         receiver = new NotificationReceiver();
         notificationManager =
                 (NotificationManager) context.getSystemService(Context.NOTIFICATION_SERVICE);
         shadowNotificationManager = Shadows.shadowOf(notificationManager);
+        NotificationReceiver.setHolder(held::add);
     }
 
+    @After
+    public void tearDown() {
+        NotificationReceiver.setHolder(null);
+    }
+
+    private void runHeld() {
+        for (Runnable task : held) task.run();
+        held.clear();
+    }
+
+    /** Stores an enabled notification due now and returns its id-only alarm intent. */
     private Intent makeIntent(String id, String name) {
+        try {
+            store(id, name, true, System.currentTimeMillis());
+        } catch (JSONException e) {
+            throw new AssertionError(e);
+        }
+        return idIntent(id);
+    }
+
+    private Intent idIntent(String id) {
         Intent intent = new Intent(context, NotificationReceiver.class);
-        if (id   != null) intent.putExtra("notificationId",   id);
-        if (name != null) intent.putExtra("notificationName", name);
+        intent.putExtra(NotifUtils.EXTRA_NOTIFICATION_ID, id);
+        return intent;
+    }
+
+    private void store(String id, String name, boolean enabled, long scheduledAt) throws JSONException {
+        JSONObject n = new JSONObject();
+        n.put("id", id);
+        if (name != null) n.put("name", name);
+        n.put("type", NotifUtils.TYPE_ABSOLUTE);
+        n.put("enabled", enabled);
+        n.put("scheduledAt", scheduledAt);
+        repository.put(NotificationJournal.OP_CREATE, n);
+    }
+
+    /** The intent NotifUtils armed for {@code id}: its id and registry generation. */
+    private Intent armedIntent(String id) {
+        Intent intent = idIntent(id);
+        intent.putExtra(NotifUtils.EXTRA_GENERATION,
+                AlarmRegistry.get(context).get(NotifUtils.numericIdFor(context, id)).generation);
         return intent;
     }
 
@@ -55,7 +107,7 @@ public class NotificationReceiverTest {
     @Test
     public void onReceive_notificationPostedWithCorrectNumericId() {
         String id = "notification_0_0";
-        int expectedNumericId = NotifUtils.generateNumericId(id);
+        int expectedNumericId = NotifUtils.numericIdFor(context, id);
 
         receiver.onReceive(context, makeIntent(id, "Test"));
 
@@ -139,4 +191,154 @@ public class NotificationReceiverTest {
         assertNotNull("Channel should exist", channel);
         assertTrue("Channel should have vibration enabled", channel.shouldVibrate());
     }
+
+    // ─── Id-only alarms ───────────────────────────────────────────────────────
+
+    @Test
+    public void onReceive_deletedNotification_postsNothing() {
+        receiver.onReceive(context, idIntent("notification_g1_1"));
+
+        assertTrue(shadowNotificationManager.getAllNotifications().isEmpty());
+    }
+
+    @Test
+    public void onReceive_disabledNotification_postsNothing() throws Exception {
+        store("notification_g2_1", "Off", false, System.currentTimeMillis());
+
+        receiver.onReceive(context, idIntent("notification_g2_1"));
+
+        assertTrue(shadowNotificationManager.getAllNotifications().isEmpty());
+    }
+
+    @Test
+    public void onReceive_renamedAfterArming_showsStoredName() throws Exception {
+        long at = System.currentTimeMillis() + HOUR;
+        store("notification_g3_1", "Old name", true, at);
+        NotifUtils.scheduleAlarm(context, "notification_g3_1", "Old name", at);
+        store("notification_g3_1", "New name", true, at);
+
+        receiver.onReceive(context, armedIntent("notification_g3_1"));
+
+        android.app.Notification n = shadowNotificationManager.getAllNotifications().get(0);
+        assertEquals("New name", n.extras.getCharSequence(android.app.Notification.EXTRA_TEXT).toString());
+    }
+
+    @Test
+    public void onReceive_supersededGeneration_isDroppedAndKeepsTheNewAlarm() throws Exception {
+        long at = System.currentTimeMillis() + HOUR;
+        store("notification_g4_1", "Moved", true, at);
+        NotifUtils.scheduleAlarm(context, "notification_g4_1", "Moved", at);
+        Intent stale = armedIntent("notification_g4_1");
+        store("notification_g4_1", "Moved", true, at + HOUR);
+        NotifUtils.scheduleAlarm(context, "notification_g4_1", "Moved", at + HOUR);
+
+        receiver.onReceive(context, stale);
+
+        assertTrue(shadowNotificationManager.getAllNotifications().isEmpty());
+        assertTrue(AlarmRegistry.get(context)
+                .isArmedAt(NotifUtils.numericIdFor(context, "notification_g4_1"), at + HOUR));
+    }
+
+    @Test
+    public void onReceive_storedTimeMovedWithoutRearm_rearmsInsteadOfPosting() throws Exception {
+        long at = System.currentTimeMillis() + HOUR;
+        store("notification_g5_1", "Later", true, at);
+        NotifUtils.scheduleAlarm(context, "notification_g5_1", "Later", at);
+        Intent fired = armedIntent("notification_g5_1");
+        store("notification_g5_1", "Later", true, at + HOUR);
+
+        receiver.onReceive(context, fired);
+
+        assertTrue(shadowNotificationManager.getAllNotifications().isEmpty());
+        assertTrue(AlarmRegistry.get(context)
+                .isArmedAt(NotifUtils.numericIdFor(context, "notification_g5_1"), at + HOUR));
+    }
+
+    // ─── early arrivals ───────────────────────────────────────────────────────
+
+    /** {@link #armedIntent} as armed {@code leadMs} early. */
+    private Intent earlyIntent(String id, long leadMs) {
+        Intent intent = armedIntent(id);
+        intent.putExtra(NotifUtils.EXTRA_LEAD_MS, leadMs);
+        return intent;
+    }
+
+    @Test
+    public void onReceive_earlyWithinHoldLimit_keepsEntryAndArmsBackstopForDueTime() throws Exception {
+        long at = System.currentTimeMillis() + 5_000L;
+        store("notification_h1_1", "Held", true, at);
+        NotifUtils.scheduleAlarm(context, "notification_h1_1", "Held", at);
+        int numericId = NotifUtils.numericIdFor(context, "notification_h1_1");
+        android.app.AlarmManager am =
+                (android.app.AlarmManager) context.getSystemService(Context.ALARM_SERVICE);
+        // The system drops an alarm once it has delivered it
+        am.cancel(android.app.PendingIntent.getBroadcast(context, numericId,
+                new Intent(context, NotificationReceiver.class),
+                android.app.PendingIntent.FLAG_NO_CREATE | android.app.PendingIntent.FLAG_IMMUTABLE));
+
+        receiver.onReceive(context, earlyIntent("notification_h1_1", 6_000L));
+
+        assertTrue("Not posted before the due time", shadowNotificationManager.getAllNotifications().isEmpty());
+        assertTrue("Entry kept until delivery", AlarmRegistry.get(context).isArmedAt(numericId, at));
+        assertNotNull("Backstop in case the process dies", Shadows.shadowOf(am).getNextScheduledAlarm());
+    }
+
+    @Test
+    public void onReceive_heldUntilDue_postsOnceAndDropsEntry() throws Exception {
+        long at = System.currentTimeMillis() + 5_000L;
+        store("notification_h2_2", "Held", true, at);
+        NotifUtils.scheduleAlarm(context, "notification_h2_2", "Held", at);
+        int numericId = NotifUtils.numericIdFor(context, "notification_h2_2");
+
+        receiver.onReceive(context, earlyIntent("notification_h2_2", 6_000L));
+        assertEquals(1, held.size());
+        runHeld();
+
+        assertEquals(1, shadowNotificationManager.getAllNotifications().size());
+        assertFalse(AlarmRegistry.get(context).isArmed(numericId));
+    }
+
+    @Test
+    public void onReceive_heldThenDisabled_postsNothing() throws Exception {
+        long at = System.currentTimeMillis() + 5_000L;
+        store("notification_h2_1", "Held", true, at);
+        NotifUtils.scheduleAlarm(context, "notification_h2_1", "Held", at);
+
+        receiver.onReceive(context, earlyIntent("notification_h2_1", 6_000L));
+        store("notification_h2_1", "Held", false, at);
+        assertEquals(1, held.size());
+        runHeld();
+
+        assertTrue(shadowNotificationManager.getAllNotifications().isEmpty());
+    }
+
+    @Test
+    public void onReceive_earlierThanHoldLimit_isArmedAgainInsteadOfPosted() throws Exception {
+        long at = System.currentTimeMillis() + HOUR;
+        store("notification_h3_1", "Too early", true, at);
+        NotifUtils.scheduleAlarm(context, "notification_h3_1", "Too early", at);
+        int numericId = NotifUtils.numericIdFor(context, "notification_h3_1");
+        long generation = AlarmRegistry.get(context).get(numericId).generation;
+
+        receiver.onReceive(context, earlyIntent("notification_h3_1", 30_000L));
+
+        assertTrue(shadowNotificationManager.getAllNotifications().isEmpty());
+        AlarmRegistry.Entry rearmed = AlarmRegistry.get(context).get(numericId);
+        assertNotNull(rearmed);
+        assertEquals(at, rearmed.triggerAt);
+        assertTrue(rearmed.generation > generation);
+    }
+
+    @Test
+    public void onReceive_sameAlarmTwice_postsOnce() throws Exception {
+        long at = System.currentTimeMillis();
+        store("notification_h4_1", "Once", true, at);
+        NotifUtils.scheduleAlarm(context, "notification_h4_1", "Once", at);
+        Intent fired = armedIntent("notification_h4_1");
+
+        receiver.onReceive(context, fired);
+        receiver.onReceive(context, fired);
+
+        assertEquals(1, shadowNotificationManager.getAllNotifications().size());
+    }
 }
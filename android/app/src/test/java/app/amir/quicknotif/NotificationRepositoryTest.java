@@ -0,0 +1,480 @@
+package app.amir.quicknotif;
+
+import static org.junit.Assert.*;
+
+import android.content.Context;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.io.File;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 34)
+public class NotificationRepositoryTest {
+
+    private Context context;
+    private NotificationRepository repository;
+
+    @Before
+    public void setUp() {
+        context = RuntimeEnvironment.getApplication();
+        NotifUtils.getPrefs(context).edit().clear().commit();
+        new File(context.getFilesDir(), NotificationJournal.FILE_NAME).delete();
+        repository = NotificationRepository.get(context);
+    }
+
+    private String singleNotificationJson(String id, String name) throws JSONException {
+        JSONArray arr = new JSONArray();
+        JSONObject n = new JSONObject();
+        n.put("id", id);
+        n.put("name", name);
+        n.put("enabled", true);
+        n.put("scheduledAt", System.currentTimeMillis() + 60_000L);
+        arr.put(n);
+        return arr.toString();
+    }
+
+    // ─── singleton ────────────────────────────────────────────────────────────
+
+    @Test
+    public void get_returnsSameInstanceForSameContext() {
+        assertSame(repository, NotificationRepository.get(context));
+    }
+
+    // ─── snapshot caching ─────────────────────────────────────────────────────
+
+    @Test
+    public void snapshot_emptyPrefs_isEmpty() throws Exception {
+        assertEquals(0, repository.snapshot().size());
+    }
+
+    @Test
+    public void snapshot_unchangedStorage_returnsCachedInstance() throws Exception {
+        NotifUtils.saveNotificationsJson(context, singleNotificationJson("n_1", "Cached"));
+
+        NotificationStore first = repository.snapshot();
+        long version = repository.version();
+        NotificationStore second = repository.snapshot();
+
+        assertSame("Unchanged storage should not be re-parsed", first, second);
+        assertEquals(version, repository.version());
+    }
+
+    @Test
+    public void snapshot_externalWrite_isPickedUp() throws Exception {
+        NotifUtils.saveNotificationsJson(context, singleNotificationJson("n_1", "Old"));
+        NotificationStore before = repository.snapshot();
+        long version = repository.version();
+
+        // Simulates the web app writing the key through Capacitor Preferences
+        NotifUtils.getPrefs(context).edit()
+                .putString(NotifUtils.KEY_NOTIFICATIONS, singleNotificationJson("n_2", "New"))
+                .commit();
+
+        NotificationStore after = repository.snapshot();
+        assertNotSame(before, after);
+        assertTrue(after.contains("n_2"));
+        assertFalse(after.contains("n_1"));
+        assertTrue("Version should advance after external write", repository.version() > version);
+    }
+
+    @Test
+    public void snapshot_clearedPrefs_isPickedUp() throws Exception {
+        NotifUtils.saveNotificationsJson(context, singleNotificationJson("n_1", "Gone soon"));
+        assertEquals(1, repository.snapshot().size());
+
+        NotifUtils.getPrefs(context).edit().clear().commit();
+
+        assertEquals(0, repository.snapshot().size());
+    }
+
+    @Test(expected = org.json.JSONException.class)
+    public void snapshot_malformedJson_throws() throws Exception {
+        NotifUtils.saveNotificationsJson(context, "{{not json}}");
+        repository.snapshot();
+    }
+
+    // ─── edit / commit ────────────────────────────────────────────────────────
+
+    @Test
+    public void edit_returnsIndependentCopy() throws Exception {
+        NotifUtils.saveNotificationsJson(context, singleNotificationJson("n_1", "Original"));
+
+        NotificationStore edited = repository.edit();
+        edited.delete("n_1");
+
+        assertTrue("Snapshot must not see uncommitted edits", repository.snapshot().contains("n_1"));
+    }
+
+    @Test
+    public void commit_persistsAndPublishesWithoutReparse() throws Exception {
+        NotificationStore edited = repository.edit();
+        JSONObject n = new JSONObject();
+        n.put("id", "n_1");
+        n.put("name", "Committed");
+        n.put("scheduledAt", 1_000L);
+        edited.put(n);
+
+        repository.commit(edited);
+
+        assertSame("Committed store should be served as-is", edited, repository.snapshot());
+        JSONArray stored = new JSONArray(NotifUtils.readNotificationsJson(context));
+        assertEquals(1, stored.length());
+        assertEquals("Committed", stored.getJSONObject(0).getString("name"));
+    }
+
+    @Test
+    public void commit_advancesVersion() throws Exception {
+        long version = repository.version();
+        repository.commit(repository.edit());
+        assertTrue(repository.version() > version);
+    }
+
+    // ─── journal ──────────────────────────────────────────────────────────────
+
+    private JSONObject notification(String id, String name) throws JSONException {
+        JSONObject n = new JSONObject();
+        n.put("id", id);
+        n.put("name", name);
+        n.put("enabled", true);
+        n.put("scheduledAt", System.currentTimeMillis() + 60_000L);
+        return n;
+    }
+
+    private File journalFile() {
+        return new File(context.getFilesDir(), NotificationJournal.FILE_NAME);
+    }
+
+    private String rawPrefs() {
+        return repository.writeQueue().peek();
+    }
+
+    @Test
+    public void put_appendsToJournalWithoutRewritingSnapshot() throws Exception {
+        NotifUtils.saveNotificationsJson(context, singleNotificationJson("n_1", "Existing"));
+        String before = rawPrefs();
+
+        repository.put(NotificationJournal.OP_CREATE, notification("n_2", "Journaled"));
+
+        assertSame("Snapshot key must not be rewritten", before, rawPrefs());
+        assertTrue(journalFile().length() > 0);
+        assertTrue(repository.snapshot().contains("n_1"));
+        assertTrue(repository.snapshot().contains("n_2"));
+    }
+
+    @Test
+    public void delete_journalsRemovalAndReturnsEntry() throws Exception {
+        NotifUtils.saveNotificationsJson(context, singleNotificationJson("n_1", "Doomed"));
+
+        JSONObject removed = repository.delete("n_1");
+
+        assertNotNull(removed);
+        assertFalse(repository.snapshot().contains("n_1"));
+        assertNull(repository.delete("n_1"));
+    }
+
+    @Test
+    public void externalWrite_overNonEmptyJournal_discardsOlderRecords() throws Exception {
+        NotifUtils.saveNotificationsJson(context, singleNotificationJson("n_1", "Original")).get();
+        repository.update("n_1", n -> {
+            n.put("name", "Native edit");
+            return true;
+        });
+        repository.put(NotificationJournal.OP_CREATE, notification("n_native", "From widget"));
+        assertTrue(journalFile().length() > 0);
+
+        // The web app writes a newer snapshot that does not include the journaled edits
+        NotifUtils.getPrefs(context).edit()
+                .putString(NotifUtils.KEY_NOTIFICATIONS, singleNotificationJson("n_1", "Web edit"))
+                .commit();
+
+        NotificationStore store = repository.snapshot();
+        assertEquals("Web edit must not be overridden by an older native record",
+                "Web edit", store.get("n_1").getString("name"));
+        assertFalse(store.contains("n_native"));
+        assertEquals(0, journalFile().length());
+    }
+
+    @Test
+    public void externalWrite_thenNativeEdit_isJournaledOnTopOfIt() throws Exception {
+        repository.put(NotificationJournal.OP_CREATE, notification("n_stale", "Before web write"));
+        NotifUtils.getPrefs(context).edit()
+                .putString(NotifUtils.KEY_NOTIFICATIONS, singleNotificationJson("n_web", "From web"))
+                .commit();
+
+        repository.put(NotificationJournal.OP_CREATE, notification("n_native", "From widget"));
+
+        // A fresh load of the same contents replays the newer record only
+        NotifUtils.getPrefs(context).edit()
+                .putString(NotifUtils.KEY_NOTIFICATIONS, new String(rawPrefs().toCharArray()))
+                .commit();
+        NotificationStore store = repository.snapshot();
+        assertTrue(store.contains("n_web"));
+        assertTrue(store.contains("n_native"));
+        assertFalse(store.contains("n_stale"));
+    }
+
+    @Test
+    public void flush_foldsJournalIntoSnapshot() throws Exception {
+        repository.put(NotificationJournal.OP_CREATE, notification("n_1", "Pending"));
+
+        repository.flush();
+
+        assertEquals(0, journalFile().length());
+        JSONArray stored = new JSONArray(rawPrefs());
+        assertEquals(1, stored.length());
+        assertEquals("n_1", stored.getJSONObject(0).getString("id"));
+        assertTrue(repository.snapshot().contains("n_1"));
+    }
+
+    @Test
+    public void readNotificationsJson_includesJournaledWrites() throws Exception {
+        repository.put(NotificationJournal.OP_CREATE, notification("n_1", "Pending"));
+
+        JSONArray stored = new JSONArray(NotifUtils.readNotificationsJson(context));
+
+        assertEquals(1, stored.length());
+        assertEquals("Pending", stored.getJSONObject(0).getString("name"));
+    }
+
+    @Test
+    public void journalPastThreshold_isCompactedInBackground() throws Exception {
+        repository.compactThresholdBytes = 1;
+        try {
+            repository.put(NotificationJournal.OP_CREATE, notification("n_1", "Compacted"));
+            repository.awaitBackgroundWork();
+        } finally {
+            repository.compactThresholdBytes = NotificationRepository.COMPACT_THRESHOLD_BYTES;
+        }
+
+        assertEquals(0, journalFile().length());
+        assertTrue(rawPrefs().contains("n_1"));
+    }
+
+    @Test
+    public void commit_emptiesJournal() throws Exception {
+        repository.put(NotificationJournal.OP_CREATE, notification("n_1", "Pending"));
+
+        repository.commit(repository.edit());
+        repository.awaitBackgroundWork();
+
+        assertEquals(0, journalFile().length());
+        assertTrue(rawPrefs().contains("n_1"));
+    }
+
+    @Test
+    public void flush_waitsForQueuedWrites() throws Exception {
+        NotifUtils.saveNotificationsJson(context, singleNotificationJson("n_1", "Queued"));
+
+        repository.flush();
+
+        assertTrue(NotifUtils.getPrefs(context)
+                .getString(NotifUtils.KEY_NOTIFICATIONS, "[]").contains("n_1"));
+    }
+
+    // ─── transactions ─────────────────────────────────────────────────────────
+
+    @Test
+    public void update_appliesMutatorAndReturnsCommittedEntry() throws Exception {
+        NotifUtils.saveNotificationsJson(context, singleNotificationJson("n_1", "Before"));
+        long version = repository.version();
+
+        JSONObject updated = repository.update("n_1", n -> {
+            n.put("name", "After");
+            return true;
+        });
+
+        assertEquals("After", updated.getString("name"));
+        assertEquals("After", repository.snapshot().get("n_1").getString("name"));
+        assertTrue(repository.version() > version);
+    }
+
+    @Test
+    public void update_missingId_returnsNullWithoutWriting() throws Exception {
+        assertNull(repository.update("missing", n -> true));
+        assertEquals(0, journalFile().length());
+    }
+
+    @Test
+    public void update_mutatorReturningFalse_leavesEntryUnchanged() throws Exception {
+        NotifUtils.saveNotificationsJson(context, singleNotificationJson("n_1", "Keep"));
+        long version = repository.version();
+
+        assertNull(repository.update("n_1", n -> {
+            n.put("name", "Discarded");
+            return false;
+        }));
+
+        assertEquals("Keep", repository.snapshot().get("n_1").getString("name"));
+        assertEquals(version, repository.version());
+    }
+
+    @Test
+    public void transaction_commitsAllChangesTogether() throws Exception {
+        NotifUtils.saveNotificationsJson(context, singleNotificationJson("n_old", "Old"));
+
+        int size = repository.transaction(store -> {
+            store.delete("n_old");
+            store.put(notification("n_a", "A"));
+            store.put(notification("n_b", "B"));
+            return store.size();
+        });
+
+        assertEquals(2, size);
+        NotificationStore snapshot = repository.snapshot();
+        assertFalse(snapshot.contains("n_old"));
+        assertTrue(snapshot.contains("n_a"));
+        assertTrue(snapshot.contains("n_b"));
+    }
+
+    @Test
+    public void transaction_conflictingWrite_isRetriedOnNewerState() throws Exception {
+        NotifUtils.saveNotificationsJson(context, singleNotificationJson("n_1", "Base"));
+        final int[] runs = {0};
+
+        repository.transaction(store -> {
+            if (runs[0]++ == 0) {
+                // Another writer commits while this attempt is still running
+                repository.put(NotificationJournal.OP_CREATE, notification("n_2", "Concurrent"));
+            }
+            store.put(notification("n_3", "Mine"));
+            return null;
+        });
+
+        assertEquals(2, runs[0]);
+        assertEquals(1, repository.conflictCount());
+        NotificationStore snapshot = repository.snapshot();
+        assertTrue("Concurrent write must not be lost", snapshot.contains("n_2"));
+        assertTrue(snapshot.contains("n_3"));
+    }
+
+    @Test
+    public void transaction_externalWriteDuringAttempt_isRetried() throws Exception {
+        NotifUtils.saveNotificationsJson(context, singleNotificationJson("n_1", "Base")).get();
+        final int[] runs = {0};
+
+        repository.transaction(store -> {
+            if (runs[0]++ == 0) {
+                NotifUtils.getPrefs(context).edit()
+                        .putString(NotifUtils.KEY_NOTIFICATIONS, singleNotificationJson("n_web", "Web"))
+                        .commit();
+            }
+            store.put(notification("n_native", "Native"));
+            return null;
+        });
+
+        assertEquals(2, runs[0]);
+        NotificationStore snapshot = repository.snapshot();
+        assertTrue(snapshot.contains("n_web"));
+        assertTrue(snapshot.contains("n_native"));
+    }
+
+    // ─── concurrency stress ───────────────────────────────────────────────────
+
+    @Test
+    public void concurrentUpdates_loseNothing() throws Exception {
+        final int threads = 8;
+        final int updatesPerThread = 50;
+        JSONObject counter = notification("n_counter", "Counter");
+        counter.put("count", 0);
+        repository.put(NotificationJournal.OP_CREATE, counter);
+
+        final java.util.concurrent.CountDownLatch start = new java.util.concurrent.CountDownLatch(1);
+        final java.util.List<Throwable> failures =
+                java.util.Collections.synchronizedList(new java.util.ArrayList<Throwable>());
+        java.util.List<Thread> workers = new java.util.ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            final int worker = t;
+            Thread thread = new Thread(() -> {
+                try {
+                    start.await();
+                    for (int i = 0; i < updatesPerThread; i++) {
+                        repository.update("n_counter", n -> {
+                            n.put("count", n.getInt("count") + 1);
+                            return true;
+                        });
+                        if (i % 10 == 0) {
+                            repository.put(NotificationJournal.OP_CREATE,
+                                    notification("n_" + worker + "_" + i, "Worker " + worker));
+                        }
+                    }
+                } catch (Throwable e) {
+                    failures.add(e);
+                }
+            });
+            workers.add(thread);
+            thread.start();
+        }
+        start.countDown();
+        for (Thread thread : workers) thread.join(60_000);
+
+        assertTrue("Worker failures: " + failures, failures.isEmpty());
+        NotificationStore snapshot = repository.snapshot();
+        assertEquals(threads * updatesPerThread, snapshot.get("n_counter").getInt("count"));
+        assertEquals(1 + threads * (updatesPerThread / 10), snapshot.size());
+
+        // The journal (plus any compacted snapshot) must reproduce the same state on reload
+        repository.awaitBackgroundWork();
+        String stored = rawPrefs();
+        NotifUtils.getPrefs(context).edit()
+                .putString(NotifUtils.KEY_NOTIFICATIONS, new String(stored.toCharArray()))
+                .commit();
+        NotificationStore reloaded = repository.snapshot();
+        assertNotSame(snapshot, reloaded);
+        assertEquals(threads * updatesPerThread, reloaded.get("n_counter").getInt("count"));
+        assertEquals(snapshot.size(), reloaded.size());
+    }
+
+    // ─── storage actor ────────────────────────────────────────────────────────
+
+    @Test(expected = IllegalStateException.class)
+    public void snapshot_isReadOnly() throws Exception {
+        repository.put(NotificationJournal.OP_CREATE, notification("n_1", "Shared"));
+        repository.snapshot().delete("n_1");
+    }
+
+    @Test
+    public void transaction_runsOnStorageThread() throws Exception {
+        String thread = repository.transaction(store -> Thread.currentThread().getName());
+        assertEquals("notif-storage", thread);
+    }
+
+    @Test
+    public void updateAll_appliesBatchAsOneVersion() throws Exception {
+        NotificationStore initial = repository.edit();
+        for (int i = 0; i < 5; i++) {
+            initial.put(notification("n_" + i, "Before"));
+        }
+        repository.commit(initial);
+        repository.awaitBackgroundWork();
+        long version = repository.version();
+
+        java.util.List<JSONObject> updated = repository.updateAll(NotificationJournal.OP_UPDATE,
+                java.util.Arrays.asList("n_3", "missing", "n_1", "n_4"), n -> {
+                    if ("n_4".equals(n.getString("id"))) return false;
+                    n.put("name", "After");
+                    return true;
+                });
+
+        assertEquals(2, updated.size());
+        assertEquals("n_3", updated.get(0).getString("id"));
+        assertEquals("n_1", updated.get(1).getString("id"));
+        assertEquals(version + 1, repository.version());
+        NotificationStore snapshot = repository.snapshot();
+        assertEquals("After", snapshot.get("n_1").getString("name"));
+        assertEquals("After", snapshot.get("n_3").getString("name"));
+        assertEquals("Before", snapshot.get("n_4").getString("name"));
+
+        NotificationJournal journal = new NotificationJournal(journalFile());
+        journal.replay(new NotificationStore());
+        assertEquals("One record per changed entry", 2, journal.recordCount());
+    }
+}
@@ -0,0 +1,129 @@
+package app.amir.quicknotif;
+
+import static org.junit.Assert.*;
+
+import android.content.Context;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 34)
+public class NotificationSchemaTest {
+
+    private static final String ISO = "2099-06-15T10:30:00.000Z";
+    private static final long ISO_MILLIS = 4085202600000L;
+
+    private Context context;
+
+    @Before
+    public void setUp() {
+        context = RuntimeEnvironment.getApplication();
+        NotifUtils.getPrefs(context).edit().clear().commit();
+        NotificationSchema.prefs(context).edit().clear().commit();
+    }
+
+    private String legacyJson() throws Exception {
+        JSONArray arr = new JSONArray();
+        JSONObject iso = new JSONObject();
+        iso.put("id", "n_iso");
+        iso.put("name", "From web");
+        iso.put("enabled", true);
+        iso.put("scheduledAt", ISO);
+        iso.put("updatedAt", ISO);
+        arr.put(iso);
+        JSONObject numeric = new JSONObject();
+        numeric.put("id", "n_num");
+        numeric.put("name", "From widget");
+        numeric.put("enabled", true);
+        numeric.put("scheduledAt", ISO_MILLIS);
+        arr.put(numeric);
+        return arr.toString();
+    }
+
+    // ─── version ──────────────────────────────────────────────────────────────
+
+    @Test
+    public void storedVersion_unversionedData_isIsoTimestamps() {
+        assertEquals(NotificationSchema.VERSION_ISO_TIMESTAMPS,
+                NotificationSchema.storedVersion(NotificationSchema.prefs(context)));
+    }
+
+    // ─── migrate ──────────────────────────────────────────────────────────────
+
+    @Test
+    public void migrate_fromIso_rewritesOnlyStringTimestamps() throws Exception {
+        NotificationStore store = NotificationStore.fromJson(legacyJson());
+
+        int changed = NotificationSchema.migrate(store, NotificationSchema.VERSION_ISO_TIMESTAMPS);
+
+        assertEquals(1, changed);
+        assertEquals(ISO_MILLIS, store.get("n_iso").get("scheduledAt"));
+        assertEquals(ISO_MILLIS, store.get("n_iso").get("updatedAt"));
+        assertEquals(ISO_MILLIS, store.scheduledAtOf("n_iso"));
+    }
+
+    @Test
+    public void migrate_fromCurrentVersion_changesNothing() throws Exception {
+        NotificationStore store = NotificationStore.fromJson(legacyJson());
+        assertEquals(0, NotificationSchema.migrate(store, NotificationSchema.CURRENT_VERSION));
+        assertEquals(ISO, store.get("n_iso").get("scheduledAt"));
+    }
+
+    // ─── repository load ──────────────────────────────────────────────────────
+
+    @Test
+    public void firstLoad_migratesStorageInOneWriteAndRecordsVersion() throws Exception {
+        NotifUtils.saveNotificationsJson(context, legacyJson()).get();
+        NotificationRepository repository = NotificationRepository.get(context);
+
+        NotificationStore store = repository.snapshot();
+        repository.awaitBackgroundWork();
+
+        assertEquals(ISO_MILLIS, store.get("n_iso").get("scheduledAt"));
+        JSONArray stored = new JSONArray(NotifUtils.getPrefs(context)
+                .getString(NotifUtils.KEY_NOTIFICATIONS, "[]"));
+        assertEquals(ISO_MILLIS, stored.getJSONObject(0).get("scheduledAt"));
+        assertEquals("n_num", stored.getJSONObject(1).getString("id"));
+        assertEquals(NotificationSchema.CURRENT_VERSION,
+                NotificationSchema.storedVersion(NotificationSchema.prefs(context)));
+        assertFalse("Kept out of the web app's storage",
+                NotifUtils.getPrefs(context).contains(NotificationSchema.KEY_SCHEMA_VERSION));
+    }
+
+    @Test
+    public void migratedStorage_readsWithoutIsoFallback() throws Exception {
+        NotifUtils.saveNotificationsJson(context, legacyJson()).get();
+        NotificationRepository repository = NotificationRepository.get(context);
+        repository.snapshot();
+        repository.awaitBackgroundWork();
+
+        long before = NotifUtils.isoTimestampFallbackCount();
+        NotificationStore.fromJson(NotifUtils.readNotificationsJson(context));
+
+        assertEquals(before, NotifUtils.isoTimestampFallbackCount());
+    }
+
+    @Test
+    public void nativeUpdate_writesCanonicalTimestamps() throws Exception {
+        NotificationSchema.prefs(context).edit()
+                .putInt(NotificationSchema.KEY_SCHEMA_VERSION, NotificationSchema.CURRENT_VERSION)
+                .commit();
+        NotifUtils.saveNotificationsJson(context, legacyJson()).get();
+        NotificationRepository repository = NotificationRepository.get(context);
+
+        JSONObject updated = repository.update("n_iso", n -> {
+            n.put("name", "Renamed");
+            return true;
+        });
+
+        assertEquals(ISO_MILLIS, updated.get("scheduledAt"));
+        assertEquals(ISO_MILLIS, updated.get("updatedAt"));
+    }
+}
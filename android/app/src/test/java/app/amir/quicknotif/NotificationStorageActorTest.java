@@ -0,0 +1,117 @@
+package app.amir.quicknotif;
+
+import static org.junit.Assert.*;
+
+import org.json.JSONException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 34)
+public class NotificationStorageActorTest {
+
+    private NotificationStorageActor actor;
+
+    @Before
+    public void setUp() {
+        actor = new NotificationStorageActor("test-storage");
+    }
+
+    @After
+    public void tearDown() {
+        actor.quit();
+    }
+
+    // ─── call ─────────────────────────────────────────────────────────────────
+
+    @Test
+    public void call_runsOnActorThreadAndReturnsResult() throws Exception {
+        Thread caller = Thread.currentThread();
+
+        Thread ran = actor.call(Thread::currentThread);
+
+        assertNotSame(caller, ran);
+        assertEquals("test-storage", ran.getName());
+        assertFalse(actor.isCurrentThread());
+    }
+
+    @Test(expected = JSONException.class)
+    public void call_rethrowsCheckedException() throws Exception {
+        actor.call(() -> {
+            throw new JSONException("bad payload");
+        });
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void call_rethrowsRuntimeException() throws Exception {
+        actor.call(() -> {
+            throw new IllegalArgumentException("bad id");
+        });
+    }
+
+    @Test
+    public void call_fromActorThread_runsInline() throws Exception {
+        boolean nested = actor.call(() -> actor.call(actor::isCurrentThread));
+        assertTrue(nested);
+    }
+
+    // ─── ordering ─────────────────────────────────────────────────────────────
+
+    @Test
+    public void workFromManyThreads_runsOneAtATime() throws Exception {
+        final List<Integer> order = Collections.synchronizedList(new ArrayList<Integer>());
+        final int[] running = {0};
+        final int[] maxRunning = {0};
+        final CountDownLatch start = new CountDownLatch(1);
+        List<Thread> callers = new ArrayList<>();
+        for (int t = 0; t < 8; t++) {
+            final int caller = t;
+            Thread thread = new Thread(() -> {
+                try {
+                    start.await();
+                    for (int i = 0; i < 25; i++) {
+                        actor.call(() -> {
+                            // Unsynchronised on purpose: only safe if the actor serialises callers
+                            running[0]++;
+                            maxRunning[0] = Math.max(maxRunning[0], running[0]);
+                            order.add(caller);
+                            running[0]--;
+                            return null;
+                        });
+                    }
+                } catch (Exception e) {
+                    throw new RuntimeException(e);
+                }
+            });
+            callers.add(thread);
+            thread.start();
+        }
+        start.countDown();
+        for (Thread thread : callers) thread.join(30_000);
+
+        assertEquals(200, order.size());
+        assertEquals(1, actor.call(() -> maxRunning[0]).intValue());
+    }
+
+    @Test
+    public void post_runsInSubmissionOrder() throws Exception {
+        final List<Integer> order = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            final int n = i;
+            actor.post(() -> order.add(n));
+        }
+
+        // Runs after everything posted before it
+        List<Integer> seen = actor.call(() -> new ArrayList<>(order));
+        assertEquals(java.util.Arrays.asList(0, 1, 2, 3, 4), seen);
+    }
+}
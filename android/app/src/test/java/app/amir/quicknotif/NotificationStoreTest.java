@@ -0,0 +1,354 @@
+package app.amir.quicknotif;
+
+import static org.junit.Assert.*;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 34)
+public class NotificationStoreTest {
+
+    private JSONObject notification(String id, String name, long scheduledAt) throws Exception {
+        JSONObject n = new JSONObject();
+        n.put("id", id);
+        n.put("name", name);
+        n.put("enabled", true);
+        n.put("scheduledAt", scheduledAt);
+        return n;
+    }
+
+    // ─── fromJson / toJson ────────────────────────────────────────────────────
+
+    @Test
+    public void fromJson_emptyArray_isEmpty() throws Exception {
+        NotificationStore store = NotificationStore.fromJson("[]");
+        assertEquals(0, store.size());
+        assertEquals("[]", store.toJson());
+    }
+
+    @Test(expected = org.json.JSONException.class)
+    public void fromJson_malformed_throws() throws Exception {
+        NotificationStore.fromJson("{{not json}}");
+    }
+
+    @Test
+    public void toJson_preservesStorageOrderAndUnknownFields() throws Exception {
+        JSONArray arr = new JSONArray();
+        JSONObject first = notification("n_b", "Second by time", 2_000L);
+        first.put("createdAt", "2026-01-01T00:00:00.000Z");
+        arr.put(first);
+        arr.put(notification("n_a", "First by time", 1_000L));
+
+        JSONArray out = new JSONArray(NotificationStore.fromJson(arr.toString()).toJson());
+
+        assertEquals(2, out.length());
+        assertEquals("n_b", out.getJSONObject(0).getString("id"));
+        assertEquals("2026-01-01T00:00:00.000Z", out.getJSONObject(0).getString("createdAt"));
+        assertEquals("n_a", out.getJSONObject(1).getString("id"));
+    }
+
+    @Test
+    public void fromJson_entryWithoutId_isKeptButNotIndexed() throws Exception {
+        JSONArray arr = new JSONArray();
+        JSONObject noId = new JSONObject();
+        noId.put("name", "Orphan");
+        arr.put(noId);
+        arr.put(notification("n_1", "Indexed", 1_000L));
+
+        NotificationStore store = NotificationStore.fromJson(arr.toString());
+
+        assertEquals(1, store.size());
+        assertTrue(store.toJson().contains("Orphan"));
+    }
+
+    // ─── get / put / delete ───────────────────────────────────────────────────
+
+    @Test
+    public void put_thenGet_returnsSameEntry() throws Exception {
+        NotificationStore store = new NotificationStore();
+        JSONObject n = notification("n_1", "Hello", 1_000L);
+        store.put(n);
+
+        assertSame(n, store.get("n_1"));
+        assertTrue(store.contains("n_1"));
+        assertNull(store.get("missing"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void put_withoutId_throws() {
+        new NotificationStore().put(new JSONObject());
+    }
+
+    @Test
+    public void put_existingId_replacesInPlace() throws Exception {
+        NotificationStore store = new NotificationStore();
+        store.put(notification("n_1", "Old", 1_000L));
+        store.put(notification("n_2", "Other", 2_000L));
+        store.put(notification("n_1", "New", 3_000L));
+
+        assertEquals(2, store.size());
+        JSONArray out = new JSONArray(store.toJson());
+        assertEquals("New", out.getJSONObject(0).getString("name"));
+    }
+
+    @Test
+    public void delete_removesEntryAndReturnsIt() throws Exception {
+        NotificationStore store = new NotificationStore();
+        store.put(notification("n_1", "Doomed", 1_000L));
+
+        JSONObject removed = store.delete("n_1");
+
+        assertNotNull(removed);
+        assertEquals(0, store.size());
+        assertTrue(store.rangeByScheduledAt(0L, Long.MAX_VALUE).isEmpty());
+    }
+
+    @Test
+    public void delete_missingId_returnsNull() {
+        assertNull(new NotificationStore().delete("missing"));
+    }
+
+    // ─── rangeByScheduledAt ───────────────────────────────────────────────────
+
+    @Test
+    public void rangeByScheduledAt_returnsMatchesInTimeOrder() throws Exception {
+        NotificationStore store = new NotificationStore();
+        store.put(notification("n_3", "Third", 3_000L));
+        store.put(notification("n_1", "First", 1_000L));
+        store.put(notification("n_2", "Second", 2_000L));
+        store.put(notification("n_4", "Fourth", 4_000L));
+
+        List<JSONObject> range = store.rangeByScheduledAt(1_000L, 4_000L);
+
+        assertEquals(3, range.size());
+        assertEquals("n_1", range.get(0).getString("id"));
+        assertEquals("n_2", range.get(1).getString("id"));
+        assertEquals("n_3", range.get(2).getString("id"));
+    }
+
+    @Test
+    public void rangeByScheduledAt_reflectsRescheduledEntry() throws Exception {
+        NotificationStore store = new NotificationStore();
+        store.put(notification("n_1", "Moved", 1_000L));
+        store.put(notification("n_1", "Moved", 9_000L));
+
+        assertTrue(store.rangeByScheduledAt(0L, 5_000L).isEmpty());
+        assertEquals(1, store.rangeByScheduledAt(5_000L, 10_000L).size());
+    }
+
+    @Test
+    public void rangeByScheduledAt_isoStringTimestamp_isIndexed() throws Exception {
+        NotificationStore store = new NotificationStore();
+        JSONObject n = new JSONObject();
+        n.put("id", "n_iso");
+        n.put("scheduledAt", "2099-06-15T10:30:00.000Z");
+        store.put(n);
+
+        assertEquals(1, store.rangeByScheduledAt(System.currentTimeMillis(), Long.MAX_VALUE).size());
+    }
+
+    @Test
+    public void rangeByScheduledAt_emptyRange_returnsNothing() throws Exception {
+        NotificationStore store = new NotificationStore();
+        store.put(notification("n_1", "One", 1_000L));
+        assertTrue(store.rangeByScheduledAt(2_000L, 2_000L).isEmpty());
+    }
+
+    // ─── copy / getMutable / scheduledAtOf ────────────────────────────────────
+
+    @Test
+    public void copy_isIndependentOfOriginal() throws Exception {
+        NotificationStore original = new NotificationStore();
+        original.put(notification("n_1", "Shared", 1_000L));
+
+        NotificationStore copy = original.copy();
+        copy.delete("n_1");
+        copy.put(notification("n_2", "Copy only", 2_000L));
+
+        assertTrue(original.contains("n_1"));
+        assertFalse(original.contains("n_2"));
+        assertEquals(1, original.rangeByScheduledAt(0L, Long.MAX_VALUE).size());
+    }
+
+    @Test
+    public void getMutable_changesDoNotLeakUntilPut() throws Exception {
+        NotificationStore store = new NotificationStore();
+        store.put(notification("n_1", "Before", 1_000L));
+
+        JSONObject editable = store.getMutable("n_1");
+        editable.put("name", "After");
+
+        assertEquals("Before", store.get("n_1").getString("name"));
+        store.put(editable);
+        assertEquals("After", store.get("n_1").getString("name"));
+    }
+
+    @Test
+    public void getMutable_missingId_returnsNull() throws Exception {
+        assertNull(new NotificationStore().getMutable("missing"));
+    }
+
+    @Test
+    public void scheduledAtOf_returnsIndexedValue() throws Exception {
+        NotificationStore store = new NotificationStore();
+        store.put(notification("n_1", "Indexed", 4_200L));
+
+        assertEquals(4_200L, store.scheduledAtOf("n_1"));
+        assertEquals(0L, store.scheduledAtOf("missing"));
+    }
+
+    // ─── change tracking ──────────────────────────────────────────────────────
+
+    @Test
+    public void trackedCopy_recordsPutsAndDeletesInOrder() throws Exception {
+        NotificationStore store = new NotificationStore();
+        store.put(notification("n_1", "Existing", 1_000L));
+
+        NotificationStore tracked = store.trackedCopy();
+        tracked.put(notification("n_2", "Added", 2_000L));
+        tracked.delete("n_1");
+        tracked.delete("missing");
+
+        List<String> ids = new ArrayList<>(tracked.changes().keySet());
+        assertEquals(Arrays.asList("n_2", "n_1"), ids);
+        assertNull(tracked.changes().get("n_1"));
+        assertTrue(store.changes().isEmpty());
+    }
+
+    @Test
+    public void stopTracking_clearsChanges() throws Exception {
+        NotificationStore tracked = new NotificationStore().trackedCopy();
+        tracked.put(notification("n_1", "Added", 1_000L));
+
+        tracked.stopTracking();
+        tracked.put(notification("n_2", "Untracked", 2_000L));
+
+        assertTrue(tracked.changes().isEmpty());
+    }
+
+    // ─── freeze ───────────────────────────────────────────────────────────────
+
+    @Test(expected = IllegalStateException.class)
+    public void frozenStore_rejectsPut() throws Exception {
+        NotificationStore store = new NotificationStore();
+        store.freeze();
+        store.put(notification("n_1", "Rejected", 1_000L));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void frozenStore_rejectsDelete() throws Exception {
+        NotificationStore store = new NotificationStore();
+        store.put(notification("n_1", "Kept", 1_000L));
+        store.freeze();
+        store.delete("n_1");
+    }
+
+    @Test
+    public void copyOfFrozenStore_isModifiable() throws Exception {
+        NotificationStore store = new NotificationStore();
+        store.put(notification("n_1", "Frozen", 1_000L));
+        store.freeze();
+
+        NotificationStore copy = store.copy();
+        copy.delete("n_1");
+
+        assertTrue(store.isFrozen());
+        assertFalse(copy.isFrozen());
+        assertTrue(store.contains("n_1"));
+    }
+
+    // ─── active / archive partitions ──────────────────────────────────────────
+
+    private NotificationStore partitionedStore() throws Exception {
+        NotificationStore store = new NotificationStore();
+        store.put(notification("n_past", "Fired", 1_000L));
+        store.put(notification("n_late", "Later", 5_000L));
+        store.put(notification("n_soon", "Sooner", 3_000L));
+        JSONObject disabled = notification("n_off", "Disabled", 4_000L);
+        disabled.put("enabled", false);
+        store.put(disabled);
+        JSONObject unscheduled = notification("n_none", "Unscheduled", 0L);
+        store.put(unscheduled);
+        return store;
+    }
+
+    private static List<String> ids(List<JSONObject> entries) throws Exception {
+        List<String> ids = new ArrayList<>();
+        for (JSONObject entry : entries) ids.add(entry.getString("id"));
+        return ids;
+    }
+
+    @Test
+    public void active_returnsEnabledFutureEntriesSoonestFirst() throws Exception {
+        assertEquals(Arrays.asList("n_soon", "n_late"), ids(partitionedStore().active(2_000L)));
+    }
+
+    @Test
+    public void active_excludesEntryDueExactlyNow() throws Exception {
+        assertEquals(Arrays.asList("n_late"), ids(partitionedStore().active(3_000L)));
+    }
+
+    @Test
+    public void expired_returnsEnabledEntriesThatHaveFired() throws Exception {
+        assertEquals(Arrays.asList("n_past", "n_soon"), ids(partitionedStore().expired(3_000L)));
+    }
+
+    @Test
+    public void archive_isEverythingNotActiveInStorageOrder() throws Exception {
+        assertEquals(Arrays.asList("n_past", "n_off", "n_none"), ids(partitionedStore().archive(2_000L)));
+    }
+
+    @Test
+    public void disabling_movesEntryToArchive() throws Exception {
+        NotificationStore store = partitionedStore();
+        JSONObject soon = store.getMutable("n_soon");
+        soon.put("enabled", false);
+        store.put(soon);
+
+        assertEquals(Arrays.asList("n_late"), ids(store.active(2_000L)));
+        assertTrue(ids(store.archive(2_000L)).contains("n_soon"));
+    }
+
+    @Test
+    public void reenablingAndDeleting_updateActivePartition() throws Exception {
+        NotificationStore store = partitionedStore();
+        JSONObject off = store.getMutable("n_off");
+        off.put("enabled", true);
+        store.put(off);
+        store.delete("n_late");
+
+        assertEquals(Arrays.asList("n_soon", "n_off"), ids(store.active(2_000L)));
+    }
+
+    @Test
+    public void enabledDueBetween_isHalfOpenAndSkipsDisabled() throws Exception {
+        NotificationStore store = partitionedStore();
+        assertEquals(Arrays.asList("n_soon", "n_late"), ids(store.enabledDueBetween(1_000L, 5_000L)));
+        assertEquals(Arrays.asList("n_past"), ids(store.enabledDueBetween(0L, 2_999L)));
+        assertTrue(store.enabledDueBetween(5_000L, 5_000L).isEmpty());
+    }
+
+    @Test
+    public void nextEnabledAfter_returnsEarliestLaterEnabledTime() throws Exception {
+        NotificationStore store = partitionedStore();
+        assertEquals(1_000L, store.nextEnabledAfter(0L));
+        assertEquals(3_000L, store.nextEnabledAfter(1_000L));
+        assertEquals(5_000L, store.nextEnabledAfter(3_000L)); // n_off is disabled
+        assertEquals(0L, store.nextEnabledAfter(5_000L));
+    }
+
+    @Test
+    public void copy_keepsPartitions() throws Exception {
+        NotificationStore copy = partitionedStore().copy();
+        assertEquals(Arrays.asList("n_soon", "n_late"), ids(copy.active(2_000L)));
+    }
+}
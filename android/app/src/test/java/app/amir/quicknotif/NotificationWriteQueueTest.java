@@ -0,0 +1,148 @@
+package app.amir.quicknotif;
+
+import static org.junit.Assert.*;
+
+import android.content.SharedPreferences;
+
+import org.json.JSONObject;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 34)
+public class NotificationWriteQueueTest {
+
+    private SharedPreferences prefs;
+    private ManualExecutor executor;
+    private NotificationWriteQueue queue;
+
+    /** Holds queued tasks until the test runs them, so grouping is deterministic. */
+    private static final class ManualExecutor implements Executor {
+        final List<Runnable> tasks = new ArrayList<>();
+
+        @Override
+        public void execute(Runnable task) {
+            tasks.add(task);
+        }
+
+        void runAll() {
+            List<Runnable> pending = new ArrayList<>(tasks);
+            tasks.clear();
+            for (Runnable task : pending) task.run();
+        }
+    }
+
+    @Before
+    public void setUp() {
+        prefs = NotifUtils.getPrefs(RuntimeEnvironment.getApplication());
+        prefs.edit().clear().commit();
+        executor = new ManualExecutor();
+        queue = new NotificationWriteQueue(prefs, executor);
+    }
+
+    private String stored() {
+        return prefs.getString(NotifUtils.KEY_NOTIFICATIONS, null);
+    }
+
+    // ─── enqueue / peek ───────────────────────────────────────────────────────
+
+    @Test
+    public void enqueue_isVisibleThroughPeekBeforeWrite() {
+        queue.enqueue("[{\"id\":\"n_1\"}]");
+
+        assertEquals("[{\"id\":\"n_1\"}]", queue.peek());
+        assertNull("Nothing written until the writer runs", stored());
+    }
+
+    @Test
+    public void peek_withNothingQueued_returnsStoredValue() {
+        prefs.edit().putString(NotifUtils.KEY_NOTIFICATIONS, "[{\"id\":\"s\"}]").commit();
+        assertEquals("[{\"id\":\"s\"}]", queue.peek());
+    }
+
+    @Test
+    public void write_completesFutureWithTrue() throws Exception {
+        Future<Boolean> result = queue.enqueue("[{\"id\":\"n_1\"}]");
+        assertFalse(result.isDone());
+
+        executor.runAll();
+
+        assertTrue(result.get());
+        assertEquals("[{\"id\":\"n_1\"}]", stored());
+    }
+
+    // ─── group commit ─────────────────────────────────────────────────────────
+
+    @Test
+    public void backToBackSaves_areCoalescedIntoOneCommit() throws Exception {
+        Future<Boolean> first = queue.enqueue("[{\"id\":\"a\"}]");
+        Future<Boolean> second = queue.enqueue("[{\"id\":\"b\"}]");
+        Future<Boolean> third = queue.enqueue("[{\"id\":\"c\"}]");
+
+        assertEquals("One write task for the whole group", 1, executor.tasks.size());
+        executor.runAll();
+
+        assertSame(first, second);
+        assertSame(second, third);
+        assertTrue(third.get());
+        assertEquals("[{\"id\":\"c\"}]", stored());
+
+        JSONObject metrics = new JSONObject(queue.metricsJson());
+        assertEquals(3, metrics.getInt("saves"));
+        assertEquals(1, metrics.getInt("commits"));
+        assertEquals(2, metrics.getInt("coalesced"));
+        assertEquals(3, metrics.getInt("maxDepth"));
+        assertEquals(0, metrics.getInt("depth"));
+    }
+
+    @Test
+    public void saveAfterWriterStarted_formsNewGroup() throws Exception {
+        queue.enqueue("[{\"id\":\"a\"}]");
+        executor.runAll();
+        queue.enqueue("[{\"id\":\"b\"}]");
+
+        assertEquals(1, executor.tasks.size());
+        executor.runAll();
+
+        assertEquals("[{\"id\":\"b\"}]", stored());
+        assertEquals(2, new JSONObject(queue.metricsJson()).getInt("commits"));
+    }
+
+    // ─── external writers ─────────────────────────────────────────────────────
+
+    @Test
+    public void externalWriteAfterEnqueue_winsAndGroupIsDropped() throws Exception {
+        Future<Boolean> result = queue.enqueue("[{\"id\":\"native\"}]");
+        // The web app writes the key through Capacitor Preferences before the writer runs
+        prefs.edit().putString(NotifUtils.KEY_NOTIFICATIONS, "[{\"id\":\"web\"}]").commit();
+
+        executor.runAll();
+
+        assertFalse(result.get());
+        assertEquals("[{\"id\":\"web\"}]", stored());
+        assertEquals(1, new JSONObject(queue.metricsJson()).getInt("superseded"));
+    }
+
+    // ─── metrics ──────────────────────────────────────────────────────────────
+
+    @Test
+    public void metrics_reportDepthWhileQueued() throws Exception {
+        queue.enqueue("[]");
+        queue.enqueue("[]");
+
+        JSONObject metrics = new JSONObject(queue.metricsJson());
+        assertEquals(2, metrics.getInt("depth"));
+        assertEquals(0, metrics.getInt("commits"));
+        assertTrue(metrics.has("avgCommitMs"));
+        assertTrue(metrics.has("maxLatencyMs"));
+    }
+}
@@ -0,0 +1,144 @@
+package app.amir.quicknotif;
+
+import static org.junit.Assert.*;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 34)
+public class NumericIdAllocatorTest {
+
+    // Two real ids in the web app's format whose legacy hashes are equal
+    private static final String COLLIDING_A = "notification_1700042730423_obgq5gcqq";
+    private static final String COLLIDING_B = "notification_1700083044118_85bhenbvv";
+
+    private SharedPreferences prefs;
+    private NumericIdAllocator allocator;
+
+    @Before
+    public void setUp() {
+        Context context = RuntimeEnvironment.getApplication();
+        prefs = context.getSharedPreferences(NumericIdAllocator.PREFS_NAME, Context.MODE_PRIVATE);
+        prefs.edit().clear().commit();
+        allocator = new NumericIdAllocator(prefs);
+    }
+
+    /** Ids shaped like the web app's: notification_{epochMillis}_{9 base-36 chars}. */
+    private static List<String> webAppIds(int count, long seed) {
+        Random random = new Random(seed);
+        String alphabet = "abcdefghijklmnopqrstuvwxyz0123456789";
+        List<String> ids = new ArrayList<>(count);
+        long now = 1_700_000_000_000L;
+        for (int i = 0; i < count; i++) {
+            StringBuilder suffix = new StringBuilder();
+            for (int c = 0; c < 9; c++) suffix.append(alphabet.charAt(random.nextInt(alphabet.length())));
+            now += random.nextInt(5_000);
+            ids.add("notification_" + now + "_" + suffix);
+        }
+        return ids;
+    }
+
+    // ─── allocation ───────────────────────────────────────────────────────────
+
+    @Test
+    public void numericIdFor_keepsLegacyHashWhenFree() {
+        assertEquals(NotifUtils.generateNumericId("notification_0_0"), allocator.numericIdFor("notification_0_0"));
+        assertEquals(0, allocator.collisionCount());
+    }
+
+    @Test
+    public void numericIdFor_isStable() {
+        int first = allocator.numericIdFor("notification_1_1");
+        assertEquals(first, allocator.numericIdFor("notification_1_1"));
+        assertEquals(1, allocator.size());
+    }
+
+    @Test
+    public void numericIdFor_collidingHash_getsDifferentId() {
+        assertEquals(NotifUtils.generateNumericId(COLLIDING_A), NotifUtils.generateNumericId(COLLIDING_B));
+
+        int a = allocator.numericIdFor(COLLIDING_A);
+        int b = allocator.numericIdFor(COLLIDING_B);
+
+        assertEquals("First one keeps its legacy id", NotifUtils.generateNumericId(COLLIDING_A), a);
+        assertNotEquals(a, b);
+        assertTrue(b >= 1);
+        assertEquals(1, allocator.collisionCount());
+        assertEquals(COLLIDING_A, allocator.idFor(a));
+        assertEquals(COLLIDING_B, allocator.idFor(b));
+    }
+
+    @Test
+    public void numericIdFor_persistsAcrossReload() {
+        int a = allocator.numericIdFor(COLLIDING_A);
+        int b = allocator.numericIdFor(COLLIDING_B);
+
+        NumericIdAllocator reloaded = new NumericIdAllocator(prefs);
+
+        assertEquals(a, reloaded.numericIdFor(COLLIDING_A));
+        assertEquals(b, reloaded.numericIdFor(COLLIDING_B));
+        assertEquals(0, reloaded.collisionCount());
+    }
+
+    @Test
+    public void numericIdsFor_matchesSingleAllocation() {
+        Map<String, Integer> batch = allocator.numericIdsFor(Arrays.asList(COLLIDING_A, COLLIDING_B, "notification_2_2"));
+
+        NumericIdAllocator reloaded = new NumericIdAllocator(prefs);
+        for (Map.Entry<String, Integer> e : batch.entrySet()) {
+            assertEquals(e.getValue().intValue(), reloaded.numericIdFor(e.getKey()));
+        }
+        assertEquals(3, reloaded.size());
+    }
+
+    // ─── release ──────────────────────────────────────────────────────────────
+
+    @Test
+    public void release_freesIdForReuse() {
+        int a = allocator.numericIdFor(COLLIDING_A);
+        allocator.release(Arrays.asList(COLLIDING_A));
+
+        assertNull(allocator.idFor(a));
+        assertEquals("B can now use its legacy hash", a, allocator.numericIdFor(COLLIDING_B));
+        assertEquals(1, new NumericIdAllocator(prefs).size());
+    }
+
+    // ─── scale ────────────────────────────────────────────────────────────────
+
+    @Test
+    public void load_100kIds_areAllUnique() {
+        final int count = 100_000;
+        List<String> ids = webAppIds(count, 42L);
+
+        Set<Integer> legacy = new HashSet<>();
+        for (String id : ids) legacy.add(NotifUtils.generateNumericId(id));
+
+        Map<String, Integer> allocated = allocator.numericIdsFor(ids);
+
+        assertEquals(count, allocated.size());
+        assertEquals("Every id gets its own int", count, new HashSet<>(allocated.values()).size());
+        assertEquals(count - legacy.size(), allocator.collisionCount());
+
+        NumericIdAllocator reloaded = new NumericIdAllocator(prefs);
+        assertEquals(count, reloaded.size());
+        for (String id : ids) {
+            assertEquals(allocated.get(id).intValue(), reloaded.numericIdFor(id));
+        }
+    }
+}
@@ -72,6 +72,26 @@ public class QuickNotifWidgetProviderTest {
         assertTrue("Other notification should still be in storage", json.contains("notification_1_1"));
     }
 
+    @Test
+    public void deleteAction_cancelsAlarmAndReleasesNumericId() throws Exception {
+        JSONObject n = new JSONObject();
+        n.put("id", "notification_3_3");
+        n.put("name", "Delete me");
+        n.put("enabled", true);
+        n.put("scheduledAt", futureTs());
+        storeNotifications(new JSONArray().put(n));
+        NotifUtils.scheduleAlarm(context, "notification_3_3", "Delete me", n.getLong("scheduledAt"));
+        int numericId = NotifUtils.numericIdFor(context, "notification_3_3");
+        assertEquals(1, shadowAlarmManager().getScheduledAlarms().size());
+
+        Intent intent = new Intent(QuickNotifWidgetProvider.ACTION_DELETE);
+        intent.putExtra("notificationId", "notification_3_3");
+        provider.onReceive(context, intent);
+
+        assertTrue(shadowAlarmManager().getScheduledAlarms().isEmpty());
+        assertNull(NumericIdAllocator.get(context).idFor(numericId));
+    }
+
     @Test
     public void deleteAction_preservesOtherNotifications() throws Exception {
         JSONArray arr = new JSONArray();
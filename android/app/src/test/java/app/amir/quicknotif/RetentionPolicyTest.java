@@ -0,0 +1,129 @@
+package app.amir.quicknotif;
+
+import static org.junit.Assert.*;
+
+import android.content.SharedPreferences;
+
+import org.json.JSONObject;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 34)
+public class RetentionPolicyTest {
+
+    private static final long DAY = 24L * 60 * 60 * 1000;
+    private static final long NOW = 1_000 * DAY;
+
+    private JSONObject notification(String id, String name, long scheduledAt, boolean enabled) throws Exception {
+        JSONObject n = new JSONObject();
+        n.put("id", id);
+        n.put("name", name);
+        n.put("enabled", enabled);
+        n.put("scheduledAt", scheduledAt);
+        return n;
+    }
+
+    // ─── age ──────────────────────────────────────────────────────────────────
+
+    @Test
+    public void maxAge_purgesOnlyArchivedEntriesOlderThanCutoff() throws Exception {
+        NotificationStore store = new NotificationStore();
+        store.put(notification("old", "Old", NOW - 40 * DAY, true));
+        store.put(notification("recent", "Recent", NOW - 5 * DAY, true));
+        store.put(notification("future", "Future", NOW + DAY, true));
+
+        assertEquals(Collections.singletonList("old"),
+                new RetentionPolicy(30, 0, 0).select(store, NOW));
+    }
+
+    @Test
+    public void maxAge_neverPurgesActiveEntries() throws Exception {
+        NotificationStore store = new NotificationStore();
+        store.put(notification("active", "Active", NOW + DAY, true));
+
+        assertTrue(new RetentionPolicy(1, 1, 1).select(store, NOW).isEmpty());
+    }
+
+    @Test
+    public void maxAge_recentUpdateKeepsOldDisabledEntry() throws Exception {
+        NotificationStore store = new NotificationStore();
+        JSONObject edited = notification("edited", "Edited", NOW - 40 * DAY, false);
+        edited.put("updatedAt", NOW - DAY);
+        store.put(edited);
+
+        assertTrue(new RetentionPolicy(30, 0, 0).select(store, NOW).isEmpty());
+    }
+
+    // ─── counts ───────────────────────────────────────────────────────────────
+
+    @Test
+    public void keepPerName_keepsNewestForEachName() throws Exception {
+        NotificationStore store = new NotificationStore();
+        store.put(notification("tea_1", "Tea", NOW - 3 * DAY, true));
+        store.put(notification("tea_2", "Tea", NOW - 2 * DAY, true));
+        store.put(notification("tea_3", "Tea", NOW - DAY, true));
+        store.put(notification("walk_1", "Walk", NOW - 5 * DAY, true));
+
+        assertEquals(Collections.singletonList("tea_1"),
+                new RetentionPolicy(0, 0, 2).select(store, NOW));
+    }
+
+    @Test
+    public void maxArchived_keepsNewestAndReturnsStorageOrder() throws Exception {
+        NotificationStore store = new NotificationStore();
+        store.put(notification("a", "A", NOW - 4 * DAY, true));
+        store.put(notification("b", "B", NOW - DAY, true));
+        store.put(notification("c", "C", NOW - 3 * DAY, false));
+        store.put(notification("d", "D", NOW - 2 * DAY, true));
+
+        assertEquals(Arrays.asList("a", "c"), new RetentionPolicy(0, 2, 0).select(store, NOW));
+    }
+
+    @Test
+    public void zeroValues_disableEveryRule() throws Exception {
+        NotificationStore store = new NotificationStore();
+        store.put(notification("ancient", "Ancient", 1L, false));
+
+        assertTrue(new RetentionPolicy(0, 0, 0).select(store, NOW).isEmpty());
+    }
+
+    // ─── fromPrefs ────────────────────────────────────────────────────────────
+
+    @Test
+    public void fromPrefs_missingKey_usesDefaults() {
+        SharedPreferences prefs = NotifUtils.getPrefs(RuntimeEnvironment.getApplication());
+        prefs.edit().clear().commit();
+
+        RetentionPolicy policy = RetentionPolicy.fromPrefs(prefs);
+        assertEquals(RetentionPolicy.DEFAULT_MAX_AGE_DAYS, policy.maxAgeDays);
+        assertEquals(RetentionPolicy.DEFAULT_MAX_ARCHIVED, policy.maxArchived);
+        assertEquals(RetentionPolicy.DEFAULT_KEEP_PER_NAME, policy.keepPerName);
+    }
+
+    @Test
+    public void fromPrefs_readsOverrides() {
+        SharedPreferences prefs = NotifUtils.getPrefs(RuntimeEnvironment.getApplication());
+        prefs.edit().putString(RetentionPolicy.KEY_RETENTION_POLICY,
+                "{\"maxAgeDays\":7,\"keepPerName\":3}").commit();
+
+        RetentionPolicy policy = RetentionPolicy.fromPrefs(prefs);
+        assertEquals(7, policy.maxAgeDays);
+        assertEquals(RetentionPolicy.DEFAULT_MAX_ARCHIVED, policy.maxArchived);
+        assertEquals(3, policy.keepPerName);
+    }
+
+    @Test
+    public void fromPrefs_unreadableJson_usesDefaults() {
+        SharedPreferences prefs = NotifUtils.getPrefs(RuntimeEnvironment.getApplication());
+        prefs.edit().putString(RetentionPolicy.KEY_RETENTION_POLICY, "{{bad").commit();
+
+        assertEquals(RetentionPolicy.DEFAULT_MAX_AGE_DAYS, RetentionPolicy.fromPrefs(prefs).maxAgeDays);
+    }
+}
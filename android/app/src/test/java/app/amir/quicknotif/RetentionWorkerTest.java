@@ -0,0 +1,133 @@
+package app.amir.quicknotif;
+
+import static org.junit.Assert.*;
+
+import android.app.AlarmManager;
+import android.content.Context;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.Shadows;
+import org.robolectric.annotation.Config;
+import org.robolectric.shadows.ShadowAlarmManager;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 34)
+public class RetentionWorkerTest {
+
+    private static final long DAY = 24L * 60 * 60 * 1000;
+
+    private Context context;
+
+    @Before
+    public void setUp() {
+        context = RuntimeEnvironment.getApplication();
+        NotifUtils.getPrefs(context).edit().clear().commit();
+    }
+
+    private ShadowAlarmManager shadowAlarmManager() {
+        AlarmManager am = (AlarmManager) context.getSystemService(Context.ALARM_SERVICE);
+        return Shadows.shadowOf(am);
+    }
+
+    private JSONObject notification(String id, long scheduledAt, boolean enabled) throws Exception {
+        JSONObject n = new JSONObject();
+        n.put("id", id);
+        n.put("name", "Reminder " + id);
+        n.put("enabled", enabled);
+        n.put("scheduledAt", scheduledAt);
+        return n;
+    }
+
+    // ─── purge ────────────────────────────────────────────────────────────────
+
+    @Test
+    public void purge_removesSelectedEntriesAndReportsBytes() throws Exception {
+        long now = System.currentTimeMillis();
+        JSONArray arr = new JSONArray();
+        arr.put(notification("old_1", now - 60 * DAY, true));
+        arr.put(notification("old_2", now - 45 * DAY, false));
+        arr.put(notification("recent", now - DAY, true));
+        arr.put(notification("active", now + DAY, true));
+        NotifUtils.saveNotificationsJson(context, arr.toString()).get();
+
+        RetentionWorker.Report report = RetentionWorker.purge(context, new RetentionPolicy(30, 0, 0), now);
+
+        assertEquals(4, report.scanned);
+        assertEquals(2, report.purged);
+        assertTrue(report.bytesReclaimed() > 0);
+        JSONArray stored = new JSONArray(NotifUtils.readNotificationsJson(context));
+        assertEquals(2, stored.length());
+        assertEquals("recent", stored.getJSONObject(0).getString("id"));
+        assertEquals("active", stored.getJSONObject(1).getString("id"));
+        assertEquals(report.bytesAfter, stored.toString().getBytes("UTF-8").length);
+    }
+
+    @Test
+    public void purge_writesSnapshotAndLeavesJournalEmpty() throws Exception {
+        long now = System.currentTimeMillis();
+        NotificationRepository.get(context).put(NotificationJournal.OP_CREATE,
+                notification("old", now - 60 * DAY, true));
+
+        RetentionWorker.purge(context, new RetentionPolicy(30, 0, 0), now);
+
+        assertEquals(0, new java.io.File(context.getFilesDir(), NotificationJournal.FILE_NAME).length());
+        assertFalse(NotificationRepository.get(context).snapshot().contains("old"));
+    }
+
+    @Test
+    public void purge_cancelsLeftoverAlarmOfPurgedEntry() throws Exception {
+        long now = System.currentTimeMillis();
+        NotifUtils.saveNotificationsJson(context,
+                new JSONArray().put(notification("disabled", now - 60 * DAY, false)).toString());
+        // Alarm left behind, e.g. the entry was disabled from the web app without cancelling it
+        NotifUtils.scheduleAlarm(context, "disabled", "Reminder disabled", now + DAY);
+        assertEquals(1, shadowAlarmManager().getScheduledAlarms().size());
+
+        RetentionWorker.Report report = RetentionWorker.purge(context, new RetentionPolicy(30, 0, 0), now);
+
+        assertEquals(1, report.alarmsCancelled);
+        assertTrue(shadowAlarmManager().getScheduledAlarms().isEmpty());
+    }
+
+    @Test
+    public void purge_releasesNumericIdsOfNotificationsNoLongerStored() throws Exception {
+        long now = System.currentTimeMillis();
+        NotifUtils.saveNotificationsJson(context, new JSONArray()
+                .put(notification("old", now - 60 * DAY, false))
+                .put(notification("active", now + DAY, true)).toString()).get();
+        NumericIdAllocator allocator = NumericIdAllocator.get(context);
+        int old = allocator.numericIdFor("old");
+        int active = allocator.numericIdFor("active");
+        // Deleted by the web app, which only rewrites the list
+        int deleted = allocator.numericIdFor("deleted");
+        // Not stored yet, but already armed
+        int armed = allocator.numericIdFor("armed");
+        AlarmRegistry.get(context).record("armed", armed, now + DAY);
+
+        RetentionWorker.Report report = RetentionWorker.purge(context, new RetentionPolicy(30, 0, 0), now);
+
+        assertEquals(2, report.idsReleased);
+        assertNull(allocator.idFor(old));
+        assertNull(allocator.idFor(deleted));
+        assertEquals("active", allocator.idFor(active));
+        assertEquals("armed", allocator.idFor(armed));
+    }
+
+    @Test
+    public void purge_nothingToDo_reportsZero() throws Exception {
+        long now = System.currentTimeMillis();
+        NotifUtils.saveNotificationsJson(context,
+                new JSONArray().put(notification("active", now + DAY, true)).toString());
+
+        RetentionWorker.Report report = RetentionWorker.purge(context, new RetentionPolicy(30, 10, 1), now);
+
+        assertEquals(0, report.purged);
+        assertEquals(0, report.bytesReclaimed());
+    }
+}
@@ -0,0 +1,184 @@
+package app.amir.quicknotif;
+
+import static org.junit.Assert.*;
+
+import android.app.AlarmManager;
+import android.content.Context;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.Shadows;
+import org.robolectric.annotation.Config;
+import org.robolectric.shadows.ShadowAlarmManager;
+
+import java.util.Calendar;
+import java.util.Locale;
+import java.util.TimeZone;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 34)
+public class TimeChangeReceiverTest {
+
+    private static final long MINUTE = 60_000L;
+    private static final long HOUR = 60 * MINUTE;
+    private static final long DAY = 24 * HOUR;
+
+    private Context context;
+    private NotificationRepository repository;
+    private TimeZone originalZone;
+    private long now;
+
+    @Before
+    public void setUp() {
+        context = RuntimeEnvironment.getApplication();
+        NotifUtils.getPrefs(context).edit().clear().commit();
+        repository = NotificationRepository.get(context);
+        originalZone = TimeZone.getDefault();
+        TimeZone.setDefault(TimeZone.getTimeZone("UTC"));
+        now = System.currentTimeMillis();
+    }
+
+    @After
+    public void tearDown() {
+        TimeZone.setDefault(originalZone);
+    }
+
+    private ShadowAlarmManager shadowAlarmManager() {
+        AlarmManager am = (AlarmManager) context.getSystemService(Context.ALARM_SERVICE);
+        return Shadows.shadowOf(am);
+    }
+
+    private static long triggerAtOf(ShadowAlarmManager.ScheduledAlarm alarm) throws Exception {
+        java.lang.reflect.Field f = alarm.getClass().getDeclaredField("triggerAtMs");
+        f.setAccessible(true);
+        return f.getLong(alarm);
+    }
+
+    /** 09:00 in the current default timezone, two days from now. */
+    private long nineInTwoDays() {
+        Calendar cal = Calendar.getInstance();
+        cal.setTimeInMillis(now + 2 * DAY);
+        cal.set(Calendar.HOUR_OF_DAY, 9);
+        cal.set(Calendar.MINUTE, 0);
+        cal.set(Calendar.SECOND, 0);
+        cal.set(Calendar.MILLISECOND, 0);
+        return cal.getTimeInMillis();
+    }
+
+    private void put(String id, String type, String time, long scheduledAt) throws JSONException {
+        JSONObject n = new JSONObject();
+        n.put("id", id);
+        n.put("name", "Timer " + id);
+        n.put("type", type);
+        n.put("time", time);
+        n.put("enabled", true);
+        n.put("scheduledAt", scheduledAt);
+        repository.put(NotificationJournal.OP_CREATE, n);
+    }
+
+    // ─── rebasedTime ──────────────────────────────────────────────────────────
+
+    @Test
+    public void rebasedTime_sameZone_isUnchanged() {
+        long scheduledAt = nineInTwoDays();
+
+        assertEquals(scheduledAt, TimeChangeReceiver.rebasedTime("09:00", scheduledAt, now));
+    }
+
+    @Test
+    public void rebasedTime_zoneMovedEast_keepsLocalTimeAndDate() {
+        long scheduledAt = nineInTwoDays();
+        TimeZone.setDefault(TimeZone.getTimeZone("GMT+02:00"));
+
+        assertEquals(scheduledAt - 2 * HOUR, TimeChangeReceiver.rebasedTime("09:00", scheduledAt, now));
+    }
+
+    @Test
+    public void rebasedTime_zoneMovedFarWest_staysOnNearestDay() {
+        long scheduledAt = nineInTwoDays();
+        TimeZone.setDefault(TimeZone.getTimeZone("GMT-10:00"));
+
+        assertEquals(scheduledAt + 10 * HOUR, TimeChangeReceiver.rebasedTime("09:00", scheduledAt, now));
+    }
+
+    @Test
+    public void rebasedTime_localTimeAlreadyPassed_movesToNextDay() {
+        Calendar past = Calendar.getInstance();
+        past.setTimeInMillis(now - HOUR);
+        past.set(Calendar.SECOND, 0);
+        past.set(Calendar.MILLISECOND, 0);
+        String time = String.format(Locale.US, "%02d:%02d",
+                past.get(Calendar.HOUR_OF_DAY), past.get(Calendar.MINUTE));
+
+        long rebased = TimeChangeReceiver.rebasedTime(time, now + 30 * MINUTE, now);
+
+        assertEquals(past.getTimeInMillis() + DAY, rebased);
+    }
+
+    @Test
+    public void rebasedTime_invalidTime_returnsMinusOne() {
+        assertEquals(-1L, TimeChangeReceiver.rebasedTime("soon", now + HOUR, now));
+    }
+
+    // ─── rebase ───────────────────────────────────────────────────────────────
+
+    @Test
+    public void rebase_zoneChange_movesAndRearmsAbsoluteOnly() throws Exception {
+        long scheduledAt = nineInTwoDays();
+        put("n_tc1_1", NotifUtils.TYPE_ABSOLUTE, "09:00", scheduledAt);
+        put("n_tc1_2", NotifUtils.TYPE_RELATIVE, "30 minutes", now + 30 * MINUTE);
+        TimeZone.setDefault(TimeZone.getTimeZone("GMT+02:00"));
+
+        TimeChangeReceiver.Result result = TimeChangeReceiver.rebase(context, now);
+
+        assertEquals(1, result.examined);
+        assertEquals(1, result.rebased);
+        assertEquals(1, result.alarms.armed);
+        assertEquals(scheduledAt - 2 * HOUR, repository.snapshot().scheduledAtOf("n_tc1_1"));
+        assertEquals(now + 30 * MINUTE, repository.snapshot().scheduledAtOf("n_tc1_2"));
+        assertEquals("Only the moved notification was armed", 1, shadowAlarmManager().getScheduledAlarms().size());
+        assertEquals(scheduledAt - 2 * HOUR, triggerAtOf(shadowAlarmManager().getNextScheduledAlarm()));
+    }
+
+    @Test
+    public void rebase_nothingMoved_makesNoAlarmCalls() throws Exception {
+        put("n_tc2_1", NotifUtils.TYPE_ABSOLUTE, "09:00", nineInTwoDays());
+
+        TimeChangeReceiver.Result result = TimeChangeReceiver.rebase(context, now);
+
+        assertEquals(1, result.examined);
+        assertEquals(0, result.rebased);
+        assertNull(result.alarms);
+        assertTrue(shadowAlarmManager().getScheduledAlarms().isEmpty());
+    }
+
+    @Test
+    public void rebase_unparseableTime_isLeftAlone() throws Exception {
+        long scheduledAt = nineInTwoDays();
+        put("n_tc3_1", NotifUtils.TYPE_ABSOLUTE, "", scheduledAt);
+        TimeZone.setDefault(TimeZone.getTimeZone("GMT+02:00"));
+
+        TimeChangeReceiver.Result result = TimeChangeReceiver.rebase(context, now);
+
+        assertEquals(0, result.rebased);
+        assertEquals(scheduledAt, repository.snapshot().scheduledAtOf("n_tc3_1"));
+    }
+
+    @Test
+    public void rebase_recordsLastResult() throws Exception {
+        put("n_tc4_1", NotifUtils.TYPE_ABSOLUTE, "09:00", nineInTwoDays());
+        TimeZone.setDefault(TimeZone.getTimeZone("GMT+02:00"));
+
+        TimeChangeReceiver.rebase(context, now);
+
+        JSONObject last = new JSONObject(TimeChangeReceiver.lastResultJson(context));
+        assertEquals(1, last.getInt("rebased"));
+        assertTrue(last.has("durationMs"));
+    }
+}
@@ -0,0 +1,149 @@
+package app.amir.quicknotif;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 34)
+public class TimingWheelTest {
+
+    // A multiple of 64 ms, so START + 20 is in the current level-0 rotation
+    private static final long START = 1_700_000_000_000L;
+    private static final long MINUTE = 60_000L;
+    private static final long HOUR = 60 * MINUTE;
+
+    private static List<String> advance(TimingWheel wheel, long now) {
+        List<TimingWheel.Timer> expired = new ArrayList<>();
+        wheel.advanceTo(now, expired);
+        List<String> ids = new ArrayList<>();
+        for (TimingWheel.Timer timer : expired) ids.add(timer.id);
+        return ids;
+    }
+
+    @Test
+    public void firesAtExactMillisecond() {
+        TimingWheel wheel = new TimingWheel(START);
+        wheel.schedule("a", "A", START + 5 * MINUTE + 7);
+
+        assertTrue(advance(wheel, START + 5 * MINUTE + 6).isEmpty());
+        assertEquals("[a]", advance(wheel, START + 5 * MINUTE + 7).toString());
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    public void firesInDeadlineOrder() {
+        TimingWheel wheel = new TimingWheel(START);
+        wheel.schedule("hour", "", START + HOUR);
+        wheel.schedule("ms", "", START + 3);
+        wheel.schedule("minute", "", START + MINUTE);
+        wheel.schedule("second", "", START + 1_000);
+
+        assertEquals("[ms, second, minute, hour]", advance(wheel, START + 2 * HOUR).toString());
+    }
+
+    @Test
+    public void cancelled_neverFires() {
+        TimingWheel wheel = new TimingWheel(START);
+        wheel.schedule("a", "", START + 30 * MINUTE);
+
+        assertNotNull(wheel.cancel("a"));
+        assertNull(wheel.cancel("a"));
+        assertTrue(advance(wheel, START + HOUR).isEmpty());
+    }
+
+    @Test
+    public void reschedule_replacesEarlierTimer() {
+        TimingWheel wheel = new TimingWheel(START);
+        wheel.schedule("a", "", START + 5 * MINUTE);
+        wheel.schedule("a", "", START + 15 * MINUTE);
+
+        assertEquals(1, wheel.size());
+        assertTrue(advance(wheel, START + 10 * MINUTE).isEmpty());
+        assertEquals("[a]", advance(wheel, START + 15 * MINUTE).toString());
+    }
+
+    @Test
+    public void pastDeadline_firesOnNextAdvance() {
+        TimingWheel wheel = new TimingWheel(START);
+        wheel.schedule("late", "", START - 10);
+
+        assertEquals("[late]", advance(wheel, START).toString());
+    }
+
+    @Test
+    public void beyondTopLevel_waitsInOverflow() {
+        TimingWheel wheel = new TimingWheel(START);
+        wheel.schedule("far", "", START + 10 * HOUR);
+
+        assertTrue(advance(wheel, START + 10 * HOUR - 1).isEmpty());
+        assertEquals("[far]", advance(wheel, START + 10 * HOUR).toString());
+    }
+
+    @Test
+    public void nextEventTime_isExactForLevelZero() {
+        TimingWheel wheel = new TimingWheel(START);
+        assertEquals(-1L, wheel.nextEventTime());
+
+        wheel.schedule("a", "", START + 20);
+        assertEquals(START + 20, wheel.nextEventTime());
+        assertEquals(START + 20, wheel.earliestDeadline());
+    }
+
+    @Test
+    public void advance_skipsEmptyTicks() {
+        TimingWheel wheel = new TimingWheel(START);
+        wheel.schedule("a", "", START + HOUR);
+
+        // Jumps between occupied slots: a handful of events, not 3.6 million ticks
+        int events = 0;
+        List<TimingWheel.Timer> expired = new ArrayList<>();
+        while (expired.isEmpty()) {
+            wheel.advanceTo(wheel.nextEventTime(), expired);
+            events++;
+        }
+        assertTrue("Took " + events + " events", events <= TimingWheel.LEVELS + 1);
+    }
+
+    @Test
+    public void randomized_matchesReference() {
+        Random random = new Random(42);
+        TimingWheel wheel = new TimingWheel(START);
+        java.util.Map<String, Long> pending = new java.util.HashMap<>();
+        long now = START;
+        for (int step = 0; step < 5_000; step++) {
+            int op = random.nextInt(10);
+            String id = "t" + random.nextInt(40);
+            if (op < 5) {
+                long deadline = now + (long) (random.nextDouble() * 2 * HOUR);
+                wheel.schedule(id, "", deadline);
+                pending.put(id, deadline);
+            } else if (op < 6) {
+                wheel.cancel(id);
+                pending.remove(id);
+            } else {
+                now += random.nextInt(3) == 0 ? random.nextInt(100) : (long) (random.nextDouble() * 10 * MINUTE);
+                List<TimingWheel.Timer> expired = new ArrayList<>();
+                wheel.advanceTo(now, expired);
+                long last = Long.MIN_VALUE;
+                for (TimingWheel.Timer timer : expired) {
+                    assertEquals(pending.remove(timer.id), Long.valueOf(timer.deadline));
+                    assertTrue(timer.deadline <= now);
+                    assertTrue(timer.deadline >= last);
+                    last = timer.deadline;
+                }
+                for (long deadline : pending.values()) {
+                    assertTrue("Missed a due timer", deadline > now);
+                }
+                assertEquals(pending.size(), wheel.size());
+            }
+        }
+    }
+}
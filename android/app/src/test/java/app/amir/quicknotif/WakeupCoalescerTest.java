@@ -0,0 +1,266 @@
+package app.amir.quicknotif;
+
+import static app.amir.quicknotif.AlarmTestFixtures.*;
+import static org.junit.Assert.*;
+
+import android.app.NotificationManager;
+import android.content.Context;
+import android.content.Intent;
+import android.service.notification.StatusBarNotification;
+
+import org.json.JSONObject;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.Shadows;
+import org.robolectric.annotation.Config;
+import org.robolectric.shadows.ShadowAlarmManager;
+
+import java.util.HashSet;
+import java.util.Set;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 34)
+public class WakeupCoalescerTest {
+
+    private static final long SECOND = 1_000L;
+
+    private Context context;
+    private NotificationRepository repository;
+    private AlarmRegistry registry;
+    private long base;
+
+    @Before
+    public void setUp() {
+        context = freshContext(WakeupCoalescer.PREFS_NAME);
+        repository = NotificationRepository.get(context);
+        registry = AlarmRegistry.get(context);
+        base = System.currentTimeMillis() + 3_600_000L; // 1 hour ahead
+    }
+
+    private long nextTrigger() throws Exception {
+        ShadowAlarmManager.ScheduledAlarm alarm = shadowAlarmManager(context).getNextScheduledAlarm();
+        assertNotNull("Expected an alarm to be armed", alarm);
+        return triggerOf(alarm);
+    }
+
+    private boolean isArmedAt(String id, long triggerAt) {
+        return registry.isArmedAt(NotifUtils.numericIdFor(context, id), triggerAt);
+    }
+
+    /** The intent the alarm of {@code id} was armed with: its id and registry generation. */
+    private Intent fireIntent(String id) {
+        Intent intent = new Intent(context, NotificationReceiver.class);
+        intent.putExtra(NotifUtils.EXTRA_NOTIFICATION_ID, id);
+        intent.putExtra(NotifUtils.EXTRA_GENERATION,
+                registry.get(NotifUtils.numericIdFor(context, id)).generation);
+        return intent;
+    }
+
+    private Set<Integer> postedIds() {
+        NotificationManager nm = (NotificationManager) context.getSystemService(Context.NOTIFICATION_SERVICE);
+        Set<Integer> posted = new HashSet<>();
+        for (StatusBarNotification sbn : Shadows.shadowOf(nm).getActiveNotifications()) {
+            posted.add(sbn.getId());
+        }
+        return posted;
+    }
+
+    // ─── window ───────────────────────────────────────────────────────────────
+
+    @Test
+    public void window_isOffByDefault() throws Exception {
+        schedule(context, "n_c1_1", base);
+        schedule(context, "n_c1_2", base + SECOND);
+
+        assertEquals(0L, WakeupCoalescer.windowMs(context));
+        assertEquals(2, shadowAlarmManager(context).getScheduledAlarms().size());
+        assertEquals(0, registry.followerCount());
+    }
+
+    @Test
+    public void window_isKeptOutOfWebPreferences() {
+        WakeupCoalescer.setWindowSeconds(context, 30);
+
+        assertEquals(30 * SECOND, WakeupCoalescer.windowMs(context));
+        assertFalse(NotifUtils.getPrefs(context).contains(WakeupCoalescer.KEY_COALESCE_WINDOW_MS));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void setWindowSeconds_aboveMax_throws() {
+        WakeupCoalescer.setWindowSeconds(context, WakeupCoalescer.MAX_WINDOW_MS / SECOND + 1);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void setWindowSeconds_negative_throws() {
+        WakeupCoalescer.setWindowSeconds(context, -1);
+    }
+
+    // ─── coalescing ───────────────────────────────────────────────────────────
+
+    @Test
+    public void alarmsWithinWindow_shareOneAlarm() throws Exception {
+        WakeupCoalescer.setWindowSeconds(context, 10);
+
+        schedule(context, "n_c2_1", base);
+        schedule(context, "n_c2_2", base + 3 * SECOND);
+        schedule(context, "n_c2_3", base + 8 * SECOND);
+
+        assertEquals(1, shadowAlarmManager(context).getScheduledAlarms().size());
+        assertEquals(base, nextTrigger());
+        assertEquals(2, registry.followerCount());
+        assertTrue("Followers count as armed", isArmedAt("n_c2_3", base + 8 * SECOND));
+    }
+
+    @Test
+    public void alarmOutsideWindow_getsItsOwn() throws Exception {
+        WakeupCoalescer.setWindowSeconds(context, 10);
+
+        schedule(context, "n_c3_1", base);
+        schedule(context, "n_c3_2", base + 11 * SECOND);
+
+        assertEquals(2, shadowAlarmManager(context).getScheduledAlarms().size());
+        assertEquals(0, registry.followerCount());
+    }
+
+    @Test
+    public void nonExactClasses_areNotCoalesced() throws Exception {
+        WakeupCoalescer.setWindowSeconds(context, 10);
+        schedule(context, "n_c4_1", base);
+
+        NotifUtils.scheduleAlarm(context, "n_c4_2", "Critical", base + SECOND, DeliveryClass.ALARM_CLOCK);
+        NotifUtils.scheduleAlarm(context, "n_c4_3", "Low", base + 2 * SECOND, DeliveryClass.WINDOWED);
+
+        assertEquals(3, shadowAlarmManager(context).getScheduledAlarms().size());
+    }
+
+    @Test
+    public void notCoalescedOntoWindowedLeader() throws Exception {
+        WakeupCoalescer.setWindowSeconds(context, 10);
+        JSONObject low = notification("n_c5_1", base);
+        low.put(NotifUtils.JSON_KEY_DELIVERY_CLASS, DeliveryClass.WINDOWED);
+        repository.put(NotificationJournal.OP_CREATE, low);
+        NotifUtils.scheduleAlarm(context, "n_c5_1", "Low", base);
+
+        schedule(context, "n_c5_2", base + SECOND);
+
+        assertEquals(2, shadowAlarmManager(context).getScheduledAlarms().size());
+    }
+
+    // ─── leader changes ───────────────────────────────────────────────────────
+
+    @Test
+    public void cancelLeader_promotesEarliestFollower() throws Exception {
+        WakeupCoalescer.setWindowSeconds(context, 10);
+        schedule(context, "n_c6_1", base);
+        schedule(context, "n_c6_2", base + 3 * SECOND);
+        schedule(context, "n_c6_3", base + 8 * SECOND);
+
+        repository.delete("n_c6_1");
+        NotifUtils.cancelAlarm(context, "n_c6_1");
+
+        assertEquals(1, shadowAlarmManager(context).getScheduledAlarms().size());
+        assertEquals(base + 3 * SECOND, nextTrigger());
+        assertEquals(1, registry.followerCount());
+        assertTrue(isArmedAt("n_c6_3", base + 8 * SECOND));
+    }
+
+    @Test
+    public void moveLeader_rehomesFollowers() throws Exception {
+        WakeupCoalescer.setWindowSeconds(context, 10);
+        schedule(context, "n_c7_1", base);
+        schedule(context, "n_c7_2", base + 5 * SECOND);
+
+        schedule(context, "n_c7_1", base + 60 * SECOND);
+
+        assertEquals(2, shadowAlarmManager(context).getScheduledAlarms().size());
+        assertEquals(base + 5 * SECOND, nextTrigger());
+        assertEquals(0, registry.followerCount());
+    }
+
+    @Test
+    public void reconcile_dropsFollowersOfLostLeader() throws Exception {
+        WakeupCoalescer.setWindowSeconds(context, 10);
+        schedule(context, "n_c8_1", base);
+        schedule(context, "n_c8_2", base + SECOND);
+        android.app.PendingIntent.getBroadcast(context, NotifUtils.numericIdFor(context, "n_c8_1"),
+                new Intent(context, NotificationReceiver.class),
+                android.app.PendingIntent.FLAG_NO_CREATE | android.app.PendingIntent.FLAG_IMMUTABLE).cancel();
+
+        assertEquals(2, registry.reconcile(context));
+        assertEquals(0, registry.size());
+    }
+
+    @Test
+    public void followers_persistAcrossReload() throws Exception {
+        WakeupCoalescer.setWindowSeconds(context, 10);
+        schedule(context, "n_c9_1", base);
+        schedule(context, "n_c9_2", base + SECOND);
+
+        AlarmRegistry reloaded = new AlarmRegistry(
+                context.getSharedPreferences(AlarmRegistry.PREFS_NAME, Context.MODE_PRIVATE));
+
+        AlarmRegistry.Entry follower = reloaded.get(NotifUtils.numericIdFor(context, "n_c9_2"));
+        assertNotNull(follower);
+        assertTrue(follower.isFollower());
+        assertEquals(NotifUtils.numericIdFor(context, "n_c9_1"), follower.leader);
+        assertEquals(base + SECOND, follower.triggerAt);
+    }
+
+    // ─── delivery ─────────────────────────────────────────────────────────────
+
+    @Test
+    public void fire_postsBurstAsOneGroup() throws Exception {
+        WakeupCoalescer.setWindowSeconds(context, 10);
+        schedule(context, "n_c10_1", base);
+        schedule(context, "n_c10_2", base + 2 * SECOND);
+        schedule(context, "n_c10_3", base + 4 * SECOND);
+
+        new NotificationReceiver().onReceive(context, fireIntent("n_c10_1"));
+
+        Set<Integer> expected = new HashSet<>();
+        for (String id : new String[]{"n_c10_1", "n_c10_2", "n_c10_3"}) {
+            expected.add(NotifUtils.numericIdFor(context, id));
+        }
+        expected.add(WakeupCoalescer.SUMMARY_NOTIFICATION_ID);
+        assertEquals(expected, postedIds());
+        assertEquals(0, registry.size());
+    }
+
+    @Test
+    public void fire_skipsFollowerDisabledSinceCoalescing() throws Exception {
+        WakeupCoalescer.setWindowSeconds(context, 10);
+        schedule(context, "n_c11_1", base);
+        schedule(context, "n_c11_2", base + SECOND);
+        repository.update("n_c11_2", obj -> {
+            obj.put("enabled", false);
+            return true;
+        });
+
+        new NotificationReceiver().onReceive(context, fireIntent("n_c11_1"));
+
+        Set<Integer> posted = postedIds();
+        assertEquals(1, posted.size());
+        assertTrue(posted.contains(NotifUtils.numericIdFor(context, "n_c11_1")));
+    }
+
+    @Test
+    public void burst_50Timers_oneWakeup() throws Exception {
+        final int count = 50;
+        WakeupCoalescer.setWindowSeconds(context, 60);
+        for (int i = 0; i < count; i++) {
+            schedule(context, "n_burst_" + i, base + i * SECOND);
+        }
+
+        assertEquals("Without coalescing this would be " + count + " alarms",
+                1, shadowAlarmManager(context).getScheduledAlarms().size());
+
+        new NotificationReceiver().onReceive(context, fireIntent("n_burst_0"));
+
+        assertEquals(count + 1, postedIds().size());
+        DeliveryMetrics.Stats stats = DeliveryMetrics.get(context).stats(DeliveryClass.EXACT);
+        assertEquals(count, stats.delivered);
+        assertEquals(1, stats.wakeups);
+    }
+}
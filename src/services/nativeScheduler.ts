@@ -0,0 +1,29 @@
+import { registerPlugin } from '@capacitor/core';
+
+/**
+ * How a notification is covered natively: its own alarm, an in-process timer while the app is
+ * open, the single next-due dispatch alarm, or the alarm horizon's advance alarm.
+ */
+export type ArmedAs = 'alarm' | 'inProcess' | 'dispatch' | 'deferred';
+
+export interface ScheduleResult {
+  id: string;
+  numericId: number;
+  scheduledAt: number;
+  armedAs: ArmedAs;
+}
+
+/**
+ * Native scheduler (NativeSchedulerPlugin.java). Every call works on the notification already
+ * saved under the `notifications` key, so save before calling. `schedule` resolves once the
+ * alarm is armed and rejects if it could not be.
+ */
+export interface NativeSchedulerPlugin {
+  schedule(options: { id: string }): Promise<ScheduleResult>;
+  cancel(options: { id: string }): Promise<{ id: string; cancelled: boolean }>;
+  verify(options: { ids: string[] }): Promise<{ armed: string[]; missing: string[] }>;
+  /** Resolves once native edits (widget, alarms) are written to the `notifications` key. */
+  flush(): Promise<void>;
+}
+
+export const NativeScheduler = registerPlugin<NativeSchedulerPlugin>('NativeScheduler');
@@ -5,6 +5,7 @@ import {
   mockCapacitorCore,
   mockApp,
   mockFilesystem,
+  mockNativeScheduler,
 } from '@/test/mocks/capacitor';
 
 // Mock Capacitor modules before importing the service
@@ -20,6 +21,10 @@ vi.mock('@capacitor/core', () => ({
   Capacitor: mockCapacitorCore,
 }));
 
+vi.mock('./nativeScheduler', () => ({
+  NativeScheduler: mockNativeScheduler,
+}));
+
 vi.mock('@capacitor/app', () => ({
   App: mockApp,
 }));
@@ -94,6 +99,26 @@ describe('NotificationService', () => {
       expect(notifications[0].updatedAt).toBeInstanceOf(Date);
     });
 
+    it('parses epoch-millis timestamps written by the native side', async () => {
+      const scheduledAt = Date.parse('2026-02-19T14:30:00.000Z');
+      localStorage.setItem('notifications', JSON.stringify([
+        {
+          id: 'notification_333_ccc',
+          name: 'Native',
+          time: '14:30',
+          type: 'absolute',
+          enabled: true,
+          scheduledAt,
+          updatedAt: scheduledAt - 60_000,
+        },
+      ]));
+
+      await service.initialize();
+      const notifications = service.getNotifications();
+      expect(notifications[0].scheduledAt.getTime()).toBe(scheduledAt);
+      expect(notifications[0].updatedAt.getTime()).toBe(scheduledAt - 60_000);
+    });
+
     it('falls back to createdAt when updatedAt is missing', async () => {
       const stored = JSON.stringify([
         {
@@ -167,6 +192,21 @@ describe('NotificationService', () => {
       expect(parsed[0].name).toBe('Saved');
     });
 
+    it('stores timestamps as epoch millis', async () => {
+      await service.scheduleNotification('Stored', '15:00', 'absolute');
+      const parsed = JSON.parse(localStorage.getItem('notifications')!);
+      expect(typeof parsed[0].scheduledAt).toBe('number');
+      expect(typeof parsed[0].updatedAt).toBe('number');
+      expect(parsed[0].scheduledAt).toBe(service.getNotifications()[0].scheduledAt.getTime());
+    });
+
+    it('defaults the delivery class to exact and stores it', async () => {
+      await service.scheduleNotification('Default', '15:00', 'absolute');
+      await service.scheduleNotification('Low', '15:00', 'absolute', 'windowed');
+      const parsed = JSON.parse(localStorage.getItem('notifications')!);
+      expect(parsed.map((n: { deliveryClass: string }) => n.deliveryClass)).toEqual(['exact', 'windowed']);
+    });
+
     it('adds name to savedNames', async () => {
       await service.scheduleNotification('UniqueNameAlpha', '14:30', 'absolute');
       expect(service.getSavedNames()).toContain('UniqueNameAlpha');
@@ -516,6 +556,20 @@ describe('NotificationService', () => {
         expect(service.getNotifications()[0].name).toBe('Restored');
       });
 
+      it('waits for native edits to be flushed before reading Preferences', async () => {
+        const order: string[] = [];
+        mockNativeScheduler.flush.mockImplementationOnce(async () => {
+          order.push('flush');
+        });
+        mockPreferences.get.mockImplementation(async ({ key }: { key: string }) => {
+          order.push(key);
+          return { value: null };
+        });
+        await service.initialize();
+        expect(order[0]).toBe('flush');
+        expect(order).toContain('notifications');
+      });
+
       it('loads savedNames from Preferences', async () => {
         mockPreferences.get.mockImplementation(async ({ key }: { key: string }) => ({
           value: key === 'savedNames' ? JSON.stringify(['Alice', 'Bob']) : null,
@@ -547,38 +601,39 @@ describe('NotificationService', () => {
         await service.initialize();
       });
 
-      it('removes notification from list and throws when LocalNotifications.schedule fails', async () => {
-        mockLocalNotifications.schedule.mockRejectedValueOnce(new Error('AlarmManager error'));
+      it('removes notification from list and throws when the native scheduler rejects', async () => {
+        mockNativeScheduler.schedule.mockRejectedValueOnce(new Error('Alarm for x was not armed'));
         await expect(service.scheduleNotification('Test', '14:30', 'absolute'))
-          .rejects.toThrow('Failed to schedule notification');
+          .rejects.toThrow('Failed to schedule notification: Alarm for x was not armed');
         expect(service.getNotifications()).toHaveLength(0);
       });
 
-      it('removes notification from list and throws when not found in pending after retries', async () => {
-        mockLocalNotifications.getPending.mockResolvedValue({ notifications: [] });
-        vi.useRealTimers();
-        await expect(service.scheduleNotification('Test', '14:30', 'absolute'))
-          .rejects.toThrow('Notification was not added to pending list');
-        expect(service.getNotifications()).toHaveLength(0);
-        vi.useFakeTimers();
-        vi.setSystemTime(new Date('2026-02-19T10:00:00.000Z'));
-      }, 10000);
+      it('saves before arming, so the native scheduler finds the entry', async () => {
+        const order: string[] = [];
+        mockPreferences.set.mockImplementation(async ({ key }: { key: string }) => {
+          if (key === 'notifications') order.push('save');
+          return {};
+        });
+        mockNativeScheduler.schedule.mockImplementationOnce(async ({ id }: { id: string }) => {
+          order.push('schedule');
+          return { id, numericId: 1, scheduledAt: 0, armedAs: 'alarm' };
+        });
 
-      it('saves to Preferences and calls refreshWidget on success', async () => {
-        let scheduledId: number | undefined;
-        mockLocalNotifications.schedule.mockImplementation(
-          async ({ notifications }: { notifications: Array<{ id: number }> }) => {
-            scheduledId = notifications[0].id;
-            return {};
-          }
-        );
-        mockLocalNotifications.getPending.mockImplementation(async () => ({
-          notifications: scheduledId !== undefined ? [{ id: scheduledId }] : [],
-        }));
+        const id = await service.scheduleNotification('Test', '14:30', 'absolute');
+
+        expect(order).toEqual(['save', 'schedule']);
+        expect(mockNativeScheduler.schedule).toHaveBeenCalledWith({ id });
+      });
 
-        const promise = service.scheduleNotification('Test', '14:30', 'absolute');
-        await vi.runAllTimersAsync();
-        await promise;
+      it('arms only through the native scheduler, with no polling', async () => {
+        await service.scheduleNotification('Test', '14:30', 'absolute');
+        expect(mockNativeScheduler.schedule).toHaveBeenCalledTimes(1);
+        expect(mockLocalNotifications.schedule).not.toHaveBeenCalled();
+        expect(mockLocalNotifications.getPending).not.toHaveBeenCalled();
+      });
+
+      it('saves to Preferences and calls refreshWidget on success', async () => {
+        await service.scheduleNotification('Test', '14:30', 'absolute');
 
         expect(mockPreferences.set).toHaveBeenCalledWith(
           expect.objectContaining({ key: 'notifications' })
@@ -598,19 +653,17 @@ describe('NotificationService', () => {
         mockCapacitorCore.isNativePlatform.mockReturnValue(true);
       });
 
-      it('disabling calls LocalNotifications.cancel and cancelAlarmManagerNotification', async () => {
+      it('disabling cancels through the native scheduler', async () => {
         await service.toggleNotification(id);
-        expect(mockLocalNotifications.cancel).toHaveBeenCalledWith({
-          notifications: [{ id: expect.any(Number) }],
-        });
-        expect(window.Android!.cancelAlarmManagerNotification).toHaveBeenCalledWith(id);
+        expect(mockNativeScheduler.cancel).toHaveBeenCalledWith({ id });
+        expect(mockLocalNotifications.cancel).not.toHaveBeenCalled();
       });
 
-      it('enabling with a future scheduledAt calls LocalNotifications.schedule', async () => {
+      it('enabling with a future scheduledAt arms through the native scheduler', async () => {
         await service.toggleNotification(id); // disable
         vi.clearAllMocks();
         await service.toggleNotification(id); // re-enable
-        expect(mockLocalNotifications.schedule).toHaveBeenCalled();
+        expect(mockNativeScheduler.schedule).toHaveBeenCalledWith({ id });
       });
 
       it('enabling with a past scheduledAt recalculates and reschedules for next occurrence', async () => {
@@ -618,7 +671,7 @@ describe('NotificationService', () => {
         await service.toggleNotification(id); // disable
         vi.clearAllMocks();
         await service.toggleNotification(id); // re-enable — scheduledAt is in the past
-        expect(mockLocalNotifications.schedule).toHaveBeenCalled();
+        expect(mockNativeScheduler.schedule).toHaveBeenCalled();
         const notification = service.getNotifications()[0];
         expect(notification.scheduledAt.getHours()).toBe(14);
         expect(notification.scheduledAt.getMinutes()).toBe(30);
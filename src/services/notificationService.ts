@@ -2,7 +2,7 @@ import { LocalNotifications } from '@capacitor/local-notifications';
 import { Capacitor } from '@capacitor/core';
 import { Preferences } from '@capacitor/preferences';
 import notificationLogger from './notificationLogger';
-import { toNumericId } from '@/utils/notificationUtils';
+import { NativeScheduler } from './nativeScheduler';
 import { NOTIFICATION_CONFIG } from '@/constants/notifications';
 
 // Android bridge type definitions
@@ -18,12 +18,32 @@ declare global {
       cancelAlarmManagerNotification(notificationId: string): void;
       refreshWidget(): void;
       canScheduleExactAlarms(): boolean;
+      getNumericId?(notificationId: string): number;
+      getDeliveryMetrics?(): string;
+      setWindowedTolerance?(toleranceMs: number): boolean;
+      setCoalesceWindowSeconds?(seconds: number): boolean;
+      getCoalesceWindowSeconds?(): number;
+      setAlarmHorizonHours?(hours: number): boolean;
+      getAlarmHorizonHours?(): number;
+      getForegroundTimerMetrics?(): string;
+      getLastTimeRebase?(): string;
+      getFireLead?(): string;
+      setFireLeadMaxMs?(maxLeadMs: number): boolean;
+      getInexactFallback?(): string;
+      getLastBootRestore?(): string;
     };
     /** Called by MainActivity.onResume() when exact alarm permission is missing. */
     onExactAlarmPermissionMissing?: () => void;
   }
 }
 
+/**
+ * How the alarm is armed: 'alarmClock' for critical items (never deferred), 'exact' (default)
+ * for normal items, 'windowed' for low-priority items the OS may fire a little late so it can
+ * batch wakeups.
+ */
+export type DeliveryClass = 'alarmClock' | 'exact' | 'windowed';
+
 export interface NotificationItem {
   id: string;
   name: string;
@@ -33,18 +53,24 @@ export interface NotificationItem {
   scheduledAt: Date;
   updatedAt: Date;
   interval?: number;
+  deliveryClass?: DeliveryClass;
 }
 
+/**
+ * Shape of an entry under the `notifications` key. Timestamps are epoch millis (storage schema 2,
+ * shared with the native side); ISO strings are still accepted from data written before that.
+ */
 interface StoredNotification {
   id: string;
   name: string;
   time: string;
   type: 'absolute' | 'relative';
   enabled: boolean;
-  scheduledAt: string;
-  updatedAt?: string;
-  createdAt?: string;
+  scheduledAt: number | string;
+  updatedAt?: number | string;
+  createdAt?: number | string;
   interval?: number;
+  deliveryClass?: DeliveryClass;
 }
 
 export type PermissionStep = 'notification' | 'autostart' | 'complete';
@@ -97,47 +123,6 @@ export class NotificationService {
     return totalMinutes * 60 * 1000;
   }
 
-  /**
-   * Schedule notification with Android's LocalNotifications plugin
-   */
-  private async scheduleLocalNotification(
-    id: string,
-    name: string,
-    scheduledAt: Date
-  ): Promise<void> {
-    const atDate = scheduledAt.getTime() <= Date.now() + NOTIFICATION_CONFIG.MIN_SCHEDULE_DELAY_MS
-      ? new Date(Date.now() + NOTIFICATION_CONFIG.FALLBACK_DELAY_MS)
-      : scheduledAt;
-
-    await LocalNotifications.schedule({
-      notifications: [{
-        title: NOTIFICATION_CONFIG.TITLE,
-        body: name,
-        id: toNumericId(id),
-        schedule: {
-          at: atDate,
-          allowWhileIdle: true,
-          repeats: false
-        },
-        channelId: NOTIFICATION_CONFIG.CHANNEL_ID,
-        attachments: undefined,
-        actionTypeId: '',
-        extra: {
-          wakeUp: true,
-          exactTiming: true
-        },
-        ongoing: false,
-        autoCancel: true,
-        largeBody: name,
-        summaryText: '',
-        smallIcon: NOTIFICATION_CONFIG.SMALL_ICON,
-        largeIcon: NOTIFICATION_CONFIG.LARGE_ICON,
-        iconColor: NOTIFICATION_CONFIG.ICON_COLOR,
-        threadIdentifier: NOTIFICATION_CONFIG.THREAD_ID
-      }]
-    });
-  }
-
   static getInstance(): NotificationService {
     if (!NotificationService.instance) {
       NotificationService.instance = new NotificationService();
@@ -166,11 +151,29 @@ export class NotificationService {
       }
 
       await this.setupNotificationChannel();
+      await this.cancelLegacyPending();
     }
 
     await this.loadFromStorage();
   }
 
+  /**
+   * Alarms are armed by the native scheduler now. Drop anything still pending from the
+   * LocalNotifications scheduler, which would otherwise fire a second time.
+   */
+  private async cancelLegacyPending(): Promise<void> {
+    try {
+      const pending = await LocalNotifications.getPending();
+      if (pending.notifications.length > 0) {
+        await LocalNotifications.cancel({
+          notifications: pending.notifications.map(n => ({ id: n.id }))
+        });
+      }
+    } catch (e) {
+      console.warn('Failed to clear legacy pending notifications', e);
+    }
+  }
+
   async requestNotificationPermission(): Promise<boolean> {
     if (!Capacitor.isNativePlatform()) return true;
 
@@ -243,7 +246,12 @@ export class NotificationService {
     }
   }
 
-  async scheduleNotification(name: string, time: string, type: 'absolute' | 'relative'): Promise<string> {
+  async scheduleNotification(
+    name: string,
+    time: string,
+    type: 'absolute' | 'relative',
+    deliveryClass: DeliveryClass = 'exact'
+  ): Promise<string> {
     // Ensure channel exists before scheduling
     await this.setupNotificationChannel();
 
@@ -261,7 +269,8 @@ export class NotificationService {
       enabled: true,
       scheduledAt,
       updatedAt: new Date(),
-      interval: intervalMs
+      interval: intervalMs,
+      deliveryClass
     };
 
     this.notifications.push(notification);
@@ -271,31 +280,22 @@ export class NotificationService {
 
     if (Capacitor.isNativePlatform()) {
       try {
-        await this.scheduleLocalNotification(id, name, scheduledAt);
-
-        // Retry verification with exponential backoff to handle slow Android registration
-        let wasScheduled = false;
-        for (let attempt = 0; attempt < 3; attempt++) {
-          await new Promise(resolve => setTimeout(resolve, 200 * (attempt + 1)));
-          const pending = await LocalNotifications.getPending();
-          wasScheduled = pending.notifications.some(n => n.id === toNumericId(id));
-          if (wasScheduled) break;
-        }
-
-        if (!wasScheduled) {
-          throw new Error('Notification was not added to pending list');
-        }
-
+        // The native scheduler arms the stored entry, so save first. It resolves once the
+        // alarm is armed and rejects if it could not be.
+        await this.saveToStorage();
+        await NativeScheduler.schedule({ id });
       } catch (e) {
         await notificationLogger.logError('Schedule failed', e, id);
         console.error('Scheduling failed', e);
 
         // Delete from list since it didn't actually schedule
         this.notifications = this.notifications.filter(n => n.id !== id);
+        await this.saveToStorage();
 
         // Re-throw so UI can show error
         throw new Error('Failed to schedule notification: ' + (e as Error).message);
       }
+      return id;
     }
 
     this.saveToStorage();
@@ -309,68 +309,54 @@ export class NotificationService {
     notification.enabled = !notification.enabled;
     notification.updatedAt = new Date();
 
-    if (Capacitor.isNativePlatform()) {
-      const numericId = toNumericId(id);
+    if (!Capacitor.isNativePlatform()) {
+      this.saveToStorage();
+      return;
+    }
 
+    if (notification.enabled && notification.scheduledAt.getTime() <= Date.now()) {
+      notification.scheduledAt = this.calculateScheduleTime(notification.time, notification.type);
+    }
+    // The native scheduler works on the stored entry, so save first
+    await this.saveToStorage();
+    try {
       if (notification.enabled) {
-        const atDate = notification.scheduledAt.getTime() <= Date.now()
-          ? this.calculateScheduleTime(notification.time, notification.type)
-          : notification.scheduledAt;
-        notification.scheduledAt = atDate;
-        try {
-          await this.scheduleLocalNotification(id, notification.name, atDate);
-        } catch (e) {
-          console.error('Scheduling (toggle) failed', e);
-        }
+        await NativeScheduler.schedule({ id });
       } else {
-        // Cancel Capacitor notification
-        await LocalNotifications.cancel({ notifications: [{ id: numericId }] });
-        // Also cancel AlarmManager alarm (in case it was scheduled by widget)
-        androidBridge.cancelAlarm(id);
+        await NativeScheduler.cancel({ id });
       }
+    } catch (e) {
+      console.error('Scheduling (toggle) failed', e);
     }
-
-    this.saveToStorage();
   }
 
   async deleteNotification(id: string): Promise<void> {
     // Get notification before removing it (for logging)
     const notification = this.notifications.find(n => n.id === id);
 
+    this.notifications = this.notifications.filter(n => n.id !== id);
+
     if (Capacitor.isNativePlatform()) {
-      const numericId = toNumericId(id);
-      // Cancel Capacitor notification
-      await LocalNotifications.cancel({ notifications: [{ id: numericId }] });
-      // Also cancel AlarmManager alarm (in case it was scheduled by widget)
-      if (window.Android?.cancelAlarmManagerNotification) {
-        window.Android.cancelAlarmManagerNotification(id);
+      // Removed from storage first, so next-due dispatch skips it too
+      await this.saveToStorage();
+      try {
+        await NativeScheduler.cancel({ id });
+      } catch (e) {
+        console.error('Cancel (delete) failed', e);
       }
+    } else {
+      this.saveToStorage();
     }
 
-    this.notifications = this.notifications.filter(n => n.id !== id);
-
     if (notification) {
       await notificationLogger.logDelete(id, notification.name);
     }
-
-    this.saveToStorage();
   }
 
   async updateNotificationTime(id: string, time: string, type: 'absolute' | 'relative'): Promise<void> {
     const notification = this.notifications.find(n => n.id === id);
     if (!notification) return;
 
-    // Cancel existing notification if it exists
-    if (Capacitor.isNativePlatform()) {
-      const numericId = toNumericId(id);
-      // Cancel Capacitor notification
-      await LocalNotifications.cancel({ notifications: [{ id: numericId }] });
-      // Also cancel AlarmManager alarm (in case it was scheduled by widget)
-      if (window.Android?.cancelAlarmManagerNotification) {
-        window.Android.cancelAlarmManagerNotification(id);
-      }
-    }
-
     // Update notification properties
     notification.time = time;
     notification.type = type;
@@ -384,16 +370,18 @@ export class NotificationService {
     notification.updatedAt = new Date();
     notification.enabled = true; // Re-enable when updating time
 
-    // Schedule the updated notification
-    if (Capacitor.isNativePlatform()) {
-      try {
-        await this.scheduleLocalNotification(id, notification.name, notification.scheduledAt);
-      } catch (e) {
-        console.error('Scheduling (update) failed', e);
-      }
+    if (!Capacitor.isNativePlatform()) {
+      this.saveToStorage();
+      return;
     }
 
-    this.saveToStorage();
+    // Re-arming replaces the previous alarm for this id; the stored entry must be current
+    await this.saveToStorage();
+    try {
+      await NativeScheduler.schedule({ id });
+    } catch (e) {
+      console.error('Scheduling (update) failed', e);
+    }
   }
 
   async reactivateNotification(id: string): Promise<void> {
@@ -452,7 +440,12 @@ export class NotificationService {
   }
 
   private async saveToStorage(): Promise<void> {
-    const notificationsJson = JSON.stringify(this.notifications);
+    const stored: StoredNotification[] = this.notifications.map(n => ({
+      ...n,
+      scheduledAt: n.scheduledAt.getTime(),
+      updatedAt: n.updatedAt.getTime(),
+    }));
+    const notificationsJson = JSON.stringify(stored);
     const savedNamesJson = JSON.stringify(this.savedNames);
 
     if (Capacitor.isNativePlatform()) {
@@ -467,6 +460,7 @@ export class NotificationService {
 
   private async loadFromStorage(): Promise<void> {
     if (Capacitor.isNativePlatform()) {
+      await NativeScheduler.flush();
       const { value: notificationsValue } = await Preferences.get({ key: 'notifications' });
       const { value: savedNamesValue } = await Preferences.get({ key: 'savedNames' });
 
@@ -503,13 +497,12 @@ export class NotificationService {
   if (!Capacitor.isNativePlatform()) return true;
 
   try {
-    const pending = await LocalNotifications.getPending();
-    const numericId = toNumericId(id);
+    const { armed } = await NativeScheduler.verify({ ids: [id] });
 
-    const exists = pending.notifications.some(n => n.id === numericId);
+    const exists = armed.includes(id);
 
     if (!exists) {
-      console.warn(`⚠️ Notification ${id} not in pending list!`);
+      console.warn(`⚠️ Notification ${id} has no armed alarm!`);
     }
 
     return exists;
@@ -532,7 +525,7 @@ export class NotificationService {
       if (!notification || notification.scheduledAt.getTime() <= Date.now()) continue;
 
       try {
-        await this.scheduleLocalNotification(id, notification.name, notification.scheduledAt);
+        await NativeScheduler.schedule({ id });
         await notificationLogger.log({
           timestamp: new Date().toISOString(),
           type: 'SYSTEM_CHECK',
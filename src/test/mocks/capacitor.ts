@@ -20,6 +20,13 @@ export const mockCapacitorCore = {
   getPlatform: vi.fn(() => 'web'),
 };
 
+export const mockNativeScheduler = {
+  schedule: vi.fn(async ({ id }: { id: string }) => ({ id, numericId: 1, scheduledAt: 0, armedAs: 'alarm' })),
+  cancel: vi.fn(async ({ id }: { id: string }) => ({ id, cancelled: true })),
+  verify: vi.fn(async ({ ids }: { ids: string[] }) => ({ armed: ids, missing: [] as string[] })),
+  flush: vi.fn(async () => undefined),
+};
+
 export const mockApp = {
   addListener: vi.fn().mockResolvedValue({ remove: vi.fn() }),
 };
@@ -1,5 +1,5 @@
-import { describe, it, expect } from 'vitest';
-import { toNumericId } from './notificationUtils';
+import { describe, it, expect, afterEach } from 'vitest';
+import { legacyNumericId, toNumericId } from './notificationUtils';
 
 describe('toNumericId', () => {
   describe('range constraints', () => {
@@ -74,3 +74,21 @@ describe('toNumericId', () => {
     });
   });
 });
+
+describe('toNumericId with the native allocator', () => {
+  const android = window.Android as Record<string, unknown>;
+
+  afterEach(() => {
+    delete android.getNumericId;
+  });
+
+  it('uses the number from the Android bridge when available', () => {
+    android.getNumericId = (id: string) => (id === 'notification_collided' ? 42 : legacyNumericId(id));
+    expect(toNumericId('notification_collided')).toBe(42);
+    expect(toNumericId('hello')).toBe(178056680);
+  });
+
+  it('falls back to the legacy hash without the bridge method', () => {
+    expect(toNumericId('notification_1234567890_abc123xyz')).toBe(legacyNumericId('notification_1234567890_abc123xyz'));
+  });
+});
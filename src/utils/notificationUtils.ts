@@ -1,9 +1,10 @@
 /**
- * Convert string ID to numeric ID for Android notifications
- * CRITICAL: This algorithm must match Java implementation in QuickNotifWidgetProvider.java
+ * Legacy string-to-numeric ID hash.
+ * CRITICAL: This algorithm must match Java implementation in NotifUtils.generateNumericId
  * DO NOT MODIFY without updating Java side as well
+ * Different IDs can hash to the same number, so prefer toNumericId.
  */
-export function toNumericId(id: string): number {
+export function legacyNumericId(id: string): number {
   let hash = 5381;
   for (let i = 0; i < id.length; i++) {
     hash = ((hash << 5) + hash) ^ id.charCodeAt(i);
@@ -12,3 +13,12 @@ export function toNumericId(id: string): number {
   const n = Math.abs(hash) % 2147483646 + 1;
   return n;
 }
+
+/**
+ * Convert string ID to numeric ID for Android notifications.
+ * On Android the number comes from the native NumericIdAllocator, which is collision-free and
+ * keeps the legacy hash for every ID that did not collide. Elsewhere it is the legacy hash.
+ */
+export function toNumericId(id: string): number {
+  return window.Android?.getNumericId?.(id) ?? legacyNumericId(id);
+}